@@ -0,0 +1,38 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.remoting;
+
+import java.net.InetSocketAddress;
+
+/**
+ * ChannelClosedException, the request was still pending when its channel was closed.
+ * 
+ * @see com.alibaba.dubbo.remoting.exchange.Response#CHANNEL_INACTIVE
+ * @export
+ */
+public class ChannelClosedException extends RemotingException {
+
+    private static final long serialVersionUID = 2766379390429715382L;
+
+    public ChannelClosedException(Channel channel, String message){
+        super(channel, message);
+    }
+
+    public ChannelClosedException(InetSocketAddress localAddress, InetSocketAddress remoteAddress, String message){
+        super(localAddress, remoteAddress, message);
+    }
+
+}
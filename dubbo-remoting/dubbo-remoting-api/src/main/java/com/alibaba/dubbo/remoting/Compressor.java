@@ -0,0 +1,48 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.remoting;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import com.alibaba.dubbo.common.extension.SPI;
+import com.alibaba.dubbo.remoting.transport.compress.DeflateCompressor;
+
+/**
+ * 消息体压缩 (SPI, Singleton, ThreadSafe)
+ * <p>
+ * 压缩后的消息体以{@link #getCompressorId()}开头，编号在各实现间唯一，属于协议的一部分。
+ */
+@SPI(DeflateCompressor.NAME)
+public interface Compressor {
+
+    /**
+     * @return compressor id, 1 to 63.
+     */
+    byte getCompressorId();
+
+    /**
+     * 返回的流关闭时写出剩余的压缩数据并释放资源，不关闭传入的流。
+     */
+    OutputStream compress(OutputStream output) throws IOException;
+
+    /**
+     * 返回的流关闭时释放资源，不关闭传入的流。
+     */
+    InputStream decompress(InputStream input) throws IOException;
+
+}
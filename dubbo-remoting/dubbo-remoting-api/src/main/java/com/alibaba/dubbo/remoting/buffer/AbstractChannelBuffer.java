@@ -20,12 +20,16 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 /**
  * @author <a href="mailto:gang.lvg@alibaba-inc.com">kimi</a>
  */
 public abstract class AbstractChannelBuffer implements ChannelBuffer {
 
+    private static final AtomicIntegerFieldUpdater<AbstractChannelBuffer> SLICES_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(AbstractChannelBuffer.class, "slices");
+
     private int readerIndex;
 
     private int writerIndex;
@@ -34,6 +38,9 @@ public abstract class AbstractChannelBuffer implements ChannelBuffer {
 
     private int markedWriterIndex;
 
+    // 尚未释放的切片数，不为0时已写入的数据不能原地移动
+    private volatile int slices;
+
     public int readerIndex() {
         return readerIndex;
     }
@@ -101,10 +108,17 @@ public abstract class AbstractChannelBuffer implements ChannelBuffer {
     }
 
     public void discardReadBytes() {
-        if (readerIndex == 0) {
+        if (readerIndex == 0 || isSliced()) {
             return;
         }
         setBytes(0, this, readerIndex, writerIndex - readerIndex);
+        readBytesDiscarded();
+    }
+
+    /**
+     * 未读的数据已移到开头后调整读写位置。
+     */
+    void readBytesDiscarded() {
         writerIndex -= readerIndex;
         markedReaderIndex = Math.max(markedReaderIndex - readerIndex, 0);
         markedWriterIndex = Math.max(markedWriterIndex - readerIndex, 0);
@@ -264,6 +278,25 @@ public abstract class AbstractChannelBuffer implements ChannelBuffer {
         return copy(readerIndex, readableBytes());
     }
 
+    public ChannelBuffer slice(int index, int length) {
+        if (index < 0 || length < 0 || index + length > capacity()) {
+            throw new IndexOutOfBoundsException();
+        }
+        return new SlicedChannelBuffer(this, index, length);
+    }
+
+    boolean isSliced() {
+        return slices > 0;
+    }
+
+    void sliced() {
+        SLICES_UPDATER.incrementAndGet(this);
+    }
+
+    void sliceReleased() {
+        SLICES_UPDATER.decrementAndGet(this);
+    }
+
     public ByteBuffer toByteBuffer() {
         return toByteBuffer(readerIndex, readableBytes());
     }
@@ -13,7 +13,6 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-
 package com.alibaba.dubbo.remoting.buffer;
 
 import java.io.IOException;
@@ -27,10 +26,19 @@ import java.nio.ByteOrder;
  */
 public class ByteBufferBackedChannelBuffer extends AbstractChannelBuffer {
 
-    private final ByteBuffer buffer;
+    // 堆外buffer与流之间一次经过堆上数组的最大字节数
+    private static final int        COPY_CHUNK_SIZE = 8192;
+
+    private static final ByteBuffer DEALLOCATED     = ByteBuffer.allocateDirect(0);
+
+    private ByteBuffer buffer;
 
     private final int capacity;
 
+    // 批量写入复用的buffer视图，只由写入方使用；读取可能来自多个线程(如各业务线程解码同一个入站buffer的slice)，
+    // 每次另取视图
+    private ByteBuffer tmpNioBuffer;
+
     public ByteBufferBackedChannelBuffer(ByteBuffer buffer) {
         if (buffer == null) {
             throw new NullPointerException("buffer");
@@ -60,19 +68,61 @@ public class ByteBufferBackedChannelBuffer extends AbstractChannelBuffer {
         return capacity;
     }
 
-    @Override
-    public ChannelBuffer copy(int index, int length) {
-        ByteBuffer src;
+    /**
+     * 底层的内存已释放，之后的访问抛出IndexOutOfBoundsException，而不是访问已释放的内存。
+     */
+    void deallocated() {
+        buffer = DEALLOCATED;
+        tmpNioBuffer = null;
+    }
+
+    /**
+     * @return the reusable view of the region for writing, valid until the next bulk write of this buffer.
+     */
+    private ByteBuffer internalNioBuffer(int index, int length) {
+        ByteBuffer tmp = tmpNioBuffer;
+        if (tmp == null) {
+            tmpNioBuffer = tmp = buffer.duplicate();
+        }
+        return region(tmp, index, length);
+    }
+
+    /**
+     * @return a new view of the region for reading, safe to use concurrently with other reads.
+     */
+    private ByteBuffer readNioBuffer(int index, int length) {
+        return region(buffer.duplicate(), index, length);
+    }
+
+    private static ByteBuffer region(ByteBuffer data, int index, int length) {
         try {
-            src = (ByteBuffer) buffer.duplicate().position(index).limit(index + length);
+            data.clear();
+            data.position(index).limit(index + length);
         } catch (IllegalArgumentException e) {
-            throw new IndexOutOfBoundsException();
+            throw new IndexOutOfBoundsException("index: " + index + ", length: " + length);
         }
+        return data;
+    }
 
-        ByteBuffer dst = buffer.isDirect()
-            ? ByteBuffer.allocateDirect(length)
-            : ByteBuffer.allocate(length);
-        dst.put(src);
+    /**
+     * 两个ByteBuffer之间直接复制，堆外的buffer之间不经过堆上数组。
+     */
+    private static void copy(ByteBufferBackedChannelBuffer src, int srcIndex,
+                             ByteBufferBackedChannelBuffer dst, int dstIndex, int length) {
+        dst.internalNioBuffer(dstIndex, length).put(src.readNioBuffer(srcIndex, length));
+    }
+
+    @Override
+    public ChannelBuffer copy(int index, int length) {
+        if (buffer.isDirect()) {
+            ChannelBuffer copy = ChannelBuffers.directBuffer(length);
+            copy.setBytes(0, this, index, length);
+            copy.writerIndex(length);
+            return copy;
+        }
+
+        ByteBuffer dst = ByteBuffer.allocate(length);
+        dst.put(readNioBuffer(index, length));
         dst.clear();
         return new ByteBufferBackedChannelBuffer(dst);
     }
@@ -84,35 +134,19 @@ public class ByteBufferBackedChannelBuffer extends AbstractChannelBuffer {
 
     @Override
     public void getBytes(int index, byte[] dst, int dstIndex, int length) {
-        ByteBuffer data = buffer.duplicate();
-        try {
-            data.limit(index + length).position(index);
-        } catch (IllegalArgumentException e) {
-            throw new IndexOutOfBoundsException();
-        }
-        data.get(dst, dstIndex, length);
+        readNioBuffer(index, length).get(dst, dstIndex, length);
     }
 
     @Override
     public void getBytes(int index, ByteBuffer dst) {
-        ByteBuffer data = buffer.duplicate();
         int bytesToCopy = Math.min(capacity() - index, dst.remaining());
-        try {
-            data.limit(index + bytesToCopy).position(index);
-        } catch (IllegalArgumentException e) {
-            throw new IndexOutOfBoundsException();
-        }
-        dst.put(data);
+        dst.put(readNioBuffer(index, bytesToCopy));
     }
 
     @Override
     public void getBytes(int index, ChannelBuffer dst, int dstIndex, int length) {
         if (dst instanceof ByteBufferBackedChannelBuffer) {
-            ByteBufferBackedChannelBuffer bbdst = (ByteBufferBackedChannelBuffer) dst;
-            ByteBuffer data = bbdst.buffer.duplicate();
-
-            data.limit(dstIndex + length).position(dstIndex);
-            getBytes(index, data);
+            copy(this, index, (ByteBufferBackedChannelBuffer) dst, dstIndex, length);
         } else if (buffer.hasArray()) {
             dst.setBytes(dstIndex, buffer.array(), index + buffer.arrayOffset(), length);
         } else {
@@ -131,10 +165,16 @@ public class ByteBufferBackedChannelBuffer extends AbstractChannelBuffer {
                 buffer.array(),
                 index + buffer.arrayOffset(),
                 length);
+        } else if (out instanceof ChannelBufferOutputStream) {
+            ((ChannelBufferOutputStream) out).buffer().writeBytes(this, index, length);
         } else {
-            byte[] tmp = new byte[length];
-            ((ByteBuffer) buffer.duplicate().position(index)).get(tmp);
-            out.write(tmp);
+            byte[] tmp = new byte[Math.min(length, COPY_CHUNK_SIZE)];
+            ByteBuffer data = readNioBuffer(index, length);
+            while (data.hasRemaining()) {
+                int n = Math.min(tmp.length, data.remaining());
+                data.get(tmp, 0, n);
+                out.write(tmp, 0, n);
+            }
         }
     }
 
@@ -150,26 +190,18 @@ public class ByteBufferBackedChannelBuffer extends AbstractChannelBuffer {
 
     @Override
     public void setBytes(int index, byte[] src, int srcIndex, int length) {
-        ByteBuffer data = buffer.duplicate();
-        data.limit(index + length).position(index);
-        data.put(src, srcIndex, length);
+        internalNioBuffer(index, length).put(src, srcIndex, length);
     }
 
     @Override
     public void setBytes(int index, ByteBuffer src) {
-        ByteBuffer data = buffer.duplicate();
-        data.limit(index + src.remaining()).position(index);
-        data.put(src);
+        internalNioBuffer(index, src.remaining()).put(src);
     }
 
     @Override
     public void setBytes(int index, ChannelBuffer src, int srcIndex, int length) {
         if (src instanceof ByteBufferBackedChannelBuffer) {
-            ByteBufferBackedChannelBuffer bbsrc = (ByteBufferBackedChannelBuffer) src;
-            ByteBuffer data = bbsrc.buffer.duplicate();
-
-            data.limit(srcIndex + length).position(srcIndex);
-            setBytes(index, data);
+            copy((ByteBufferBackedChannelBuffer) src, srcIndex, this, index, length);
         } else if (buffer.hasArray()) {
             src.getBytes(srcIndex, buffer.array(), index + buffer.arrayOffset(), length);
         } else {
@@ -182,8 +214,7 @@ public class ByteBufferBackedChannelBuffer extends AbstractChannelBuffer {
         if (index == 0 && length == capacity()) {
             return buffer.duplicate();
         } else {
-            return ((ByteBuffer) buffer.duplicate().position(
-                index).limit(index + length)).slice();
+            return region(buffer.duplicate(), index, length).slice();
         }
     }
 
@@ -207,10 +238,10 @@ public class ByteBufferBackedChannelBuffer extends AbstractChannelBuffer {
                 length -= localReadBytes;
             } while (length > 0);
         } else {
-            byte[] tmp = new byte[length];
-            int i = 0;
+            byte[] tmp = new byte[Math.min(length, COPY_CHUNK_SIZE)];
+            ByteBuffer data = internalNioBuffer(index, length);
             do {
-                int localReadBytes = in.read(tmp, i, tmp.length - i);
+                int localReadBytes = in.read(tmp, 0, Math.min(tmp.length, data.remaining()));
                 if (localReadBytes < 0) {
                     if (readBytes == 0) {
                         return -1;
@@ -218,10 +249,9 @@ public class ByteBufferBackedChannelBuffer extends AbstractChannelBuffer {
                         break;
                     }
                 }
+                data.put(tmp, 0, localReadBytes);
                 readBytes += localReadBytes;
-                i += readBytes;
-            } while (i < tmp.length);
-            ((ByteBuffer) buffer.duplicate().position(index)).put(tmp);
+            } while (data.hasRemaining());
         }
 
         return readBytes;
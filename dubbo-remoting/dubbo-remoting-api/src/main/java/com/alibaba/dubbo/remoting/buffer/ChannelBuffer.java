@@ -235,6 +235,46 @@ public interface ChannelBuffer extends Comparable<ChannelBuffer> {
      */
     ChannelBuffer copy(int index, int length);
 
+    /**
+     * Returns a slice of this buffer's sub-region.  Modifying the content of
+     * the returned buffer or this buffer affects each other's content while
+     * they maintain separate indexes and marks.  This method does not modify
+     * {@code readerIndex} or {@code writerIndex} of this buffer.
+     * <p/>
+     * The region is kept in place by {@link #discardReadBytes()} of this
+     * buffer until the slice is {@linkplain #release() released}.  A buffer
+     * which can not share its content returns a copy instead.
+     */
+    default ChannelBuffer slice(int index, int length) {
+        return copy(index, length);
+    }
+
+    /**
+     * Increases the reference count of this buffer by {@code 1}.  Only a
+     * buffer allocated from a pool, such as {@link PooledChannelBufferFactory},
+     * is reference counted; other buffers ignore it.
+     *
+     * @return this buffer
+     * @throws IllegalStateException if the buffer has been released already
+     */
+    default ChannelBuffer retain() {
+        return this;
+    }
+
+    /**
+     * Releases this buffer.  A released slice no longer keeps the region of
+     * the buffer it was created from, and must not be accessed any more.  A
+     * reference counted buffer decreases its reference count by {@code 1}
+     * and returns its memory to the pool when the count reaches {@code 0}.
+     *
+     * @return {@code true} if this call released the buffer, {@code false} if
+     *         the buffer is not a slice nor reference counted, is still
+     *         referenced, or has been released already
+     */
+    default boolean release() {
+        return false;
+    }
+
     /**
      * Discards the bytes between the 0th index and {@code readerIndex}. It
      * moves the bytes between {@code readerIndex} and {@code writerIndex} to
@@ -804,6 +844,25 @@ public interface ChannelBuffer extends Comparable<ChannelBuffer> {
      */
     ByteBuffer toByteBuffer(int index, int length);
 
+    /**
+     * Converts this buffer's readable bytes into an array of NIO buffers for
+     * gathering writes.  This method is identical to {@code
+     * buf.toByteBuffers(buf.readerIndex(), buf.readableBytes())}.
+     */
+    default ByteBuffer[] toByteBuffers() {
+        return toByteBuffers(readerIndex(), readableBytes());
+    }
+
+    /**
+     * Converts this buffer's sub-region into an array of NIO buffers, in
+     * order, without copying the content where possible.  A buffer made of
+     * several components, such as {@link CompositeChannelBuffer}, returns one
+     * NIO buffer per component.
+     */
+    default ByteBuffer[] toByteBuffers(int index, int length) {
+        return new ByteBuffer[]{toByteBuffer(index, length)};
+    }
+
     /**
      * Returns {@code true} if and only if {@code (this.capacity -
      * this.writerIndex)} is greater than {@code 0}.
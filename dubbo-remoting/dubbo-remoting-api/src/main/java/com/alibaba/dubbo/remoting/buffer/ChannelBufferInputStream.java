@@ -16,17 +16,27 @@
 
 package com.alibaba.dubbo.remoting.buffer;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 
 /**
+ * 底层有数组时，{@link FastDataInput}的方法直接在数组上读取，多字节的值经数组的ByteBuffer视图一次读出。
+ *
  * @author <a href="mailto:gang.lvg@alibaba-inc.com">kimi</a>
  */
-public class ChannelBufferInputStream extends InputStream {
+public class ChannelBufferInputStream extends InputStream implements FastDataInput {
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
 
     private final ChannelBuffer buffer;
     private final int startIndex;
     private final int endIndex;
+
+    // 底层数组的视图，数组变化时重建
+    private ByteBuffer view;
     
     public ChannelBufferInputStream(ChannelBuffer buffer) {
         this(buffer, buffer.readableBytes());
@@ -53,6 +63,16 @@ public class ChannelBufferInputStream extends InputStream {
         return buffer.readerIndex() - startIndex;
     }
 
+    /**
+     * 不复制数据，以切片的形式读出剩余的全部字节，切片用完后需要release。
+     */
+    public ChannelBuffer readSlice() {
+        int length = endIndex - buffer.readerIndex();
+        ChannelBuffer slice = buffer.slice(buffer.readerIndex(), length);
+        buffer.skipBytes(length);
+        return slice;
+    }
+
     @Override
     public int available() throws IOException {
         return endIndex - buffer.readerIndex();
@@ -108,4 +128,130 @@ public class ChannelBufferInputStream extends InputStream {
         return nBytes;
     }
 
+    public byte readByte() throws IOException {
+        int index = require(1);
+        byte v = buffer.getByte(index);
+        buffer.readerIndex(index + 1);
+        return v;
+    }
+
+    public short readShort() throws IOException {
+        int index = require(2);
+        short v;
+        if (buffer.hasArray()) {
+            v = view().getShort(buffer.arrayOffset() + index);
+        } else {
+            v = (short) ((buffer.getByte(index) & 0xff) << 8 | buffer.getByte(index + 1) & 0xff);
+        }
+        buffer.readerIndex(index + 2);
+        return v;
+    }
+
+    public int readInt() throws IOException {
+        int index = require(4);
+        int v = buffer.hasArray() ? view().getInt(buffer.arrayOffset() + index) : getInt(index);
+        buffer.readerIndex(index + 4);
+        return v;
+    }
+
+    public long readLong() throws IOException {
+        int index = require(8);
+        long v;
+        if (buffer.hasArray()) {
+            v = view().getLong(buffer.arrayOffset() + index);
+        } else {
+            v = (long) getInt(index) << 32 | getInt(index + 4) & 0xffffffffL;
+        }
+        buffer.readerIndex(index + 8);
+        return v;
+    }
+
+    public float readFloat() throws IOException {
+        return Float.intBitsToFloat(readInt());
+    }
+
+    public double readDouble() throws IOException {
+        return Double.longBitsToDouble(readLong());
+    }
+
+    public int readVarInt() throws IOException {
+        long v = readVarLong(5);
+        if (v >>> 32 != 0) {
+            throw new IOException("Malformed varint.");
+        }
+        return (int) v;
+    }
+
+    public long readVarLong() throws IOException {
+        return readVarLong(10);
+    }
+
+    private long readVarLong(int maxBytes) throws IOException {
+        int index = buffer.readerIndex();
+        int end = Math.min(endIndex, index + maxBytes);
+        byte[] array = buffer.hasArray() ? buffer.array() : null;
+        int offset = array != null ? buffer.arrayOffset() : 0;
+        long v = 0;
+        for (int shift = 0; index < end; shift += 7) {
+            int b = array != null ? array[offset + index] : buffer.getByte(index);
+            index++;
+            v |= (long) (b & 0x7f) << shift;
+            if (b >= 0) {
+                buffer.readerIndex(index);
+                return v;
+            }
+        }
+        if (end == endIndex && end - buffer.readerIndex() < maxBytes) {
+            throw new EOFException();
+        }
+        throw new IOException("Malformed varint.");
+    }
+
+    public String readUTF8(int length) throws IOException {
+        if (length < 0) {
+            throw new IOException("Invalid length " + length);
+        }
+        int index = require(length);
+        String v;
+        if (buffer.hasArray()) {
+            v = new String(buffer.array(), buffer.arrayOffset() + index, length, UTF_8);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.getBytes(index, bytes);
+            v = new String(bytes, UTF_8);
+        }
+        buffer.readerIndex(index + length);
+        return v;
+    }
+
+    public String readString() throws IOException {
+        return readUTF8(readVarInt());
+    }
+
+    /**
+     * @return the reader index, where at least n more bytes can be read.
+     */
+    private int require(int n) throws EOFException {
+        int index = buffer.readerIndex();
+        if (endIndex - index < n) {
+            throw new EOFException("Only " + (endIndex - index) + " bytes left, " + n + " bytes are expected.");
+        }
+        return index;
+    }
+
+    private int getInt(int index) {
+        return (buffer.getByte(index) & 0xff) << 24 | (buffer.getByte(index + 1) & 0xff) << 16
+               | (buffer.getByte(index + 2) & 0xff) << 8 | buffer.getByte(index + 3) & 0xff;
+    }
+
+    private ByteBuffer view() {
+        byte[] array = buffer.array();
+        ByteBuffer v = view;
+        if (v == null || v.array() != array) {
+            v = ByteBuffer.wrap(array);
+            view = v;
+        }
+        return v;
+    }
+
 }
@@ -0,0 +1,95 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.remoting.buffer;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.alibaba.dubbo.common.logger.Logger;
+import com.alibaba.dubbo.common.logger.LoggerFactory;
+
+/**
+ * 按采样记录池化buffer的分配位置，buffer没有释放就被GC回收时打印分配位置。
+ * 已回收的buffer在之后的分配时检查。
+ */
+final class ChannelBufferLeakDetector {
+
+    private static final Logger  logger      = LoggerFactory.getLogger(ChannelBufferLeakDetector.class);
+
+    private final int            sampling;
+
+    private final AtomicLong     allocations = new AtomicLong();
+
+    private final AtomicInteger  leakCount   = new AtomicInteger();
+
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+
+    // 已记录、尚未释放的buffer
+    private final Set<Leak>      tracked     = Collections.newSetFromMap(new ConcurrentHashMap<Leak, Boolean>());
+
+    ChannelBufferLeakDetector(int sampling) {
+        this.sampling = sampling;
+    }
+
+    void track(PooledChannelBuffer buffer) {
+        reportLeaks();
+        if (allocations.getAndIncrement() % sampling == 0) {
+            Leak leak = new Leak(buffer);
+            tracked.add(leak);
+            buffer.leak = leak;
+        }
+    }
+
+    int getLeakCount() {
+        reportLeaks();
+        return leakCount.get();
+    }
+
+    private void reportLeaks() {
+        Leak leak;
+        while ((leak = (Leak) queue.poll()) != null) {
+            if (tracked.remove(leak)) {
+                leakCount.incrementAndGet();
+                logger.error("LEAK: ChannelBuffer.release() was not called before the buffer of " + leak.capacity
+                             + " bytes is garbage-collected.", leak.allocation);
+            }
+        }
+    }
+
+    final class Leak extends PhantomReference<Object> {
+
+        private final int       capacity;
+
+        private final Throwable allocation;
+
+        Leak(PooledChannelBuffer buffer) {
+            super(buffer, queue);
+            capacity = buffer.capacity();
+            allocation = new Throwable("The buffer was allocated at:");
+        }
+
+        void close() {
+            tracked.remove(this);
+            clear();
+        }
+    }
+
+}
@@ -18,15 +18,21 @@ package com.alibaba.dubbo.remoting.buffer;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 /**
+ * 底层有数组时，{@link FastDataOutput}的方法直接写入数组，多字节的值经数组的ByteBuffer视图一次写入。
+ *
  * @author <a href="mailto:gang.lvg@alibaba-inc.com">kimi</a>
  */
-public class ChannelBufferOutputStream extends OutputStream {
+public class ChannelBufferOutputStream extends OutputStream implements FastDataOutput {
 
     private final ChannelBuffer buffer;
     private final int           startIndex;
 
+    // 底层数组的视图，buffer扩容换了数组时重建
+    private ByteBuffer          view;
+
     public ChannelBufferOutputStream(ChannelBuffer buffer) {
         if (buffer == null) {
             throw new NullPointerException("buffer");
@@ -61,4 +67,172 @@ public class ChannelBufferOutputStream extends OutputStream {
     public ChannelBuffer buffer() {
         return buffer;
     }
+
+    public void writeByte(int v) throws IOException {
+        buffer.writeByte(v);
+    }
+
+    public void writeShort(int v) throws IOException {
+        int index = reserve(2);
+        if (buffer.hasArray()) {
+            view().putShort(buffer.arrayOffset() + index, (short) v);
+        } else {
+            buffer.setByte(index, v >>> 8);
+            buffer.setByte(index + 1, v);
+        }
+        buffer.writerIndex(index + 2);
+    }
+
+    public void writeInt(int v) throws IOException {
+        int index = reserve(4);
+        if (buffer.hasArray()) {
+            view().putInt(buffer.arrayOffset() + index, v);
+        } else {
+            setInt(index, v);
+        }
+        buffer.writerIndex(index + 4);
+    }
+
+    public void writeLong(long v) throws IOException {
+        int index = reserve(8);
+        if (buffer.hasArray()) {
+            view().putLong(buffer.arrayOffset() + index, v);
+        } else {
+            setInt(index, (int) (v >>> 32));
+            setInt(index + 4, (int) v);
+        }
+        buffer.writerIndex(index + 8);
+    }
+
+    public void writeFloat(float v) throws IOException {
+        writeInt(Float.floatToRawIntBits(v));
+    }
+
+    public void writeDouble(double v) throws IOException {
+        writeLong(Double.doubleToRawLongBits(v));
+    }
+
+    public void writeVarInt(int v) throws IOException {
+        writeVarLong(v & 0xffffffffL);
+    }
+
+    public void writeVarLong(long v) throws IOException {
+        int index = reserve((63 - Long.numberOfLeadingZeros(v | 1)) / 7 + 1);
+        byte[] array = buffer.hasArray() ? buffer.array() : null;
+        int offset = array != null ? buffer.arrayOffset() : 0;
+        while (true) {
+            int b = (int) v & 0x7f;
+            v >>>= 7;
+            if (v != 0) {
+                b |= 0x80;
+            }
+            if (array != null) {
+                array[offset + index] = (byte) b;
+            } else {
+                buffer.setByte(index, b);
+            }
+            index++;
+            if (v == 0) {
+                break;
+            }
+        }
+        buffer.writerIndex(index);
+    }
+
+    public int writeUTF8(String s) throws IOException {
+        int length = utf8Length(s);
+        writeUTF8(s, length);
+        return length;
+    }
+
+    public void writeString(String s) throws IOException {
+        int length = utf8Length(s);
+        writeVarInt(length);
+        writeUTF8(s, length);
+    }
+
+    private void writeUTF8(String s, int length) {
+        int index = reserve(length);
+        if (!buffer.hasArray()) {
+            buffer.writeBytes(s.getBytes(ChannelBufferInputStream.UTF_8));
+            return;
+        }
+        byte[] array = buffer.array();
+        int i = buffer.arrayOffset() + index;
+        int n = s.length();
+        for (int k = 0; k < n; k++) {
+            char c = s.charAt(k);
+            if (c < 0x80) {
+                array[i++] = (byte) c;
+            } else if (c < 0x800) {
+                array[i++] = (byte) (0xc0 | c >> 6);
+                array[i++] = (byte) (0x80 | c & 0x3f);
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && k + 1 < n && Character.isLowSurrogate(s.charAt(k + 1))) {
+                    int cp = Character.toCodePoint(c, s.charAt(++k));
+                    array[i++] = (byte) (0xf0 | cp >> 18);
+                    array[i++] = (byte) (0x80 | cp >> 12 & 0x3f);
+                    array[i++] = (byte) (0x80 | cp >> 6 & 0x3f);
+                    array[i++] = (byte) (0x80 | cp & 0x3f);
+                } else {
+                    array[i++] = '?';
+                }
+            } else {
+                array[i++] = (byte) (0xe0 | c >> 12);
+                array[i++] = (byte) (0x80 | c >> 6 & 0x3f);
+                array[i++] = (byte) (0x80 | c & 0x3f);
+            }
+        }
+        buffer.writerIndex(index + length);
+    }
+
+    /**
+     * @return the number of bytes of the string in UTF-8, the same as String.getBytes does.
+     */
+    static int utf8Length(String s) {
+        int n = s.length();
+        int length = n;
+        for (int k = 0; k < n; k++) {
+            char c = s.charAt(k);
+            if (c >= 0x80) {
+                if (c < 0x800) {
+                    length += 1;
+                } else if (Character.isSurrogate(c)) {
+                    if (Character.isHighSurrogate(c) && k + 1 < n && Character.isLowSurrogate(s.charAt(k + 1))) {
+                        // 两个字符写为4字节
+                        length += 2;
+                        k++;
+                    }
+                } else {
+                    length += 2;
+                }
+            }
+        }
+        return length;
+    }
+
+    /**
+     * @return the writer index, where at least n more bytes can be written.
+     */
+    private int reserve(int n) {
+        buffer.ensureWritableBytes(n);
+        return buffer.writerIndex();
+    }
+
+    private void setInt(int index, int v) {
+        buffer.setByte(index, v >>> 24);
+        buffer.setByte(index + 1, v >>> 16);
+        buffer.setByte(index + 2, v >>> 8);
+        buffer.setByte(index + 3, v);
+    }
+
+    private ByteBuffer view() {
+        byte[] array = buffer.array();
+        ByteBuffer v = view;
+        if (v == null || v.array() != array) {
+            v = ByteBuffer.wrap(array);
+            view = v;
+        }
+        return v;
+    }
 }
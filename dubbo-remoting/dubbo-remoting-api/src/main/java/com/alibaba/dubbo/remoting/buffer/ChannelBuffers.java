@@ -50,13 +50,23 @@ public final class ChannelBuffers {
         return new HeapChannelBuffer(capacity);
     }
 
+    /**
+     * 共享数组中的这一段，不复制。
+     */
     public static ChannelBuffer wrappedBuffer(byte[] array, int offset, int length) {
         if (array == null) {
             throw new NullPointerException("array == null");
         }
-        byte[] dest = new byte[length];
-        System.arraycopy(array, offset, dest, 0, length);
-        return wrappedBuffer(dest);
+        if (offset == 0 && length == array.length) {
+            return wrappedBuffer(array);
+        }
+        if (offset < 0 || length < 0 || offset + length > array.length) {
+            throw new IndexOutOfBoundsException("offset: " + offset + ", length: " + length);
+        }
+        if (length == 0) {
+            return EMPTY_BUFFER;
+        }
+        return new HeapChannelBuffer(array).slice(offset, length);
     }
 
     public static ChannelBuffer wrappedBuffer(byte[] array) {
@@ -80,13 +90,36 @@ public final class ChannelBuffers {
         }
     }
 
+    /**
+     * 把各buffer的可读部分依次组合为一个buffer，不复制，见{@link CompositeChannelBuffer}。
+     */
+    public static ChannelBuffer wrappedBuffer(ChannelBuffer... buffers) {
+        int readable = 0;
+        ChannelBuffer last = null;
+        for (ChannelBuffer buffer : buffers) {
+            if (buffer.readable()) {
+                readable++;
+                last = buffer;
+            }
+        }
+        if (readable == 0) {
+            return EMPTY_BUFFER;
+        }
+        if (readable == 1) {
+            return last.slice(last.readerIndex(), last.readableBytes());
+        }
+        return new CompositeChannelBuffer(buffers);
+    }
+
+    /**
+     * 分配堆外buffer，{@linkplain ChannelBuffer#release() 释放}时立即释放堆外内存，见{@link DirectChannelBuffer}。
+     */
     public static ChannelBuffer directBuffer(int capacity) {
         if (capacity == 0) {
             return EMPTY_BUFFER;
         }
 
-        ChannelBuffer buffer = new ByteBufferBackedChannelBuffer(
-            ByteBuffer.allocateDirect(capacity));
+        ChannelBuffer buffer = new DirectChannelBuffer(capacity);
         buffer.clear();
         return buffer;
     }
@@ -0,0 +1,360 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.remoting.buffer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * 由多个buffer依次组成的buffer，不复制各组成部分的数据。
+ * <p>
+ * 如消息头、序列化数据和原样发送的大块数据各在一个buffer中时，可以组合起来作为一个buffer访问，
+ * 写出时用{@link #toByteBuffers(int, int)}取得各部分，聚集写出。组合的是各buffer创建时的可读部分的切片，
+ * 原buffer仍由调用方释放；本buffer释放时释放这些切片。容量固定，跨越多个部分的toByteBuffer需要复制，
+ * 需要连续的数据时可调用{@link #consolidate()}合并为一个部分。
+ */
+public class CompositeChannelBuffer extends AbstractChannelBuffer {
+
+    private static final AtomicIntegerFieldUpdater<CompositeChannelBuffer> REF_CNT_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(CompositeChannelBuffer.class, "refCnt");
+
+    private ChannelBuffer[] components;
+
+    // indices[i]是第i个部分在本buffer中的起始位置，indices[components.length]是容量
+    private int[]           indices;
+
+    // 上次访问的部分，顺序读写时不必每次查找
+    private int             lastComponent;
+
+    private volatile int    refCnt = 1;
+
+    public CompositeChannelBuffer(ChannelBuffer... buffers) {
+        List<ChannelBuffer> list = new ArrayList<ChannelBuffer>(buffers.length);
+        for (ChannelBuffer buffer : buffers) {
+            if (buffer.readable()) {
+                list.add(buffer.slice(buffer.readerIndex(), buffer.readableBytes()));
+            }
+        }
+        setComponents(list.toArray(new ChannelBuffer[list.size()]));
+        writerIndex(capacity());
+    }
+
+    private void setComponents(ChannelBuffer[] components) {
+        int[] indices = new int[components.length + 1];
+        for (int i = 0; i < components.length; i++) {
+            indices[i + 1] = indices[i] + components[i].capacity();
+        }
+        this.components = components;
+        this.indices = indices;
+        lastComponent = 0;
+    }
+
+    /**
+     * @return the number of components.
+     */
+    public int numComponents() {
+        return components.length;
+    }
+
+    /**
+     * 把各部分合并为一个新的buffer，之后各部分的切片释放。
+     */
+    public void consolidate() {
+        if (components.length <= 1) {
+            return;
+        }
+        int capacity = capacity();
+        ChannelBuffer merged = factory().getBuffer(capacity);
+        getBytes(0, merged, 0, capacity);
+        ChannelBuffer[] old = components;
+        setComponents(new ChannelBuffer[]{merged.slice(0, capacity)});
+        merged.release();
+        for (ChannelBuffer component : old) {
+            component.release();
+        }
+    }
+
+    public int capacity() {
+        return indices[components.length];
+    }
+
+    public ChannelBufferFactory factory() {
+        return components.length == 0 ? HeapChannelBufferFactory.getInstance() : components[0].factory();
+    }
+
+    public boolean isDirect() {
+        return components.length == 1 && components[0].isDirect();
+    }
+
+    public boolean hasArray() {
+        return components.length == 1 && components[0].hasArray();
+    }
+
+    public byte[] array() {
+        if (components.length != 1) {
+            throw new UnsupportedOperationException();
+        }
+        return components[0].array();
+    }
+
+    public int arrayOffset() {
+        if (components.length != 1) {
+            throw new UnsupportedOperationException();
+        }
+        return components[0].arrayOffset();
+    }
+
+    public byte getByte(int index) {
+        int i = componentId(index);
+        return components[i].getByte(index - indices[i]);
+    }
+
+    public void getBytes(int index, byte[] dst, int dstIndex, int length) {
+        checkIndex(index, length);
+        for (int i = componentId(index); length > 0; i++) {
+            int adjustment = index - indices[i];
+            int n = Math.min(length, components[i].capacity() - adjustment);
+            components[i].getBytes(adjustment, dst, dstIndex, n);
+            index += n;
+            dstIndex += n;
+            length -= n;
+        }
+    }
+
+    public void getBytes(int index, ByteBuffer dst) {
+        int length = dst.remaining();
+        checkIndex(index, length);
+        int limit = dst.limit();
+        try {
+            for (int i = componentId(index); length > 0; i++) {
+                int adjustment = index - indices[i];
+                int n = Math.min(length, components[i].capacity() - adjustment);
+                dst.limit(dst.position() + n);
+                components[i].getBytes(adjustment, dst);
+                index += n;
+                length -= n;
+            }
+        } finally {
+            dst.limit(limit);
+        }
+    }
+
+    public void getBytes(int index, ChannelBuffer dst, int dstIndex, int length) {
+        checkIndex(index, length);
+        for (int i = componentId(index); length > 0; i++) {
+            int adjustment = index - indices[i];
+            int n = Math.min(length, components[i].capacity() - adjustment);
+            components[i].getBytes(adjustment, dst, dstIndex, n);
+            index += n;
+            dstIndex += n;
+            length -= n;
+        }
+    }
+
+    public void getBytes(int index, OutputStream out, int length) throws IOException {
+        checkIndex(index, length);
+        for (int i = componentId(index); length > 0; i++) {
+            int adjustment = index - indices[i];
+            int n = Math.min(length, components[i].capacity() - adjustment);
+            components[i].getBytes(adjustment, out, n);
+            index += n;
+            length -= n;
+        }
+    }
+
+    public void setByte(int index, int value) {
+        int i = componentId(index);
+        components[i].setByte(index - indices[i], value);
+    }
+
+    public void setBytes(int index, byte[] src, int srcIndex, int length) {
+        checkIndex(index, length);
+        for (int i = componentId(index); length > 0; i++) {
+            int adjustment = index - indices[i];
+            int n = Math.min(length, components[i].capacity() - adjustment);
+            components[i].setBytes(adjustment, src, srcIndex, n);
+            index += n;
+            srcIndex += n;
+            length -= n;
+        }
+    }
+
+    public void setBytes(int index, ByteBuffer src) {
+        int length = src.remaining();
+        checkIndex(index, length);
+        int limit = src.limit();
+        try {
+            for (int i = componentId(index); length > 0; i++) {
+                int adjustment = index - indices[i];
+                int n = Math.min(length, components[i].capacity() - adjustment);
+                src.limit(src.position() + n);
+                components[i].setBytes(adjustment, src);
+                index += n;
+                length -= n;
+            }
+        } finally {
+            src.limit(limit);
+        }
+    }
+
+    public void setBytes(int index, ChannelBuffer src, int srcIndex, int length) {
+        checkIndex(index, length);
+        for (int i = componentId(index); length > 0; i++) {
+            int adjustment = index - indices[i];
+            int n = Math.min(length, components[i].capacity() - adjustment);
+            components[i].setBytes(adjustment, src, srcIndex, n);
+            index += n;
+            srcIndex += n;
+            length -= n;
+        }
+    }
+
+    public int setBytes(int index, InputStream in, int length) throws IOException {
+        checkIndex(index, length);
+        if (length == 0) {
+            // 与单个buffer一样读取一次，流已结束时返回-1
+            return in.read(new byte[0], 0, 0);
+        }
+        int readBytes = 0;
+        for (int i = componentId(index); length > 0; i++) {
+            int adjustment = index - indices[i];
+            int n = Math.min(length, components[i].capacity() - adjustment);
+            int localReadBytes = components[i].setBytes(adjustment, in, n);
+            if (localReadBytes < 0) {
+                return readBytes == 0 ? -1 : readBytes;
+            }
+            readBytes += localReadBytes;
+            if (localReadBytes < n) {
+                break;
+            }
+            index += n;
+            length -= n;
+        }
+        return readBytes;
+    }
+
+    public ChannelBuffer copy(int index, int length) {
+        checkIndex(index, length);
+        ChannelBuffer copy = factory().getBuffer(length);
+        getBytes(index, copy, 0, length);
+        copy.writerIndex(length);
+        return copy;
+    }
+
+    public ByteBuffer toByteBuffer(int index, int length) {
+        checkIndex(index, length);
+        if (length == 0) {
+            return ByteBuffer.allocate(0);
+        }
+        int i = componentId(index);
+        if (index + length <= indices[i + 1]) {
+            return components[i].toByteBuffer(index - indices[i], length);
+        }
+        ByteBuffer merged = ByteBuffer.allocate(length);
+        getBytes(index, merged);
+        merged.flip();
+        return merged;
+    }
+
+    @Override
+    public ByteBuffer[] toByteBuffers(int index, int length) {
+        checkIndex(index, length);
+        if (length == 0) {
+            return new ByteBuffer[0];
+        }
+        List<ByteBuffer> buffers = new ArrayList<ByteBuffer>(components.length);
+        for (int i = componentId(index); length > 0; i++) {
+            int adjustment = index - indices[i];
+            int n = Math.min(length, components[i].capacity() - adjustment);
+            buffers.add(components[i].toByteBuffer(adjustment, n));
+            index += n;
+            length -= n;
+        }
+        return buffers.toArray(new ByteBuffer[buffers.size()]);
+    }
+
+    @Override
+    public ChannelBuffer retain() {
+        for (;;) {
+            int refCnt = this.refCnt;
+            if (refCnt == 0) {
+                throw new IllegalStateException("The buffer is released already.");
+            }
+            if (REF_CNT_UPDATER.compareAndSet(this, refCnt, refCnt + 1)) {
+                return this;
+            }
+        }
+    }
+
+    @Override
+    public boolean release() {
+        for (;;) {
+            int refCnt = this.refCnt;
+            if (refCnt == 0) {
+                return false;
+            }
+            if (REF_CNT_UPDATER.compareAndSet(this, refCnt, refCnt - 1)) {
+                if (refCnt > 1) {
+                    return false;
+                }
+                for (ChannelBuffer component : components) {
+                    component.release();
+                }
+                return true;
+            }
+        }
+    }
+
+    private int componentId(int index) {
+        int last = lastComponent;
+        if (last < components.length && index >= indices[last] && index < indices[last + 1]) {
+            return last;
+        }
+        if (index == capacity()) {
+            // 长度为0的访问
+            return components.length;
+        }
+        if (index < 0 || index > capacity()) {
+            throw new IndexOutOfBoundsException("index: " + index + ", capacity: " + capacity());
+        }
+        int low = 0;
+        int high = components.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (index < indices[mid]) {
+                high = mid - 1;
+            } else if (index >= indices[mid + 1]) {
+                low = mid + 1;
+            } else {
+                lastComponent = mid;
+                return mid;
+            }
+        }
+        throw new IndexOutOfBoundsException("index: " + index);
+    }
+
+    private void checkIndex(int index, int length) {
+        if (index < 0 || length < 0 || index + length > capacity()) {
+            throw new IndexOutOfBoundsException("index: " + index + ", length: " + length + ", capacity: " + capacity());
+        }
+    }
+
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.remoting.buffer;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import com.alibaba.dubbo.common.logger.Logger;
+import com.alibaba.dubbo.common.logger.LoggerFactory;
+
+/**
+ * 由{@link ChannelBuffers#directBuffer(int)}分配的堆外buffer，引用计数为0时立即释放堆外内存，不等GC回收；
+ * 之后再访问抛出IndexOutOfBoundsException。切片引用本buffer的内存，切片释放前内存不会释放。
+ * <p>
+ * {@link #toByteBuffer()}等返回的视图同样在释放后不能再使用。运行环境不支持主动释放时，内存仍由GC回收。
+ */
+final class DirectChannelBuffer extends ByteBufferBackedChannelBuffer {
+
+    private static final Logger logger = LoggerFactory.getLogger(DirectChannelBuffer.class);
+
+    private static final AtomicIntegerFieldUpdater<DirectChannelBuffer> REF_CNT_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(DirectChannelBuffer.class, "refCnt");
+
+    // JDK 9及以上：Unsafe.invokeCleaner(ByteBuffer)
+    private static final Object UNSAFE;
+
+    private static final Method INVOKE_CLEANER;
+
+    // JDK 8：DirectByteBuffer.cleaner().clean()
+    private static final Method CLEANER;
+
+    private static final Method CLEAN;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        Method cleaner = null;
+        Method clean = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafe = theUnsafe.get(null);
+        } catch (Throwable e) {
+            invokeCleaner = null;
+            try {
+                ByteBuffer probe = ByteBuffer.allocateDirect(1);
+                cleaner = probe.getClass().getMethod("cleaner");
+                cleaner.setAccessible(true);
+                Object c = cleaner.invoke(probe);
+                clean = c.getClass().getMethod("clean");
+                clean.setAccessible(true);
+                clean.invoke(c);
+            } catch (Throwable t) {
+                cleaner = null;
+                clean = null;
+                logger.info("Direct buffers can not be freed explicitly, they are freed by GC. Cause: " + t);
+            }
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+        CLEANER = cleaner;
+        CLEAN = clean;
+    }
+
+    // allocateDirect返回的buffer，释放时只能用它，不能用切片
+    private final ByteBuffer memory;
+
+    private volatile int     refCnt = 1;
+
+    DirectChannelBuffer(int capacity) {
+        this(ByteBuffer.allocateDirect(capacity));
+    }
+
+    private DirectChannelBuffer(ByteBuffer memory) {
+        super(memory);
+        this.memory = memory;
+    }
+
+    @Override
+    public ChannelBuffer retain() {
+        for (;;) {
+            int refCnt = this.refCnt;
+            if (refCnt == 0) {
+                throw new IllegalStateException("The buffer is released already.");
+            }
+            if (REF_CNT_UPDATER.compareAndSet(this, refCnt, refCnt + 1)) {
+                return this;
+            }
+        }
+    }
+
+    @Override
+    public boolean release() {
+        for (;;) {
+            int refCnt = this.refCnt;
+            if (refCnt == 0) {
+                return false;
+            }
+            if (REF_CNT_UPDATER.compareAndSet(this, refCnt, refCnt - 1)) {
+                if (refCnt > 1) {
+                    return false;
+                }
+                deallocated();
+                free(memory);
+                return true;
+            }
+        }
+    }
+
+    @Override
+    void sliced() {
+        retain();
+        super.sliced();
+    }
+
+    @Override
+    void sliceReleased() {
+        super.sliceReleased();
+        release();
+    }
+
+    /**
+     * @return whether direct buffers are freed on release, otherwise they are freed by GC.
+     */
+    static boolean canFree() {
+        return INVOKE_CLEANER != null || CLEAN != null;
+    }
+
+    private static void free(ByteBuffer memory) {
+        try {
+            if (INVOKE_CLEANER != null) {
+                INVOKE_CLEANER.invoke(UNSAFE, memory);
+            } else if (CLEAN != null) {
+                Object cleaner = CLEANER.invoke(memory);
+                if (cleaner != null) {
+                    CLEAN.invoke(cleaner);
+                }
+            }
+        } catch (Throwable e) {
+            logger.warn("Failed to free a direct buffer of " + memory.capacity() + " bytes, it is freed by GC.", e);
+        }
+    }
+
+}
@@ -21,16 +21,25 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 /**
  * @author <a href="mailto:gang.lvg@alibaba-inc.com">kimi</a>
  */
 public class DynamicChannelBuffer extends AbstractChannelBuffer {
 
+    private static final AtomicIntegerFieldUpdater<DynamicChannelBuffer> REF_CNT_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(DynamicChannelBuffer.class, "refCnt");
+
+    // 已读数据仍被切片引用时，整理后新底层buffer的最小容量
+    private static final int MIN_DISCARD_CAPACITY = 256;
+
     private final ChannelBufferFactory factory;
 
     private ChannelBuffer buffer;
 
+    private volatile int refCnt = 1;
+
     public DynamicChannelBuffer(int estimatedLength) {
         this(estimatedLength, HeapChannelBufferFactory.getInstance());
     }
@@ -46,6 +55,11 @@ public class DynamicChannelBuffer extends AbstractChannelBuffer {
         buffer = factory.getBuffer(estimatedLength);
     }
 
+    private DynamicChannelBuffer(ChannelBufferFactory factory, ChannelBuffer buffer) {
+        this.factory = factory;
+        this.buffer = buffer;
+    }
+
     @Override
     public void ensureWritableBytes(int minWritableBytes) {
         if (minWritableBytes <= writableBytes()) {
@@ -65,6 +79,8 @@ public class DynamicChannelBuffer extends AbstractChannelBuffer {
 
         ChannelBuffer newBuffer = factory().getBuffer(newCapacity);
         newBuffer.writeBytes(buffer, 0, writerIndex());
+        // 池化的底层buffer归还，仍被切片引用时等切片释放后归还
+        buffer.release();
         buffer = newBuffer;
     }
 
@@ -75,17 +91,82 @@ public class DynamicChannelBuffer extends AbstractChannelBuffer {
 
     @Override
     public ChannelBuffer copy(int index, int length) {
-        DynamicChannelBuffer copiedBuffer = new DynamicChannelBuffer(Math.max(length, 64), factory());
-        copiedBuffer.buffer = buffer.copy(index, length);
+        DynamicChannelBuffer copiedBuffer = new DynamicChannelBuffer(factory(), buffer.copy(index, length));
         copiedBuffer.setIndex(0, length);
         return copiedBuffer;
     }
 
+    @Override
+    public ChannelBuffer slice(int index, int length) {
+        if (index < 0 || length < 0 || index + length > capacity()) {
+            throw new IndexOutOfBoundsException();
+        }
+        // 切片引用当前的底层buffer，扩容或移动数据时换新的底层buffer，切片不受影响
+        return buffer.slice(index, length);
+    }
+
+    @Override
+    public void discardReadBytes() {
+        if (readerIndex() > 0 && buffer instanceof AbstractChannelBuffer
+                && ((AbstractChannelBuffer) buffer).isSliced()) {
+            // 已读的数据仍被切片引用，把未读的数据搬到新的底层buffer开头，新buffer只按未读的数据分配，
+            // 不按已扩大的容量分配，之后需要时再扩容
+            int readableBytes = readableBytes();
+            ChannelBuffer newBuffer = factory().getBuffer(Math.max(readableBytes, MIN_DISCARD_CAPACITY));
+            newBuffer.setBytes(0, buffer, readerIndex(), readableBytes);
+            buffer.release();
+            buffer = newBuffer;
+            readBytesDiscarded();
+            return;
+        }
+        super.discardReadBytes();
+    }
+
     @Override
     public ChannelBufferFactory factory() {
         return factory;
     }
 
+    /**
+     * 底层buffer只由本buffer持有，引用计数记在本buffer上，计数为0时释放当前的底层buffer。
+     * 工厂既不是池化的也不是堆外的时忽略。
+     */
+    @Override
+    public ChannelBuffer retain() {
+        if (isReferenceCounted()) {
+            for (;;) {
+                int refCnt = this.refCnt;
+                if (refCnt == 0) {
+                    throw new IllegalStateException("The buffer is released already.");
+                }
+                if (REF_CNT_UPDATER.compareAndSet(this, refCnt, refCnt + 1)) {
+                    break;
+                }
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public boolean release() {
+        if (!isReferenceCounted()) {
+            return false;
+        }
+        for (;;) {
+            int refCnt = this.refCnt;
+            if (refCnt == 0) {
+                return false;
+            }
+            if (REF_CNT_UPDATER.compareAndSet(this, refCnt, refCnt - 1)) {
+                return refCnt == 1 && buffer.release();
+            }
+        }
+    }
+
+    private boolean isReferenceCounted() {
+        return factory instanceof PooledChannelBufferFactory || factory instanceof DirectChannelBufferFactory;
+    }
+
     @Override
     public byte getByte(int index) {
         return buffer.getByte(index);
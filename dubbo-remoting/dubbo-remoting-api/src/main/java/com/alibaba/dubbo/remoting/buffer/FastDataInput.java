@@ -0,0 +1,58 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.remoting.buffer;
+
+import java.io.IOException;
+
+/**
+ * 可以整块读取基本类型的输入流。
+ * <p>
+ * 逐字节read()时每个字节都经过多层buffer的调用和边界检查。解码时传给序列化实现的输入流实现了该接口时，
+ * 序列化实现可以检查后直接调用这些方法，如ChannelBufferInputStream在底层有数组时直接在数组上读取。
+ * 多字节的整数和浮点数为big-endian，数据不足时抛出{@link java.io.EOFException}。
+ */
+public interface FastDataInput {
+
+    byte readByte() throws IOException;
+
+    short readShort() throws IOException;
+
+    int readInt() throws IOException;
+
+    long readLong() throws IOException;
+
+    float readFloat() throws IOException;
+
+    double readDouble() throws IOException;
+
+    /**
+     * 读取无符号的变长整数：每字节7位，低位在前，字节的最高位表示之后还有字节。
+     */
+    int readVarInt() throws IOException;
+
+    long readVarLong() throws IOException;
+
+    /**
+     * 读取length字节，按UTF-8解码为字符串。
+     */
+    String readUTF8(int length) throws IOException;
+
+    /**
+     * 读取{@link FastDataOutput#writeString(String)}写出的字符串：UTF-8的字节数为变长整数，之后是这些字节。
+     */
+    String readString() throws IOException;
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.remoting.buffer;
+
+import java.io.IOException;
+
+/**
+ * 可以整块写出基本类型的输出流，与{@link FastDataInput}对应。
+ * <p>
+ * 编码时传给序列化实现的输出流实现了该接口时，序列化实现可以检查后直接调用这些方法，不必逐字节write(int)。
+ */
+public interface FastDataOutput {
+
+    void writeByte(int v) throws IOException;
+
+    void writeShort(int v) throws IOException;
+
+    void writeInt(int v) throws IOException;
+
+    void writeLong(long v) throws IOException;
+
+    void writeFloat(float v) throws IOException;
+
+    void writeDouble(double v) throws IOException;
+
+    /**
+     * 写出无符号的变长整数，见{@link FastDataInput#readVarInt()}，负数占5字节。
+     */
+    void writeVarInt(int v) throws IOException;
+
+    void writeVarLong(long v) throws IOException;
+
+    /**
+     * 按UTF-8写出字符串，不写长度，不成对的代理字符写为'?'。
+     *
+     * @return the number of bytes written.
+     */
+    int writeUTF8(String s) throws IOException;
+
+    /**
+     * 写出UTF-8的字节数(变长整数)和这些字节。
+     */
+    void writeString(String s) throws IOException;
+
+}
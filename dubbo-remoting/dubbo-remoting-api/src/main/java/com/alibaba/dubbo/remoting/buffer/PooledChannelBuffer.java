@@ -0,0 +1,94 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.remoting.buffer;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * 从{@link PooledChannelBufferFactory}分配的buffer，引用计数为0时数组归还给池，之后不能再访问。
+ * 切片引用本buffer的数组，切片释放前数组不会归还。
+ */
+final class PooledChannelBuffer extends HeapChannelBuffer {
+
+    private static final AtomicIntegerFieldUpdater<PooledChannelBuffer> REF_CNT_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(PooledChannelBuffer.class, "refCnt");
+
+    private final PooledChannelBufferFactory      factory;
+
+    private final int                             sizeClass;
+
+    private volatile int                          refCnt = 1;
+
+    // 被采样做泄漏检测时不为null
+    ChannelBufferLeakDetector.Leak                leak;
+
+    PooledChannelBuffer(PooledChannelBufferFactory factory, byte[] array, int sizeClass) {
+        super(array, 0, 0);
+        this.factory = factory;
+        this.sizeClass = sizeClass;
+    }
+
+    @Override
+    public ChannelBufferFactory factory() {
+        return factory;
+    }
+
+    @Override
+    public ChannelBuffer retain() {
+        for (;;) {
+            int refCnt = this.refCnt;
+            if (refCnt == 0) {
+                throw new IllegalStateException("The buffer is released already.");
+            }
+            if (REF_CNT_UPDATER.compareAndSet(this, refCnt, refCnt + 1)) {
+                return this;
+            }
+        }
+    }
+
+    @Override
+    public boolean release() {
+        for (;;) {
+            int refCnt = this.refCnt;
+            if (refCnt == 0) {
+                return false;
+            }
+            if (REF_CNT_UPDATER.compareAndSet(this, refCnt, refCnt - 1)) {
+                if (refCnt > 1) {
+                    return false;
+                }
+                if (leak != null) {
+                    leak.close();
+                }
+                factory.free(array, sizeClass);
+                return true;
+            }
+        }
+    }
+
+    @Override
+    void sliced() {
+        retain();
+        super.sliced();
+    }
+
+    @Override
+    void sliceReleased() {
+        super.sliceReleased();
+        release();
+    }
+
+}
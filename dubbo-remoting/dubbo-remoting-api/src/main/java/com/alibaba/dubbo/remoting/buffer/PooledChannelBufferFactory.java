@@ -0,0 +1,254 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.remoting.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.alibaba.dubbo.common.utils.ConfigUtils;
+
+/**
+ * 池化的buffer工厂。
+ * <p>
+ * 其它工厂每次都新建数组，DynamicChannelBuffer扩容时再新建更大的数组并复制，编码一个大的消息要分配多个大数组。
+ * 这里的buffer按2的幂的大小级别(256B到1M)分配数组，容量向上取整到所在的级别，更大的buffer不池化。
+ * buffer带引用计数，见{@link ChannelBuffer#retain()}、{@link ChannelBuffer#release()}，计数为0时数组归还：
+ * 先放入释放线程的缓存，缓存满时放入该线程所属的arena，再满时丢弃；分配时依次从本线程的缓存、arena中取，都没有时才新建。
+ * 线程按轮转分到各arena，减少线程之间的竞争。数组复用前不清零。
+ * <p>
+ * 没有释放的buffer只是不能归还，由GC回收。系统属性dubbo.buffer.leak.detection.sampling大于0时，
+ * 每隔该数量的分配记录一次分配的位置，记录的buffer没有释放就被回收时打印错误日志，测试时可设为1。
+ */
+public class PooledChannelBufferFactory implements ChannelBufferFactory {
+
+    public static final String  LEAK_DETECTION_SAMPLING_KEY = "dubbo.buffer.leak.detection.sampling";
+
+    private static final int    MIN_SIZE_SHIFT     = 8;
+
+    private static final int    MAX_SIZE_SHIFT     = 20;
+
+    private static final int    SIZE_CLASSES       = MAX_SIZE_SHIFT - MIN_SIZE_SHIFT + 1;
+
+    // 每个线程缓存的每个级别的数组总大小、个数上限
+    private static final int    THREAD_CACHE_BYTES = 256 * 1024;
+
+    private static final int    THREAD_CACHE_SIZE  = 64;
+
+    // 每个arena保留的每个级别的数组总大小上限
+    private static final int    ARENA_BYTES        = 1024 * 1024;
+
+    private static final PooledChannelBufferFactory INSTANCE = new PooledChannelBufferFactory(
+            Runtime.getRuntime().availableProcessors(),
+            Integer.parseInt(ConfigUtils.getProperty(LEAK_DETECTION_SAMPLING_KEY, "0")));
+
+    public static ChannelBufferFactory getInstance() {
+        return INSTANCE;
+    }
+
+    private final Arena[]                   arenas;
+
+    private final AtomicInteger             nextArena       = new AtomicInteger();
+
+    private final ThreadLocal<ThreadCache>  caches          = new ThreadLocal<ThreadCache>() {
+        @Override
+        protected ThreadCache initialValue() {
+            return new ThreadCache(arenas[(nextArena.getAndIncrement() & Integer.MAX_VALUE) % arenas.length]);
+        }
+    };
+
+    private final ChannelBufferLeakDetector leakDetector;
+
+    private final AtomicLong                allocatedArrays = new AtomicLong();
+
+    /**
+     * @param arenas                the number of arenas shared by threads
+     * @param leakDetectionSampling track one of every such number of allocations for leaks, or 0 not to track
+     */
+    public PooledChannelBufferFactory(int arenas, int leakDetectionSampling) {
+        if (arenas <= 0) {
+            throw new IllegalArgumentException("arenas: " + arenas);
+        }
+        this.arenas = new Arena[arenas];
+        for (int i = 0; i < arenas; i++) {
+            this.arenas[i] = new Arena();
+        }
+        leakDetector = leakDetectionSampling > 0 ? new ChannelBufferLeakDetector(leakDetectionSampling) : null;
+    }
+
+    public ChannelBuffer getBuffer(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity: " + capacity);
+        }
+        if (capacity == 0) {
+            return ChannelBuffers.EMPTY_BUFFER;
+        }
+        if (capacity > 1 << MAX_SIZE_SHIFT) {
+            return new HeapChannelBuffer(capacity);
+        }
+        int sizeClass = sizeClass(capacity);
+        ThreadCache cache = caches.get();
+        byte[] array = cache.take(sizeClass);
+        if (array == null) {
+            array = cache.arena.take(sizeClass);
+            if (array == null) {
+                allocatedArrays.incrementAndGet();
+                array = new byte[1 << (sizeClass + MIN_SIZE_SHIFT)];
+            }
+        }
+        PooledChannelBuffer buffer = new PooledChannelBuffer(this, array, sizeClass);
+        if (leakDetector != null) {
+            leakDetector.track(buffer);
+        }
+        return buffer;
+    }
+
+    public ChannelBuffer getBuffer(byte[] array, int offset, int length) {
+        if (array == null) {
+            throw new NullPointerException("array");
+        }
+        if (offset < 0 || length < 0 || offset + length > array.length) {
+            throw new IndexOutOfBoundsException("offset: " + offset + ", length: " + length);
+        }
+        ChannelBuffer buf = getBuffer(length);
+        buf.writeBytes(array, offset, length);
+        return buf;
+    }
+
+    public ChannelBuffer getBuffer(ByteBuffer nioBuffer) {
+        ChannelBuffer buf = getBuffer(nioBuffer.remaining());
+        int pos = nioBuffer.position();
+        buf.writeBytes(nioBuffer);
+        nioBuffer.position(pos);
+        return buf;
+    }
+
+    /**
+     * 引用计数为0的buffer归还数组。
+     */
+    void free(byte[] array, int sizeClass) {
+        ThreadCache cache = caches.get();
+        if (!cache.offer(sizeClass, array)) {
+            cache.arena.offer(sizeClass, array);
+        }
+    }
+
+    /**
+     * @return the number of arrays created by the pool so far.
+     */
+    long getAllocatedArrays() {
+        return allocatedArrays.get();
+    }
+
+    /**
+     * @return the number of leaks detected so far.
+     */
+    int getLeakCount() {
+        return leakDetector == null ? 0 : leakDetector.getLeakCount();
+    }
+
+    static int sizeClass(int capacity) {
+        return Math.max(0, 32 - Integer.numberOfLeadingZeros(capacity - 1) - MIN_SIZE_SHIFT);
+    }
+
+    private static int capacity(int sizeClass, int bytes, int limit) {
+        return Math.max(1, Math.min(limit, bytes >> (sizeClass + MIN_SIZE_SHIFT)));
+    }
+
+    /**
+     * 一组线程共享的数组栈，每个级别一个。
+     */
+    private static final class Arena {
+
+        private final byte[][][] stacks = new byte[SIZE_CLASSES][][];
+
+        private final int[]      sizes  = new int[SIZE_CLASSES];
+
+        Arena() {
+            for (int i = 0; i < SIZE_CLASSES; i++) {
+                stacks[i] = new byte[capacity(i, ARENA_BYTES, Integer.MAX_VALUE)][];
+            }
+        }
+
+        byte[] take(int sizeClass) {
+            byte[][] stack = stacks[sizeClass];
+            synchronized (stack) {
+                int size = sizes[sizeClass];
+                if (size == 0) {
+                    return null;
+                }
+                byte[] array = stack[--size];
+                stack[size] = null;
+                sizes[sizeClass] = size;
+                return array;
+            }
+        }
+
+        void offer(int sizeClass, byte[] array) {
+            byte[][] stack = stacks[sizeClass];
+            synchronized (stack) {
+                int size = sizes[sizeClass];
+                if (size < stack.length) {
+                    stack[size] = array;
+                    sizes[sizeClass] = size + 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * 线程私有的数组栈，只由所属线程访问。
+     */
+    private static final class ThreadCache {
+
+        final Arena              arena;
+
+        private final byte[][][] stacks = new byte[SIZE_CLASSES][][];
+
+        private final int[]      sizes  = new int[SIZE_CLASSES];
+
+        ThreadCache(Arena arena) {
+            this.arena = arena;
+            for (int i = 0; i < SIZE_CLASSES; i++) {
+                stacks[i] = new byte[capacity(i, THREAD_CACHE_BYTES, THREAD_CACHE_SIZE)][];
+            }
+        }
+
+        byte[] take(int sizeClass) {
+            int size = sizes[sizeClass];
+            if (size == 0) {
+                return null;
+            }
+            byte[][] stack = stacks[sizeClass];
+            byte[] array = stack[--size];
+            stack[size] = null;
+            sizes[sizeClass] = size;
+            return array;
+        }
+
+        boolean offer(int sizeClass, byte[] array) {
+            int size = sizes[sizeClass];
+            byte[][] stack = stacks[sizeClass];
+            if (size == stack.length) {
+                return false;
+            }
+            stack[size] = array;
+            sizes[sizeClass] = size + 1;
+            return true;
+        }
+    }
+
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 1999-2012 Alibaba Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.remoting.buffer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A view of a sub-region of another buffer, sharing its content.
+ * <p/>
+ * The parent keeps the region in place until the slice is released, see
+ * {@link ChannelBuffer#slice(int, int)}.
+ */
+public class SlicedChannelBuffer extends AbstractChannelBuffer {
+
+    private final AbstractChannelBuffer buffer;
+
+    private final int                   adjustment;
+
+    private final int                   length;
+
+    private final AtomicBoolean         released = new AtomicBoolean();
+
+    SlicedChannelBuffer(AbstractChannelBuffer buffer, int index, int length) {
+        this.buffer = buffer;
+        this.adjustment = index;
+        this.length = length;
+        buffer.sliced();
+        writerIndex(length);
+    }
+
+    public boolean release() {
+        if (released.compareAndSet(false, true)) {
+            buffer.sliceReleased();
+            return true;
+        }
+        return false;
+    }
+
+    public boolean isReleased() {
+        return released.get();
+    }
+
+    /**
+     * 切片与原buffer及其它切片共享数据，数据不能原地移动。
+     */
+    @Override
+    boolean isSliced() {
+        return true;
+    }
+
+    public int capacity() {
+        return length;
+    }
+
+    public ChannelBufferFactory factory() {
+        return buffer.factory();
+    }
+
+    public boolean isDirect() {
+        return buffer.isDirect();
+    }
+
+    public boolean hasArray() {
+        return buffer.hasArray();
+    }
+
+    public byte[] array() {
+        return buffer.array();
+    }
+
+    public int arrayOffset() {
+        return buffer.arrayOffset() + adjustment;
+    }
+
+    public byte getByte(int index) {
+        checkIndex(index, 1);
+        return buffer.getByte(index + adjustment);
+    }
+
+    public void getBytes(int index, byte[] dst, int dstIndex, int length) {
+        checkIndex(index, length);
+        buffer.getBytes(index + adjustment, dst, dstIndex, length);
+    }
+
+    public void getBytes(int index, ByteBuffer dst) {
+        checkIndex(index, dst.remaining());
+        buffer.getBytes(index + adjustment, dst);
+    }
+
+    public void getBytes(int index, ChannelBuffer dst, int dstIndex, int length) {
+        checkIndex(index, length);
+        buffer.getBytes(index + adjustment, dst, dstIndex, length);
+    }
+
+    public void getBytes(int index, OutputStream dst, int length) throws IOException {
+        checkIndex(index, length);
+        buffer.getBytes(index + adjustment, dst, length);
+    }
+
+    public void setByte(int index, int value) {
+        checkIndex(index, 1);
+        buffer.setByte(index + adjustment, value);
+    }
+
+    public void setBytes(int index, byte[] src, int srcIndex, int length) {
+        checkIndex(index, length);
+        buffer.setBytes(index + adjustment, src, srcIndex, length);
+    }
+
+    public void setBytes(int index, ByteBuffer src) {
+        checkIndex(index, src.remaining());
+        buffer.setBytes(index + adjustment, src);
+    }
+
+    public void setBytes(int index, ChannelBuffer src, int srcIndex, int length) {
+        checkIndex(index, length);
+        buffer.setBytes(index + adjustment, src, srcIndex, length);
+    }
+
+    public int setBytes(int index, InputStream src, int length) throws IOException {
+        checkIndex(index, length);
+        return buffer.setBytes(index + adjustment, src, length);
+    }
+
+    public ChannelBuffer copy(int index, int length) {
+        checkIndex(index, length);
+        return buffer.copy(index + adjustment, length);
+    }
+
+    @Override
+    public ChannelBuffer slice(int index, int length) {
+        checkIndex(index, length);
+        return buffer.slice(index + adjustment, length);
+    }
+
+    public ByteBuffer toByteBuffer(int index, int length) {
+        checkIndex(index, length);
+        return buffer.toByteBuffer(index + adjustment, length);
+    }
+
+    private void checkIndex(int index, int length) {
+        if (index < 0 || length < 0 || index + length > this.length) {
+            throw new IndexOutOfBoundsException();
+        }
+    }
+
+}
@@ -44,6 +44,18 @@ public interface ExchangeChannel extends Channel {
      */
     ResponseFuture request(Object request, int timeout) throws RemotingException;
 
+    /**
+     * send request and wait for the response in the current thread.
+     * 
+     * @param request
+     * @param timeout
+     * @return response result
+     * @throws RemotingException
+     */
+    default Object invoke(Object request, int timeout) throws RemotingException {
+        return request(request, timeout).get();
+    }
+
     /**
      * get message handler.
      * 
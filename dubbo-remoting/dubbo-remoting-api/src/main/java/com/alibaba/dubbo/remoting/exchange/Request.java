@@ -30,6 +30,8 @@ public class Request {
     public static final String HEARTBEAT_EVENT = null;
     
     public static final String READONLY_EVENT = "R";
+
+    public static final String CANCEL_EVENT = "C";
     
     private static final AtomicLong INVOKE_ID = new AtomicLong(0);
 
@@ -45,6 +47,12 @@ public class Request {
 
     private Object  mData;
 
+    private long    mDeadline = 0;
+
+    private byte    mCompressor = 0;
+
+    private boolean mSidecar = false;
+
     public Request() {
         mId = newId();
     }
@@ -98,10 +106,47 @@ public class Request {
         mData = msg;
     }
 
+    /**
+     * 服务端本地时间的截止时刻，由调用方传来的剩余超时时间推算，0表示没有截止时刻。
+     */
+    public long getDeadline() {
+        return mDeadline;
+    }
+
+    public void setDeadline(long deadline) {
+        mDeadline = deadline;
+    }
+
+    /**
+     * 调用方接受的响应压缩方式编号，0表示不接受压缩的响应。
+     */
+    public byte getCompressor() {
+        return mCompressor;
+    }
+
+    public void setCompressor(byte compressor) {
+        mCompressor = compressor;
+    }
+
+    /**
+     * 请求体是否在序列化数据之后带有二进制数据，这样的调用方同样接受这样的响应。
+     */
+    public boolean isSidecar() {
+        return mSidecar;
+    }
+
+    public void setSidecar(boolean sidecar) {
+        mSidecar = sidecar;
+    }
+
     public boolean isHeartbeat() {
         return mEvent && HEARTBEAT_EVENT == mData;
     }
 
+    public boolean isCancel() {
+        return mEvent && CANCEL_EVENT.equals(mData);
+    }
+
     public void setHeartbeat(boolean isHeartbeat) {
         if (isHeartbeat) {
             setEvent(HEARTBEAT_EVENT);
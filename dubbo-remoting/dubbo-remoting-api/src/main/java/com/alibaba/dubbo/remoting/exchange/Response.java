@@ -42,6 +42,11 @@ public class Response {
      */
     public static final byte SERVER_TIMEOUT    = 31;
 
+    /**
+     * channel closed before the response arrived.
+     */
+    public static final byte CHANNEL_INACTIVE  = 35;
+
     /**
      * request format error.
      */
@@ -84,6 +89,10 @@ public class Response {
 
     private Object           mResult;
 
+    private byte             mCompressor       = 0;
+
+    private boolean          mSidecar          = false;
+
     public Response(){
     }
 
@@ -148,6 +157,28 @@ public class Response {
         mResult = msg;
     }
 
+    /**
+     * 响应体可以使用的压缩方式编号，由请求带来，0表示不压缩。
+     */
+    public byte getCompressor() {
+        return mCompressor;
+    }
+
+    public void setCompressor(byte compressor) {
+        mCompressor = compressor;
+    }
+
+    /**
+     * 响应体是否可以在序列化数据之后带有二进制数据，由请求带来。
+     */
+    public boolean isSidecar() {
+        return mSidecar;
+    }
+
+    public void setSidecar(boolean sidecar) {
+        mSidecar = sidecar;
+    }
+
     public String getErrorMessage() {
         return mErrorMsg;
     }
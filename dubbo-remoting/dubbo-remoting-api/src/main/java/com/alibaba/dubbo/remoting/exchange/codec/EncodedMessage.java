@@ -0,0 +1,144 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.remoting.exchange.codec;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.alibaba.dubbo.common.Constants;
+import com.alibaba.dubbo.common.URL;
+import com.alibaba.dubbo.common.extension.ExtensionLoader;
+import com.alibaba.dubbo.remoting.Channel;
+import com.alibaba.dubbo.remoting.Codec;
+import com.alibaba.dubbo.remoting.Codec2;
+import com.alibaba.dubbo.remoting.RemotingException;
+import com.alibaba.dubbo.remoting.buffer.ChannelBuffer;
+import com.alibaba.dubbo.remoting.buffer.ChannelBuffers;
+import com.alibaba.dubbo.remoting.buffer.PooledChannelBufferFactory;
+import com.alibaba.dubbo.remoting.exchange.Response;
+import com.alibaba.dubbo.remoting.transport.Hessian2TypeCache;
+import com.alibaba.dubbo.remoting.transport.codec.CodecAdapter;
+
+/**
+ * 已在业务线程上编码好的消息。
+ * <p>
+ * 默认响应交给传输层后由编码器序列化，序列化可能落在IO线程上，大的返回值会占住IO线程，同一IO线程上的其它连接都要等待。
+ * 提供方配置encode.in.io=false时，业务线程用连接的编码器把响应完整编码到buffer中，IO线程只复制这些字节写出。
+ * 编码失败时与之前一样改为发送BAD_RESPONSE。
+ * <p>
+ * 编码用的buffer从{@link PooledChannelBufferFactory}分配，写出后或发送失败时释放。
+ * 连接使用hessian2类型缓存时，编码顺序必须与写出顺序一致，仍由传输层编码。
+ */
+public final class EncodedMessage {
+
+    public static final String             ENCODE_IN_IO_KEY     = "encode.in.io";
+
+    private static final String            KEY                  = EncodedMessage.class.getName();
+
+    private static final int               INITIAL_CAPACITY     = 1024;
+
+    private final Object                   message;
+
+    // 写出或释放后为null
+    private final AtomicReference<ChannelBuffer> buffer;
+
+    private EncodedMessage(Object message, ChannelBuffer buffer) {
+        this.message = message;
+        this.buffer = new AtomicReference<ChannelBuffer>(buffer);
+    }
+
+    /**
+     * 按连接的配置在当前线程上编码响应。
+     *
+     * @return the message to send, the response itself if it is encoded by the transport,
+     *         or null if it failed to encode and a BAD_RESPONSE is sent instead.
+     */
+    public static Object encode(Channel channel, Response response) throws RemotingException {
+        URL url = channel.getUrl();
+        if (url == null || url.getParameter(ENCODE_IN_IO_KEY, true) || response.isEvent()
+                || Hessian2TypeCache.isEncoding(channel)) {
+            return response;
+        }
+        ChannelBuffer buffer = ChannelBuffers.dynamicBuffer(INITIAL_CAPACITY, PooledChannelBufferFactory.getInstance());
+        boolean encoded = false;
+        try {
+            getCodec(channel).encode(channel, buffer, response);
+            encoded = buffer.readable();
+        } catch (IOException e) {
+            throw new RemotingException(channel, e);
+        } finally {
+            if (!encoded) {
+                buffer.release();
+            }
+        }
+        return encoded ? new EncodedMessage(response, buffer) : null;
+    }
+
+    /**
+     * @return the original message.
+     */
+    public Object getMessage() {
+        return message;
+    }
+
+    /**
+     * 没有写出时释放buffer，如发送失败。
+     */
+    public void release() {
+        ChannelBuffer encoded = buffer.getAndSet(null);
+        if (encoded != null) {
+            encoded.release();
+        }
+    }
+
+    /**
+     * 复制编码好的字节后释放buffer，只能调用一次。
+     */
+    void writeTo(ChannelBuffer out) {
+        ChannelBuffer encoded = buffer.getAndSet(null);
+        if (encoded == null) {
+            throw new IllegalStateException("The message " + message + " is already written.");
+        }
+        try {
+            out.writeBytes(encoded);
+        } finally {
+            encoded.release();
+        }
+    }
+
+    /**
+     * 与传输层相同的编码器，见AbstractEndpoint#getChannelCodec。
+     */
+    private static Codec2 getCodec(Channel channel) {
+        Codec2 codec = (Codec2) channel.getAttribute(KEY);
+        if (codec == null) {
+            String codecName = channel.getUrl().getParameter(Constants.CODEC_KEY, "telnet");
+            if (ExtensionLoader.getExtensionLoader(Codec2.class).hasExtension(codecName)) {
+                codec = ExtensionLoader.getExtensionLoader(Codec2.class).getExtension(codecName);
+            } else {
+                codec = new CodecAdapter(ExtensionLoader.getExtensionLoader(Codec.class).getExtension(codecName));
+            }
+            channel.setAttribute(KEY, codec);
+        }
+        return codec;
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(message);
+    }
+
+}
@@ -17,7 +17,9 @@ package com.alibaba.dubbo.remoting.exchange.codec;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 
+import com.alibaba.dubbo.common.Constants;
 import com.alibaba.dubbo.common.io.Bytes;
 import com.alibaba.dubbo.common.io.StreamUtils;
 import com.alibaba.dubbo.common.logger.Logger;
@@ -28,16 +30,19 @@ import com.alibaba.dubbo.common.serialize.ObjectOutput;
 import com.alibaba.dubbo.common.serialize.Serialization;
 import com.alibaba.dubbo.common.utils.StringUtils;
 import com.alibaba.dubbo.remoting.Channel;
+import com.alibaba.dubbo.remoting.Compressor;
 import com.alibaba.dubbo.remoting.RemotingException;
 import com.alibaba.dubbo.remoting.buffer.ChannelBuffer;
 import com.alibaba.dubbo.remoting.buffer.ChannelBufferInputStream;
 import com.alibaba.dubbo.remoting.buffer.ChannelBufferOutputStream;
+import com.alibaba.dubbo.remoting.buffer.ChannelBuffers;
 import com.alibaba.dubbo.remoting.exchange.Request;
 import com.alibaba.dubbo.remoting.exchange.Response;
-import com.alibaba.dubbo.remoting.exchange.support.completable.CompletableDefaultFuture;
+import com.alibaba.dubbo.remoting.exchange.support.OutboundQueue;
 import com.alibaba.dubbo.remoting.exchange.support.completable.FutureAndChannelHolder;
 import com.alibaba.dubbo.remoting.telnet.codec.TelnetCodec;
 import com.alibaba.dubbo.remoting.transport.CodecSupport;
+import com.alibaba.dubbo.remoting.transport.Hessian2TypeCache;
 
 /**
  * ExchangeCodec.
@@ -68,6 +73,46 @@ public class ExchangeCodec extends TelnetCodec {
 
     protected static final int      SERIALIZATION_MASK = 0x1f;
 
+    // status flag, the body is compressed.
+    protected static final byte     FLAG_COMPRESSED    = (byte) 0x80;
+
+    // status flag, the body carries raw data after the serialized data, see SidecarObjectOutput.
+    // a request with it accepts such a response, a response only carries it with the status OK.
+    protected static final byte     FLAG_SIDECAR       = (byte) 0x40;
+
+    // the status of a request carries the compressor id accepted for the response.
+    protected static final int      COMPRESSOR_MASK    = 0x3f;
+
+    private static final byte       SIDECAR_OK         = (byte) (Response.OK | FLAG_SIDECAR);
+
+    /**
+     * 消息体的压缩方式，见{@link Compressor}，为空时不压缩。
+     * <p>
+     * 请求体按调用的服务和方法上的配置压缩，配置了压缩的请求同时在帧头中告知提供方可以按同样的方式压缩响应，
+     * 提供方按自身的compress.threshold决定是否压缩，不认识该压缩方式时不压缩。
+     * 压缩的请求只能发给同样支持压缩的提供方，因此应在提供方配置，经注册中心传给消费方。
+     */
+    public static final String      COMPRESSOR_KEY             = "compressor";
+
+    /**
+     * 消息体不小于该字节数时才压缩。
+     */
+    public static final String      COMPRESS_THRESHOLD_KEY     = "compress.threshold";
+
+    public static final int         DEFAULT_COMPRESS_THRESHOLD = 16 * 1024;
+
+    private static final int        COMPRESS_CHUNK             = 8 * 1024;
+
+    /**
+     * 不小于该字节数的byte[]或ByteBuffer参数、返回值在序列化数据之后原样发送，见{@link SidecarObjectOutput}，不大于0时不使用。
+     * <p>
+     * 消费方按调用的服务和方法上的配置使用，并在帧头中告知提供方可以同样发送响应，提供方按自身的配置决定。
+     * 这样的请求只能发给同样支持的提供方，因此应在提供方配置，经注册中心传给消费方。
+     */
+    public static final String      SIDECAR_THRESHOLD_KEY      = "sidecar.threshold";
+
+    public static final int         DEFAULT_SIDECAR_THRESHOLD  = 0;
+
     public Short getMagicCode() {
         return MAGIC;
     }
@@ -77,6 +122,10 @@ public class ExchangeCodec extends TelnetCodec {
             encodeRequest(channel, buffer, (Request) msg);
         } else if (msg instanceof Response) {
             encodeResponse(channel, buffer, (Response) msg);
+        } else if (msg instanceof OutboundQueue.Batch) {
+            encodeBatch(channel, buffer, (OutboundQueue.Batch) msg);
+        } else if (msg instanceof EncodedMessage) {
+            ((EncodedMessage) msg).writeTo(buffer);
         } else {
             super.encode(channel, buffer, msg);
         }
@@ -89,8 +138,60 @@ public class ExchangeCodec extends TelnetCodec {
 
     }
 
+    /**
+     * 合并写出的消息依次编码到同一个buffer，其中一条编码失败时只去掉该消息。
+     */
+    private void encodeBatch(Channel channel, ChannelBuffer buffer, OutboundQueue.Batch batch) throws IOException {
+        int start = buffer.writerIndex();
+        for (int i = 0; i < batch.size(); i++) {
+            int savedWriteIndex = buffer.writerIndex();
+            try {
+                encode(channel, buffer, batch.get(i));
+            } catch (Throwable t) {
+                buffer.writerIndex(savedWriteIndex);
+                batch.failed(channel, i, t);
+            }
+        }
+        batch.encoded(buffer.writerIndex() - start);
+    }
+
     public Object decode(Channel channel, ChannelBuffer buffer) throws IOException {
+        StreamingInputStream streaming = StreamingInputStream.get(channel);
+        if (streaming != null) {
+            // 前一条消息的消息体还在陆续到达
+            if (!buffer.readable()) {
+                return DecodeResult.NEED_MORE_INPUT;
+            }
+            streaming.feed(channel, buffer);
+            return null;
+        }
         int readable = buffer.readableBytes();
+        int index = buffer.readerIndex();
+        if (readable >= HEADER_LENGTH && buffer.getByte(index) == MAGIC_HIGH
+                && buffer.getByte(index + 1) == MAGIC_LOW) {
+            // 消息头完整时直接从buffer中读取各字段，不再复制出来
+            int len = getInt(buffer, index + 12);
+            checkPayload(channel, len);
+            if (readable < len + HEADER_LENGTH) {
+                byte flag = buffer.getByte(index + 2);
+                byte status = buffer.getByte(index + 3);
+                if (isDecodeStreaming(channel, flag, status, len)) {
+                    long id = getLong(buffer, index + 4);
+                    buffer.skipBytes(HEADER_LENGTH);
+                    return decodeBody(channel, StreamingInputStream.start(channel, buffer, len, getIdleTimeout(channel)),
+                                      flag, status, id);
+                }
+                return DecodeResult.NEED_MORE_INPUT;
+            }
+            buffer.skipBytes(HEADER_LENGTH);
+            ChannelBufferInputStream is = new ChannelBufferInputStream(buffer, len);
+            try {
+                return decodeFrame(channel, is, buffer.getByte(index + 2), buffer.getByte(index + 3),
+                        getLong(buffer, index + 4));
+            } finally {
+                skipUnusedStream(is);
+            }
+        }
         byte[] header = new byte[Math.min(readable, HEADER_LENGTH)];
         buffer.readBytes(header);
         return decode(channel, buffer, readable, header);
@@ -134,35 +235,197 @@ public class ExchangeCodec extends TelnetCodec {
         try {
             return decodeBody(channel, is, header);
         } finally {
+            skipUnusedStream(is);
+        }
+    }
+
+    /**
+     * 消息体未完全到达时是否以{@link StreamingInputStream}交给decodeBody，此时返回的消息必须在业务线程上解码，默认不使用。
+     * <p>
+     * 之后到达的数据由decode追加到该消息体，decode返回null。
+     *
+     * @param status the status byte of the header
+     * @param len    the length of the body
+     */
+    protected boolean isDecodeStreaming(Channel channel, byte flag, byte status, int len) {
+        return false;
+    }
+
+    // 与心跳超时相同，超过该时间仍没有新数据时连接也会被关闭
+    private static long getIdleTimeout(Channel channel) {
+        int heartbeat = channel.getUrl().getParameter(Constants.HEARTBEAT_KEY, Constants.DEFAULT_HEARTBEAT);
+        int timeout = channel.getUrl().getParameter(Constants.HEARTBEAT_TIMEOUT_KEY, heartbeat * 3);
+        return timeout > 0 ? timeout : Constants.DEFAULT_HEARTBEAT * 3;
+    }
+
+    private static void skipUnusedStream(ChannelBufferInputStream is) {
+        try {
             if (is.available() > 0) {
-                try {
-                    if (logger.isWarnEnabled()) {
-                        logger.warn("Skip input stream " + is.available());
-                    }
-                    StreamUtils.skipUnusedStream(is);
-                } catch (IOException e) {
-                    logger.warn(e.getMessage(), e);
+                if (logger.isWarnEnabled()) {
+                    logger.warn("Skip input stream " + is.available());
                 }
+                StreamUtils.skipUnusedStream(is);
             }
+        } catch (IOException e) {
+            logger.warn(e.getMessage(), e);
         }
     }
 
+    private static int getInt(ChannelBuffer buffer, int index) {
+        return (buffer.getByte(index) & 0xff) << 24 | (buffer.getByte(index + 1) & 0xff) << 16
+               | (buffer.getByte(index + 2) & 0xff) << 8 | buffer.getByte(index + 3) & 0xff;
+    }
+
+    private static long getLong(ChannelBuffer buffer, int index) {
+        return (long) getInt(buffer, index) << 32 | getInt(buffer, index + 4) & 0xffffffffL;
+    }
+
     protected Object decodeBody(Channel channel, InputStream is, byte[] header) throws IOException {
-        byte flag = header[2], proto = (byte) (flag & SERIALIZATION_MASK);
-        Serialization s = CodecSupport.getSerialization(channel.getUrl(), proto);
-        ObjectInput in = s.deserialize(channel.getUrl(), is);
-        // get request id.
-        long id = Bytes.bytes2long(header, 4);
+        return decodeFrame(channel, is, header[2], header[3], Bytes.bytes2long(header, 4));
+    }
+
+    private Object decodeFrame(Channel channel, InputStream is, byte flag, byte status, long id) throws IOException {
+        if ((status & FLAG_COMPRESSED) != 0) {
+            return decodeBody(channel, decompress(channel, is), flag, (byte) (status & ~FLAG_COMPRESSED), id);
+        }
+        return decodeBody(channel, is, flag, status, id);
+    }
+
+    /**
+     * 把消息体解压到新的buffer中，解压后的大小同样受payload限制。
+     */
+    private static InputStream decompress(Channel channel, InputStream is) throws IOException {
+        int id = is.read();
+        Compressor compressor = id <= 0 ? null : CodecSupport.getCompressorById((byte) id);
+        if (compressor == null) {
+            throw new IOException("Unsupported compressor id " + id + " of channel " + channel);
+        }
+        ChannelBuffer buffer = ChannelBuffers.dynamicBuffer(Math.max(is.available() * 4, COMPRESS_CHUNK));
+        InputStream in = compressor.decompress(is);
+        try {
+            while (buffer.writeBytes(in, COMPRESS_CHUNK) > 0) {
+                checkPayload(channel, buffer.readableBytes());
+            }
+        } finally {
+            in.close();
+        }
+        return new ChannelBufferInputStream(buffer);
+    }
+
+    /**
+     * 压缩结果先写在原消息体之后，比原消息体小时再移到原消息体的位置，不需要额外的整块内存。
+     *
+     * @return the length of the compressed body, or the original length if compressing does not make it smaller.
+     */
+    private static int compress(ChannelBuffer buffer, int index, int length, Compressor compressor) throws IOException {
+        int end = index + length;
+        buffer.writerIndex(end);
+        buffer.writeByte(compressor.getCompressorId());
+        OutputStream os = compressor.compress(new ChannelBufferOutputStream(buffer));
+        // 切片引用原消息体所在的底层buffer，写入压缩结果时buffer扩容也不影响读取，底层buffer是池化的时也不会被归还
+        ChannelBuffer body = buffer.slice(index, length);
+        try {
+            if (body.hasArray()) {
+                os.write(body.array(), body.arrayOffset(), length);
+            } else {
+                byte[] chunk = new byte[Math.min(length, COMPRESS_CHUNK)];
+                for (int i = 0; i < length; i += chunk.length) {
+                    int n = Math.min(chunk.length, length - i);
+                    body.getBytes(i, chunk, 0, n);
+                    os.write(chunk, 0, n);
+                }
+            }
+        } finally {
+            try {
+                os.close();
+            } finally {
+                body.release();
+            }
+        }
+        int compressed = buffer.writerIndex() - end;
+        if (compressed >= length) {
+            buffer.writerIndex(end);
+            return length;
+        }
+        buffer.setBytes(index, buffer, end, compressed);
+        return compressed;
+    }
+
+    /**
+     * 取得消息体的编码配置，如压缩方式，默认取连接上的配置。
+     *
+     * @param data the data of the request, or the result of the response
+     */
+    protected String getParameter(Channel channel, Object data, String key) {
+        return channel.getUrl().getParameter(key);
+    }
+
+    private int getCompressThreshold(Channel channel, Object data) {
+        String threshold = getParameter(channel, data, COMPRESS_THRESHOLD_KEY);
+        return StringUtils.isEmpty(threshold) ? DEFAULT_COMPRESS_THRESHOLD : Integer.parseInt(threshold);
+    }
+
+    private int getSidecarThreshold(Channel channel, Object data) {
+        String threshold = getParameter(channel, data, SIDECAR_THRESHOLD_KEY);
+        return StringUtils.isEmpty(threshold) ? DEFAULT_SIDECAR_THRESHOLD : Integer.parseInt(threshold);
+    }
+
+    /**
+     * @param status the status byte of the header without {@link #FLAG_COMPRESSED}
+     * @return whether the body is written by {@link SidecarObjectOutput}, then it must be read by {@link SidecarObjectInput}.
+     */
+    protected static boolean isSidecar(byte flag, byte status) {
+        return (flag & FLAG_REQUEST) != 0 ? (status & FLAG_SIDECAR) != 0 : status == SIDECAR_OK;
+    }
+
+    /**
+     * @param status the status byte of the response header without {@link #FLAG_COMPRESSED}
+     * @return the status of the response.
+     */
+    protected static byte getResponseStatus(byte status) {
+        return status == SIDECAR_OK ? Response.OK : status;
+    }
+
+    /**
+     * 在序列化数据之前写出其长度，之后写出登记的二进制数据。
+     *
+     * @param index the index of the body
+     * @param len   the length of the serialized data
+     * @return the length of the body.
+     */
+    private static int writeSidecars(Channel channel, ChannelBuffer buffer, int index, int len, SidecarObjectOutput sidecars) throws IOException {
+        byte[] length = new byte[4];
+        Bytes.int2bytes(len, length);
+        buffer.setBytes(index, length);
+        long total = 4L + len + sidecars.getSidecarLength();
+        if (total > Integer.MAX_VALUE) {
+            throw new IOException("Data length too large: " + total + ", channel: " + channel);
+        }
+        checkPayload(channel, (int) total);
+        sidecars.writeSidecars(buffer);
+        return (int) total;
+    }
+
+    /**
+     * @param flag   the flag byte of the header
+     * @param status the status byte of the header without {@link #FLAG_COMPRESSED}, for a request the compressor id
+     *               accepted for the response, see {@link #isSidecar} and {@link #getResponseStatus}
+     * @param id     the request id
+     */
+    protected Object decodeBody(Channel channel, InputStream is, byte flag, byte status, long id) throws IOException {
+        byte proto = (byte) (flag & SERIALIZATION_MASK);
+        boolean sidecar = isSidecar(flag, status);
+        ObjectInput in = sidecar ? SidecarObjectInput.deserialize(channel, proto, is)
+                : CodecSupport.deserialize(channel, proto, is);
         if ((flag & FLAG_REQUEST) == 0) {
             // decode response.
             Response res = new Response(id);
             if ((flag & FLAG_EVENT) != 0) {
                 res.setEvent(Response.HEARTBEAT_EVENT);
             }
-            // get status.
-            byte status = header[3];
-            res.setStatus(status);
-            if (status == Response.OK) {
+            res.setSidecar(sidecar);
+            res.setStatus(getResponseStatus(status));
+            if (res.getStatus() == Response.OK) {
                 try {
                     Object data;
                     if (res.isHeartbeat()) {
@@ -170,7 +433,7 @@ public class ExchangeCodec extends TelnetCodec {
                     } else if (res.isEvent()) {
                         data = decodeEventData(channel, in);
                     } else {
-                        data = decodeResponseData(channel, in, getRequestData(id));
+                        data = decodeResponseData(channel, in, getRequestData(channel, id));
                     }
                     res.setResult(data);
                 } catch (Throwable t) {
@@ -186,6 +449,8 @@ public class ExchangeCodec extends TelnetCodec {
             Request req = new Request(id);
             req.setVersion("2.0.0");
             req.setTwoWay((flag & FLAG_TWOWAY) != 0);
+            req.setCompressor((byte) (status & COMPRESSOR_MASK));
+            req.setSidecar(sidecar);
             if ((flag & FLAG_EVENT) != 0) {
                 req.setEvent(Request.HEARTBEAT_EVENT);
             }
@@ -208,11 +473,8 @@ public class ExchangeCodec extends TelnetCodec {
         }
     }
 
-    protected Object getRequestData(long id) {
-        CompletableDefaultFuture future = FutureAndChannelHolder.getFuture(id);
-        if (future == null)
-            return null;
-        Request req = future.getRequest();
+    protected Object getRequestData(Channel channel, long id) {
+        Request req = FutureAndChannelHolder.getRequest(channel, id);
         if (req == null)
             return null;
         return req.getData();
@@ -220,43 +482,78 @@ public class ExchangeCodec extends TelnetCodec {
 
     protected void encodeRequest(Channel channel, ChannelBuffer buffer, Request req) throws IOException {
         Serialization serialization = getSerialization(channel);
+        Hessian2TypeCache typeCache = req.isEvent() ? null : Hessian2TypeCache.forEncode(channel, serialization);
+        Compressor compressor = req.isEvent() ? null
+                : CodecSupport.getCompressor(getParameter(channel, req.getData(), COMPRESSOR_KEY));
+        int sidecarThreshold = req.isEvent() ? 0 : getSidecarThreshold(channel, req.getData());
         // header.
         byte[] header = new byte[HEADER_LENGTH];
         // set magic number.
         Bytes.short2bytes(MAGIC, header);
 
         // set request and serialization flag.
-        header[2] = (byte) (FLAG_REQUEST | serialization.getContentTypeId());
+        header[2] = (byte) (FLAG_REQUEST | (typeCache != null ? Hessian2TypeCache.CONTENT_TYPE_ID : serialization.getContentTypeId()));
 
         if (req.isTwoWay()) header[2] |= FLAG_TWOWAY;
         if (req.isEvent()) header[2] |= FLAG_EVENT;
 
+        // accept the response compressed in the same way.
+        if (compressor != null) header[3] = compressor.getCompressorId();
+        // the body carries raw data, and accept the response in the same way.
+        if (sidecarThreshold > 0) header[3] |= FLAG_SIDECAR;
+
         // set request id.
         Bytes.long2bytes(req.getId(), header, 4);
 
         // encode request data.
         int savedWriteIndex = buffer.writerIndex();
+        // 与其它消息编码到同一个buffer时，buffer可能已接近容量
+        buffer.ensureWritableBytes(HEADER_LENGTH + 4);
         buffer.writerIndex(savedWriteIndex + HEADER_LENGTH);
+        if (sidecarThreshold > 0) {
+            // the length of the serialized data.
+            buffer.writerIndex(buffer.writerIndex() + 4);
+        }
         ChannelBufferOutputStream bos = new ChannelBufferOutputStream(buffer);
-        ObjectOutput out = serialization.serialize(channel.getUrl(), bos);
+        ObjectOutput out = typeCache != null ? typeCache.begin(bos) : serialization.serialize(channel.getUrl(), bos);
+        SidecarObjectOutput sidecars = sidecarThreshold > 0 ? new SidecarObjectOutput(out, sidecarThreshold) : null;
+        int len;
+        boolean complete = false;
         try {
             if (req.isEvent()) {
                 encodeEventData(channel, out, req.getData());
             } else {
-                encodeRequestData(channel, out, req.getData());
+                encodeRequestData(channel, sidecars != null ? sidecars : out, req.getData());
             }
             out.flushBuffer();
+
+            bos.flush();
+            bos.close();
+            len = bos.writtenBytes();
+            if (sidecars != null) {
+                len = writeSidecars(channel, buffer, savedWriteIndex + HEADER_LENGTH, len, sidecars);
+            } else {
+                checkPayload(channel, len);
+            }
+            complete = true;
         } finally {
             // modified by lishen
             if (out instanceof Cleanable) {
                 ((Cleanable) out).cleanup();
             }
+            if (typeCache != null) {
+                typeCache.end(complete);
+            }
+        }
+        // 二进制数据通常已经过压缩，不再压缩
+        if (compressor != null && (sidecars == null || !sidecars.hasSidecars())
+                && len >= getCompressThreshold(channel, req.getData())) {
+            int compressed = compress(buffer, savedWriteIndex + HEADER_LENGTH, len, compressor);
+            if (compressed < len) {
+                header[3] |= FLAG_COMPRESSED;
+                len = compressed;
+            }
         }
-
-        bos.flush();
-        bos.close();
-        int len = bos.writtenBytes();
-        checkPayload(channel, len);
         Bytes.int2bytes(len, header, 12);
 
         // write
@@ -266,54 +563,86 @@ public class ExchangeCodec extends TelnetCodec {
     }
 
     protected void encodeResponse(Channel channel, ChannelBuffer buffer, Response res) throws IOException {
+        int savedWriteIndex = buffer.writerIndex();
         try {
             Serialization serialization = getSerialization(channel);
+            Hessian2TypeCache typeCache = res.isEvent() || res.getStatus() != Response.OK ? null
+                    : Hessian2TypeCache.forEncode(channel, serialization);
+            Compressor compressor = res.getCompressor() == 0 || res.isEvent() || res.getStatus() != Response.OK ? null
+                    : CodecSupport.getCompressorById(res.getCompressor());
+            int sidecarThreshold = !res.isSidecar() || res.isEvent() || res.getStatus() != Response.OK ? 0
+                    : getSidecarThreshold(channel, res.getResult());
             // header.
             byte[] header = new byte[HEADER_LENGTH];
             // set magic number.
             Bytes.short2bytes(MAGIC, header);
             // set request and serialization flag.
-            header[2] = serialization.getContentTypeId();
+            header[2] = typeCache != null ? Hessian2TypeCache.CONTENT_TYPE_ID : serialization.getContentTypeId();
             if (res.isHeartbeat()) header[2] |= FLAG_EVENT;
             // set response status.
             byte status = res.getStatus();
-            header[3] = status;
+            header[3] = sidecarThreshold > 0 ? SIDECAR_OK : status;
             // set request id.
             Bytes.long2bytes(res.getId(), header, 4);
 
-            int savedWriteIndex = buffer.writerIndex();
+            buffer.ensureWritableBytes(HEADER_LENGTH + 4);
             buffer.writerIndex(savedWriteIndex + HEADER_LENGTH);
+            if (sidecarThreshold > 0) {
+                // the length of the serialized data.
+                buffer.writerIndex(buffer.writerIndex() + 4);
+            }
             ChannelBufferOutputStream bos = new ChannelBufferOutputStream(buffer);
-            ObjectOutput out = serialization.serialize(channel.getUrl(), bos);
+            ObjectOutput out = typeCache != null ? typeCache.begin(bos) : serialization.serialize(channel.getUrl(), bos);
+            SidecarObjectOutput sidecars = sidecarThreshold > 0 ? new SidecarObjectOutput(out, sidecarThreshold) : null;
+            int len;
+            boolean complete = false;
             try {
                 // encode response data or error message.
                 if (status == Response.OK) {
                     if (res.isHeartbeat()) {
                         encodeHeartbeatData(channel, out, res.getResult());
                     } else {
-                        encodeResponseData(channel, out, res.getResult());
+                        encodeResponseData(channel, sidecars != null ? sidecars : out, res.getResult());
                     }
                 }
                 else out.writeUTF(res.getErrorMessage());
                 out.flushBuffer();
+
+                bos.flush();
+                bos.close();
+
+                len = bos.writtenBytes();
+                if (sidecars != null) {
+                    len = writeSidecars(channel, buffer, savedWriteIndex + HEADER_LENGTH, len, sidecars);
+                } else {
+                    checkPayload(channel, len);
+                }
+                complete = true;
             } finally {
                 // modified by lishen
                 if (out instanceof Cleanable) {
                     ((Cleanable) out).cleanup();
                 }
+                if (typeCache != null) {
+                    typeCache.end(complete);
+                }
+            }
+            if (compressor != null && (sidecars == null || !sidecars.hasSidecars())
+                    && len >= getCompressThreshold(channel, res.getResult())) {
+                int compressed = compress(buffer, savedWriteIndex + HEADER_LENGTH, len, compressor);
+                if (compressed < len) {
+                    header[3] |= FLAG_COMPRESSED;
+                    len = compressed;
+                }
             }
-
-            bos.flush();
-            bos.close();
-
-            int len = bos.writtenBytes();
-            checkPayload(channel, len);
             Bytes.int2bytes(len, header, 12);
             // write
             buffer.writerIndex(savedWriteIndex);
             buffer.writeBytes(header); // write header.
             buffer.writerIndex(savedWriteIndex + HEADER_LENGTH + len);
         } catch (Throwable t) {
+            // 去掉已写入的部分，与之后的消息一起写出时不影响对端解码
+            buffer.writerIndex(savedWriteIndex);
             // 发送失败信息给Consumer，否则Consumer只能等超时了
             if (! res.isEvent() && res.getStatus() != Response.BAD_RESPONSE) {
                 try {
@@ -0,0 +1,201 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.remoting.exchange.codec;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+
+import com.alibaba.dubbo.common.io.Bytes;
+import com.alibaba.dubbo.common.serialize.Cleanable;
+import com.alibaba.dubbo.common.serialize.ObjectInput;
+import com.alibaba.dubbo.remoting.Channel;
+import com.alibaba.dubbo.remoting.buffer.FastDataInput;
+import com.alibaba.dubbo.remoting.transport.CodecSupport;
+
+/**
+ * 读取{@link SidecarObjectOutput}格式的消息体，序列化数据的读取限制在其长度内，之后的二进制数据由{@link #readSidecar}读出。
+ */
+public final class SidecarObjectInput implements ObjectInput, Cleanable {
+
+    private final ObjectInput         input;
+
+    private final EnvelopeInputStream envelope;
+
+    private SidecarObjectInput(ObjectInput input, EnvelopeInputStream envelope) {
+        this.input = input;
+        this.envelope = envelope;
+    }
+
+    /**
+     * @param is the body of a frame with {@link ExchangeCodec#FLAG_SIDECAR}
+     */
+    public static SidecarObjectInput deserialize(Channel channel, byte id, InputStream is) throws IOException {
+        int length;
+        if (is instanceof FastDataInput) {
+            length = ((FastDataInput) is).readInt();
+        } else {
+            byte[] b = new byte[4];
+            readFully(is, b, 0, b.length);
+            length = Bytes.bytes2int(b);
+        }
+        EnvelopeInputStream envelope = new EnvelopeInputStream(is, length);
+        return new SidecarObjectInput(CodecSupport.deserialize(channel, id, envelope), envelope);
+    }
+
+    /**
+     * 读出下一块二进制数据，序列化数据中尚未读取的部分被跳过，之后不能再读序列化数据。
+     */
+    public byte[] readSidecar(int length) throws IOException {
+        if (length < 0) {
+            throw new IOException("Invalid sidecar length " + length);
+        }
+        envelope.skipRemaining();
+        byte[] b = new byte[length];
+        readFully(envelope.is, b, 0, length);
+        return b;
+    }
+
+    private static void readFully(InputStream is, byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = is.read(b, off, len);
+            if (n < 0) {
+                throw new EOFException("Unexpected end of the message body, " + len + " more bytes are expected.");
+            }
+            off += n;
+            len -= n;
+        }
+    }
+
+    public boolean readBool() throws IOException {
+        return input.readBool();
+    }
+
+    public byte readByte() throws IOException {
+        return input.readByte();
+    }
+
+    public short readShort() throws IOException {
+        return input.readShort();
+    }
+
+    public int readInt() throws IOException {
+        return input.readInt();
+    }
+
+    public long readLong() throws IOException {
+        return input.readLong();
+    }
+
+    public float readFloat() throws IOException {
+        return input.readFloat();
+    }
+
+    public double readDouble() throws IOException {
+        return input.readDouble();
+    }
+
+    public String readUTF() throws IOException {
+        return input.readUTF();
+    }
+
+    public byte[] readBytes() throws IOException {
+        return input.readBytes();
+    }
+
+    public Object readObject() throws IOException, ClassNotFoundException {
+        return input.readObject();
+    }
+
+    public <T> T readObject(Class<T> cls) throws IOException, ClassNotFoundException {
+        return input.readObject(cls);
+    }
+
+    public <T> T readObject(Class<T> cls, Type type) throws IOException, ClassNotFoundException {
+        return input.readObject(cls, type);
+    }
+
+    public void cleanup() {
+        if (input instanceof Cleanable) {
+            ((Cleanable) input).cleanup();
+        }
+    }
+
+    /**
+     * 序列化数据，反序列化的预读不会越过其长度。
+     */
+    private static final class EnvelopeInputStream extends InputStream {
+
+        private final InputStream is;
+
+        private int               remaining;
+
+        EnvelopeInputStream(InputStream is, int length) throws IOException {
+            if (length < 0) {
+                throw new IOException("Invalid envelope length " + length);
+            }
+            this.is = is;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = is.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = is.read(b, off, Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return Math.min(remaining, is.available());
+        }
+
+        void skipRemaining() throws IOException {
+            while (remaining > 0) {
+                long n = is.skip(remaining);
+                if (n <= 0) {
+                    if (is.read() < 0) {
+                        throw new EOFException("Unexpected end of the message body.");
+                    }
+                    n = 1;
+                }
+                remaining -= n;
+            }
+        }
+    }
+
+}
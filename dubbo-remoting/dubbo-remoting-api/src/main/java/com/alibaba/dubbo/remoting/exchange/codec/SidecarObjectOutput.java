@@ -0,0 +1,147 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.remoting.exchange.codec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.alibaba.dubbo.common.serialize.ObjectOutput;
+import com.alibaba.dubbo.remoting.buffer.ChannelBuffer;
+
+/**
+ * 序列化数据之后原样写出大块二进制数据的消息体。
+ * <p>
+ * 帧头状态字节带{@link ExchangeCodec#FLAG_SIDECAR}的消息体依次是4字节的序列化数据长度、序列化数据和各块二进制数据。
+ * 编码方用{@link #writeSidecar}登记不小于{@link #getThreshold()}的byte[]或ByteBuffer，并在序列化数据中写出其长度等描述，
+ * 二进制数据在序列化完成后由ExchangeCodec直接写入出站buffer，不经过序列化，也不先复制成完整的byte[]；
+ * 解码方读完序列化数据后用{@link SidecarObjectInput#readSidecar}按登记顺序取出。
+ */
+public final class SidecarObjectOutput implements ObjectOutput {
+
+    private final ObjectOutput output;
+
+    private final int          threshold;
+
+    private final List<Object> sidecars = new ArrayList<Object>(2);
+
+    private long               length;
+
+    SidecarObjectOutput(ObjectOutput output, int threshold) {
+        this.output = output;
+        this.threshold = threshold;
+    }
+
+    /**
+     * @return the minimum length of a value to write after the serialized data.
+     */
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * 登记在序列化数据之后原样写出的数据，ByteBuffer写出其position到limit之间的部分，不改变其position。
+     *
+     * @param value byte[] or ByteBuffer
+     * @return the length of the value
+     */
+    public int writeSidecar(Object value) {
+        int n;
+        if (value instanceof byte[]) {
+            n = ((byte[]) value).length;
+            sidecars.add(value);
+        } else if (value instanceof ByteBuffer) {
+            ByteBuffer buffer = ((ByteBuffer) value).duplicate();
+            n = buffer.remaining();
+            sidecars.add(buffer);
+        } else {
+            throw new IllegalArgumentException("Expect byte[] or ByteBuffer, but get " + value);
+        }
+        length += n;
+        return n;
+    }
+
+    boolean hasSidecars() {
+        return !sidecars.isEmpty();
+    }
+
+    long getSidecarLength() {
+        return length;
+    }
+
+    /**
+     * 把登记的数据依次写入buffer，文件映射的ByteBuffer直接从映射的内存复制。
+     */
+    void writeSidecars(ChannelBuffer buffer) {
+        for (Object sidecar : sidecars) {
+            if (sidecar instanceof byte[]) {
+                buffer.writeBytes((byte[]) sidecar);
+            } else {
+                buffer.writeBytes((ByteBuffer) sidecar);
+            }
+        }
+    }
+
+    public void writeBool(boolean v) throws IOException {
+        output.writeBool(v);
+    }
+
+    public void writeByte(byte v) throws IOException {
+        output.writeByte(v);
+    }
+
+    public void writeShort(short v) throws IOException {
+        output.writeShort(v);
+    }
+
+    public void writeInt(int v) throws IOException {
+        output.writeInt(v);
+    }
+
+    public void writeLong(long v) throws IOException {
+        output.writeLong(v);
+    }
+
+    public void writeFloat(float v) throws IOException {
+        output.writeFloat(v);
+    }
+
+    public void writeDouble(double v) throws IOException {
+        output.writeDouble(v);
+    }
+
+    public void writeUTF(String v) throws IOException {
+        output.writeUTF(v);
+    }
+
+    public void writeBytes(byte[] v) throws IOException {
+        output.writeBytes(v);
+    }
+
+    public void writeBytes(byte[] v, int off, int len) throws IOException {
+        output.writeBytes(v, off, len);
+    }
+
+    public void writeObject(Object obj) throws IOException {
+        output.writeObject(obj);
+    }
+
+    public void flushBuffer() throws IOException {
+        output.flushBuffer();
+    }
+
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.remoting.exchange.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.alibaba.dubbo.remoting.Channel;
+import com.alibaba.dubbo.remoting.buffer.ChannelBuffer;
+
+/**
+ * 流式解码的消息体。
+ * <p>
+ * IO线程收到消息头后即交出消息，之后每收到一块属于该消息体的数据就追加进来，消息体不在入站buffer中完整累积；
+ * 业务线程上的反序列化在数据未到达时阻塞等待，与接收同时进行。因此这样的消息不能在IO线程上解码。
+ * <p>
+ * 连接断开，或等待超过idle时间仍没有新的数据时，读取抛出IOException。读取方关闭后，之后到达的数据直接丢弃。
+ */
+public final class StreamingInputStream extends InputStream {
+
+    private static final String      KEY      = StreamingInputStream.class.getName();
+
+    private final ReentrantLock      lock     = new ReentrantLock();
+
+    private final Condition          arrived  = lock.newCondition();
+
+    // 已到达、尚未读取的数据块
+    private final LinkedList<byte[]> chunks   = new LinkedList<byte[]>();
+
+    private final int                length;
+
+    private final long               idleTimeout;
+
+    // 以下由lock保护
+    private int                      received;
+
+    private int                      taken;
+
+    private int                      buffered;
+
+    private IOException              cause;
+
+    private volatile boolean         closed;
+
+    // 以下只由读取方访问
+    private byte[]                   current;
+
+    private int                      position;
+
+    private StreamingInputStream(int length, long idleTimeout) {
+        this.length = length;
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * @return the body of the channel still being received, or null.
+     */
+    static StreamingInputStream get(Channel channel) {
+        return (StreamingInputStream) channel.getAttribute(KEY);
+    }
+
+    /**
+     * 开始流式接收连接上的消息体，buffer中已到达的部分立即追加进来。
+     */
+    static StreamingInputStream start(Channel channel, ChannelBuffer buffer, int length, long idleTimeout) {
+        StreamingInputStream stream = new StreamingInputStream(length, idleTimeout);
+        channel.setAttribute(KEY, stream);
+        stream.feed(channel, buffer);
+        return stream;
+    }
+
+    /**
+     * 连接断开时调用，唤醒等待数据的读取方。
+     */
+    public static void abort(Channel channel) {
+        StreamingInputStream stream = get(channel);
+        if (stream != null) {
+            channel.removeAttribute(KEY);
+            stream.abort(new IOException("Channel " + channel
+                    + " is disconnected before the message body is completely received."));
+        }
+    }
+
+    /**
+     * 从buffer中取出属于该消息体的数据，消息体接收完后从连接上移除。
+     */
+    void feed(Channel channel, ChannelBuffer buffer) {
+        int n;
+        lock.lock();
+        try {
+            n = Math.min(buffer.readableBytes(), length - received);
+        } finally {
+            lock.unlock();
+        }
+        byte[] chunk = null;
+        if (closed) {
+            buffer.skipBytes(n);
+        } else if (n > 0) {
+            chunk = new byte[n];
+            buffer.readBytes(chunk);
+        }
+        boolean complete;
+        lock.lock();
+        try {
+            received += n;
+            if (chunk != null && !closed) {
+                chunks.add(chunk);
+                buffered += n;
+            }
+            complete = received == length;
+            arrived.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (complete) {
+            channel.removeAttribute(KEY);
+        }
+    }
+
+    private void abort(IOException e) {
+        lock.lock();
+        try {
+            if (received < length && cause == null) {
+                cause = e;
+                arrived.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!next()) {
+            return -1;
+        }
+        return current[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!next()) {
+            return -1;
+        }
+        int n = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    /**
+     * @return false at the end of the body.
+     */
+    private boolean next() throws IOException {
+        if (current != null && position < current.length) {
+            return true;
+        }
+        current = null;
+        lock.lock();
+        try {
+            long nanos = TimeUnit.MILLISECONDS.toNanos(idleTimeout);
+            while (chunks.isEmpty()) {
+                if (closed) {
+                    throw new IOException("Stream closed.");
+                }
+                if (taken == length) {
+                    return false;
+                }
+                if (cause != null) {
+                    throw cause;
+                }
+                if (nanos <= 0) {
+                    throw new IOException("No data of the message body is received in " + idleTimeout + "ms, "
+                            + taken + " of " + length + " bytes are read.");
+                }
+                try {
+                    nanos = arrived.awaitNanos(nanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+            current = chunks.removeFirst();
+            position = 0;
+            taken += current.length;
+            buffered -= current.length;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of bytes arrived but not read yet.
+     */
+    @Override
+    public int available() throws IOException {
+        int n = current == null ? 0 : current.length - position;
+        lock.lock();
+        try {
+            return n + buffered;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            chunks.clear();
+            buffered = 0;
+            current = null;
+            arrived.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+}
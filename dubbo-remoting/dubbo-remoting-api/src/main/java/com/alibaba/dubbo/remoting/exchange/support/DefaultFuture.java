@@ -17,8 +17,6 @@ package com.alibaba.dubbo.remoting.exchange.support;
 
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
@@ -27,13 +25,20 @@ import java.util.concurrent.locks.ReentrantLock;
 import com.alibaba.dubbo.common.Constants;
 import com.alibaba.dubbo.common.logger.Logger;
 import com.alibaba.dubbo.common.logger.LoggerFactory;
+import com.alibaba.dubbo.common.utils.ConfigUtils;
+import com.alibaba.dubbo.common.utils.NamedThreadFactory;
 import com.alibaba.dubbo.remoting.Channel;
+import com.alibaba.dubbo.remoting.ChannelClosedException;
 import com.alibaba.dubbo.remoting.RemotingException;
 import com.alibaba.dubbo.remoting.TimeoutException;
 import com.alibaba.dubbo.remoting.exchange.Request;
 import com.alibaba.dubbo.remoting.exchange.Response;
 import com.alibaba.dubbo.remoting.exchange.ResponseCallback;
 import com.alibaba.dubbo.remoting.exchange.ResponseFuture;
+import com.alibaba.dubbo.remoting.timer.HashedWheelTimer;
+import com.alibaba.dubbo.remoting.timer.Timeout;
+import com.alibaba.dubbo.remoting.timer.Timer;
+import com.alibaba.dubbo.remoting.timer.TimerTask;
 
 /**
  * DefaultFuture.
@@ -45,9 +50,16 @@ public class DefaultFuture implements ResponseFuture {
 
     private static final Logger                   logger = LoggerFactory.getLogger(DefaultFuture.class);
 
-    private static final Map<Long, Channel>       CHANNELS   = new ConcurrentHashMap<Long, Channel>();
+    public static final String                    TIMEOUT_TICK_KEY = "dubbo.remoting.timeout.tick";
 
-    private static final Map<Long, DefaultFuture> FUTURES   = new ConcurrentHashMap<Long, DefaultFuture>();
+    public static final String                    TIMEOUT_WHEEL_KEY = "dubbo.remoting.timeout.wheel";
+
+    // 所有请求共享的超时时间轮，添加和取消均为O(1)
+    public static final Timer                     TIMEOUT_TIMER = new HashedWheelTimer(
+                                                                  new NamedThreadFactory("DubboResponseTimeoutTimer", true),
+                                                                  Integer.parseInt(ConfigUtils.getProperty(TIMEOUT_TICK_KEY, "30")),
+                                                                  TimeUnit.MILLISECONDS,
+                                                                  Integer.parseInt(ConfigUtils.getProperty(TIMEOUT_WHEEL_KEY, "512")));
 
     // invoke id.
     private final long                            id;
@@ -56,6 +68,8 @@ public class DefaultFuture implements ResponseFuture {
     
     private final Request                         request;
 
+    private final InFlightRequests                inFlight;
+
     private final int                             timeout;
 
     private final Lock                            lock = new ReentrantLock();
@@ -70,14 +84,17 @@ public class DefaultFuture implements ResponseFuture {
 
     private volatile ResponseCallback             callback;
 
+    private final Timeout                         timeoutCheck;
+
     public DefaultFuture(Channel channel, Request request, int timeout){
         this.channel = channel;
         this.request = request;
         this.id = request.getId();
         this.timeout = timeout > 0 ? timeout : channel.getUrl().getPositiveParameter(Constants.TIMEOUT_KEY, Constants.DEFAULT_TIMEOUT);
-        // put into waiting map.
-        FUTURES.put(id, this);
-        CHANNELS.put(id, channel);
+        this.inFlight = InFlightRequests.getOrCreate(channel);
+        // 超时任务先创建，放入连接的未完成请求表后随时可能被断开连接等结束
+        this.timeoutCheck = TIMEOUT_TIMER.newTimeout(new TimeoutCheckTask(this), this.timeout, TimeUnit.MILLISECONDS);
+        inFlight.put(id, this);
     }
     
     public Object get() throws RemotingException {
@@ -114,8 +131,8 @@ public class DefaultFuture implements ResponseFuture {
         Response errorResult = new Response(id);
         errorResult.setErrorMessage("request future has been canceled.");
         response = errorResult ;
-        FUTURES.remove(id);
-        CHANNELS.remove(id);
+        timeoutCheck.cancel();
+        inFlight.remove(id, this);
     }
 
     public boolean isDone() {
@@ -166,6 +183,13 @@ public class DefaultFuture implements ResponseFuture {
             } catch (Exception e) {
                 logger.error("callback invoke error ,url:" + channel.getUrl(), e);
             }
+        } else if (res.getStatus() == Response.CHANNEL_INACTIVE) {
+            try {
+                ChannelClosedException ce = new ChannelClosedException(channel, res.getErrorMessage());
+                callbackCopy.caught(ce);
+            } catch (Exception e) {
+                logger.error("callback invoke error ,url:" + channel.getUrl(), e);
+            }
         } else {
             try {
                 RuntimeException re = new RuntimeException(res.getErrorMessage());
@@ -187,6 +211,9 @@ public class DefaultFuture implements ResponseFuture {
         if (res.getStatus() == Response.CLIENT_TIMEOUT || res.getStatus() == Response.SERVER_TIMEOUT) {
             throw new TimeoutException(res.getStatus() == Response.SERVER_TIMEOUT, channel, res.getErrorMessage());
         }
+        if (res.getStatus() == Response.CHANNEL_INACTIVE) {
+            throw new ChannelClosedException(channel, res.getErrorMessage());
+        }
         throw new RemotingException(channel, res.getErrorMessage());
     }
 
@@ -214,16 +241,18 @@ public class DefaultFuture implements ResponseFuture {
         return start;
     }
 
-    public static DefaultFuture getFuture(long id) {
-        return FUTURES.get(id);
+    public static DefaultFuture getFuture(Channel channel, long id) {
+        InFlightRequests inFlight = InFlightRequests.get(channel);
+        Object future = inFlight == null ? null : inFlight.get(id);
+        return future instanceof DefaultFuture ? (DefaultFuture) future : null;
     }
 
     public static boolean hasFuture(Channel channel) {
-        return CHANNELS.containsValue(channel);
+        return InFlightRequests.hasPending(channel);
     }
 
     public static void sent(Channel channel, Request request) {
-        DefaultFuture future = FUTURES.get(request.getId());
+        DefaultFuture future = getFuture(channel, request.getId());
         if (future != null) {
             future.doSent();
         }
@@ -233,24 +262,39 @@ public class DefaultFuture implements ResponseFuture {
         sent = System.currentTimeMillis();
     }
 
-    public static void received(Channel channel, Response response) {
-        try {
-            DefaultFuture future = FUTURES.remove(response.getId());
-            if (future != null) {
-                future.doReceived(response);
-            } else {
-                logger.warn("The timeout response finally returned at " 
-                            + (new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").format(new Date())) 
-                            + ", response " + response 
-                            + (channel == null ? "" : ", channel: " + channel.getLocalAddress() 
-                                + " -> " + channel.getRemoteAddress()));
+    /**
+     * 连接断开时立即结束该连接上所有未完成的请求，不必等到超时
+     */
+    public static void closeChannel(Channel channel) {
+        InFlightRequests inFlight = InFlightRequests.get(channel);
+        if (inFlight == null) {
+            return;
+        }
+        for (Object pending : inFlight.values()) {
+            if (pending instanceof DefaultFuture) {
+                DefaultFuture future = (DefaultFuture) pending;
+                if (inFlight.remove(future.id, future)) {
+                    Response disconnectResponse = new Response(future.id);
+                    disconnectResponse.setStatus(Response.CHANNEL_INACTIVE);
+                    disconnectResponse.setErrorMessage("Channel " + channel 
+                                + " is closed, the pending request is failed directly: " + future.request);
+                    future.doReceived(disconnectResponse);
+                }
             }
-        } finally {
-            CHANNELS.remove(response.getId());
+        }
+    }
+
+    public static void received(Channel channel, Response response) {
+        DefaultFuture future = getFuture(channel, response.getId());
+        if (future != null && future.inFlight.remove(future.id, future)) {
+            future.doReceived(response);
+        } else {
+            LateResponses.received(channel, response);
         }
     }
 
     private void doReceived(Response res) {
+        timeoutCheck.cancel();
         lock.lock();
         try {
             response = res;
@@ -278,37 +322,29 @@ public class DefaultFuture implements ResponseFuture {
                     + " -> " + channel.getRemoteAddress();
     }
 
-    private static class RemotingInvocationTimeoutScan implements Runnable {
-
-        public void run() {
-            while (true) {
-                try {
-                    for (DefaultFuture future : FUTURES.values()) {
-                        if (future == null || future.isDone()) {
-                            continue;
-                        }
-                        if (System.currentTimeMillis() - future.getStartTimestamp() > future.getTimeout()) {
-                            // create exception response.
-                            Response timeoutResponse = new Response(future.getId());
-                            // set timeout status.
-                            timeoutResponse.setStatus(future.isSent() ? Response.SERVER_TIMEOUT : Response.CLIENT_TIMEOUT);
-                            timeoutResponse.setErrorMessage(future.getTimeoutMessage(true));
-                            // handle response.
-                            DefaultFuture.received(future.getChannel(), timeoutResponse);
-                        }
-                    }
-                    Thread.sleep(30);
-                } catch (Throwable e) {
-                    logger.error("Exception when scan the timeout invocation of remoting.", e);
-                }
-            }
+    private static class TimeoutCheckTask implements TimerTask {
+
+        private final DefaultFuture future;
+
+        TimeoutCheckTask(DefaultFuture future) {
+            this.future = future;
         }
-    }
 
-    static {
-        Thread th = new Thread(new RemotingInvocationTimeoutScan(), "DubboResponseTimeoutScanTimer");
-        th.setDaemon(true);
-        th.start();
+        public void run(Timeout timeout) {
+            if (future.isDone()) {
+                return;
+            }
+            // create exception response.
+            Response timeoutResponse = new Response(future.getId());
+            // set timeout status.
+            timeoutResponse.setStatus(future.isSent() ? Response.SERVER_TIMEOUT : Response.CLIENT_TIMEOUT);
+            timeoutResponse.setErrorMessage(future.getTimeoutMessage(true));
+            // handle response, unless the real one has just been claimed.
+            if (future.inFlight.remove(future.getId(), future)) {
+                LateResponses.timeout(future.channel, future.request);
+                future.doReceived(timeoutResponse);
+            }
+        }
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,213 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.remoting.exchange.support;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.alibaba.dubbo.remoting.Channel;
+
+/**
+ * In-flight requests of one connection, keyed by request id.
+ * <p>
+ * Each connection owns its table and its request id sequence, so looking up a response or
+ * asking whether a channel still has pending work never touches another connection. The
+ * table is an open addressing hash map on primitive long keys, which avoids boxing the ids.
+ */
+public final class InFlightRequests {
+
+    private static final String KEY              = InFlightRequests.class.getName();
+
+    private static final int    INITIAL_CAPACITY = 64;
+
+    private final AtomicLong    sequence         = new AtomicLong(0);
+
+    private long[]              keys             = new long[INITIAL_CAPACITY];
+
+    private Object[]            values           = new Object[INITIAL_CAPACITY];
+
+    private volatile int        size;
+
+    InFlightRequests() {
+    }
+
+    /**
+     * get the table of the channel.
+     * 
+     * @param channel channel.
+     * @return the table, or null if no request has been sent on the channel.
+     */
+    public static InFlightRequests get(Channel channel) {
+        if (channel == null) {
+            return null;
+        }
+        return (InFlightRequests) channel.getAttribute(KEY);
+    }
+
+    public static InFlightRequests getOrCreate(Channel channel) {
+        InFlightRequests table = get(channel);
+        if (table == null) {
+            // once per connection, a global lock is good enough.
+            synchronized (InFlightRequests.class) {
+                table = get(channel);
+                if (table == null) {
+                    table = new InFlightRequests();
+                    channel.setAttribute(KEY, table);
+                }
+            }
+        }
+        return table;
+    }
+
+    public static boolean hasPending(Channel channel) {
+        InFlightRequests table = get(channel);
+        return table != null && !table.isEmpty();
+    }
+
+    /**
+     * allocate the id of the next request on this connection.
+     */
+    public long newId() {
+        return sequence.getAndIncrement();
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public synchronized Object get(long id) {
+        int i = indexOf(id);
+        return i < 0 ? null : values[i];
+    }
+
+    public synchronized void put(long id, Object value) {
+        if (value == null) {
+            throw new IllegalArgumentException("value == null");
+        }
+        int mask = keys.length - 1;
+        int i = hash(id) & mask;
+        while (values[i] != null) {
+            if (keys[i] == id) {
+                values[i] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = id;
+        values[i] = value;
+        size++;
+        // keep the load factor under 1/2, so probe sequences stay short.
+        if (size > keys.length >> 1) {
+            rehash(keys.length << 1);
+        }
+    }
+
+    public synchronized Object remove(long id) {
+        int i = indexOf(id);
+        if (i < 0) {
+            return null;
+        }
+        Object value = values[i];
+        removeAt(i);
+        return value;
+    }
+
+    /**
+     * remove the id only if it is still mapped to the given value.
+     * 
+     * @return true if removed by this call.
+     */
+    public synchronized boolean remove(long id, Object value) {
+        int i = indexOf(id);
+        if (i < 0 || values[i] != value) {
+            return false;
+        }
+        removeAt(i);
+        return true;
+    }
+
+    /**
+     * snapshot of the in-flight values.
+     */
+    public synchronized List<Object> values() {
+        List<Object> result = new ArrayList<Object>(size);
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                result.add(values[i]);
+            }
+        }
+        return result;
+    }
+
+    private int indexOf(long id) {
+        int mask = keys.length - 1;
+        int i = hash(id) & mask;
+        while (values[i] != null) {
+            if (keys[i] == id) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void removeAt(int i) {
+        int mask = keys.length - 1;
+        values[i] = null;
+        size--;
+        // shift back the following entries of the probe sequence, so no tombstone is needed.
+        int j = (i + 1) & mask;
+        while (values[j] != null) {
+            int home = hash(keys[j]) & mask;
+            if ((j > i && (home <= i || home > j)) || (j < i && (home <= i && home > j))) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                values[j] = null;
+                i = j;
+            }
+            j = (j + 1) & mask;
+        }
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[capacity];
+        values = new Object[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int j = hash(oldKeys[i]) & mask;
+                while (values[j] != null) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+    private static int hash(long id) {
+        int h = (int) (id ^ (id >>> 32));
+        return h ^ (h >>> 16);
+    }
+
+}
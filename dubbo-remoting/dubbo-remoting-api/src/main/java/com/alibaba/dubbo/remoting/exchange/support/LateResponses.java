@@ -0,0 +1,252 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.remoting.exchange.support;
+
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.alibaba.dubbo.common.Constants;
+import com.alibaba.dubbo.common.logger.Logger;
+import com.alibaba.dubbo.common.logger.LoggerFactory;
+import com.alibaba.dubbo.common.utils.ConfigUtils;
+import com.alibaba.dubbo.common.utils.NetUtils;
+import com.alibaba.dubbo.remoting.Channel;
+import com.alibaba.dubbo.remoting.exchange.Request;
+import com.alibaba.dubbo.remoting.exchange.Response;
+import com.alibaba.dubbo.rpc.Invocation;
+
+/**
+ * 超时后才返回的响应的统计。
+ * <p>
+ * 请求超时时在所属连接上记下它的服务、方法和超时时刻，迟到的响应据此按提供者、服务和方法计数，
+ * 并按迟到的时长计入直方图。日志按统计项限速，每个间隔内只打印一条样本和被略过的条数。
+ */
+public final class LateResponses {
+
+    private static final Logger                            logger           = LoggerFactory.getLogger(LateResponses.class);
+
+    public static final String                             LOG_INTERVAL_KEY = "dubbo.remoting.late.log.interval";
+
+    private static final long                              LOG_INTERVAL     = Long.parseLong(ConfigUtils.getProperty(LOG_INTERVAL_KEY, "10000"));
+
+    private static final String                            KEY              = LateResponses.class.getName();
+
+    // 每个连接上记住的最近超时请求数
+    private static final int                               MAX_TIMED_OUT    = 1024;
+
+    private static final String                            UNKNOWN          = "unknown";
+
+    /**
+     * 直方图各桶的上界(毫秒)，最后一个桶没有上界
+     */
+    public static final long[]                             BUCKETS          = new long[] {10, 50, 100, 500, 1000, 5000};
+
+    private static final ConcurrentMap<String, Statistics> STATISTICS       = new ConcurrentHashMap<String, Statistics>();
+
+    private LateResponses() {
+    }
+
+    /**
+     * the request is timed out, remember it for its late response.
+     */
+    public static void timeout(Channel channel, Request request) {
+        if (channel == null || request == null) {
+            return;
+        }
+        Map<Long, TimedOut> timedOut = getTimedOut(channel);
+        TimedOut record = new TimedOut(getServiceKey(request.getData()), System.currentTimeMillis());
+        synchronized (timedOut) {
+            timedOut.put(request.getId(), record);
+        }
+    }
+
+    /**
+     * a response without pending request is received.
+     */
+    public static void received(Channel channel, Response response) {
+        TimedOut record = null;
+        if (channel != null) {
+            Map<Long, TimedOut> timedOut = getTimedOut(channel);
+            synchronized (timedOut) {
+                record = timedOut.remove(response.getId());
+            }
+        }
+        String provider = channel == null ? UNKNOWN : toAddressString(channel.getRemoteAddress());
+        String service = record == null ? UNKNOWN : record.service;
+        long lateness = record == null ? -1 : System.currentTimeMillis() - record.timestamp;
+        Statistics statistics = getStatistics(provider + " " + service);
+        long suppressed = statistics.record(lateness);
+        if (suppressed >= 0 && logger.isWarnEnabled()) {
+            logger.warn("The timeout response finally returned " + (lateness < 0 ? "" : lateness + " ms late")
+                        + ", id: " + response.getId() + ", status: " + response.getStatus()
+                        + ", service: " + service + ", provider: " + provider
+                        + (channel == null ? "" : ", channel: " + channel.getLocalAddress() + " -> " + channel.getRemoteAddress())
+                        + ", total late: " + statistics.getCount()
+                        + (suppressed > 0 ? ", " + suppressed + " more not logged in the last " + LOG_INTERVAL + " ms" : ""));
+        }
+    }
+
+    /**
+     * @return statistics keyed by "provider service.method".
+     */
+    public static Map<String, Statistics> getStatistics() {
+        return Collections.unmodifiableMap(STATISTICS);
+    }
+
+    private static Statistics getStatistics(String key) {
+        Statistics statistics = STATISTICS.get(key);
+        if (statistics == null) {
+            STATISTICS.putIfAbsent(key, new Statistics());
+            statistics = STATISTICS.get(key);
+        }
+        return statistics;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<Long, TimedOut> getTimedOut(Channel channel) {
+        Map<Long, TimedOut> timedOut = (Map<Long, TimedOut>) channel.getAttribute(KEY);
+        if (timedOut == null) {
+            synchronized (LateResponses.class) {
+                timedOut = (Map<Long, TimedOut>) channel.getAttribute(KEY);
+                if (timedOut == null) {
+                    timedOut = new LinkedHashMap<Long, TimedOut>() {
+                        private static final long serialVersionUID = 1L;
+
+                        @Override
+                        protected boolean removeEldestEntry(Map.Entry<Long, TimedOut> eldest) {
+                            return size() > MAX_TIMED_OUT;
+                        }
+                    };
+                    channel.setAttribute(KEY, timedOut);
+                }
+            }
+        }
+        return timedOut;
+    }
+
+    private static String getServiceKey(Object data) {
+        if (data instanceof Invocation) {
+            Invocation invocation = (Invocation) data;
+            return invocation.getAttachment(Constants.PATH_KEY) + "." + invocation.getMethodName();
+        }
+        return UNKNOWN;
+    }
+
+    private static String toAddressString(InetSocketAddress address) {
+        return address == null ? UNKNOWN : NetUtils.toAddressString(address);
+    }
+
+    private static final class TimedOut {
+
+        private final String service;
+
+        private final long   timestamp;
+
+        TimedOut(String service, long timestamp) {
+            this.service = service;
+            this.timestamp = timestamp;
+        }
+    }
+
+    public static final class Statistics {
+
+        private final AtomicLong      count     = new AtomicLong();
+
+        private final AtomicLong      max       = new AtomicLong();
+
+        // 最后一个桶之后还有一个无上界的桶，再之后是迟到时长未知的桶
+        private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS.length + 2);
+
+        private final AtomicLong      lastLog   = new AtomicLong();
+
+        private final AtomicLong      skipped   = new AtomicLong();
+
+        /**
+         * @return the number of skipped logs to report if this one should be logged, otherwise -1.
+         */
+        long record(long lateness) {
+            count.incrementAndGet();
+            if (lateness < 0) {
+                histogram.incrementAndGet(BUCKETS.length + 1);
+            } else {
+                int i = 0;
+                while (i < BUCKETS.length && lateness >= BUCKETS[i]) {
+                    i ++;
+                }
+                histogram.incrementAndGet(i);
+                long m;
+                while (lateness > (m = max.get())) {
+                    if (max.compareAndSet(m, lateness)) {
+                        break;
+                    }
+                }
+            }
+            long now = System.currentTimeMillis();
+            long last = lastLog.get();
+            if (now - last >= LOG_INTERVAL && lastLog.compareAndSet(last, now)) {
+                return skipped.getAndSet(0);
+            }
+            skipped.incrementAndGet();
+            return -1;
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getMax() {
+            return max.get();
+        }
+
+        /**
+         * @return counts of the buckets, bounded by {@link LateResponses#BUCKETS}, then the unbounded one,
+         *         then the responses whose lateness is unknown.
+         */
+        public long[] getHistogram() {
+            long[] counts = new long[histogram.length()];
+            for (int i = 0; i < counts.length; i ++) {
+                counts[i] = histogram.get(i);
+            }
+            return counts;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder buf = new StringBuilder();
+            buf.append("count: ").append(getCount()).append(", max: ").append(getMax()).append("ms, histogram:");
+            long[] counts = getHistogram();
+            for (int i = 0; i < counts.length; i ++) {
+                buf.append(' ');
+                if (i < BUCKETS.length) {
+                    buf.append("<").append(BUCKETS[i]).append("ms");
+                } else if (i == BUCKETS.length) {
+                    buf.append(">=").append(BUCKETS[BUCKETS.length - 1]).append("ms");
+                } else {
+                    buf.append("unknown");
+                }
+                buf.append('=').append(counts[i]);
+            }
+            return buf.toString();
+        }
+    }
+
+}
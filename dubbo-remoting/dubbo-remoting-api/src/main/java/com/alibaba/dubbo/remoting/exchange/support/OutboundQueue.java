@@ -0,0 +1,286 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.remoting.exchange.support;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.alibaba.dubbo.common.Constants;
+import com.alibaba.dubbo.common.URL;
+import com.alibaba.dubbo.common.logger.Logger;
+import com.alibaba.dubbo.common.logger.LoggerFactory;
+import com.alibaba.dubbo.common.utils.NamedThreadFactory;
+import com.alibaba.dubbo.common.utils.StringUtils;
+import com.alibaba.dubbo.remoting.Channel;
+import com.alibaba.dubbo.remoting.RemotingException;
+import com.alibaba.dubbo.remoting.exchange.Request;
+import com.alibaba.dubbo.remoting.exchange.Response;
+import com.alibaba.dubbo.remoting.exchange.support.completable.FutureAndChannelHolder;
+import com.alibaba.dubbo.remoting.transport.Hessian2TypeCache;
+
+/**
+ * 连接上合并写出的出站队列。
+ * <p>
+ * 多个业务线程共享一个连接时，每条消息各自编码、写出，在传输层的写路径上竞争。开启write.coalescing后，
+ * 请求和响应先进入连接上的队列(多生产者、单消费者)：发现队列空闲的发送线程成为写出方，把已入队的消息合并为一批，
+ * 编码到同一个buffer后一次写出；其它发送线程入队后直接返回。发送线程最多写出{@link #DRAIN_BATCHES}批，
+ * 队列中剩余的消息交给共享的写出线程池继续写出，每次同样最多写出这些批后重新提交，各连接轮流执行；
+ * 同一连接同时只有一个线程写出。
+ * <p>
+ * 每批不超过write.batch.bytes，按之前各批编码后的平均消息长度估算条数；write.batch.latency(微秒)大于0时，
+ * 队列由空变为非空后发送线程不写出，由写出线程池在该延迟后合并写出，以这段延迟换取更少的写出次数，发送线程不等待。
+ * 需要等待写出完成(sent=true)的消息不经过队列。
+ * 编码失败的请求、写出失败的一批中的请求立即以失败的响应结束，不再等到超时。只用于以ExchangeCodec编码的连接。
+ */
+public final class OutboundQueue {
+
+    private static final Logger logger                    = LoggerFactory.getLogger(OutboundQueue.class);
+
+    public static final String  WRITE_COALESCING_KEY      = "write.coalescing";
+
+    public static final String  WRITE_BATCH_BYTES_KEY     = "write.batch.bytes";
+
+    public static final int     DEFAULT_WRITE_BATCH_BYTES = 64 * 1024;
+
+    public static final String  WRITE_BATCH_LATENCY_KEY   = "write.batch.latency";
+
+    public static final int     DEFAULT_WRITE_BATCH_LATENCY = 0;
+
+    private static final String KEY                       = OutboundQueue.class.getName();
+
+    // 尚无编码结果时估算的消息长度
+    private static final int    INITIAL_MESSAGE_LENGTH    = 1024;
+
+    // 每次持有写出权时最多写出的批数
+    static final int            DRAIN_BATCHES             = 4;
+
+    static final String         FLUSH_THREAD_NAME         = "DubboOutboundFlush";
+
+    // 编码在channel.send中、由写出的线程在连接的Hessian2TypeCache锁内完成，写出线程池因此按CPU数分配
+    static final int            FLUSH_THREADS             = Runtime.getRuntime().availableProcessors();
+
+    // 写出发送线程没写完的消息、等待write.batch.latency后写出
+    private static final ScheduledThreadPoolExecutor FLUSHER = new ScheduledThreadPoolExecutor(FLUSH_THREADS,
+            new NamedThreadFactory(FLUSH_THREAD_NAME, true));
+
+    private final ConcurrentLinkedQueue<Object> queue     = new ConcurrentLinkedQueue<Object>();
+
+    // 入队后未被写出方看到的次数，从0变为非0的发送线程成为写出方
+    private final AtomicInteger wip                       = new AtomicInteger();
+
+    private final int           batchBytes;
+
+    private final long          latencyNanos;
+
+    private volatile int        messageLength             = INITIAL_MESSAGE_LENGTH;
+
+    private OutboundQueue(URL url) {
+        batchBytes = Math.max(1, url.getParameter(WRITE_BATCH_BYTES_KEY, DEFAULT_WRITE_BATCH_BYTES));
+        latencyNanos = TimeUnit.MICROSECONDS.toNanos(url.getParameter(WRITE_BATCH_LATENCY_KEY, DEFAULT_WRITE_BATCH_LATENCY));
+    }
+
+    static OutboundQueue get(Channel channel) {
+        return (OutboundQueue) channel.getAttribute(KEY);
+    }
+
+    private static OutboundQueue forSend(Channel channel) {
+        OutboundQueue queue = get(channel);
+        if (queue != null) {
+            return queue;
+        }
+        URL url = channel.getUrl();
+        if (url == null || !url.getParameter(WRITE_COALESCING_KEY, false)) {
+            return null;
+        }
+        synchronized (OutboundQueue.class) {
+            queue = get(channel);
+            if (queue == null) {
+                queue = new OutboundQueue(url);
+                channel.setAttribute(KEY, queue);
+            }
+        }
+        return queue;
+    }
+
+    /**
+     * 发送请求或响应，开启合并写出时可能在返回后才由其它线程写出。
+     */
+    public static void send(Channel channel, Object message, boolean sent) throws RemotingException {
+        OutboundQueue queue = sent ? null : forSend(channel);
+        if (queue == null) {
+            Hessian2TypeCache.send(channel, message, sent);
+        } else {
+            queue.offer(channel, message);
+        }
+    }
+
+    public static void send(Channel channel, Object message) throws RemotingException {
+        OutboundQueue queue = forSend(channel);
+        if (queue == null || channel.getUrl().getParameter(Constants.SENT_KEY, false)) {
+            Hessian2TypeCache.send(channel, message);
+        } else {
+            queue.offer(channel, message);
+        }
+    }
+
+    private void offer(Channel channel, Object message) {
+        queue.offer(message);
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        if (latencyNanos > 0) {
+            flushLater(channel, 1, latencyNanos);
+        } else {
+            drain(channel, 1);
+        }
+    }
+
+    /**
+     * 持有写出权时调用，最多写出{@link #DRAIN_BATCHES}批，没写完时连同写出权交给写出线程。
+     *
+     * @param missed 已看到的入队次数
+     */
+    private void drain(Channel channel, int missed) {
+        int batches = 0;
+        for (;;) {
+            while (batches < DRAIN_BATCHES) {
+                int limit = Math.max(1, batchBytes / Math.max(1, messageLength));
+                Batch batch = new Batch(this, Math.min(limit, 16));
+                poll(batch, limit);
+                if (batch.size() == 0) {
+                    break;
+                }
+                write(channel, batch);
+                batches++;
+            }
+            if (batches >= DRAIN_BATCHES && !queue.isEmpty()) {
+                flushLater(channel, missed, 0);
+                return;
+            }
+            missed = wip.addAndGet(-missed);
+            if (missed == 0) {
+                return;
+            }
+        }
+    }
+
+    private void flushLater(final Channel channel, final int missed, long delayNanos) {
+        FLUSHER.schedule(new Runnable() {
+            public void run() {
+                drain(channel, missed);
+            }
+        }, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void poll(Batch batch, int limit) {
+        Object message;
+        while (batch.size() < limit && (message = queue.poll()) != null) {
+            batch.messages.add(message);
+        }
+    }
+
+    private static void write(Channel channel, Batch batch) {
+        try {
+            // 单条消息仍按原样写出
+            Hessian2TypeCache.send(channel, batch.size() == 1 ? batch.messages.get(0) : batch, false);
+        } catch (Throwable t) {
+            for (int i = 0; i < batch.size(); i++) {
+                batch.failed(channel, i, t);
+            }
+        }
+    }
+
+    private static void failed(Channel channel, Object message, Throwable cause) {
+        if (message instanceof Request && ((Request) message).isTwoWay()) {
+            Response response = new Response(((Request) message).getId(), ((Request) message).getVersion());
+            response.setStatus(Response.CLIENT_ERROR);
+            response.setErrorMessage("Failed to send request " + message + " to " + channel.getRemoteAddress()
+                                     + ", cause: " + StringUtils.toString(cause));
+            FutureAndChannelHolder.received(channel, response);
+        } else {
+            logger.warn("Failed to send message " + message + " to " + channel.getRemoteAddress() + ", cause: "
+                        + cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * 合并写出的一批消息，由编解码器依次编码到同一个buffer。
+     */
+    public static final class Batch implements Iterable<Object> {
+
+        private final OutboundQueue queue;
+
+        private final List<Object>  messages;
+
+        private boolean[]           failed;
+
+        private Batch(OutboundQueue queue, int capacity) {
+            this.queue = queue;
+            this.messages = new ArrayList<Object>(capacity);
+        }
+
+        public int size() {
+            return messages.size();
+        }
+
+        public Object get(int index) {
+            return messages.get(index);
+        }
+
+        public Iterator<Object> iterator() {
+            return messages.iterator();
+        }
+
+        /**
+         * 编码其中一条消息失败时调用，该消息不写出，其它消息不受影响。
+         */
+        public void failed(Channel channel, int index, Throwable cause) {
+            if (failed == null) {
+                failed = new boolean[messages.size()];
+            }
+            if (!failed[index]) {
+                failed[index] = true;
+                OutboundQueue.failed(channel, messages.get(index), cause);
+            }
+        }
+
+        /**
+         * 整批编码完成后调用，用于估算之后每批的条数。
+         *
+         * @param length the length of the encoded messages
+         */
+        public void encoded(int length) {
+            int n = messages.size() - (failed == null ? 0 : countFailed());
+            if (n > 0) {
+                queue.messageLength = (queue.messageLength * 3 + length / n) / 4;
+            }
+        }
+
+        private int countFailed() {
+            int n = 0;
+            for (boolean b : failed) {
+                if (b) n++;
+            }
+            return n;
+        }
+    }
+
+}
@@ -1,129 +1,96 @@
 package com.alibaba.dubbo.remoting.exchange.support.completable;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
-import java.util.function.Function;
 
 import com.alibaba.dubbo.common.Constants;
 import com.alibaba.dubbo.common.logger.Logger;
 import com.alibaba.dubbo.common.logger.LoggerFactory;
 import com.alibaba.dubbo.remoting.Channel;
+import com.alibaba.dubbo.remoting.ChannelClosedException;
 import com.alibaba.dubbo.remoting.RemotingException;
 import com.alibaba.dubbo.remoting.TimeoutException;
 import com.alibaba.dubbo.remoting.exchange.Request;
 import com.alibaba.dubbo.remoting.exchange.Response;
 import com.alibaba.dubbo.remoting.exchange.ResponseCallback;
 import com.alibaba.dubbo.remoting.exchange.completable.CompletableResponseFuture;
+import com.alibaba.dubbo.remoting.exchange.support.DefaultFuture;
+import com.alibaba.dubbo.remoting.exchange.support.LateResponses;
+import com.alibaba.dubbo.remoting.timer.Timeout;
 import com.alibaba.dubbo.rpc.Result;
 
-public class CompletableDefaultFuture implements CompletableResponseFuture {
+public class CompletableDefaultFuture extends PendingResponse implements
+		CompletableResponseFuture {
 	private static final Logger LOGGER = LoggerFactory
 			.getLogger(CompletableDefaultFuture.class);
 
-	private static final ScheduledExecutorService SERVICE = Executors
-			.newScheduledThreadPool(1, new ThreadFactory() {
-				@Override
-				public Thread newThread(Runnable r) {
-					Thread t = new Thread(r, "DubboResponseTimeout");
-					t.setDaemon(true);
-					return t;
-				}
-			});
-
-	private final Channel channel;
-	private final Request request;
-	private final int timeout;
 	private final CompletableFuture<Object> future;
-	private final long id;
-	private final Lock lock;
-	private final Condition condition;
-	private final long start;
-	private volatile long sent;
+	private final Timeout timeoutTask;
 	private volatile Response response;
 
 	public CompletableDefaultFuture(final Channel channel, Request request,
 			final int timeout) {
-		this.channel = channel;
-		this.request = request;
-		this.timeout = timeout > 0 ? timeout : channel.getUrl()
-				.getPositiveParameter(Constants.TIMEOUT_KEY,
-						Constants.DEFAULT_TIMEOUT);
-		this.lock = new ReentrantLock();
-		this.condition = lock.newCondition();
-		this.id = request.getId();
-		this.start = System.currentTimeMillis();
-		FutureAndChannelHolder.put(id, this, channel);
-		future = CompletableFuture.supplyAsync(this::waitAsync);
-		future.applyToEither(failAfter(), Function.identity()).exceptionally(
-				this::handleException);
+		super(channel, request, timeout);
+		// completed by the response handler, no thread waits per request.
+		// canceling it, e.g. through RpcContext.getFuture(), cancels the
+		// request on the provider as well.
+		this.future = new CompletableFuture<Object>() {
+			@Override
+			public boolean cancel(boolean mayInterruptIfRunning) {
+				return CompletableDefaultFuture.this.cancel();
+			}
+		};
+		this.timeoutTask = DefaultFuture.TIMEOUT_TIMER.newTimeout(
+				t -> doTimeout(), this.timeout, TimeUnit.MILLISECONDS);
 	}
 
-	private Object waitAsync() {
+	private void doTimeout() {
 		if (!isDone()) {
-			lock.lock();
-			try {
-				condition.await();
-			} catch (InterruptedException e) {
-				throw new RuntimeException(e);
-			} finally {
-				lock.unlock();
+			// create exception response.
+			Response timeoutResponse = new Response(getId());
+			// set timeout status.
+			timeoutResponse.setStatus(isSent() ? Response.SERVER_TIMEOUT
+					: Response.CLIENT_TIMEOUT);
+			timeoutResponse.setErrorMessage(getTimeoutMessage(true));
+			// handle response, unless the real one has just been claimed.
+			if (inFlight.remove(id, this)) {
+				LateResponses.timeout(channel, request);
+				doReceived(timeoutResponse);
 			}
 		}
-		Object object = response.getResult();
-		if (object == null)
-			return null;
-		try {
-			return ((Result) object).recreate();
-		} catch (Throwable e) {
-			throw new RuntimeException(e);
-		}
 	}
 
-	private CompletableFuture<Object> failAfter() {
-		final CompletableFuture<Object> promise = new CompletableFuture<>();
-		SERVICE.schedule(() -> {
-			if (!isDone()) {
-				// create exception response.
-				Response timeoutResponse = new Response(getId());
-				// set timeout status.
-				timeoutResponse.setStatus(isSent() ? Response.SERVER_TIMEOUT
-						: Response.CLIENT_TIMEOUT);
-				timeoutResponse.setErrorMessage(getTimeoutMessage(true));
-				// handle response.
-				FutureAndChannelHolder.received(getChannel(), timeoutResponse);
+	private void complete(Response res) {
+		if (res.getStatus() == Response.OK) {
+			Object result = res.getResult();
+			if (result instanceof Result) {
+				try {
+					future.complete(((Result) result).recreate());
+				} catch (Throwable e) {
+					future.completeExceptionally(e);
+				}
+			} else {
+				future.complete(result);
 			}
-			return promise.complete(null);
-		}, getTimeout(), TimeUnit.MILLISECONDS);
-		return promise;
-	}
-
-	private Void handleException(Throwable throwable) {
-		Response exceptionResponse = new Response(getId());
-		exceptionResponse.setStatus(Response.SERVICE_ERROR);
-		exceptionResponse.setErrorMessage(throwable.getMessage());
-		FutureAndChannelHolder.received(channel, exceptionResponse);
-		LOGGER.warn("future throw an exception: ", throwable);
-		return null;
+		} else if (res.getStatus() == Response.CLIENT_TIMEOUT
+				|| res.getStatus() == Response.SERVER_TIMEOUT) {
+			future.completeExceptionally(new TimeoutException(
+					res.getStatus() == Response.SERVER_TIMEOUT, channel, res
+							.getErrorMessage()));
+		} else if (res.getStatus() == Response.CHANNEL_INACTIVE) {
+			future.completeExceptionally(new ChannelClosedException(channel,
+					res.getErrorMessage()));
+		} else {
+			future.completeExceptionally(new RemotingException(channel, res
+					.getErrorMessage()));
+		}
 	}
 
 	@Override
 	public Object get() throws RemotingException {
-		try {
-			return future.get();
-		} catch (InterruptedException e) {
-			throw new RemotingException(channel, e.getMessage());
-		} catch (ExecutionException e) {
-			throw new RemotingException(channel, e.getMessage());
-		}
+		return get(timeout);
 	}
 
 	@Override
@@ -133,40 +100,25 @@ public class CompletableDefaultFuture implements CompletableResponseFuture {
 		}
 
 		try {
-			return future.get(timeoutInMillis, TimeUnit.MILLISECONDS);
+			future.get(timeoutInMillis, TimeUnit.MILLISECONDS);
 		} catch (InterruptedException e) {
 			throw new RemotingException(channel, e.getMessage());
 		} catch (ExecutionException e) {
-			throw new RemotingException(channel, e.getMessage());
+			// the response itself carries the failure, see below.
+		} catch (CancellationException e) {
+			// canceled locally, the error response is already set.
 		} catch (java.util.concurrent.TimeoutException e) {
 			throw new TimeoutException(sent > 0, channel,
 					getTimeoutMessage(false));
 		}
-	}
-
-	String getTimeoutMessage(boolean scan) {
-		long nowTimestamp = System.currentTimeMillis();
-		return (sent > 0 ? "Waiting server-side response timeout"
-				: "Sending request timeout in client-side")
-				+ (scan ? " by scan timer" : "")
-				+ ". start time: "
-				+ (new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS")
-						.format(new Date(start)))
-				+ ", end time: "
-				+ (new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS")
-						.format(new Date()))
-				+ ","
-				+ (sent > 0 ? " client elapsed: " + (sent - start)
-						+ " ms, server elapsed: " + (nowTimestamp - sent)
-						: " elapsed: " + (nowTimestamp - start))
-				+ " ms, timeout: "
-				+ timeout
-				+ " ms, request: "
-				+ request
-				+ ", channel: "
-				+ channel.getLocalAddress()
-				+ " -> "
-				+ channel.getRemoteAddress();
+		Response res = response;
+		if (res == null) {
+			// completed from outside, e.g. by the caller, not by a response.
+			throw new RemotingException(channel,
+					future.isCancelled() ? "request future has been canceled."
+							: "request future has been completed without a response.");
+		}
+		return returnFromResponse(res);
 	}
 
 	@Override
@@ -188,48 +140,47 @@ public class CompletableDefaultFuture implements CompletableResponseFuture {
 
 	@Override
 	public boolean cancel() {
+		if (!inFlight.remove(id, this)) {
+			// completed already.
+			return false;
+		}
+		// the error response is set before anyone blocked in get() wakes up.
 		Response errorResult = new Response(id);
+		errorResult.setStatus(Response.CLIENT_ERROR);
 		errorResult.setErrorMessage("request future has been canceled.");
 		response = errorResult;
-		FutureAndChannelHolder.remove(id);
-		return future.cancel(true);
-	}
-
-	long getId() {
-		return id;
-	}
-
-	Channel getChannel() {
-		return channel;
-	}
-
-	int getTimeout() {
-		return timeout;
-	}
-
-	void doSent() {
-		sent = System.currentTimeMillis();
-	}
-
-	boolean isSent() {
-		return sent > 0;
-	}
-
-	long getStartTimestamp() {
-		return start;
+		timeoutTask.cancel();
+		if (isSent()) {
+			sendCancel();
+		}
+		// same as CompletableFuture.cancel, which is overridden above.
+		future.completeExceptionally(new CancellationException(
+				"request future has been canceled."));
+		return true;
 	}
 
-	public Request getRequest() {
-		return request;
+	private void sendCancel() {
+		Request cancel = new Request(id);
+		cancel.setVersion(request.getVersion());
+		cancel.setTwoWay(false);
+		cancel.setEvent(Request.CANCEL_EVENT);
+		try {
+			channel.send(cancel, false);
+		} catch (Throwable e) {
+			LOGGER.warn("Failed to send cancel of request " + request
+					+ " to " + channel.getRemoteAddress() + ", cause: "
+					+ e.getMessage(), e);
+		}
 	}
 
+	@Override
 	void doReceived(Response response) {
-		lock.lock();
-		try {
-			this.response = response;
-			condition.signal();
-		} finally {
-			lock.unlock();
+		this.response = response;
+		if (timeoutTask != null) {
+			timeoutTask.cancel();
+		}
+		if (future != null) {
+			complete(response);
 		}
 	}
 
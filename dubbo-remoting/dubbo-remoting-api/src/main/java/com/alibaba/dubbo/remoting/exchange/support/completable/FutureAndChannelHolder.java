@@ -1,67 +1,105 @@
 package com.alibaba.dubbo.remoting.exchange.support.completable;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-
 import com.alibaba.dubbo.common.logger.Logger;
 import com.alibaba.dubbo.common.logger.LoggerFactory;
 import com.alibaba.dubbo.remoting.Channel;
 import com.alibaba.dubbo.remoting.exchange.Request;
 import com.alibaba.dubbo.remoting.exchange.Response;
+import com.alibaba.dubbo.remoting.exchange.support.InFlightRequests;
+import com.alibaba.dubbo.remoting.exchange.support.LateResponses;
 
 public final class FutureAndChannelHolder {
 	private static final Logger LOGGER = LoggerFactory
 			.getLogger(FutureAndChannelHolder.class);
-	private static final Map<Long, CompletableDefaultFuture> FUTURES = new ConcurrentHashMap<Long, CompletableDefaultFuture>();
-	private static final Map<Long, Channel> CHANNELS = new ConcurrentHashMap<Long, Channel>();
 
 	private FutureAndChannelHolder() {
 	}
 
 	public static boolean hasFuture(Channel channel) {
-		return CHANNELS.containsValue(channel);
+		return InFlightRequests.hasPending(channel);
 	}
 
-	static void put(Long id, CompletableDefaultFuture future, Channel channel) {
-		FUTURES.put(id, future);
-		CHANNELS.put(id, channel);
+	public static CompletableDefaultFuture getFuture(Channel channel, long id) {
+		InFlightRequests inFlight = InFlightRequests.get(channel);
+		if (inFlight == null) {
+			return null;
+		}
+		Object future = inFlight.get(id);
+		return future instanceof CompletableDefaultFuture ? (CompletableDefaultFuture) future
+				: null;
 	}
 
-	static void remove(Long id) {
-		FUTURES.remove(id);
-		CHANNELS.remove(id);
+	private static PendingResponse getPending(Channel channel, long id) {
+		InFlightRequests inFlight = InFlightRequests.get(channel);
+		if (inFlight == null) {
+			return null;
+		}
+		Object pending = inFlight.get(id);
+		return pending instanceof PendingResponse ? (PendingResponse) pending
+				: null;
 	}
-	
-	public static CompletableDefaultFuture getFuture(Long id) {
-		return FUTURES.get(id);
+
+	/**
+	 * the request still waiting for its response, either asynchronously or
+	 * synchronously.
+	 */
+	public static Request getRequest(Channel channel, long id) {
+		PendingResponse pending = getPending(channel, id);
+		return pending == null ? null : pending.getRequest();
 	}
 
 	public static void sent(Channel channel, Request request) {
-		CompletableDefaultFuture future = FUTURES.get(request.getId());
-		if (future != null) {
-			future.doSent();
+		PendingResponse pending = getPending(channel, request.getId());
+		if (pending != null) {
+			pending.doSent();
+		}
+	}
+
+	/**
+	 * fail all the pending requests of the closed channel at once, instead of
+	 * letting them wait for their timeout.
+	 */
+	public static void closeChannel(Channel channel) {
+		InFlightRequests inFlight = InFlightRequests.get(channel);
+		if (inFlight == null) {
+			return;
+		}
+		for (Object pending : inFlight.values()) {
+			if (pending instanceof PendingResponse) {
+				PendingResponse future = (PendingResponse) pending;
+				if (inFlight.remove(future.getId(), future)) {
+					Response disconnectResponse = new Response(future.getId());
+					disconnectResponse.setStatus(Response.CHANNEL_INACTIVE);
+					disconnectResponse.setErrorMessage("Channel " + channel
+							+ " is closed, the pending request is failed directly: "
+							+ future.getRequest());
+					try {
+						future.doReceived(disconnectResponse);
+					} catch (Throwable e) {
+						// fail the rest of the pending requests anyway.
+						LOGGER.warn("Failed to fail the pending request "
+								+ future.getRequest() + " of closed channel "
+								+ channel + ", cause: " + e.getMessage(), e);
+					}
+				}
+			}
 		}
 	}
 
 	public static void received(Channel channel, Response response) {
-		try {
-			CompletableDefaultFuture future = FUTURES.remove(response.getId());
-			if (future != null) {
-				future.doReceived(response);
-			} else {
-				LOGGER.warn("The timeout response finally returned at "
-						+ (new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS")
-								.format(new Date()))
-						+ ", response "
-						+ response
-						+ (channel == null ? "" : ", channel: "
-								+ channel.getLocalAddress() + " -> "
-								+ channel.getRemoteAddress()));
+		InFlightRequests inFlight = InFlightRequests.get(channel);
+		PendingResponse future = null;
+		if (inFlight != null) {
+			Object pending = inFlight.get(response.getId());
+			if (pending instanceof PendingResponse
+					&& inFlight.remove(response.getId(), pending)) {
+				future = (PendingResponse) pending;
 			}
-		} finally {
-			CHANNELS.remove(response.getId());
+		}
+		if (future != null) {
+			future.doReceived(response);
+		} else {
+			LateResponses.received(channel, response);
 		}
 	}
 }
@@ -0,0 +1,141 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.remoting.exchange.support.completable;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import com.alibaba.dubbo.common.Constants;
+import com.alibaba.dubbo.remoting.Channel;
+import com.alibaba.dubbo.remoting.ChannelClosedException;
+import com.alibaba.dubbo.remoting.RemotingException;
+import com.alibaba.dubbo.remoting.TimeoutException;
+import com.alibaba.dubbo.remoting.exchange.Request;
+import com.alibaba.dubbo.remoting.exchange.Response;
+import com.alibaba.dubbo.remoting.exchange.support.InFlightRequests;
+
+/**
+ * A request registered in the in-flight table of its channel, waiting for the
+ * response. Whoever removes it from the table first (the response handler,
+ * the timeout or the disconnect) completes it.
+ * <p>
+ * It is put into the table by {@link #register()} once fully constructed, a
+ * disconnect may complete it right after that.
+ */
+abstract class PendingResponse {
+
+	protected final Channel channel;
+	protected final Request request;
+	protected final int timeout;
+	protected final long id;
+	protected final long start;
+	protected final InFlightRequests inFlight;
+	protected volatile long sent;
+
+	PendingResponse(Channel channel, Request request, int timeout) {
+		this.channel = channel;
+		this.request = request;
+		this.timeout = timeout > 0 ? timeout : channel.getUrl()
+				.getPositiveParameter(Constants.TIMEOUT_KEY,
+						Constants.DEFAULT_TIMEOUT);
+		this.id = request.getId();
+		this.start = System.currentTimeMillis();
+		this.inFlight = InFlightRequests.getOrCreate(channel);
+	}
+
+	/**
+	 * put into the in-flight table of the channel, must be called after
+	 * construction and before the request is sent.
+	 */
+	public void register() {
+		inFlight.put(id, this);
+	}
+
+	abstract void doReceived(Response response);
+
+	Object returnFromResponse(Response res) throws RemotingException {
+		if (res == null) {
+			throw new IllegalStateException("response cannot be null");
+		}
+		if (res.getStatus() == Response.OK) {
+			return res.getResult();
+		}
+		if (res.getStatus() == Response.CLIENT_TIMEOUT
+				|| res.getStatus() == Response.SERVER_TIMEOUT) {
+			throw new TimeoutException(
+					res.getStatus() == Response.SERVER_TIMEOUT, channel,
+					res.getErrorMessage());
+		}
+		if (res.getStatus() == Response.CHANNEL_INACTIVE) {
+			throw new ChannelClosedException(channel, res.getErrorMessage());
+		}
+		throw new RemotingException(channel, res.getErrorMessage());
+	}
+
+	String getTimeoutMessage(boolean scan) {
+		long nowTimestamp = System.currentTimeMillis();
+		return (sent > 0 ? "Waiting server-side response timeout"
+				: "Sending request timeout in client-side")
+				+ (scan ? " by scan timer" : "")
+				+ ". start time: "
+				+ (new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS")
+						.format(new Date(start)))
+				+ ", end time: "
+				+ (new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS")
+						.format(new Date()))
+				+ ","
+				+ (sent > 0 ? " client elapsed: " + (sent - start)
+						+ " ms, server elapsed: " + (nowTimestamp - sent)
+						: " elapsed: " + (nowTimestamp - start))
+				+ " ms, timeout: "
+				+ timeout
+				+ " ms, request: "
+				+ request
+				+ ", channel: "
+				+ channel.getLocalAddress()
+				+ " -> "
+				+ channel.getRemoteAddress();
+	}
+
+	long getId() {
+		return id;
+	}
+
+	Channel getChannel() {
+		return channel;
+	}
+
+	int getTimeout() {
+		return timeout;
+	}
+
+	void doSent() {
+		sent = System.currentTimeMillis();
+	}
+
+	boolean isSent() {
+		return sent > 0;
+	}
+
+	long getStartTimestamp() {
+		return start;
+	}
+
+	public Request getRequest() {
+		return request;
+	}
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.remoting.exchange.support.completable;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import com.alibaba.dubbo.remoting.Channel;
+import com.alibaba.dubbo.remoting.RemotingException;
+import com.alibaba.dubbo.remoting.TimeoutException;
+import com.alibaba.dubbo.remoting.exchange.Request;
+import com.alibaba.dubbo.remoting.exchange.Response;
+import com.alibaba.dubbo.remoting.exchange.support.LateResponses;
+
+/**
+ * Waiter of a synchronous call. The calling thread parks in {@link #get()}
+ * until the response handler unparks it; no future, timer task or extra
+ * thread is involved, the deadline is enforced by the parking itself.
+ */
+public final class SyncResponseWaiter extends PendingResponse {
+
+	// max park while the response is claimed but not yet set.
+	private static final long CLAIMED_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private final Thread waiter;
+	private volatile Response response;
+
+	public SyncResponseWaiter(Channel channel, Request request, int timeout) {
+		super(channel, request, timeout);
+		this.waiter = Thread.currentThread();
+	}
+
+	/**
+	 * wait for the response, must be called by the thread which created
+	 * this waiter.
+	 */
+	public Object get() throws RemotingException {
+		long remaining = TimeUnit.MILLISECONDS.toNanos(timeout);
+		long deadline = System.nanoTime() + remaining;
+		// a set interrupt flag makes parkNanos return at once, so clear it
+		// while waiting and restore it on the way out.
+		boolean interrupted = false;
+		try {
+			while (response == null && remaining > 0) {
+				LockSupport.parkNanos(this, remaining);
+				if (Thread.interrupted()) {
+					interrupted = true;
+					if (inFlight.remove(id, this)) {
+						throw new RemotingException(channel,
+								"Interrupted while waiting for the response of request: "
+										+ request);
+					}
+					// claimed by the response handler, wait for it to be set.
+				}
+				remaining = deadline - System.nanoTime();
+			}
+			if (response == null) {
+				if (inFlight.remove(id, this)) {
+					LateResponses.timeout(channel, request);
+					throw new TimeoutException(isSent(), channel,
+							getTimeoutMessage(false));
+				}
+				// claimed by the response handler just now, it is being set
+				// and will unpark this thread.
+				while (response == null) {
+					LockSupport.parkNanos(this, CLAIMED_PARK_NANOS);
+					if (Thread.interrupted()) {
+						interrupted = true;
+					}
+				}
+			}
+			return returnFromResponse(response);
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * give up the request, e.g. it could not be sent.
+	 */
+	public void cancel() {
+		inFlight.remove(id, this);
+	}
+
+	public boolean isDone() {
+		return response != null;
+	}
+
+	@Override
+	void doReceived(Response response) {
+		this.response = response;
+		LockSupport.unpark(waiter);
+	}
+
+}
@@ -30,8 +30,11 @@ import com.alibaba.dubbo.remoting.exchange.Request;
 import com.alibaba.dubbo.remoting.exchange.Response;
 import com.alibaba.dubbo.remoting.exchange.ResponseFuture;
 import com.alibaba.dubbo.remoting.exchange.completable.CompletableResponseFuture;
+import com.alibaba.dubbo.remoting.exchange.support.InFlightRequests;
+import com.alibaba.dubbo.remoting.exchange.support.OutboundQueue;
 import com.alibaba.dubbo.remoting.exchange.support.completable.CompletableDefaultFuture;
 import com.alibaba.dubbo.remoting.exchange.support.completable.FutureAndChannelHolder;
+import com.alibaba.dubbo.remoting.exchange.support.completable.SyncResponseWaiter;
 
 /**
  * ExchangeReceiver
@@ -86,13 +89,13 @@ final class HeaderExchangeChannel implements ExchangeChannel {
         if (message instanceof Request
                 || message instanceof Response
                 || message instanceof String) {
-            channel.send(message, sent);
+            OutboundQueue.send(channel, message, sent);
         } else {
             Request request = new Request();
             request.setVersion("2.0.0");
             request.setTwoWay(false);
             request.setData(message);
-            channel.send(request, sent);
+            OutboundQueue.send(channel, request, sent);
         }
     }
 
@@ -104,15 +107,16 @@ final class HeaderExchangeChannel implements ExchangeChannel {
         if (closed) {
             throw new RemotingException(this.getLocalAddress(), null, "Failed to send request " + request + ", cause: The channel " + this + " is closed!");
         }
-        // create request.
-        Request req = new Request();
+        // create request, with an id from the sequence of this connection.
+        Request req = new Request(InFlightRequests.getOrCreate(channel).newId());
         req.setVersion("2.0.0");
         req.setTwoWay(true);
         req.setData(request);
 //        DefaultFuture future = new DefaultFuture(channel, req, timeout);
-        CompletableResponseFuture future = new CompletableDefaultFuture(channel, req, timeout);
+        CompletableDefaultFuture future = new CompletableDefaultFuture(channel, req, timeout);
+        future.register();
         try{
-            channel.send(req);
+            OutboundQueue.send(channel, req);
         }catch (RemotingException e) {
             future.cancel();
             throw e;
@@ -120,6 +124,26 @@ final class HeaderExchangeChannel implements ExchangeChannel {
         return future;
     }
 
+    public Object invoke(Object request, int timeout) throws RemotingException {
+        if (closed) {
+            throw new RemotingException(this.getLocalAddress(), null, "Failed to send request " + request + ", cause: The channel " + this + " is closed!");
+        }
+        Request req = new Request(InFlightRequests.getOrCreate(channel).newId());
+        req.setVersion("2.0.0");
+        req.setTwoWay(true);
+        req.setData(request);
+        // the current thread parks until the response handler hands the response over.
+        SyncResponseWaiter waiter = new SyncResponseWaiter(channel, req, timeout);
+        waiter.register();
+        try{
+            OutboundQueue.send(channel, req);
+        }catch (RemotingException e) {
+            waiter.cancel();
+            throw e;
+        }
+        return waiter.get();
+    }
+
     public boolean isClosed() {
         return closed;
     }
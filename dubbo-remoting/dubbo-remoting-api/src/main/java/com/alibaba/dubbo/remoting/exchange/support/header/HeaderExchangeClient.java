@@ -19,14 +19,12 @@ import java.net.InetSocketAddress;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import com.alibaba.dubbo.common.Constants;
 import com.alibaba.dubbo.common.URL;
 import com.alibaba.dubbo.common.logger.Logger;
 import com.alibaba.dubbo.common.logger.LoggerFactory;
-import com.alibaba.dubbo.common.utils.NamedThreadFactory;
 import com.alibaba.dubbo.remoting.Channel;
 import com.alibaba.dubbo.remoting.ChannelHandler;
 import com.alibaba.dubbo.remoting.Client;
@@ -35,6 +33,7 @@ import com.alibaba.dubbo.remoting.exchange.ExchangeChannel;
 import com.alibaba.dubbo.remoting.exchange.ExchangeClient;
 import com.alibaba.dubbo.remoting.exchange.ExchangeHandler;
 import com.alibaba.dubbo.remoting.exchange.ResponseFuture;
+import com.alibaba.dubbo.rpc.support.HousekeepingScheduler;
 
 /**
  * DefaultMessageClient
@@ -46,8 +45,6 @@ public class HeaderExchangeClient implements ExchangeClient {
 
     private static final Logger logger = LoggerFactory.getLogger( HeaderExchangeClient.class );
 
-    private static final ScheduledThreadPoolExecutor scheduled = new ScheduledThreadPoolExecutor(2, new NamedThreadFactory("dubbo-remoting-client-heartbeat", true));
-
     // 心跳定时器
     private ScheduledFuture<?> heatbeatTimer;
 
@@ -91,6 +88,10 @@ public class HeaderExchangeClient implements ExchangeClient {
         return channel.request(request, timeout);
     }
 
+    public Object invoke(Object request, int timeout) throws RemotingException {
+        return channel.invoke(request, timeout);
+    }
+
     public ChannelHandler getChannelHandler() {
         return channel.getChannelHandler();
     }
@@ -161,7 +162,7 @@ public class HeaderExchangeClient implements ExchangeClient {
     private void startHeatbeatTimer() {
         stopHeartbeatTimer();
         if ( heartbeat > 0 ) {
-            heatbeatTimer = scheduled.scheduleWithFixedDelay(
+            heatbeatTimer = HousekeepingScheduler.scheduleWithFixedDelay("client-heartbeat",
                     new HeartBeatTask( new HeartBeatTask.ChannelProvider() {
                         public Collection<Channel> getChannels() {
                             return Collections.<Channel>singletonList( HeaderExchangeClient.this );
@@ -174,8 +175,7 @@ public class HeaderExchangeClient implements ExchangeClient {
     private void stopHeartbeatTimer() {
         if (heatbeatTimer != null && ! heatbeatTimer.isCancelled()) {
             try {
-                heatbeatTimer.cancel(true);
-                scheduled.purge();
+                heatbeatTimer.cancel(false);
             } catch ( Throwable e ) {
                 if (logger.isWarnEnabled()) {
                     logger.warn(e.getMessage(), e);
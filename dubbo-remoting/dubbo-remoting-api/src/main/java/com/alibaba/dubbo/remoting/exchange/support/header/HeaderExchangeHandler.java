@@ -16,6 +16,8 @@
 package com.alibaba.dubbo.remoting.exchange.support.header;
 
 import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.alibaba.dubbo.common.Constants;
 import com.alibaba.dubbo.common.URL;
@@ -31,7 +33,9 @@ import com.alibaba.dubbo.remoting.exchange.ExchangeChannel;
 import com.alibaba.dubbo.remoting.exchange.ExchangeHandler;
 import com.alibaba.dubbo.remoting.exchange.Request;
 import com.alibaba.dubbo.remoting.exchange.Response;
+import com.alibaba.dubbo.remoting.exchange.codec.EncodedMessage;
 import com.alibaba.dubbo.remoting.exchange.support.DefaultFuture;
+import com.alibaba.dubbo.remoting.exchange.support.OutboundQueue;
 import com.alibaba.dubbo.remoting.exchange.support.completable.FutureAndChannelHolder;
 import com.alibaba.dubbo.remoting.transport.ChannelHandlerDelegate;
 
@@ -49,6 +53,23 @@ public class HeaderExchangeHandler implements ChannelHandlerDelegate {
 
     public static String          KEY_WRITE_TIMESTAMP = HeartbeatHandler.KEY_WRITE_TIMESTAMP;
 
+    /**
+     * 是否丢弃已过截止时刻的请求，缺省为true
+     */
+    public static final String    DEADLINE_SHED_KEY      = "deadline.shed";
+
+    /**
+     * 是否中断执行超过截止时刻的请求，缺省为false
+     */
+    public static final String    DEADLINE_INTERRUPT_KEY = "deadline.interrupt";
+
+    /**
+     * 调用方取消请求时是否中断正在执行的请求，缺省为false，排队中的请求总是被丢弃
+     */
+    public static final String    CANCEL_INTERRUPT_KEY   = "cancel.interrupt";
+
+    private static final AtomicLong EXPIRED_REQUESTS     = new AtomicLong();
+
     private final ExchangeHandler handler;
 
     public HeaderExchangeHandler(ExchangeHandler handler){
@@ -61,11 +82,16 @@ public class HeaderExchangeHandler implements ChannelHandlerDelegate {
     void handlerEvent(Channel channel, Request req) throws RemotingException {
         if (req.getData() != null && req.getData().equals(Request.READONLY_EVENT)) {
             channel.setAttribute(Constants.CHANNEL_ATTRIBUTE_READONLY_KEY, Boolean.TRUE);
+        } else if (req.isCancel()) {
+            // the id of a cancel event is the id of the request to cancel.
+            RunningRequests.getOrCreate(channel).cancel(req.getId(), getParameter(channel, CANCEL_INTERRUPT_KEY, false));
         }
     }
 
     Response handleRequest(ExchangeChannel channel, Request req) throws RemotingException {
         Response res = new Response(req.getId(), req.getVersion());
+        res.setCompressor(req.getCompressor());
+        res.setSidecar(req.isSidecar());
         if (req.isBroken()) {
             Object data = req.getData();
 
@@ -78,6 +104,31 @@ public class HeaderExchangeHandler implements ChannelHandlerDelegate {
 
             return res;
         }
+        long deadline = req.getDeadline();
+        if (deadline > 0) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0 && getParameter(channel, DEADLINE_SHED_KEY, true)) {
+                // the consumer has given up already, don't waste a thread on it.
+                EXPIRED_REQUESTS.incrementAndGet();
+                res.setStatus(Response.SERVER_TIMEOUT);
+                res.setErrorMessage("The request expired " + (- remaining) + " ms before execution, request: " + req
+                        + ", channel: " + channel.getRemoteAddress() + " -> " + channel.getLocalAddress());
+                if (logger.isDebugEnabled()) {
+                    logger.debug(res.getErrorMessage());
+                }
+                return res;
+            }
+        }
+        RunningRequests runningRequests = RunningRequests.getOrCreate(channel);
+        RunningRequests.RunningRequest running = runningRequests.start(req.getId());
+        if (running == null) {
+            // canceled by the consumer while queued, nobody waits for the response.
+            return null;
+        }
+        if (deadline > 0 && getParameter(channel, DEADLINE_INTERRUPT_KEY, false)) {
+            running.setTimeout(DefaultFuture.TIMEOUT_TIMER.newTimeout(running,
+                    deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS));
+        }
         // find handler by message class.
         Object msg = req.getData();
         try {
@@ -88,8 +139,36 @@ public class HeaderExchangeHandler implements ChannelHandlerDelegate {
         } catch (Throwable e) {
             res.setStatus(Response.SERVICE_ERROR);
             res.setErrorMessage(StringUtils.toString(e));
+        } finally {
+            runningRequests.finish(running);
         }
-        return res;
+        return running.isCanceled() ? null : res;
+    }
+
+    private static boolean getParameter(Channel channel, String key, boolean defaultValue) {
+        URL url = channel.getUrl();
+        return url == null ? defaultValue : url.getParameter(key, defaultValue);
+    }
+
+    /**
+     * 因已过截止时刻而直接丢弃的请求数
+     */
+    public static long getExpiredRequests() {
+        return EXPIRED_REQUESTS.get();
+    }
+
+    /**
+     * 因执行超过截止时刻而被中断的请求数
+     */
+    public static long getInterruptedRequests() {
+        return RunningRequests.INTERRUPTED_REQUESTS.get();
+    }
+
+    /**
+     * 被调用方取消的请求数
+     */
+    public static long getCanceledRequests() {
+        return RunningRequests.CANCELED_REQUESTS.get();
     }
 
     static void handleResponse(Channel channel, Response response) throws RemotingException {
@@ -116,11 +195,23 @@ public class HeaderExchangeHandler implements ChannelHandlerDelegate {
         try {
             handler.disconnected(exchangeChannel);
         } finally {
+            // fail the requests still waiting on this channel, so callers can fail over right away.
+            FutureAndChannelHolder.closeChannel(channel);
+            DefaultFuture.closeChannel(channel);
             HeaderExchangeChannel.removeChannelIfDisconnected(channel);
         }
     }
 
     public void sent(Channel channel, Object message) throws RemotingException {
+        if (message instanceof OutboundQueue.Batch) {
+            for (Object msg : (OutboundQueue.Batch) message) {
+                sent(channel, msg);
+            }
+            return;
+        }
+        if (message instanceof EncodedMessage) {
+            message = ((EncodedMessage) message).getMessage();
+        }
         Throwable exception = null;
         try {
             channel.setAttribute(KEY_WRITE_TIMESTAMP, System.currentTimeMillis());
@@ -169,7 +260,18 @@ public class HeaderExchangeHandler implements ChannelHandlerDelegate {
                 } else {
                     if (request.isTwoWay()) {
                         Response response = handleRequest(exchangeChannel, request);
-                        channel.send(response);
+                        // 可能在当前线程上编码好后再交给传输层
+                        Object encoded = response == null ? null : EncodedMessage.encode(channel, response);
+                        if (encoded != null) {
+                            try {
+                                OutboundQueue.send(channel, encoded);
+                            } catch (RemotingException e) {
+                                if (encoded instanceof EncodedMessage) {
+                                    ((EncodedMessage) encoded).release();
+                                }
+                                throw e;
+                            }
+                        }
                     } else {
                         handler.received(exchangeChannel, request.getData());
                     }
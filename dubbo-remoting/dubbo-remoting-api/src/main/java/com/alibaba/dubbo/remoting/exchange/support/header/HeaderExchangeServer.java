@@ -19,8 +19,6 @@ import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
@@ -29,7 +27,6 @@ import com.alibaba.dubbo.common.URL;
 import com.alibaba.dubbo.common.Version;
 import com.alibaba.dubbo.common.logger.Logger;
 import com.alibaba.dubbo.common.logger.LoggerFactory;
-import com.alibaba.dubbo.common.utils.NamedThreadFactory;
 import com.alibaba.dubbo.remoting.Channel;
 import com.alibaba.dubbo.remoting.ChannelHandler;
 import com.alibaba.dubbo.remoting.RemotingException;
@@ -38,6 +35,7 @@ import com.alibaba.dubbo.remoting.exchange.ExchangeChannel;
 import com.alibaba.dubbo.remoting.exchange.ExchangeServer;
 import com.alibaba.dubbo.remoting.exchange.Request;
 import com.alibaba.dubbo.remoting.exchange.support.completable.FutureAndChannelHolder;
+import com.alibaba.dubbo.rpc.support.HousekeepingScheduler;
 
 /**
  * ExchangeServerImpl
@@ -48,11 +46,6 @@ public class HeaderExchangeServer implements ExchangeServer {
     
     protected final Logger        logger = LoggerFactory.getLogger(getClass());
 
-    private final ScheduledExecutorService scheduled                 = Executors.newScheduledThreadPool(1,
-                                                                                                        new NamedThreadFactory(
-                                                                                                                               "dubbo-remoting-server-heartbeat",
-                                                                                                                               true));
-
     // 心跳定时器
     private ScheduledFuture<?> heatbeatTimer;
 
@@ -143,11 +136,6 @@ public class HeaderExchangeServer implements ExchangeServer {
         }
         closed = true;
         stopHeartbeatTimer();
-        try {
-            scheduled.shutdown();
-        } catch (Throwable t) {
-            logger.warn(t.getMessage(), t);
-        }
     }
 
     public Collection<ExchangeChannel> getExchangeChannels() {
@@ -234,7 +222,7 @@ public class HeaderExchangeServer implements ExchangeServer {
     private void startHeatbeatTimer() {
         stopHeartbeatTimer();
         if (heartbeat > 0) {
-            heatbeatTimer = scheduled.scheduleWithFixedDelay(
+            heatbeatTimer = HousekeepingScheduler.scheduleWithFixedDelay("server-heartbeat",
                     new HeartBeatTask( new HeartBeatTask.ChannelProvider() {
                         public Collection<Channel> getChannels() {
                             return Collections.unmodifiableCollection(
@@ -249,7 +237,7 @@ public class HeaderExchangeServer implements ExchangeServer {
         try {
             ScheduledFuture<?> timer = heatbeatTimer;
             if (timer != null && ! timer.isCancelled()) {
-                timer.cancel(true);
+                timer.cancel(false);
             }
         } catch (Throwable t) {
             logger.warn(t.getMessage(), t);
@@ -0,0 +1,191 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.remoting.exchange.support.header;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.alibaba.dubbo.remoting.Channel;
+import com.alibaba.dubbo.remoting.timer.Timeout;
+import com.alibaba.dubbo.remoting.timer.TimerTask;
+
+/**
+ * Requests being executed on the provider side of one connection, keyed by request id, so that a
+ * cancel from the consumer can find them.
+ * <p>
+ * A cancel may arrive before its request leaves the dispatcher queue, it is then remembered for a
+ * while and the request is dropped when it starts.
+ */
+final class RunningRequests {
+
+    private static final String                       KEY                  = RunningRequests.class.getName();
+
+    private static final int                          MAX_CANCELED         = 1024;
+
+    private static final long                         CANCELED_EXPIRATION  = 60 * 1000;
+
+    static final AtomicLong                           INTERRUPTED_REQUESTS = new AtomicLong();
+
+    static final AtomicLong                           CANCELED_REQUESTS    = new AtomicLong();
+
+    private final ConcurrentMap<Long, RunningRequest> running              = new ConcurrentHashMap<Long, RunningRequest>();
+
+    // request id -> time of the cancel
+    private final ConcurrentMap<Long, Long>           canceled             = new ConcurrentHashMap<Long, Long>();
+
+    static RunningRequests getOrCreate(Channel channel) {
+        RunningRequests requests = (RunningRequests) channel.getAttribute(KEY);
+        if (requests == null) {
+            synchronized (RunningRequests.class) {
+                requests = (RunningRequests) channel.getAttribute(KEY);
+                if (requests == null) {
+                    requests = new RunningRequests();
+                    channel.setAttribute(KEY, requests);
+                }
+            }
+        }
+        return requests;
+    }
+
+    /**
+     * register the request executed by the current thread.
+     *
+     * @return the running request, or null if it has been canceled while queued.
+     */
+    RunningRequest start(long id) {
+        RunningRequest request = new RunningRequest(id, Thread.currentThread());
+        running.put(id, request);
+        if (!canceled.isEmpty() && canceled.remove(id) != null) {
+            // a racing cancel may have found the request already, marking it canceled first keeps that
+            // cancel from interrupting the thread, and finish clears the interrupt if it got there first.
+            if (request.cancel(false)) {
+                CANCELED_REQUESTS.incrementAndGet();
+            }
+            finish(request);
+            return null;
+        }
+        return request;
+    }
+
+    void finish(RunningRequest request) {
+        running.remove(request.id, request);
+        request.finish();
+    }
+
+    /**
+     * cancel the request, interrupt its thread if it is running and interrupt is true.
+     */
+    void cancel(long id, boolean interrupt) {
+        RunningRequest request = running.get(id);
+        if (request == null) {
+            // not started yet, or finished already.
+            long now = System.currentTimeMillis();
+            if (canceled.size() >= MAX_CANCELED) {
+                purge(now);
+            }
+            canceled.put(id, now);
+            // it may have started in the meantime.
+            request = running.get(id);
+            if (request == null) {
+                return;
+            }
+            canceled.remove(id);
+        }
+        if (request.cancel(interrupt)) {
+            CANCELED_REQUESTS.incrementAndGet();
+        }
+    }
+
+    private void purge(long now) {
+        for (Iterator<Long> it = canceled.values().iterator(); it.hasNext();) {
+            if (now - it.next() > CANCELED_EXPIRATION) {
+                it.remove();
+            }
+        }
+        if (canceled.size() >= MAX_CANCELED) {
+            // the requests of these cancels are most likely finished long ago.
+            canceled.clear();
+        }
+    }
+
+    /**
+     * 执行中的请求，可因截止时刻到达或调用方取消而被中断，结束后保证中断状态不会遗留给线程池中的下一个任务。
+     */
+    static final class RunningRequest implements TimerTask {
+
+        private final long     id;
+
+        private final Thread   thread;
+
+        private volatile Timeout timeout;
+
+        private boolean        finished;
+
+        private boolean        interrupted;
+
+        private boolean        canceled;
+
+        RunningRequest(long id, Thread thread) {
+            this.id = id;
+            this.thread = thread;
+        }
+
+        void setTimeout(Timeout timeout) {
+            this.timeout = timeout;
+        }
+
+        /**
+         * the deadline is reached.
+         */
+        public synchronized void run(Timeout timeout) {
+            if (!finished && !interrupted) {
+                interrupted = true;
+                INTERRUPTED_REQUESTS.incrementAndGet();
+                thread.interrupt();
+            }
+        }
+
+        synchronized boolean cancel(boolean interrupt) {
+            if (finished || canceled) {
+                return false;
+            }
+            canceled = true;
+            if (interrupt && !interrupted) {
+                interrupted = true;
+                thread.interrupt();
+            }
+            return true;
+        }
+
+        synchronized boolean isCanceled() {
+            return canceled;
+        }
+
+        synchronized void finish() {
+            finished = true;
+            if (timeout != null) {
+                timeout.cancel();
+            }
+            if (interrupted) {
+                // clear the interrupt raised by us.
+                Thread.interrupted();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.remoting.telnet.support.command;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.alibaba.dubbo.common.extension.Activate;
+import com.alibaba.dubbo.remoting.Channel;
+import com.alibaba.dubbo.remoting.exchange.support.LateResponses;
+import com.alibaba.dubbo.remoting.telnet.TelnetHandler;
+import com.alibaba.dubbo.remoting.telnet.support.Help;
+import com.alibaba.dubbo.remoting.telnet.support.TelnetUtils;
+
+/**
+ * LateTelnetHandler
+ */
+@Activate
+@Help(parameter = "[service]", summary = "Show the responses returned after timeout.", detail = "Show the responses returned after timeout, by provider, service and method.")
+public class LateTelnetHandler implements TelnetHandler {
+
+    public String telnet(Channel channel, String message) {
+        List<String> header = new ArrayList<String>();
+        header.add("provider");
+        header.add("service");
+        header.add("count");
+        header.add("max(ms)");
+        for (long bound : LateResponses.BUCKETS) {
+            header.add("<" + bound + "ms");
+        }
+        header.add(">=" + LateResponses.BUCKETS[LateResponses.BUCKETS.length - 1] + "ms");
+        header.add("unknown");
+        List<List<String>> table = new ArrayList<List<String>>();
+        for (Map.Entry<String, LateResponses.Statistics> entry : LateResponses.getStatistics().entrySet()) {
+            String[] key = entry.getKey().split(" ", 2);
+            if (message != null && message.length() > 0 && ! key[1].contains(message)) {
+                continue;
+            }
+            LateResponses.Statistics statistics = entry.getValue();
+            List<String> row = new ArrayList<String>();
+            row.add(key[0]);
+            row.add(key[1]);
+            row.add(String.valueOf(statistics.getCount()));
+            row.add(String.valueOf(statistics.getMax()));
+            for (long count : statistics.getHistogram()) {
+                row.add(String.valueOf(count));
+            }
+            table.add(row);
+        }
+        return TelnetUtils.toTable(header, table);
+    }
+
+}
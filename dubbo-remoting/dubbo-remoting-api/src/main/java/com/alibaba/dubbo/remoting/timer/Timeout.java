@@ -0,0 +1,38 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.remoting.timer;
+
+/**
+ * Handle associated with a {@link TimerTask} returned by a {@link Timer}.
+ */
+public interface Timeout {
+
+    Timer timer();
+
+    TimerTask task();
+
+    boolean isExpired();
+
+    boolean isCancelled();
+
+    /**
+     * cancel the task, does nothing if it has already run or been canceled.
+     * 
+     * @return true if the task was canceled by this call.
+     */
+    boolean cancel();
+
+}
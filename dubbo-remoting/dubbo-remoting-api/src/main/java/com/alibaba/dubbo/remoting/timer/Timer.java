@@ -0,0 +1,43 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.remoting.timer;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules {@link TimerTask}s for one-time future execution. (SPI, Singleton, ThreadSafe)
+ */
+public interface Timer {
+
+    /**
+     * schedule the task for one-time execution after the delay.
+     * 
+     * @param task task.
+     * @param delay delay.
+     * @param unit unit of the delay.
+     * @return handle associated with the task.
+     */
+    Timeout newTimeout(TimerTask task, long delay, TimeUnit unit);
+
+    /**
+     * release all resources and cancel all scheduled but not yet run tasks.
+     * 
+     * @return the tasks that were canceled.
+     */
+    Set<Timeout> stop();
+
+}
@@ -19,7 +19,6 @@ import java.net.InetSocketAddress;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -41,6 +40,8 @@ import com.alibaba.dubbo.remoting.ChannelHandler;
 import com.alibaba.dubbo.remoting.Client;
 import com.alibaba.dubbo.remoting.RemotingException;
 import com.alibaba.dubbo.remoting.transport.dispatcher.ChannelHandlers;
+import com.alibaba.dubbo.remoting.transport.threadpool.VirtualThreadPool;
+import com.alibaba.dubbo.rpc.support.HousekeepingScheduler;
 
 /**
  * AbstractClient
@@ -58,10 +59,14 @@ public abstract class AbstractClient extends AbstractEndpoint implements Client
 
     private final Lock            connectLock = new ReentrantLock();
     
-    private static final ScheduledThreadPoolExecutor reconnectExecutorService = new ScheduledThreadPoolExecutor(2, new NamedThreadFactory("DubboClientReconnectTimer", true));
+    // 重连会阻塞到连接超时，不在共享的HousekeepingScheduler线程上执行，由定时任务转交到这里
+    private static final ExecutorService reconnectExecutorService = Executors.newCachedThreadPool(new NamedThreadFactory("DubboClientReconnect", true));
     
     private volatile  ScheduledFuture<?> reconnectExecutorFuture = null;
     
+    // 同一个客户端同时只有一次重连
+    private final AtomicBoolean reconnecting = new AtomicBoolean(false);
+    
     protected volatile ExecutorService executor;
     
     private final boolean send_reconnect ;
@@ -138,14 +143,10 @@ public abstract class AbstractClient extends AbstractEndpoint implements Client
         //reconnect=false to close reconnect 
         int reconnect = getReconnectParam(getUrl());
         if(reconnect > 0 && (reconnectExecutorFuture == null || reconnectExecutorFuture.isCancelled())){
-            Runnable connectStatusCheckCommand =  new Runnable() {
+            final Runnable reconnectCommand = new Runnable() {
                 public void run() {
                     try {
-                        if (! isConnected()) {
-                            connect();
-                        } else {
-                            lastConnectedTime = System.currentTimeMillis();
-                        }
+                        connect();
                     } catch (Throwable t) { 
                         String errorMsg = "client reconnect to "+getUrl().getAddress()+" find error . url: "+ getUrl();
                         // wait registry sync provider list
@@ -159,10 +160,26 @@ public abstract class AbstractClient extends AbstractEndpoint implements Client
                         if ( reconnect_count.getAndIncrement() % reconnect_warning_period == 0){
                             LOGGER.warn(errorMsg, t);
                         }
+                    } finally {
+                        reconnecting.set(false);
+                    }
+                }
+            };
+            Runnable connectStatusCheckCommand =  new Runnable() {
+                public void run() {
+                    if (isConnected()) {
+                        lastConnectedTime = System.currentTimeMillis();
+                    } else if (reconnecting.compareAndSet(false, true)) {
+                        try {
+                            reconnectExecutorService.execute(reconnectCommand);
+                        } catch (Throwable t) {
+                            reconnecting.set(false);
+                            LOGGER.warn("Failed to schedule reconnect to " + getUrl().getAddress() + ", cause: " + t.getMessage(), t);
+                        }
                     }
                 }
             };
-            reconnectExecutorFuture = reconnectExecutorService.scheduleWithFixedDelay(connectStatusCheckCommand, reconnect, reconnect, TimeUnit.MILLISECONDS);
+            reconnectExecutorFuture = HousekeepingScheduler.scheduleWithFixedDelay("client-reconnect", connectStatusCheckCommand, reconnect, reconnect, TimeUnit.MILLISECONDS);
         }
     }
     
@@ -193,8 +210,7 @@ public abstract class AbstractClient extends AbstractEndpoint implements Client
     private synchronized void destroyConnectStatusCheckCommand(){
         try {
             if (reconnectExecutorFuture != null && ! reconnectExecutorFuture.isDone()){
-                reconnectExecutorFuture.cancel(true);
-                reconnectExecutorService.purge();
+                reconnectExecutorFuture.cancel(false);
             }
         } catch (Throwable e) {
             LOGGER.warn(e.getMessage(), e);
@@ -202,7 +218,11 @@ public abstract class AbstractClient extends AbstractEndpoint implements Client
     }
     
     protected ExecutorService createExecutor() {
-        return Executors.newCachedThreadPool(new NamedThreadFactory(CLIENT_THREAD_POOL_NAME + CLIENT_THREAD_POOL_ID.incrementAndGet() + "-" + getUrl().getAddress(), true));
+        String name = CLIENT_THREAD_POOL_NAME + CLIENT_THREAD_POOL_ID.incrementAndGet() + "-" + getUrl().getAddress();
+        if (VirtualThreadPool.NAME.equals(getUrl().getParameter(Constants.THREADPOOL_KEY))) {
+            return (ExecutorService) new VirtualThreadPool().getExecutor(getUrl().addParameter(Constants.THREAD_NAME_KEY, name));
+        }
+        return Executors.newCachedThreadPool(new NamedThreadFactory(name, true));
     }
     
     public InetSocketAddress getConnectAddress() {
@@ -137,7 +137,7 @@ public abstract class AbstractServer extends AbstractEndpoint implements Server
         Collection<Channel> channels = getChannels();
         for (Channel channel : channels) {
             if (channel.isConnected()) {
-                channel.send(message, sent);
+                Hessian2TypeCache.send(channel, message, sent);
             }
         }
     }
@@ -16,6 +16,8 @@
 
 package com.alibaba.dubbo.remoting.transport;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -25,7 +27,12 @@ import com.alibaba.dubbo.common.URL;
 import com.alibaba.dubbo.common.extension.ExtensionLoader;
 import com.alibaba.dubbo.common.logger.Logger;
 import com.alibaba.dubbo.common.logger.LoggerFactory;
+import com.alibaba.dubbo.common.serialize.ObjectInput;
 import com.alibaba.dubbo.common.serialize.Serialization;
+import com.alibaba.dubbo.common.serialize.support.hessian.Hessian2Serialization;
+import com.alibaba.dubbo.common.utils.StringUtils;
+import com.alibaba.dubbo.remoting.Channel;
+import com.alibaba.dubbo.remoting.Compressor;
 
 /**
  * @author <a href="mailto:gang.lvg@alibaba-inc.com">kimi</a>
@@ -39,6 +46,8 @@ public class CodecSupport {
 
     private static Map<Byte, Serialization> ID_SERIALIZATION_MAP = new HashMap<Byte, Serialization>();
 
+    private static Map<Byte, Compressor> ID_COMPRESSOR_MAP = new HashMap<Byte, Compressor>();
+
     static {
         Set<String> supportedExtensions = ExtensionLoader.getExtensionLoader(Serialization.class).getSupportedExtensions();
         for (String name : supportedExtensions) {
@@ -53,6 +62,22 @@ public class CodecSupport {
             }
             ID_SERIALIZATION_MAP.put(idByte, serialization);
         }
+        // 使用类型缓存的消息仍是hessian2格式
+        Serialization hessian2 = ID_SERIALIZATION_MAP.get(Hessian2Serialization.ID);
+        if (hessian2 != null && !ID_SERIALIZATION_MAP.containsKey(Hessian2TypeCache.CONTENT_TYPE_ID)) {
+            ID_SERIALIZATION_MAP.put(Hessian2TypeCache.CONTENT_TYPE_ID, hessian2);
+        }
+
+        for (String name : ExtensionLoader.getExtensionLoader(Compressor.class).getSupportedExtensions()) {
+            Compressor compressor = ExtensionLoader.getExtensionLoader(Compressor.class).getExtension(name);
+            byte idByte = compressor.getCompressorId();
+            if (idByte <= 0 || ID_COMPRESSOR_MAP.containsKey(idByte)) {
+                logger.error("Compressor extension " + compressor.getClass().getName()
+                                 + " has illegal or duplicate id " + idByte + ", ignore this Compressor extension");
+                continue;
+            }
+            ID_COMPRESSOR_MAP.put(idByte, compressor);
+        }
     }
 
     public static Serialization getSerializationById(Byte id) {
@@ -72,4 +97,28 @@ public class CodecSupport {
         return result;
     }
 
+    public static Compressor getCompressorById(byte id) {
+        return ID_COMPRESSOR_MAP.get(id);
+    }
+
+    /**
+     * @return the compressor of the name, or null if the name is empty.
+     */
+    public static Compressor getCompressor(String name) {
+        if (StringUtils.isEmpty(name)) {
+            return null;
+        }
+        return ExtensionLoader.getExtensionLoader(Compressor.class).getExtension(name);
+    }
+
+    /**
+     * 按帧头中的序列化编号解码消息体，使用类型缓存的消息由连接上的{@link Hessian2TypeCache}解码。
+     */
+    public static ObjectInput deserialize(Channel channel, byte id, InputStream is) throws IOException {
+        if (id == Hessian2TypeCache.CONTENT_TYPE_ID) {
+            return Hessian2TypeCache.deserialize(channel, is);
+        }
+        return getSerialization(channel.getUrl(), id).deserialize(channel.getUrl(), is);
+    }
+
 }
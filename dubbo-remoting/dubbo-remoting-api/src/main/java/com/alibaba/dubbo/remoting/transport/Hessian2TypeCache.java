@@ -0,0 +1,396 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.remoting.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.alibaba.com.caucho.hessian.io.Hessian2Input;
+import com.alibaba.com.caucho.hessian.io.Hessian2Output;
+import com.alibaba.dubbo.common.logger.Logger;
+import com.alibaba.dubbo.common.logger.LoggerFactory;
+import com.alibaba.dubbo.common.serialize.Cleanable;
+import com.alibaba.dubbo.common.serialize.ObjectInput;
+import com.alibaba.dubbo.common.serialize.ObjectOutput;
+import com.alibaba.dubbo.common.serialize.Serialization;
+import com.alibaba.dubbo.common.serialize.support.hessian.Hessian2Serialization;
+import com.alibaba.dubbo.common.serialize.support.hessian.Hessian2SerializerFactory;
+import com.alibaba.dubbo.remoting.Channel;
+import com.alibaba.dubbo.remoting.Client;
+import com.alibaba.dubbo.remoting.RemotingException;
+
+/**
+ * 连接上持续的hessian2类型描述缓存。
+ * <p>
+ * 默认每条消息都新建ObjectOutput和ObjectInput，消息中的每个DTO类型都要重复写出类名和字段名。
+ * 开启type.cache后，同一连接上的消息共用一个Hessian2Output和一份已读到的类定义，类型只在连接上首次出现时写出，
+ * 之后只写编号；对象引用仍按消息重置。
+ * <p>
+ * 这样编码的消息在帧头中以{@link #CONTENT_TYPE_ID}标记，不会发给不认识它的对端：消费方在URL上有type.cache且使用hessian2时才使用，
+ * 提供方收到这样的请求后才对该连接的响应使用。类定义依赖消息的先后顺序，因此这样的消息总在IO线程上按到达顺序解码，
+ * 发送方经{@link #send}持有连接上的锁，使编码顺序与写出顺序一致。只有正常的请求和响应使用缓存，事件和错误响应仍按原格式编码。
+ * <p>
+ * 缓存随连接创建，重连后两端都从空缓存开始。编码中途失败时，已分配编号的类型对端收不到，该连接之后的消息改回原格式；
+ * 解码失败时无法确认类定义是否完整，关闭连接，由重连重置两端的缓存。
+ */
+public final class Hessian2TypeCache {
+
+    private static final Logger logger          = LoggerFactory.getLogger(Hessian2TypeCache.class);
+
+    public static final String  TYPE_CACHE_KEY  = "type.cache";
+
+    /**
+     * 帧头中标记使用类型缓存的序列化编号，数据格式仍是hessian2。
+     */
+    public static final byte    CONTENT_TYPE_ID = 30;
+
+    private static final String KEY             = Hessian2TypeCache.class.getName();
+
+    private final ReentrantLock lock            = new ReentrantLock();
+
+    private final TargetOutputStream target     = new TargetOutputStream();
+
+    private final Hessian2Output    output;
+
+    // 解码方已读到的类定义和类型名，只在IO线程上按顺序访问
+    private final ArrayList<Object> classDefs   = new ArrayList<Object>();
+
+    private final ArrayList<Object> types       = new ArrayList<Object>();
+
+    // 消费方开启，或提供方收到对端这样编码的消息后开启
+    private volatile boolean        encoding;
+
+    private volatile boolean        broken;
+
+    private Hessian2TypeCache() {
+        output = new Hessian2Output(target);
+        output.setSerializerFactory(Hessian2SerializerFactory.SERIALIZER_FACTORY);
+    }
+
+    static Hessian2TypeCache get(Channel channel) {
+        return (Hessian2TypeCache) channel.getAttribute(KEY);
+    }
+
+    private static Hessian2TypeCache getOrCreate(Channel channel) {
+        Hessian2TypeCache cache = get(channel);
+        if (cache == null) {
+            synchronized (Hessian2TypeCache.class) {
+                cache = get(channel);
+                if (cache == null) {
+                    cache = new Hessian2TypeCache();
+                    channel.setAttribute(KEY, cache);
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * 发送可能使用类型缓存编码的消息，编码和写出在连接上的锁内完成，对端按编码顺序收到。
+     */
+    public static void send(Channel channel, Object message, boolean sent) throws RemotingException {
+        Hessian2TypeCache cache = forSend(channel);
+        if (cache == null) {
+            channel.send(message, sent);
+            return;
+        }
+        cache.lock.lock();
+        try {
+            channel.send(message, sent);
+        } finally {
+            cache.lock.unlock();
+        }
+    }
+
+    public static void send(Channel channel, Object message) throws RemotingException {
+        Hessian2TypeCache cache = forSend(channel);
+        if (cache == null) {
+            channel.send(message);
+            return;
+        }
+        cache.lock.lock();
+        try {
+            channel.send(message);
+        } finally {
+            cache.lock.unlock();
+        }
+    }
+
+    private static Hessian2TypeCache forSend(Channel channel) {
+        Hessian2TypeCache cache = get(channel);
+        if (cache == null && channel instanceof Client
+                && channel.getUrl().getParameter(TYPE_CACHE_KEY, false)) {
+            cache = getOrCreate(channel);
+            cache.encoding = true;
+        }
+        return cache;
+    }
+
+    /**
+     * @return whether the messages of the channel may be encoded with the type cache, then they must be encoded in the order they are written.
+     */
+    public static boolean isEncoding(Channel channel) {
+        Hessian2TypeCache cache = get(channel);
+        return cache != null && cache.encoding && !cache.broken;
+    }
+
+    /**
+     * @return the cache to encode the next message of the channel with, or null to encode it as before.
+     */
+    public static Hessian2TypeCache forEncode(Channel channel, Serialization serialization) {
+        Hessian2TypeCache cache = get(channel);
+        if (cache == null || !cache.encoding || cache.broken
+                || serialization.getContentTypeId() != Hessian2Serialization.ID) {
+            return null;
+        }
+        return cache;
+    }
+
+    /**
+     * 开始编码一条消息，必须与{@link #end(boolean)}成对调用。
+     */
+    public ObjectOutput begin(OutputStream os) {
+        lock.lock();
+        target.os = os;
+        output.resetReferences();
+        return new CachedObjectOutput(output);
+    }
+
+    /**
+     * @param complete whether the message is about to be written, otherwise the types defined in it are never seen by the peer.
+     */
+    public void end(boolean complete) {
+        try {
+            target.os = null;
+            if (!complete && !broken) {
+                broken = true;
+                logger.warn("Failed to encode a message with the type cache, fall back to plain hessian2 on this connection.");
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 解码以{@link #CONTENT_TYPE_ID}标记的消息，必须在IO线程上按到达顺序调用。
+     */
+    public static ObjectInput deserialize(Channel channel, InputStream is) {
+        Hessian2TypeCache cache = getOrCreate(channel);
+        cache.encoding = true;
+        return new CachedObjectInput(channel, new CachedHessian2Input(is, cache.classDefs, cache.types));
+    }
+
+    private static final class TargetOutputStream extends OutputStream {
+
+        private OutputStream os;
+
+        @Override
+        public void write(int b) throws IOException {
+            os.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            os.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            os.flush();
+        }
+    }
+
+    private static final class CachedHessian2Input extends Hessian2Input {
+
+        CachedHessian2Input(InputStream is, ArrayList<Object> classDefs, ArrayList<Object> types) {
+            super(is);
+            setSerializerFactory(Hessian2SerializerFactory.SERIALIZER_FACTORY);
+            _classDefs = classDefs;
+            _types = types;
+        }
+    }
+
+    private static final class CachedObjectOutput implements ObjectOutput {
+
+        private final Hessian2Output output;
+
+        CachedObjectOutput(Hessian2Output output) {
+            this.output = output;
+        }
+
+        public void writeBool(boolean v) throws IOException {
+            output.writeBoolean(v);
+        }
+
+        public void writeByte(byte v) throws IOException {
+            output.writeInt(v);
+        }
+
+        public void writeShort(short v) throws IOException {
+            output.writeInt(v);
+        }
+
+        public void writeInt(int v) throws IOException {
+            output.writeInt(v);
+        }
+
+        public void writeLong(long v) throws IOException {
+            output.writeLong(v);
+        }
+
+        public void writeFloat(float v) throws IOException {
+            output.writeDouble(v);
+        }
+
+        public void writeDouble(double v) throws IOException {
+            output.writeDouble(v);
+        }
+
+        public void writeBytes(byte[] b) throws IOException {
+            output.writeBytes(b);
+        }
+
+        public void writeBytes(byte[] b, int off, int len) throws IOException {
+            output.writeBytes(b, off, len);
+        }
+
+        public void writeUTF(String v) throws IOException {
+            output.writeString(v);
+        }
+
+        public void writeObject(Object obj) throws IOException {
+            output.writeObject(obj);
+        }
+
+        public void flushBuffer() throws IOException {
+            output.flushBuffer();
+        }
+    }
+
+    /**
+     * 记录读取是否都正常返回，有读取抛出异常时解码结束后关闭连接。
+     */
+    private static final class CachedObjectInput implements ObjectInput, Cleanable {
+
+        private final Channel      channel;
+
+        private final Hessian2Input input;
+
+        private int                started;
+
+        private int                completed;
+
+        CachedObjectInput(Channel channel, Hessian2Input input) {
+            this.channel = channel;
+            this.input = input;
+        }
+
+        public boolean readBool() throws IOException {
+            started++;
+            boolean v = input.readBoolean();
+            completed++;
+            return v;
+        }
+
+        public byte readByte() throws IOException {
+            started++;
+            byte v = (byte) input.readInt();
+            completed++;
+            return v;
+        }
+
+        public short readShort() throws IOException {
+            started++;
+            short v = (short) input.readInt();
+            completed++;
+            return v;
+        }
+
+        public int readInt() throws IOException {
+            started++;
+            int v = input.readInt();
+            completed++;
+            return v;
+        }
+
+        public long readLong() throws IOException {
+            started++;
+            long v = input.readLong();
+            completed++;
+            return v;
+        }
+
+        public float readFloat() throws IOException {
+            started++;
+            float v = (float) input.readDouble();
+            completed++;
+            return v;
+        }
+
+        public double readDouble() throws IOException {
+            started++;
+            double v = input.readDouble();
+            completed++;
+            return v;
+        }
+
+        public String readUTF() throws IOException {
+            started++;
+            String v = input.readString();
+            completed++;
+            return v;
+        }
+
+        public byte[] readBytes() throws IOException {
+            started++;
+            byte[] v = input.readBytes();
+            completed++;
+            return v;
+        }
+
+        public Object readObject() throws IOException {
+            started++;
+            Object v = input.readObject();
+            completed++;
+            return v;
+        }
+
+        @SuppressWarnings("unchecked")
+        public <T> T readObject(Class<T> cls) throws IOException {
+            started++;
+            T v = (T) input.readObject(cls);
+            completed++;
+            return v;
+        }
+
+        public <T> T readObject(Class<T> cls, Type type) throws IOException {
+            return readObject(cls);
+        }
+
+        public void cleanup() {
+            if (started != completed) {
+                logger.warn("Failed to decode a message with the type cache, close channel " + channel
+                            + " to reset the type caches on both sides.");
+                channel.close();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.remoting.transport.compress;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import com.alibaba.dubbo.remoting.Compressor;
+
+/**
+ * 基于JDK Deflater的压缩，不带zlib头和校验和，消息的完整性由帧长度保证。
+ */
+public class DeflateCompressor implements Compressor {
+
+    public static final String NAME = "deflate";
+
+    public static final byte   ID   = 1;
+
+    private static final int   BUFFER_SIZE = 8 * 1024;
+
+    public byte getCompressorId() {
+        return ID;
+    }
+
+    public OutputStream compress(OutputStream output) throws IOException {
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        return new DeflaterOutputStream(output, deflater, BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    finish();
+                } finally {
+                    deflater.end();
+                }
+            }
+        };
+    }
+
+    public InputStream decompress(InputStream input) throws IOException {
+        final Inflater inflater = new Inflater(true);
+        return new InflaterInputStream(input, inflater, BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                inflater.end();
+            }
+        };
+    }
+
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.remoting.transport.threadpool;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.alibaba.dubbo.common.logger.Logger;
+import com.alibaba.dubbo.common.logger.LoggerFactory;
+
+/**
+ * 每个任务新建一个线程执行，同时执行的任务数由threads限制，等待执行的任务数由queues限制，见{@link VirtualThreadPool}。
+ */
+final class VirtualThreadExecutor extends AbstractExecutorService {
+
+    private static final Logger logger    = LoggerFactory.getLogger(VirtualThreadExecutor.class);
+
+    private final String        name;
+
+    private final ThreadFactory threadFactory;
+
+    private final int           threads;
+
+    private final int           queues;
+
+    // 不限制同时执行的任务数时为null
+    private final Semaphore     permits;
+
+    // 已提交、尚未结束的任务，包括等待执行的
+    private final AtomicInteger tasks     = new AtomicInteger();
+
+    private final AtomicInteger waiting   = new AtomicInteger();
+
+    private final Set<Thread>   workers   = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+
+    private final ReentrantLock lock      = new ReentrantLock();
+
+    private final Condition     terminated = lock.newCondition();
+
+    private volatile boolean    shutdown;
+
+    // shutdownNow后等待执行的任务即使拿到许可也不再执行
+    private volatile boolean    stopped;
+
+    VirtualThreadExecutor(String name, ThreadFactory threadFactory, int threads, int queues) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads: " + threads);
+        }
+        this.name = name;
+        this.threadFactory = threadFactory;
+        this.threads = threads;
+        this.queues = queues;
+        permits = threads == Integer.MAX_VALUE ? null : new Semaphore(threads);
+    }
+
+    public void execute(Runnable command) {
+        if (command == null) {
+            throw new NullPointerException("command");
+        }
+        tasks.incrementAndGet();
+        if (shutdown) {
+            taskDone();
+            throw new RejectedExecutionException("Thread pool " + name + " is shutdown.");
+        }
+        boolean wait = false;
+        if (permits != null && !permits.tryAcquire()) {
+            if (waiting.incrementAndGet() > queues && queues >= 0) {
+                waiting.decrementAndGet();
+                taskDone();
+                String msg = String.format("Thread pool is EXHAUSTED!" +
+                        " Thread Name: %s, Active: %d, Waiting: %d, Max: %d, Queues: %d",
+                        name, threads - permits.availablePermits(), waiting.get(), threads, queues);
+                logger.warn(msg);
+                throw new RejectedExecutionException(msg);
+            }
+            wait = true;
+        }
+        Thread thread;
+        try {
+            thread = threadFactory.newThread(new Worker(command, wait));
+            workers.add(thread);
+            thread.start();
+        } catch (RuntimeException e) {
+            if (wait) {
+                waiting.decrementAndGet();
+            } else if (permits != null) {
+                permits.release();
+            }
+            taskDone();
+            throw new RejectedExecutionException("Failed to start thread for " + name + ", cause: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the number of tasks running.
+     */
+    int getActiveCount() {
+        return tasks.get() - waiting.get();
+    }
+
+    /**
+     * @return the number of tasks waiting for the running ones to complete.
+     */
+    int getWaitingCount() {
+        return waiting.get();
+    }
+
+    private void taskDone() {
+        if (tasks.decrementAndGet() == 0 && shutdown) {
+            signalTerminated();
+        }
+    }
+
+    private void signalTerminated() {
+        lock.lock();
+        try {
+            terminated.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void shutdown() {
+        shutdown = true;
+        if (tasks.get() == 0) {
+            signalTerminated();
+        }
+    }
+
+    /**
+     * 中断所有线程，等待执行的任务不再执行。
+     */
+    public List<Runnable> shutdownNow() {
+        stopped = true;
+        shutdown();
+        for (Thread worker : new ArrayList<Thread>(workers)) {
+            worker.interrupt();
+        }
+        return Collections.emptyList();
+    }
+
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    public boolean isTerminated() {
+        return shutdown && tasks.get() == 0;
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (!isTerminated()) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = terminated.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "VirtualThreadExecutor [name=" + name + ", active=" + getActiveCount() + ", waiting=" + waiting.get()
+               + ", threads=" + (permits == null ? "unlimited" : String.valueOf(threads)) + ", queues=" + queues
+               + (shutdown ? ", shutdown" : "") + "]";
+    }
+
+    private final class Worker implements Runnable {
+
+        private final Runnable command;
+
+        private final boolean  wait;
+
+        Worker(Runnable command, boolean wait) {
+            this.command = command;
+            this.wait = wait;
+        }
+
+        public void run() {
+            try {
+                if (wait) {
+                    try {
+                        permits.acquire();
+                    } catch (InterruptedException e) {
+                        // shutdownNow
+                        return;
+                    } finally {
+                        waiting.decrementAndGet();
+                    }
+                    // 被中断的执行中任务可能先释放许可
+                    if (stopped) {
+                        permits.release();
+                        return;
+                    }
+                }
+                try {
+                    command.run();
+                } finally {
+                    if (permits != null) {
+                        permits.release();
+                    }
+                }
+            } finally {
+                workers.remove(Thread.currentThread());
+                taskDone();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.remoting.transport.threadpool;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+
+import com.alibaba.dubbo.common.Constants;
+import com.alibaba.dubbo.common.URL;
+import com.alibaba.dubbo.common.logger.Logger;
+import com.alibaba.dubbo.common.logger.LoggerFactory;
+import com.alibaba.dubbo.common.threadpool.ThreadPool;
+import com.alibaba.dubbo.common.threadpool.support.cached.CachedThreadPool;
+
+/**
+ * 每个任务一个虚拟线程，threadpool=virtual，提供方和消费方都可以使用。
+ * <p>
+ * 业务阻塞在JDBC或下游RPC上时只挂起虚拟线程，不占用平台线程，不必为了阻塞把threads配到几百。
+ * 默认不限制同时执行的任务数；配置了threads时最多同时执行threads个，其余的在各自的虚拟线程上等待，
+ * 等待的超过queues个时拒绝，queues小于0时不限制。方法上的并发仍由executes限制，见ExecuteLimitFilter。
+ * <p>
+ * JDK不支持虚拟线程时退回cached线程池。
+ */
+public class VirtualThreadPool implements ThreadPool {
+
+    public static final String  NAME   = "virtual";
+
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadPool.class);
+
+    // Thread.ofVirtual()，以及Thread.Builder的name(String, long)和factory()
+    private static final Method OF_VIRTUAL;
+
+    private static final Method BUILDER_NAME;
+
+    private static final Method BUILDER_FACTORY;
+
+    static {
+        Method ofVirtual = null;
+        Method name = null;
+        Method factory = null;
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            name = builder.getMethod("name", String.class, long.class);
+            factory = builder.getMethod("factory");
+            // JDK 19、20上未开启预览特性时不可用
+            ofVirtual.invoke(null);
+        } catch (Throwable e) {
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = name;
+        BUILDER_FACTORY = factory;
+    }
+
+    public Executor getExecutor(URL url) {
+        String name = url.getParameter(Constants.THREAD_NAME_KEY, Constants.DEFAULT_THREAD_NAME);
+        ThreadFactory threadFactory = newThreadFactory(name);
+        if (threadFactory == null) {
+            logger.warn("Virtual threads are not supported by JVM " + System.getProperty("java.version")
+                        + ", use the cached thread pool for " + name + " instead.");
+            return new CachedThreadPool().getExecutor(url);
+        }
+        int threads = url.getParameter(Constants.THREADS_KEY, Integer.MAX_VALUE);
+        int queues = url.getParameter(Constants.QUEUES_KEY, Constants.DEFAULT_QUEUES);
+        return new VirtualThreadExecutor(name, threadFactory, threads, queues);
+    }
+
+    /**
+     * @return whether the JVM supports virtual threads.
+     */
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    private static ThreadFactory newThreadFactory(String name) {
+        if (OF_VIRTUAL == null) {
+            return null;
+        }
+        try {
+            Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), name + "-thread-", 1L);
+            return (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+        } catch (Throwable e) {
+            logger.warn("Failed to create virtual thread factory for " + name + ", cause: " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.remoting;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.alibaba.dubbo.common.Constants;
+import com.alibaba.dubbo.common.URL;
+import com.alibaba.dubbo.common.extension.ExtensionLoader;
+import com.alibaba.dubbo.common.logger.Logger;
+import com.alibaba.dubbo.common.logger.LoggerFactory;
+import com.alibaba.dubbo.common.threadpool.ThreadPool;
+import com.alibaba.dubbo.remoting.transport.threadpool.VirtualThreadPool;
+
+/**
+ * 比较fixed线程池与virtual线程池在业务大部分时间阻塞时的吞吐量和拒绝数。
+ * <p>
+ * 每个任务耗时task毫秒，其中blocking比例的时间阻塞（sleep），其余时间占用CPU。
+ * 运行：-Dbenchmark=true [-Drequests=20000 -Dtask=20 -Dthreads=200 -Dblockings=0.5,0.9,0.99]
+ */
+public class PerformanceThreadPoolTest extends TestCase {
+
+    private static final Logger logger = LoggerFactory.getLogger(PerformanceThreadPoolTest.class);
+
+    @Test
+    public void testBlockingTasks() throws Exception {
+        if (!PerformanceUtils.getBooleanProperty("benchmark", false)) {
+            logger.warn("Please set -Dbenchmark=true");
+            return;
+        }
+        final int requests = PerformanceUtils.getIntProperty("requests", 20000);
+        final int task = PerformanceUtils.getIntProperty("task", 20);
+        final int threads = PerformanceUtils.getIntProperty(Constants.THREADS_KEY, Constants.DEFAULT_THREADS);
+        final String[] blockings = PerformanceUtils.getProperty("blockings", "0.5,0.9,0.99").split(",");
+
+        PerformanceUtils.printBorder();
+        for (String line : PerformanceUtils.getEnvironment()) {
+            PerformanceUtils.printBody(line);
+        }
+        PerformanceUtils.printBody("Virtual threads: " + (VirtualThreadPool.isSupported() ? "supported" : "not supported, the cached pool is used"));
+        PerformanceUtils.printBody("Requests: " + requests + ", Task: " + task + "ms, Fixed threads: " + threads);
+        PerformanceUtils.printSeparator();
+        for (String blocking : blockings) {
+            double ratio = Double.parseDouble(blocking.trim());
+            // 与提供方默认配置一致：fixed线程池，不排队
+            run("fixed", "threadpool=fixed&threads=" + threads, requests, task, ratio);
+            run("virtual", "threadpool=virtual", requests, task, ratio);
+        }
+        PerformanceUtils.printBorder();
+    }
+
+    private void run(String name, String parameters, int requests, int task, double ratio) throws Exception {
+        URL url = URL.valueOf("dubbo://127.0.0.1:20880?threadname=benchmark-" + name + "&" + parameters);
+        ExecutorService executor = (ExecutorService) ExtensionLoader.getExtensionLoader(ThreadPool.class)
+                .getAdaptiveExtension().getExecutor(url);
+        final long blockingMillis = Math.round(task * ratio);
+        final long cpuNanos = TimeUnit.MILLISECONDS.toNanos(task) - TimeUnit.MILLISECONDS.toNanos(blockingMillis);
+        final CountDownLatch done = new CountDownLatch(requests);
+        final AtomicInteger completed = new AtomicInteger();
+        int rejected = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            try {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            long end = System.nanoTime() + cpuNanos;
+                            while (System.nanoTime() < end) {
+                                // busy
+                            }
+                            Thread.sleep(blockingMillis);
+                            completed.incrementAndGet();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                rejected++;
+                done.countDown();
+            }
+        }
+        done.await();
+        long elapsed = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        PerformanceUtils.printBody(String.format("%-7s %.2f: %6d ok, %6d rejected, %6d ms, %6d tps",
+                                                 name, ratio, completed.get(), rejected, elapsed,
+                                                 completed.get() * 1000L / elapsed));
+    }
+
+}
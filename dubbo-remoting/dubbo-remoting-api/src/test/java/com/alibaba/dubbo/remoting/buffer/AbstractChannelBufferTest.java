@@ -859,4 +859,29 @@ public abstract class AbstractChannelBufferTest {
         assertEquals(CAPACITY / 4 * 2, buffer.readerIndex());
     }
 
+    @Test
+    public void testSliceSurvivesDiscardReadBytes() {
+        buffer.clear();
+        for (int i = 0; i < CAPACITY / 2; i ++) {
+            buffer.writeByte((byte) i);
+        }
+        buffer.skipBytes(CAPACITY / 4);
+        ChannelBuffer slice = buffer.slice(0, CAPACITY / 4);
+        assertEquals(CAPACITY / 4, slice.readableBytes());
+
+        buffer.discardReadBytes();
+        for (int i = 0; i < CAPACITY / 4; i ++) {
+            assertEquals((byte) i, slice.getByte(i));
+            assertEquals((byte) (CAPACITY / 4 + i), buffer.getByte(buffer.readerIndex() + i));
+        }
+        assertEquals(CAPACITY / 4, buffer.readableBytes());
+
+        assertTrue(slice.release());
+        assertFalse(slice.release());
+        buffer.discardReadBytes();
+        assertEquals(0, buffer.readerIndex());
+        assertEquals(CAPACITY / 4, buffer.writerIndex());
+        assertEquals((byte) (CAPACITY / 4), buffer.getByte(0));
+    }
+
 }
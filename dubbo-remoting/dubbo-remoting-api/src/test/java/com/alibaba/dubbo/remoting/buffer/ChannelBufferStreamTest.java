@@ -88,4 +88,78 @@ public class ChannelBufferStreamTest {
 
         assertEquals(buf.readerIndex(), in.readBytes());
     }
+
+    @Test
+    public void testPrimitives() throws Exception {
+        // backed by an array, or not.
+        assertPrimitives(ChannelBuffers.dynamicBuffer(4));
+        assertPrimitives(ChannelBuffers.directBuffer(1024));
+    }
+
+    private void assertPrimitives(ChannelBuffer buf) throws Exception {
+        String[] strings = {"", "ascii", "\u00e9t\u00e9", "\u4e2d\u6587", "\ud83d\ude00", "lone\ud83d", "\ude00lone"};
+        ChannelBufferOutputStream out = new ChannelBufferOutputStream(buf);
+        out.writeByte(-1);
+        out.writeShort(-2);
+        out.writeInt(0x01020304);
+        out.writeLong(-3L);
+        out.writeFloat(1.5f);
+        out.writeDouble(-2.25);
+        int[] varInts = {0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, -1, Integer.MIN_VALUE};
+        for (int v : varInts) {
+            out.writeVarInt(v);
+        }
+        long[] varLongs = {0, 300, Long.MAX_VALUE, -1, Long.MIN_VALUE};
+        for (long v : varLongs) {
+            out.writeVarLong(v);
+        }
+        for (String s : strings) {
+            out.writeString(s);
+        }
+        assertEquals(6, out.writeUTF8("tail\u00e9"));
+
+        // big-endian.
+        assertEquals(1, buf.getByte(3) & 0xff);
+        assertEquals(4, buf.getByte(6) & 0xff);
+
+        ChannelBufferInputStream in = new ChannelBufferInputStream(buf);
+        assertEquals(-1, in.readByte());
+        assertEquals(-2, in.readShort());
+        assertEquals(0x01020304, in.readInt());
+        assertEquals(-3L, in.readLong());
+        assertEquals(1.5f, in.readFloat(), 0);
+        assertEquals(-2.25, in.readDouble(), 0);
+        for (int v : varInts) {
+            assertEquals(v, in.readVarInt());
+        }
+        for (long v : varLongs) {
+            assertEquals(v, in.readVarLong());
+        }
+        for (String s : strings) {
+            assertEquals(new String(s.getBytes("UTF-8"), "UTF-8"), in.readString());
+        }
+        assertEquals("tail\u00e9", in.readUTF8(6));
+        assertEquals(0, in.available());
+        try {
+            in.readInt();
+            fail();
+        } catch (java.io.EOFException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testReadWithinLength() throws Exception {
+        ChannelBuffer buf = ChannelBuffers.wrappedBuffer(new byte[]{0, 0, 0, 1, (byte) 0x80, (byte) 0x80, 1});
+        ChannelBufferInputStream in = new ChannelBufferInputStream(buf, 6);
+        assertEquals(1, in.readInt());
+        try {
+            // the varint goes beyond the length of the stream.
+            in.readVarInt();
+            fail();
+        } catch (java.io.EOFException e) {
+            // Expected
+        }
+        assertEquals(4, in.readBytes());
+    }
 }
@@ -0,0 +1,115 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.remoting.buffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class CompositeChannelBufferTest extends AbstractChannelBufferTest {
+
+    private ChannelBuffer buffer;
+
+    @Override
+    protected ChannelBuffer newBuffer(int capacity) {
+        // components of different sizes.
+        int first = capacity / 8;
+        int second = capacity / 2;
+        buffer = new CompositeChannelBuffer(ChannelBuffers.wrappedBuffer(new byte[first]),
+                ChannelBuffers.wrappedBuffer(new byte[second]),
+                ChannelBuffers.wrappedBuffer(new byte[capacity - first - second]));
+        buffer.clear();
+        return buffer;
+    }
+
+    @Override
+    protected ChannelBuffer[] components() {
+        return new ChannelBuffer[]{buffer};
+    }
+
+    @Test
+    public void testWrappedBufferIsSlice() {
+        byte[] array = new byte[]{1, 2, 3, 4, 5};
+        ChannelBuffer wrapped = ChannelBuffers.wrappedBuffer(array, 1, 3);
+        assertEquals(3, wrapped.readableBytes());
+        assertSame(array, wrapped.array());
+        assertEquals(1, wrapped.arrayOffset());
+        array[1] = 9;
+        assertEquals(9, wrapped.getByte(0));
+    }
+
+    @Test
+    public void testGatherWithoutCopy() {
+        ChannelBuffer header = ChannelBuffers.wrappedBuffer(new byte[]{1, 2});
+        ChannelBuffer body = ChannelBuffers.dynamicBuffer(16);
+        body.writeBytes(new byte[]{0, 3, 4, 5});
+        body.readByte();
+        byte[] blob = new byte[]{6, 7};
+        ChannelBuffer composite = ChannelBuffers.wrappedBuffer(header, ChannelBuffers.EMPTY_BUFFER, body,
+                ChannelBuffers.wrappedBuffer(blob));
+        assertEquals(7, composite.readableBytes());
+        assertEquals(3, ((CompositeChannelBuffer) composite).numComponents());
+
+        ByteBuffer[] buffers = composite.toByteBuffers();
+        assertEquals(3, buffers.length);
+        assertSame(blob, buffers[2].array());
+        assertEquals(2, buffers[0].remaining());
+        assertEquals(3, buffers[1].remaining());
+        // a region across components.
+        buffers = composite.toByteBuffers(1, 5);
+        assertEquals(3, buffers.length);
+        assertEquals(2, buffers[0].get());
+        assertEquals(6, buffers[2].get());
+        ByteBuffer merged = composite.toByteBuffer(1, 5);
+        byte[] bytes = new byte[5];
+        merged.get(bytes);
+        assertArrayEquals(new byte[]{2, 3, 4, 5, 6}, bytes);
+
+        // the content is shared until consolidated.
+        blob[0] = 9;
+        assertEquals(9, composite.getByte(5));
+        ((CompositeChannelBuffer) composite).consolidate();
+        assertEquals(1, ((CompositeChannelBuffer) composite).numComponents());
+        assertTrue(composite.hasArray());
+        blob[0] = 6;
+        bytes = new byte[7];
+        composite.readBytes(bytes);
+        assertArrayEquals(new byte[]{1, 2, 3, 4, 5, 9, 7}, bytes);
+    }
+
+    @Test
+    public void testReleaseComponents() {
+        PooledChannelBufferFactory factory = new PooledChannelBufferFactory(1, 0);
+        ChannelBuffer header = factory.getBuffer(16);
+        header.writeBytes(new byte[]{1, 2});
+        byte[] array = header.array();
+        ChannelBuffer composite = ChannelBuffers.wrappedBuffer(header, ChannelBuffers.wrappedBuffer(new byte[]{3}));
+        // the composite keeps the header until it is released.
+        assertFalse(header.release());
+        assertNotSame(array, factory.getBuffer(16).array());
+        assertTrue(composite.release());
+        assertFalse(composite.release());
+        assertSame(array, factory.getBuffer(16).array());
+    }
+
+}
@@ -1,7 +1,14 @@
 package com.alibaba.dubbo.remoting.buffer;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import junit.framework.Assert;
 
+import org.junit.Test;
+
 /**
  * @author <a href="mailto:gang.lvg@taobao.com">kimi</a>
  */
@@ -20,4 +27,132 @@ public class DirectChannelBufferTest extends AbstractChannelBufferTest{
     protected ChannelBuffer[] components() {
         return new ChannelBuffer[]{buffer};
     }
+
+    @Test
+    public void testReleaseFreesMemory() {
+        ChannelBuffer buf = ChannelBuffers.directBuffer(1024);
+        buf.writeBytes(new byte[16]);
+        // a slice keeps the memory until it is released.
+        ChannelBuffer slice = buf.slice(0, 16);
+        Assert.assertFalse(buf.release());
+        Assert.assertEquals(0, slice.getByte(15));
+        Assert.assertTrue(slice.release());
+        Assert.assertFalse(buf.release());
+        try {
+            buf.getByte(0);
+            Assert.fail();
+        } catch (IndexOutOfBoundsException expected) {
+            // freed already.
+        }
+        try {
+            buf.retain();
+            Assert.fail();
+        } catch (IllegalStateException expected) {
+            // released already.
+        }
+    }
+
+    @Test
+    public void testCopyBetweenDirectBuffers() {
+        byte[] data = new byte[1000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        ChannelBuffer src = ChannelBuffers.directBuffer(data.length);
+        src.writeBytes(data);
+        ChannelBuffer dst = ChannelBuffers.directBuffer(data.length);
+        dst.writeBytes(src, 100, 500);
+        src.getBytes(0, dst, 500, 500);
+        byte[] actual = new byte[1000];
+        dst.getBytes(0, actual);
+        Assert.assertTrue(Arrays.equals(Arrays.copyOfRange(data, 100, 600), Arrays.copyOfRange(actual, 0, 500)));
+        Assert.assertTrue(Arrays.equals(Arrays.copyOfRange(data, 0, 500), Arrays.copyOfRange(actual, 500, 1000)));
+
+        // overlapping copy within the same buffer.
+        src.setBytes(0, src, 1, 999);
+        Assert.assertEquals(data[1], src.getByte(0));
+        Assert.assertEquals(data[999], src.getByte(998));
+
+        ChannelBuffer copy = src.copy(10, 20);
+        Assert.assertTrue(copy.isDirect());
+        Assert.assertEquals(20, copy.readableBytes());
+        Assert.assertEquals(src.getByte(10), copy.getByte(0));
+    }
+
+    @Test
+    public void testDynamicBufferGrowsOffHeap() {
+        ChannelBuffer dynamic = ChannelBuffers.dynamicBuffer(16, DirectChannelBufferFactory.getInstance());
+        byte[] data = new byte[10000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        for (int off = 0; off < data.length; off += 100) {
+            dynamic.writeBytes(data, off, 100);
+        }
+        Assert.assertTrue(dynamic.isDirect());
+        byte[] actual = new byte[data.length];
+        dynamic.readBytes(actual);
+        Assert.assertTrue(Arrays.equals(data, actual));
+        Assert.assertTrue(dynamic.release());
+    }
+
+    @Test
+    public void testStreamsInChunks() throws Exception {
+        byte[] data = new byte[20000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 7);
+        }
+        ChannelBuffer buf = ChannelBuffers.directBuffer(data.length);
+        Assert.assertEquals(data.length, buf.writeBytes(new ByteArrayInputStream(data), data.length));
+        Assert.assertEquals(-1, buf.setBytes(0, new ByteArrayInputStream(new byte[0]), 10));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        buf.getBytes(0, out, data.length);
+        Assert.assertTrue(Arrays.equals(data, out.toByteArray()));
+
+        // written into the target buffer directly.
+        ChannelBuffer target = ChannelBuffers.directBuffer(data.length);
+        buf.getBytes(0, new ChannelBufferOutputStream(target), data.length);
+        Assert.assertEquals(data.length, target.readableBytes());
+        Assert.assertEquals(data[data.length - 1], target.getByte(data.length - 1));
+    }
+
+    @Test
+    public void testConcurrentReadsOfSlices() throws Exception {
+        final byte[] data = new byte[4096];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        final ChannelBuffer buf = ChannelBuffers.directBuffer(data.length);
+        buf.writeBytes(data);
+        // slices decoded on different threads all read through the parent.
+        final AtomicBoolean corrupted = new AtomicBoolean();
+        Thread[] readers = new Thread[4];
+        for (int t = 0; t < readers.length; t++) {
+            final int offset = t * 1024;
+            readers[t] = new Thread(new Runnable() {
+                public void run() {
+                    ChannelBuffer slice = buf.slice(offset, 1024);
+                    byte[] expected = Arrays.copyOfRange(data, offset, offset + 1024);
+                    byte[] read = new byte[1024];
+                    try {
+                        for (int n = 0; n < 200000 && !corrupted.get(); n++) {
+                            slice.getBytes(0, read);
+                            if (!Arrays.equals(expected, read)) {
+                                corrupted.set(true);
+                            }
+                        }
+                    } catch (RuntimeException e) {
+                        // the region moved by another reader
+                        corrupted.set(true);
+                    }
+                }
+            });
+            readers[t].start();
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        Assert.assertFalse(corrupted.get());
+    }
 }
@@ -3,6 +3,7 @@ package com.alibaba.dubbo.remoting.buffer;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * @author <a href="mailto:gang.lvg@taobao.com">kimi</a>
@@ -43,5 +44,27 @@ public class DynamicChannelBufferTest extends AbstractChannelBufferTest {
         buf.writerIndex(10);
         buf.readerIndex(10);
     }
-}
 
+    @Test
+    public void shouldShrinkWhenDiscardingSlicedBytes() {
+        ChannelBuffer buf = new DynamicChannelBuffer(16);
+        byte[] frame = new byte[1024 * 1024];
+        for (int i = 0; i < frame.length; i++) {
+            frame[i] = (byte) i;
+        }
+        buf.writeBytes(frame);
+        buf.writeBytes(new byte[]{1, 2, 3});
+        ChannelBuffer slice = buf.slice(0, frame.length);
+        buf.skipBytes(frame.length);
+        buf.discardReadBytes();
+
+        // only the unread bytes are moved, not the grown capacity.
+        assertTrue(buf.capacity() < frame.length);
+        assertEquals(0, buf.readerIndex());
+        assertEquals(3, buf.writerIndex());
+        assertEquals(1, buf.getByte(0));
+        assertEquals(3, buf.getByte(2));
+        assertEquals((byte) (frame.length - 1), slice.getByte(frame.length - 1));
+        slice.release();
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.remoting.buffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class PooledChannelBufferTest extends AbstractChannelBufferTest {
+
+    private final PooledChannelBufferFactory factory = new PooledChannelBufferFactory(1, 0);
+
+    private ChannelBuffer buffer;
+
+    @Override
+    protected ChannelBuffer newBuffer(int capacity) {
+        buffer = factory.getBuffer(capacity);
+        assertEquals(0, buffer.writerIndex());
+        return buffer;
+    }
+
+    @Override
+    protected ChannelBuffer[] components() {
+        return new ChannelBuffer[]{buffer};
+    }
+
+    @Test
+    public void testCapacityRoundedUpToSizeClass() {
+        assertEquals(256, factory.getBuffer(1).capacity());
+        assertEquals(1024, factory.getBuffer(1000).capacity());
+        assertEquals(1024, factory.getBuffer(1024).capacity());
+        assertEquals(2048, factory.getBuffer(1025).capacity());
+        // not pooled.
+        ChannelBuffer large = factory.getBuffer(1024 * 1024 + 1);
+        assertEquals(1024 * 1024 + 1, large.capacity());
+        assertFalse(large.release());
+    }
+
+    @Test
+    public void testReleasedArrayIsReused() {
+        ChannelBuffer first = factory.getBuffer(100 * 1024);
+        byte[] array = first.array();
+        assertTrue(first.release());
+        assertFalse(first.release());
+        ChannelBuffer second = factory.getBuffer(100 * 1024);
+        assertSame(array, second.array());
+        assertNotSame(array, factory.getBuffer(100 * 1024).array());
+    }
+
+    @Test
+    public void testReferenceCount() {
+        ChannelBuffer buf = factory.getBuffer(1024);
+        byte[] array = buf.array();
+        buf.retain();
+        assertFalse(buf.release());
+        // a slice keeps the array until it is released.
+        ChannelBuffer slice = buf.slice(0, 16);
+        assertFalse(buf.release());
+        assertNotSame(array, factory.getBuffer(1024).array());
+        assertTrue(slice.release());
+        assertSame(array, factory.getBuffer(1024).array());
+        try {
+            buf.retain();
+            fail();
+        } catch (IllegalStateException expected) {
+            // released already.
+        }
+    }
+
+    @Test
+    public void testFlatAllocationOfDynamicBuffer() {
+        byte[] data = new byte[100 * 1024];
+        long allocated = 0;
+        for (int i = 0; i < 10; i++) {
+            ChannelBuffer dynamic = ChannelBuffers.dynamicBuffer(1024, factory);
+            for (int off = 0; off < data.length; off += 1000) {
+                dynamic.writeBytes(data, off, Math.min(1000, data.length - off));
+            }
+            assertEquals(data.length, dynamic.readableBytes());
+            dynamic.retain();
+            assertFalse(dynamic.release());
+            assertTrue(dynamic.release());
+            if (i == 0) {
+                allocated = factory.getAllocatedArrays();
+            }
+        }
+        // the arrays of the first round, one per size class from 1K to 128K, are reused.
+        assertEquals(allocated, factory.getAllocatedArrays());
+    }
+
+    @Test
+    public void testLeakDetection() throws Exception {
+        PooledChannelBufferFactory detecting = new PooledChannelBufferFactory(1, 1);
+        detecting.getBuffer(1024).release();
+        detecting.getBuffer(1024);
+        for (int i = 0; i < 50 && detecting.getLeakCount() == 0; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals(1, detecting.getLeakCount());
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.remoting.exchange.codec;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.alibaba.dubbo.common.URL;
+import com.alibaba.dubbo.remoting.buffer.ChannelBuffer;
+import com.alibaba.dubbo.remoting.buffer.ChannelBuffers;
+import com.alibaba.dubbo.remoting.codec.AbstractMockChannel;
+import com.alibaba.dubbo.remoting.exchange.Response;
+
+public class EncodedMessageTest {
+
+    private final ExchangeCodec codec = new ExchangeCodec();
+
+    private final URL           url   = URL.valueOf("exchange://127.0.0.1:20880?codec=exchange&"
+                                                    + AbstractMockChannel.LOCAL_ADDRESS + "=127.0.0.1:20880&"
+                                                    + AbstractMockChannel.REMOTE_ADDRESS + "=127.0.0.1:12345");
+
+    @Test
+    public void testEncodedByTransportByDefault() throws Exception {
+        AbstractMockChannel channel = new AbstractMockChannel(url);
+        Response response = response("result");
+        Assert.assertSame(response, EncodedMessage.encode(channel, response));
+    }
+
+    @Test
+    public void testEncodeInBusinessThread() throws Exception {
+        AbstractMockChannel channel = new AbstractMockChannel(url.addParameter(EncodedMessage.ENCODE_IN_IO_KEY, false));
+        Response response = response("result");
+        Object encoded = EncodedMessage.encode(channel, response);
+        Assert.assertTrue(encoded instanceof EncodedMessage);
+        Assert.assertSame(response, ((EncodedMessage) encoded).getMessage());
+
+        // the transport only copies the bytes, which are the same as encoding the response there.
+        ChannelBuffer written = ChannelBuffers.dynamicBuffer(1024);
+        codec.encode(channel, written, encoded);
+        ChannelBuffer expected = ChannelBuffers.dynamicBuffer(1024);
+        codec.encode(channel, expected, response);
+        Assert.assertEquals(expected, written);
+        Assert.assertEquals("result", ((Response) codec.decode(channel, written)).getResult());
+        try {
+            codec.encode(channel, written, encoded);
+            Assert.fail();
+        } catch (IllegalStateException expectedException) {
+            // written only once.
+        }
+    }
+
+    @Test
+    public void testBadResponseWhenFailedToEncode() throws Exception {
+        AbstractMockChannel channel = new AbstractMockChannel(url.addParameter(EncodedMessage.ENCODE_IN_IO_KEY, false));
+        // not serializable.
+        Assert.assertNull(EncodedMessage.encode(channel, response(new Object())));
+        Response sent = (Response) channel.getReceivedMessage();
+        Assert.assertEquals(Response.BAD_RESPONSE, sent.getStatus());
+        Assert.assertEquals(1, sent.getId());
+
+        // the buffer is reused for the next response.
+        Object encoded = EncodedMessage.encode(channel, response("next"));
+        ChannelBuffer written = ChannelBuffers.dynamicBuffer(1024);
+        codec.encode(channel, written, encoded);
+        Assert.assertEquals("next", ((Response) codec.decode(channel, written)).getResult());
+    }
+
+    private static Response response(Object result) {
+        Response response = new Response(1);
+        response.setResult(result);
+        return response;
+    }
+
+}
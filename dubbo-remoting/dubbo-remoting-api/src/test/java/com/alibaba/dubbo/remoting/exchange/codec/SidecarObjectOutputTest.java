@@ -0,0 +1,180 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.remoting.exchange.codec;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.alibaba.dubbo.common.URL;
+import com.alibaba.dubbo.common.serialize.ObjectInput;
+import com.alibaba.dubbo.common.serialize.ObjectOutput;
+import com.alibaba.dubbo.remoting.Channel;
+import com.alibaba.dubbo.remoting.buffer.ChannelBuffer;
+import com.alibaba.dubbo.remoting.buffer.ChannelBuffers;
+import com.alibaba.dubbo.remoting.codec.AbstractMockChannel;
+import com.alibaba.dubbo.remoting.exchange.Request;
+import com.alibaba.dubbo.remoting.exchange.Response;
+
+public class SidecarObjectOutputTest {
+
+    private final URL           url   = URL.valueOf("dubbo://127.0.0.1:20880?" + ExchangeCodec.SIDECAR_THRESHOLD_KEY + "=1024&"
+                                                    + AbstractMockChannel.LOCAL_ADDRESS + "=127.0.0.1:20880&"
+                                                    + AbstractMockChannel.REMOTE_ADDRESS + "=127.0.0.1:12345");
+
+    // 数据不小于阈值时放在序列化数据之后，解码时读回
+    private final ExchangeCodec codec = new ExchangeCodec() {
+        @Override
+        protected void encodeRequestData(Channel channel, ObjectOutput out, Object data) throws IOException {
+            encodeSidecar(out, data);
+        }
+
+        @Override
+        protected void encodeResponseData(Channel channel, ObjectOutput out, Object data) throws IOException {
+            encodeSidecar(out, data);
+        }
+
+        @Override
+        protected Object decodeRequestData(Channel channel, ObjectInput in) throws IOException {
+            return decodeSidecar(in);
+        }
+
+        @Override
+        protected Object decodeResponseData(Channel channel, ObjectInput in, Object requestData) throws IOException {
+            return decodeSidecar(in);
+        }
+    };
+
+    private static void encodeSidecar(ObjectOutput out, Object data) throws IOException {
+        if (out instanceof SidecarObjectOutput) {
+            SidecarObjectOutput sidecars = (SidecarObjectOutput) out;
+            int length = data instanceof byte[] ? ((byte[]) data).length : ((ByteBuffer) data).remaining();
+            if (length >= sidecars.getThreshold()) {
+                out.writeObject(null);
+                out.writeInt(sidecars.writeSidecar(data));
+                return;
+            }
+        }
+        out.writeObject(data instanceof ByteBuffer ? toBytes((ByteBuffer) data) : data);
+        out.writeInt(-1);
+    }
+
+    private static Object decodeSidecar(ObjectInput in) throws IOException {
+        try {
+            Object data = in.readObject();
+            int length = in.readInt();
+            return length < 0 ? data : ((SidecarObjectInput) in).readSidecar(length);
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Test
+    public void testRequest() throws Exception {
+        AbstractMockChannel channel = new AbstractMockChannel(url);
+        byte[] data = random(64 * 1024);
+        byte[] frame = encode(channel, request(data));
+        Assert.assertEquals(ExchangeCodec.FLAG_SIDECAR, frame[3] & ExchangeCodec.FLAG_SIDECAR);
+        // the data is sent as it is at the end of the frame.
+        Assert.assertArrayEquals(data, Arrays.copyOfRange(frame, frame.length - data.length, frame.length));
+
+        Request request = (Request) codec.decode(channel, ChannelBuffers.wrappedBuffer(frame));
+        Assert.assertTrue(request.isSidecar());
+        Assert.assertArrayEquals(data, (byte[]) request.getData());
+
+        // small data is serialized as before.
+        request = (Request) codec.decode(channel, ChannelBuffers.wrappedBuffer(encode(channel, request(new byte[16]))));
+        Assert.assertArrayEquals(new byte[16], (byte[]) request.getData());
+    }
+
+    @Test
+    public void testResponse() throws Exception {
+        AbstractMockChannel channel = new AbstractMockChannel(url);
+        byte[] data = random(4 * 1024);
+        Response response = new Response(1);
+        response.setResult(data);
+        // only when the request accepts it.
+        Assert.assertEquals(Response.OK, encode(channel, response)[3]);
+
+        response.setSidecar(true);
+        byte[] frame = encode(channel, response);
+        Assert.assertEquals(Response.OK | ExchangeCodec.FLAG_SIDECAR, frame[3]);
+        Response decoded = (Response) codec.decode(channel, ChannelBuffers.wrappedBuffer(frame));
+        Assert.assertEquals(Response.OK, decoded.getStatus());
+        Assert.assertTrue(decoded.isSidecar());
+        Assert.assertArrayEquals(data, (byte[]) decoded.getResult());
+
+        // error responses are encoded as before.
+        response.setStatus(Response.SERVICE_ERROR);
+        response.setErrorMessage("error");
+        decoded = (Response) codec.decode(channel, ChannelBuffers.wrappedBuffer(encode(channel, response)));
+        Assert.assertEquals(Response.SERVICE_ERROR, decoded.getStatus());
+        Assert.assertEquals("error", decoded.getErrorMessage());
+    }
+
+    @Test
+    public void testMappedFile() throws Exception {
+        AbstractMockChannel channel = new AbstractMockChannel(url);
+        byte[] data = random(16 * 1024);
+        File file = File.createTempFile("sidecar", ".dat");
+        file.deleteOnExit();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.write(data);
+            ByteBuffer mapped = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, data.length);
+            Request request = (Request) codec.decode(channel, ChannelBuffers.wrappedBuffer(encode(channel, request(mapped))));
+            Assert.assertArrayEquals(data, (byte[]) request.getData());
+            // the buffer of the caller is not consumed.
+            Assert.assertEquals(0, mapped.position());
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static Request request(Object data) {
+        Request request = new Request();
+        request.setData(data);
+        return request;
+    }
+
+    private byte[] encode(Channel channel, Object message) throws IOException {
+        ChannelBuffer buffer = ChannelBuffers.dynamicBuffer(1024);
+        codec.encode(channel, buffer, message);
+        byte[] bytes = new byte[buffer.readableBytes()];
+        buffer.readBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] random(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    private static byte[] toBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+}
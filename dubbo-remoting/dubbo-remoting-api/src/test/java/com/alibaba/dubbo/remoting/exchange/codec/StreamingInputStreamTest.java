@@ -0,0 +1,165 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.remoting.exchange.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.alibaba.dubbo.common.URL;
+import com.alibaba.dubbo.remoting.Channel;
+import com.alibaba.dubbo.remoting.Codec2;
+import com.alibaba.dubbo.remoting.buffer.ChannelBuffer;
+import com.alibaba.dubbo.remoting.buffer.ChannelBuffers;
+import com.alibaba.dubbo.remoting.codec.AbstractMockChannel;
+import com.alibaba.dubbo.remoting.exchange.Request;
+
+public class StreamingInputStreamTest {
+
+    private static final int      THRESHOLD = 4 * 1024;
+
+    private final ExecutorService reader    = Executors.newSingleThreadExecutor();
+
+    private final URL             url       = URL.valueOf("dubbo://127.0.0.1:20880?"
+                                                          + AbstractMockChannel.LOCAL_ADDRESS + "=127.0.0.1:20880&"
+                                                          + AbstractMockChannel.REMOTE_ADDRESS + "=127.0.0.1:12345");
+
+    // 消息体达到THRESHOLD时流式解码，decodeBody直接返回流，由测试读取
+    private final ExchangeCodec   codec     = new ExchangeCodec() {
+        @Override
+        protected boolean isDecodeStreaming(Channel channel, byte flag, byte status, int len) {
+            return len >= THRESHOLD;
+        }
+
+        @Override
+        protected Object decodeBody(Channel channel, InputStream is, byte flag, byte status, long id) throws IOException {
+            if (is instanceof StreamingInputStream) {
+                return is;
+            }
+            return super.decodeBody(channel, is, flag, status, id);
+        }
+    };
+
+    @After
+    public void tearDown() {
+        reader.shutdownNow();
+    }
+
+    @Test
+    public void testDecodeWhileReceiving() throws Exception {
+        AbstractMockChannel channel = new AbstractMockChannel(url);
+        byte[] large = encode(channel, new byte[64 * 1024]);
+        byte[] small = encode(channel, "small");
+        byte[] received = new byte[large.length + small.length];
+        System.arraycopy(large, 0, received, 0, large.length);
+        System.arraycopy(small, 0, received, large.length, small.length);
+
+        // 模拟传输层的累积buffer，每次到达1K
+        ChannelBuffer cumulation = ChannelBuffers.dynamicBuffer(1024);
+        Future<byte[]> body = null;
+        Object next = null;
+        int peak = 0;
+        for (int i = 0; i < received.length; i += 1024) {
+            cumulation.writeBytes(received, i, Math.min(1024, received.length - i));
+            peak = Math.max(peak, cumulation.readableBytes());
+            while (cumulation.readable()) {
+                int save = cumulation.readerIndex();
+                Object msg = codec.decode(channel, cumulation);
+                if (msg == Codec2.DecodeResult.NEED_MORE_INPUT) {
+                    cumulation.readerIndex(save);
+                    break;
+                }
+                if (msg instanceof StreamingInputStream) {
+                    Assert.assertNull(body);
+                    body = readAll((StreamingInputStream) msg);
+                } else if (msg != null) {
+                    next = msg;
+                }
+            }
+            cumulation.discardReadBytes();
+        }
+        Assert.assertNotNull(body);
+        byte[] expected = Arrays.copyOfRange(large, ExchangeCodec.HEADER_LENGTH, large.length);
+        Assert.assertArrayEquals(expected, body.get());
+        // the next frame is decoded as before.
+        Assert.assertEquals("small", ((Request) next).getData());
+        // the large body is never accumulated.
+        Assert.assertTrue(peak < 2 * 1024);
+    }
+
+    @Test
+    public void testAbortWhenDisconnected() throws Exception {
+        AbstractMockChannel channel = new AbstractMockChannel(url);
+        byte[] large = encode(channel, new byte[64 * 1024]);
+        StreamingInputStream stream = (StreamingInputStream) codec.decode(channel,
+                ChannelBuffers.wrappedBuffer(large, 0, 8 * 1024));
+        Future<byte[]> body = readAll(stream);
+        StreamingInputStream.abort(channel);
+        try {
+            body.get();
+            Assert.fail();
+        } catch (java.util.concurrent.ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IOException);
+        }
+        Assert.assertNull(StreamingInputStream.get(channel));
+    }
+
+    @Test
+    public void testDiscardAfterClose() throws Exception {
+        AbstractMockChannel channel = new AbstractMockChannel(url);
+        byte[] large = encode(channel, new byte[64 * 1024]);
+        StreamingInputStream stream = (StreamingInputStream) codec.decode(channel,
+                ChannelBuffers.wrappedBuffer(large, 0, 8 * 1024));
+        stream.close();
+        Assert.assertNull(codec.decode(channel, ChannelBuffers.wrappedBuffer(large, 8 * 1024, large.length - 8 * 1024)));
+        Assert.assertEquals(0, stream.available());
+        Assert.assertNull(StreamingInputStream.get(channel));
+    }
+
+    private byte[] encode(Channel channel, Object data) throws IOException {
+        Request request = new Request();
+        request.setData(data);
+        ChannelBuffer buffer = ChannelBuffers.dynamicBuffer(1024);
+        codec.encode(channel, buffer, request);
+        byte[] bytes = new byte[buffer.readableBytes()];
+        buffer.readBytes(bytes);
+        return bytes;
+    }
+
+    private Future<byte[]> readAll(final InputStream is) {
+        return reader.submit(new Callable<byte[]>() {
+            public byte[] call() throws Exception {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                byte[] b = new byte[512];
+                int n;
+                while ((n = is.read(b)) >= 0) {
+                    bos.write(b, 0, n);
+                }
+                return bos.toByteArray();
+            }
+        });
+    }
+
+}
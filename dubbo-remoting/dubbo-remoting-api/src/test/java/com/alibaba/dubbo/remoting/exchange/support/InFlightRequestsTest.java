@@ -0,0 +1,86 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.remoting.exchange.support;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.alibaba.dubbo.remoting.exchange.support.header.MockChannel;
+
+public class InFlightRequestsTest {
+
+    @Test
+    public void testPutGetRemove() {
+        InFlightRequests table = new InFlightRequests();
+        for (long id = 0; id < 1000; id++) {
+            table.put(id, "v" + id);
+        }
+        Assert.assertEquals(1000, table.size());
+        for (long id = 0; id < 1000; id += 2) {
+            Assert.assertEquals("v" + id, table.remove(id));
+        }
+        Assert.assertEquals(500, table.size());
+        for (long id = 0; id < 1000; id++) {
+            Assert.assertEquals(id % 2 == 0 ? null : "v" + id, table.get(id));
+        }
+        // removal is conditional on the identity of the value.
+        Object value = table.get(1);
+        Assert.assertFalse(table.remove(1, new String("v1")));
+        Assert.assertTrue(table.remove(1, value));
+        Assert.assertNull(table.get(1));
+    }
+
+    @Test
+    public void testRandomKeys() {
+        InFlightRequests table = new InFlightRequests();
+        Random random = new Random(0);
+        long[] ids = new long[5000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = random.nextLong();
+            table.put(ids[i], Long.valueOf(ids[i]));
+        }
+        for (int i = 0; i < ids.length; i += 3) {
+            Assert.assertEquals(Long.valueOf(ids[i]), table.remove(ids[i]));
+        }
+        for (int i = 0; i < ids.length; i++) {
+            Assert.assertEquals(i % 3 == 0 ? null : Long.valueOf(ids[i]), table.get(ids[i]));
+        }
+        Assert.assertEquals(ids.length - (ids.length + 2) / 3, table.values().size());
+        Assert.assertEquals(table.size(), table.values().size());
+    }
+
+    @Test
+    public void testPerChannel() {
+        MockChannel channel1 = new MockChannel();
+        MockChannel channel2 = new MockChannel();
+        Assert.assertFalse(InFlightRequests.hasPending(channel1));
+
+        InFlightRequests table1 = InFlightRequests.getOrCreate(channel1);
+        InFlightRequests table2 = InFlightRequests.getOrCreate(channel2);
+        Assert.assertSame(table1, InFlightRequests.getOrCreate(channel1));
+        // each connection has its own id sequence.
+        Assert.assertEquals(0, table1.newId());
+        Assert.assertEquals(1, table1.newId());
+        Assert.assertEquals(0, table2.newId());
+
+        table1.put(0, "pending");
+        Assert.assertTrue(InFlightRequests.hasPending(channel1));
+        Assert.assertFalse(InFlightRequests.hasPending(channel2));
+    }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.remoting.exchange.support;
+
+import java.net.InetSocketAddress;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.alibaba.dubbo.common.Constants;
+import com.alibaba.dubbo.remoting.exchange.Request;
+import com.alibaba.dubbo.remoting.exchange.Response;
+import com.alibaba.dubbo.remoting.exchange.support.header.MockChannel;
+import com.alibaba.dubbo.rpc.RpcInvocation;
+
+public class LateResponsesTest {
+
+    private final MockChannel channel = new MockChannel() {
+        @Override
+        public InetSocketAddress getRemoteAddress() {
+            return new InetSocketAddress("127.0.0.1", 20881);
+        }
+    };
+
+    @Test
+    public void testLateResponse() throws Exception {
+        RpcInvocation invocation = new RpcInvocation();
+        invocation.setMethodName("sayHello");
+        invocation.setAttachment(Constants.PATH_KEY, "com.foo.LateService");
+        Request request = new Request();
+        request.setData(invocation);
+
+        LateResponses.timeout(channel, request);
+        Thread.sleep(60);
+        LateResponses.received(channel, new Response(request.getId()));
+        // a response arriving twice, or with an unknown id, is counted without lateness.
+        LateResponses.received(channel, new Response(request.getId()));
+
+        LateResponses.Statistics statistics = LateResponses.getStatistics().get("127.0.0.1:20881 com.foo.LateService.sayHello");
+        Assert.assertEquals(1, statistics.getCount());
+        Assert.assertTrue(statistics.getMax() >= 50);
+        long[] histogram = statistics.getHistogram();
+        Assert.assertEquals(LateResponses.BUCKETS.length + 2, histogram.length);
+        Assert.assertEquals(1, histogram[2] + histogram[3]);
+
+        statistics = LateResponses.getStatistics().get("127.0.0.1:20881 unknown");
+        Assert.assertEquals(1, statistics.getHistogram()[LateResponses.BUCKETS.length + 1]);
+    }
+
+    @Test
+    public void testRateLimitedLog() {
+        LateResponses.Statistics statistics = new LateResponses.Statistics();
+        Assert.assertEquals(0, statistics.record(5));
+        for (int i = 0; i < 100; i ++) {
+            Assert.assertEquals(-1, statistics.record(5));
+        }
+        Assert.assertEquals(101, statistics.getCount());
+        Assert.assertEquals(101, statistics.getHistogram()[0]);
+    }
+
+}
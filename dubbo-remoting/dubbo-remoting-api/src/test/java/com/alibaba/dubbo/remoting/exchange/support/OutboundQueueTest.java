@@ -0,0 +1,255 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.remoting.exchange.support;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import com.alibaba.dubbo.common.URL;
+import com.alibaba.dubbo.remoting.RemotingException;
+import com.alibaba.dubbo.remoting.buffer.ChannelBuffer;
+import com.alibaba.dubbo.remoting.buffer.ChannelBuffers;
+import com.alibaba.dubbo.remoting.codec.AbstractMockChannel;
+import com.alibaba.dubbo.remoting.exchange.Request;
+import com.alibaba.dubbo.remoting.exchange.codec.ExchangeCodec;
+import com.alibaba.dubbo.remoting.exchange.support.completable.CompletableDefaultFuture;
+
+public class OutboundQueueTest {
+
+    private final ExchangeCodec   codec    = new ExchangeCodec();
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+    private final URL             url      = URL.valueOf("dubbo://127.0.0.1:20880?" + OutboundQueue.WRITE_COALESCING_KEY + "=true&"
+                                                         + AbstractMockChannel.LOCAL_ADDRESS + "=127.0.0.1:12345&"
+                                                         + AbstractMockChannel.REMOTE_ADDRESS + "=127.0.0.1:20880");
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testCoalesce() throws Exception {
+        final SlowChannel channel = new SlowChannel(url);
+        Future<?> first = send(channel, request("first"));
+        Assert.assertTrue(channel.writing.await(5, TimeUnit.SECONDS));
+        // the others only enqueue while the first one is being written.
+        Future<?>[] others = new Future<?>[99];
+        for (int i = 0; i < others.length; i++) {
+            others[i] = send(channel, request("message" + i));
+        }
+        for (Future<?> f : others) {
+            f.get(5, TimeUnit.SECONDS);
+        }
+        Assert.assertEquals(1, channel.writes.get());
+
+        channel.release.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        // written by the first sender in a few batches.
+        Assert.assertTrue(channel.writes.get() <= 3);
+        Set<Object> received = channel.decodeAll();
+        Assert.assertEquals(100, received.size());
+        for (int i = 0; i < others.length; i++) {
+            Assert.assertTrue(received.contains("message" + i));
+        }
+    }
+
+    @Test
+    public void testFailedRequestInBatch() throws Exception {
+        SlowChannel channel = new SlowChannel(url);
+        Future<?> first = send(channel, request("first"));
+        Assert.assertTrue(channel.writing.await(5, TimeUnit.SECONDS));
+        send(channel, request("before")).get(5, TimeUnit.SECONDS);
+        Request bad = request(new Object());
+        CompletableDefaultFuture future = new CompletableDefaultFuture(channel, bad, 60000);
+        future.register();
+        send(channel, bad).get(5, TimeUnit.SECONDS);
+        send(channel, request("after")).get(5, TimeUnit.SECONDS);
+
+        channel.release.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(2, channel.writes.get());
+        // fails at once rather than times out.
+        Assert.assertTrue(future.isDone());
+        try {
+            future.get();
+            Assert.fail();
+        } catch (RemotingException expected) {
+        }
+        Set<Object> received = channel.decodeAll();
+        Assert.assertEquals(3, received.size());
+        Assert.assertTrue(received.contains("before"));
+        Assert.assertTrue(received.contains("after"));
+    }
+
+    @Test
+    public void testDrainHandedOffToFlushThread() throws Exception {
+        // one message per batch.
+        SlowChannel channel = new SlowChannel(url.addParameter(OutboundQueue.WRITE_BATCH_BYTES_KEY, 1));
+        Future<?> first = send(channel, request("first"));
+        Assert.assertTrue(channel.writing.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 20; i++) {
+            send(channel, request("message" + i)).get(5, TimeUnit.SECONDS);
+        }
+
+        channel.release.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        Assert.assertTrue(channel.awaitWrites(21));
+        // the first sender writes a bounded number of batches, the rest by the flush thread.
+        Assert.assertEquals(21 - OutboundQueue.DRAIN_BATCHES, channel.flushed.get());
+        Assert.assertEquals(21, channel.decodeAll().size());
+    }
+
+    @Test
+    public void testLatencyDoesNotBlockSender() throws Exception {
+        SlowChannel channel = new SlowChannel(url.addParameter(OutboundQueue.WRITE_BATCH_LATENCY_KEY, 200000));
+        channel.release.countDown();
+        long start = System.nanoTime();
+        OutboundQueue.send(channel, request("first"), false);
+        OutboundQueue.send(channel, request("second"), false);
+        Assert.assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(200));
+        Assert.assertEquals(0, channel.writes.get());
+        // written together by the flush thread after the latency.
+        Assert.assertTrue(channel.awaitWrites(1));
+        Assert.assertEquals(1, channel.flushed.get());
+        Assert.assertEquals(2, channel.decodeAll().size());
+    }
+
+    @Test
+    public void testConnectionsFlushedInParallel() throws Exception {
+        Assume.assumeTrue(OutboundQueue.FLUSH_THREADS > 1);
+        URL latency = url.addParameter(OutboundQueue.WRITE_BATCH_LATENCY_KEY, 1000);
+        SlowChannel blocked = new SlowChannel(latency);
+        OutboundQueue.send(blocked, request("blocked"), false);
+        Assert.assertTrue(blocked.writing.await(5, TimeUnit.SECONDS));
+        try {
+            // encoded by another flush thread while the first one is held by the blocked connection.
+            SlowChannel other = new SlowChannel(latency);
+            other.release.countDown();
+            OutboundQueue.send(other, request("other"), false);
+            Assert.assertTrue(other.awaitWrites(1));
+        } finally {
+            blocked.release.countDown();
+        }
+        Assert.assertTrue(blocked.awaitWrites(1));
+    }
+
+    @Test
+    public void testSentBypassesQueue() throws Exception {
+        SlowChannel channel = new SlowChannel(url);
+        channel.release.countDown();
+        OutboundQueue.send(channel, request("sent"), true);
+        Assert.assertNull(OutboundQueue.get(channel));
+        OutboundQueue.send(channel, request("queued"), false);
+        Assert.assertNotNull(OutboundQueue.get(channel));
+        Assert.assertEquals(2, channel.decodeAll().size());
+    }
+
+    private static Request request(Object data) {
+        Request request = new Request();
+        request.setTwoWay(true);
+        request.setData(data);
+        return request;
+    }
+
+    private Future<?> send(final AbstractMockChannel channel, final Object message) {
+        return executor.submit(new Callable<Object>() {
+            public Object call() throws Exception {
+                OutboundQueue.send(channel, message, false);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 第一次写出阻塞到release，写出的消息编码到同一个buffer。
+     */
+    private class SlowChannel extends AbstractMockChannel {
+
+        final CountDownLatch writing = new CountDownLatch(1);
+
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final AtomicInteger  writes  = new AtomicInteger();
+
+        // writes by the flush thread
+        final AtomicInteger  flushed = new AtomicInteger();
+
+        private final AtomicInteger encoded = new AtomicInteger();
+
+        private final ChannelBuffer written = ChannelBuffers.dynamicBuffer(1024);
+
+        SlowChannel(URL url) {
+            super(url);
+        }
+
+        @Override
+        public void send(Object message, boolean sent) throws RemotingException {
+            if (Thread.currentThread().getName().startsWith(OutboundQueue.FLUSH_THREAD_NAME)) {
+                flushed.incrementAndGet();
+            }
+            if (writes.incrementAndGet() == 1) {
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RemotingException(this, e);
+                }
+            }
+            synchronized (written) {
+                try {
+                    codec.encode(this, written, message);
+                } catch (IOException e) {
+                    throw new RemotingException(this, e);
+                }
+            }
+            encoded.incrementAndGet();
+        }
+
+        boolean awaitWrites(int n) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (encoded.get() < n && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            return encoded.get() >= n;
+        }
+
+        Set<Object> decodeAll() throws IOException {
+            Set<Object> data = new HashSet<Object>();
+            synchronized (written) {
+                while (written.readable()) {
+                    data.add(((Request) codec.decode(this, written)).getData());
+                }
+            }
+            return data;
+        }
+    }
+
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.remoting.exchange.support.completable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.alibaba.dubbo.common.URL;
+import com.alibaba.dubbo.remoting.ChannelClosedException;
+import com.alibaba.dubbo.remoting.RemotingException;
+import com.alibaba.dubbo.remoting.TimeoutException;
+import com.alibaba.dubbo.remoting.exchange.Request;
+import com.alibaba.dubbo.remoting.exchange.Response;
+import com.alibaba.dubbo.remoting.exchange.support.InFlightRequests;
+import com.alibaba.dubbo.remoting.exchange.support.header.MockChannel;
+import com.alibaba.dubbo.rpc.RpcResult;
+
+public class CompletableDefaultFutureTest {
+
+    private static final int OUTSTANDING = 10000;
+
+    private static final int THREADS     = 4;
+
+    private final URL        url         = URL.valueOf("dubbo://localhost:20880");
+
+    private final MockChannel channel    = new MockChannel() {
+        @Override
+        public URL getUrl() {
+            return url;
+        }
+    };
+
+    @Test
+    public void testOutstandingRequestsWithBoundedThreads() throws Exception {
+        int threadsBefore = Thread.activeCount();
+        List<CompletableDefaultFuture> futures = new ArrayList<CompletableDefaultFuture>(OUTSTANDING);
+        InFlightRequests inFlight = InFlightRequests.getOrCreate(channel);
+        for (int i = 0; i < OUTSTANDING; i++) {
+            CompletableDefaultFuture future = new CompletableDefaultFuture(channel, new Request(inFlight.newId()), 60000);
+            future.register();
+            futures.add(future);
+        }
+        Assert.assertEquals(OUTSTANDING, inFlight.size());
+        // no thread may be parked on behalf of a pending request.
+        Assert.assertTrue(Thread.activeCount() - threadsBefore <= 1);
+
+        final AtomicInteger completed = new AtomicInteger();
+        for (CompletableDefaultFuture future : futures) {
+            future.getFuture().thenAccept(value -> completed.incrementAndGet());
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final CountDownLatch latch = new CountDownLatch(OUTSTANDING);
+        try {
+            for (final CompletableDefaultFuture future : futures) {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        Response response = new Response(future.getId());
+                        response.setResult(new RpcResult(future.getId()));
+                        FutureAndChannelHolder.received(channel, response);
+                        latch.countDown();
+                    }
+                });
+            }
+            Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+
+        Assert.assertEquals(OUTSTANDING, completed.get());
+        Assert.assertFalse(FutureAndChannelHolder.hasFuture(channel));
+        for (CompletableDefaultFuture future : futures) {
+            Assert.assertTrue(future.isDone());
+            Assert.assertEquals(future.getId(), future.getFuture().get());
+            Assert.assertNull(FutureAndChannelHolder.getFuture(channel, future.getId()));
+        }
+    }
+
+    @Test
+    public void testExceptionResult() throws Exception {
+        CompletableDefaultFuture future = new CompletableDefaultFuture(channel, new Request(), 60000);
+        future.register();
+        Response response = new Response(future.getId());
+        response.setResult(new RpcResult(new IllegalArgumentException("biz")));
+        FutureAndChannelHolder.received(channel, response);
+
+        CompletableFuture<?> f = future.getFuture();
+        Assert.assertTrue(f.isCompletedExceptionally());
+        try {
+            f.get();
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+        // the synchronous view still hands back the raw result.
+        Assert.assertTrue(future.get() instanceof RpcResult);
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        CompletableDefaultFuture future = new CompletableDefaultFuture(channel, new Request(), 100);
+        future.register();
+        try {
+            future.getFuture().get(5, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        Assert.assertNull(FutureAndChannelHolder.getFuture(channel, future.getId()));
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        CompletableDefaultFuture future = new CompletableDefaultFuture(channel, new Request(), 60000);
+        future.register();
+        FutureAndChannelHolder.sent(channel, future.getRequest());
+        Assert.assertTrue(future.getFuture().cancel(true));
+        Assert.assertNull(FutureAndChannelHolder.getFuture(channel, future.getId()));
+
+        // the provider is told to stop working on the request.
+        Object sent = channel.getSentObjects().get(channel.getSentObjects().size() - 1);
+        Assert.assertTrue(sent instanceof Request);
+        Assert.assertTrue(((Request) sent).isCancel());
+        Assert.assertEquals(future.getId(), ((Request) sent).getId());
+        Assert.assertFalse(future.cancel());
+    }
+
+    @Test
+    public void testCancelWakesGetWithError() throws Exception {
+        final CompletableDefaultFuture future = new CompletableDefaultFuture(channel, new Request(), 60000);
+        future.register();
+        ExecutorService getter = Executors.newSingleThreadExecutor();
+        try {
+            Future<Object> result = getter.submit(new Callable<Object>() {
+                public Object call() throws Exception {
+                    return future.get();
+                }
+            });
+            Thread.sleep(100);
+            Assert.assertTrue(future.getFuture().cancel(true));
+            Assert.assertTrue(future.getFuture().isCancelled());
+            try {
+                result.get(5, TimeUnit.SECONDS);
+                Assert.fail();
+            } catch (ExecutionException e) {
+                Assert.assertEquals(RemotingException.class, e.getCause().getClass());
+            }
+        } finally {
+            getter.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCancelAfterResponseClaimed() throws Exception {
+        CompletableDefaultFuture future = new CompletableDefaultFuture(channel, new Request(), 60000);
+        future.register();
+        // the response handler has claimed the request but not completed it yet.
+        Assert.assertTrue(InFlightRequests.get(channel).remove(future.getId(), future));
+        Assert.assertFalse(future.getFuture().cancel(true));
+        Assert.assertFalse(future.getFuture().isDone());
+        Response response = new Response(future.getId());
+        response.setResult("ok");
+        future.doReceived(response);
+        Assert.assertEquals("ok", future.get());
+    }
+
+    @Test
+    public void testChannelClosed() throws Exception {
+        CompletableDefaultFuture future = new CompletableDefaultFuture(channel, new Request(), 60000);
+        future.register();
+        FutureAndChannelHolder.closeChannel(channel);
+        try {
+            future.getFuture().get(1, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof ChannelClosedException);
+        }
+        Assert.assertNull(FutureAndChannelHolder.getFuture(channel, future.getId()));
+        Assert.assertFalse(FutureAndChannelHolder.hasFuture(channel));
+    }
+
+    @Test
+    public void testVisibleOnlyAfterRegister() throws Exception {
+        CompletableDefaultFuture future = new CompletableDefaultFuture(channel, new Request(), 60000);
+        // a disconnect before registration does not see the half-built future.
+        FutureAndChannelHolder.closeChannel(channel);
+        Assert.assertFalse(future.getFuture().isDone());
+        future.register();
+        Assert.assertNotNull(FutureAndChannelHolder.getFuture(channel, future.getId()));
+        FutureAndChannelHolder.closeChannel(channel);
+        Assert.assertTrue(future.getFuture().isCompletedExceptionally());
+    }
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.remoting.exchange.support.completable;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.alibaba.dubbo.common.URL;
+import com.alibaba.dubbo.remoting.ChannelClosedException;
+import com.alibaba.dubbo.remoting.RemotingException;
+import com.alibaba.dubbo.remoting.TimeoutException;
+import com.alibaba.dubbo.remoting.exchange.Request;
+import com.alibaba.dubbo.remoting.exchange.Response;
+import com.alibaba.dubbo.remoting.exchange.support.InFlightRequests;
+import com.alibaba.dubbo.remoting.exchange.support.header.MockChannel;
+import com.alibaba.dubbo.rpc.RpcResult;
+
+public class SyncResponseWaiterTest {
+
+    private final URL         url     = URL.valueOf("dubbo://localhost:20880");
+
+    private final MockChannel channel = new MockChannel() {
+        @Override
+        public URL getUrl() {
+            return url;
+        }
+    };
+
+    @Test
+    public void testReceived() throws Exception {
+        final SyncResponseWaiter waiter = new SyncResponseWaiter(channel,
+                new Request(InFlightRequests.getOrCreate(channel).newId()), 5000);
+        waiter.register();
+        new Thread(new Runnable() {
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                }
+                Response response = new Response(waiter.getId());
+                response.setResult(new RpcResult("hello"));
+                FutureAndChannelHolder.received(channel, response);
+            }
+        }).start();
+        Assert.assertEquals("hello", ((RpcResult) waiter.get()).getValue());
+        Assert.assertTrue(waiter.isDone());
+        Assert.assertFalse(FutureAndChannelHolder.hasFuture(channel));
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        SyncResponseWaiter waiter = new SyncResponseWaiter(channel, new Request(), 100);
+        waiter.register();
+        long start = System.currentTimeMillis();
+        try {
+            waiter.get();
+            Assert.fail();
+        } catch (TimeoutException e) {
+            Assert.assertFalse(e.isServerSide());
+        }
+        Assert.assertTrue(System.currentTimeMillis() - start >= 100);
+        Assert.assertNull(FutureAndChannelHolder.getRequest(channel, waiter.getId()));
+    }
+
+    @Test
+    public void testChannelClosed() throws Exception {
+        SyncResponseWaiter waiter = new SyncResponseWaiter(channel, new Request(), 5000);
+        waiter.register();
+        FutureAndChannelHolder.closeChannel(channel);
+        try {
+            waiter.get();
+            Assert.fail();
+        } catch (ChannelClosedException e) {
+        }
+    }
+
+    @Test
+    public void testInterruptedBeforeResponse() throws Exception {
+        SyncResponseWaiter waiter = new SyncResponseWaiter(channel, new Request(), 5000);
+        waiter.register();
+        Thread.currentThread().interrupt();
+        try {
+            waiter.get();
+            Assert.fail();
+        } catch (RemotingException e) {
+            Assert.assertTrue(e.getMessage().startsWith("Interrupted"));
+        } finally {
+            Assert.assertTrue(Thread.interrupted());
+        }
+        Assert.assertNull(FutureAndChannelHolder.getRequest(channel, waiter.getId()));
+    }
+
+    @Test
+    public void testInterruptedAfterClaimed() throws Exception {
+        final SyncResponseWaiter waiter = new SyncResponseWaiter(channel, new Request(), 5000);
+        // not registered: as if claimed by the response handler, but the
+        // response is not set yet.
+        new Thread(new Runnable() {
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                }
+                Response response = new Response(waiter.getId());
+                response.setResult(new RpcResult("hello"));
+                waiter.doReceived(response);
+            }
+        }).start();
+        Thread.currentThread().interrupt();
+        try {
+            Assert.assertEquals("hello", ((RpcResult) waiter.get()).getValue());
+        } finally {
+            Assert.assertTrue(Thread.interrupted());
+        }
+    }
+
+}
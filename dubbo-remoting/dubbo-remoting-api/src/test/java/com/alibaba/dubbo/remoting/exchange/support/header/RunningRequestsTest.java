@@ -0,0 +1,78 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.remoting.exchange.support.header;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.alibaba.dubbo.remoting.exchange.support.header.RunningRequests.RunningRequest;
+
+public class RunningRequestsTest {
+
+    @Test
+    public void testCancelBeforeStart() throws Exception {
+        RunningRequests requests = new RunningRequests();
+        long canceled = RunningRequests.CANCELED_REQUESTS.get();
+        requests.cancel(1, true);
+        Assert.assertNull(requests.start(1));
+        Assert.assertFalse(Thread.interrupted());
+        Assert.assertEquals(canceled + 1, RunningRequests.CANCELED_REQUESTS.get());
+    }
+
+    @Test
+    public void testCancelRacingStart() throws Exception {
+        final RunningRequests requests = new RunningRequests();
+        // id to cancel next, the canceler sets it back to -1 when done.
+        final AtomicLong next = new AtomicLong(-1);
+        Thread canceler = new Thread(new Runnable() {
+            public void run() {
+                long id;
+                while ((id = next.get()) != Long.MIN_VALUE) {
+                    if (id >= 0) {
+                        requests.cancel(id, true);
+                        next.set(-1);
+                    } else {
+                        Thread.yield();
+                    }
+                }
+            }
+        });
+        canceler.setDaemon(true);
+        canceler.start();
+        try {
+            for (long id = 0; id < 20000; id++) {
+                long canceled = RunningRequests.CANCELED_REQUESTS.get();
+                next.set(id);
+                RunningRequest request = requests.start(id);
+                while (next.get() != -1) {
+                    Thread.yield();
+                }
+                if (request != null) {
+                    requests.finish(request);
+                    Assert.assertTrue(request.isCanceled());
+                }
+                // the interrupt raised by the cancel never leaks to the next task of this thread.
+                Assert.assertFalse("leaked interrupt at " + id, Thread.interrupted());
+                Assert.assertEquals(canceled + 1, RunningRequests.CANCELED_REQUESTS.get());
+            }
+        } finally {
+            next.set(Long.MIN_VALUE);
+        }
+    }
+
+}
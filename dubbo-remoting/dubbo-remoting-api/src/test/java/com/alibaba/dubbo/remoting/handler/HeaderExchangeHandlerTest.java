@@ -16,12 +16,15 @@
 package com.alibaba.dubbo.remoting.handler;
 
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Assert;
 import org.junit.Test;
 
 import com.alibaba.dubbo.common.Constants;
+import com.alibaba.dubbo.common.URL;
 import com.alibaba.dubbo.remoting.Channel;
 import com.alibaba.dubbo.remoting.RemotingException;
 import com.alibaba.dubbo.remoting.exchange.ExchangeChannel;
@@ -186,6 +189,157 @@ public class HeaderExchangeHandlerTest {
         hexhandler.received(mchannel, request);
     }
 
+    @Test
+    public void test_received_request_twoway_expired() throws RemotingException{
+        final Request request = new Request();
+        request.setTwoWay(true);
+        request.setData(new Person("charles"));
+        request.setDeadline(System.currentTimeMillis() - 10);
+        long expired = HeaderExchangeHandler.getExpiredRequests();
+
+        final AtomicInteger count = new AtomicInteger(0);
+        final Channel mchannel = new MockedChannel(){
+            @Override
+            public void send(Object message) throws RemotingException {
+                Response res = (Response)message;
+                Assert.assertEquals(request.getId(), res.getId());
+                Assert.assertEquals(Response.SERVER_TIMEOUT, res.getStatus());
+                count.incrementAndGet();
+            }
+        };
+        HeaderExchangeHandler hexhandler = new HeaderExchangeHandler(new MockedExchangeHandler(){
+            @Override
+            public Object reply(ExchangeChannel channel, Object request) throws RemotingException {
+                Assert.fail();
+                throw new RemotingException(channel,"");
+            }
+        });
+        hexhandler.received(mchannel, request);
+        Assert.assertEquals(1, count.get());
+        Assert.assertEquals(expired + 1, HeaderExchangeHandler.getExpiredRequests());
+    }
+
+    @Test
+    public void test_received_request_twoway_interrupted() throws RemotingException{
+        final Request request = new Request();
+        request.setTwoWay(true);
+        request.setData(new Person("charles"));
+        request.setDeadline(System.currentTimeMillis() + 100);
+
+        final AtomicInteger count = new AtomicInteger(0);
+        final Channel mchannel = new MockedChannel(){
+            @Override
+            public URL getUrl() {
+                return URL.valueOf("dubbo://localhost:20880?" + HeaderExchangeHandler.DEADLINE_INTERRUPT_KEY + "=true");
+            }
+            @Override
+            public void send(Object message) throws RemotingException {
+                Response res = (Response)message;
+                Assert.assertEquals(Response.SERVICE_ERROR, res.getStatus());
+                Assert.assertTrue(res.getErrorMessage().contains(InterruptedException.class.getName()));
+                count.incrementAndGet();
+            }
+        };
+        HeaderExchangeHandler hexhandler = new HeaderExchangeHandler(new MockedExchangeHandler(){
+            @Override
+            public Object reply(ExchangeChannel channel, Object request) throws RemotingException {
+                try {
+                    Thread.sleep(10000);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return request;
+            }
+        });
+        hexhandler.received(mchannel, request);
+        Assert.assertEquals(1, count.get());
+        // the interrupt must not leak to the next task of the thread.
+        Assert.assertFalse(Thread.currentThread().isInterrupted());
+    }
+
+    @Test
+    public void test_received_request_canceled_while_queued() throws RemotingException{
+        final Request request = new Request();
+        request.setTwoWay(true);
+        request.setData(new Person("charles"));
+        Request cancel = new Request(request.getId());
+        cancel.setTwoWay(false);
+        cancel.setEvent(Request.CANCEL_EVENT);
+
+        final Channel mchannel = new MockedChannel(){
+            @Override
+            public void send(Object message) throws RemotingException {
+                Assert.fail();
+            }
+        };
+        HeaderExchangeHandler hexhandler = new HeaderExchangeHandler(new MockedExchangeHandler(){
+            @Override
+            public Object reply(ExchangeChannel channel, Object request) throws RemotingException {
+                Assert.fail();
+                throw new RemotingException(channel,"");
+            }
+        });
+        long canceled = HeaderExchangeHandler.getCanceledRequests();
+        hexhandler.received(mchannel, cancel);
+        hexhandler.received(mchannel, request);
+        Assert.assertEquals(canceled + 1, HeaderExchangeHandler.getCanceledRequests());
+    }
+
+    @Test
+    public void test_received_request_canceled_while_running() throws Exception{
+        final Request request = new Request();
+        request.setTwoWay(true);
+        request.setData(new Person("charles"));
+        final Request cancel = new Request(request.getId());
+        cancel.setTwoWay(false);
+        cancel.setEvent(Request.CANCEL_EVENT);
+
+        final AtomicInteger count = new AtomicInteger(0);
+        final Channel mchannel = new MockedChannel(){
+            @Override
+            public URL getUrl() {
+                return URL.valueOf("dubbo://localhost:20880?" + HeaderExchangeHandler.CANCEL_INTERRUPT_KEY + "=true");
+            }
+            @Override
+            public void send(Object message) throws RemotingException {
+                count.incrementAndGet();
+            }
+        };
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        final HeaderExchangeHandler hexhandler = new HeaderExchangeHandler(new MockedExchangeHandler(){
+            @Override
+            public Object reply(ExchangeChannel channel, Object request) throws RemotingException {
+                started.countDown();
+                try {
+                    Thread.sleep(10000);
+                } catch (InterruptedException e) {
+                    interrupted.set(true);
+                }
+                return request;
+            }
+        });
+        Thread canceler = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    started.await();
+                    hexhandler.received(mchannel, cancel);
+                } catch (Exception e) {
+                    Assert.fail();
+                }
+            }
+        });
+        canceler.start();
+        long start = System.currentTimeMillis();
+        hexhandler.received(mchannel, request);
+        canceler.join();
+        Assert.assertTrue(interrupted.get());
+        Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+        // nobody reads the response of a canceled request.
+        Assert.assertEquals(0, count.get());
+        Assert.assertFalse(Thread.currentThread().isInterrupted());
+    }
+
     private class BizException extends RuntimeException{
         private static final long serialVersionUID = 1L;
     }
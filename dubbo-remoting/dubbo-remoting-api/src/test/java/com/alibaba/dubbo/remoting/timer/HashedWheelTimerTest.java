@@ -0,0 +1,88 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.remoting.timer;
+
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.alibaba.dubbo.common.utils.NamedThreadFactory;
+
+public class HashedWheelTimerTest {
+
+    private HashedWheelTimer timer;
+
+    @Before
+    public void setUp() {
+        timer = new HashedWheelTimer(new NamedThreadFactory("HashedWheelTimerTest", true), 10, TimeUnit.MILLISECONDS, 8);
+    }
+
+    @After
+    public void tearDown() {
+        timer.stop();
+    }
+
+    @Test
+    public void testExpire() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(3);
+        long start = System.nanoTime();
+        // the last one wraps around the 8 slot wheel several times.
+        for (int delay : new int[] { 10, 50, 300 }) {
+            timer.newTimeout(new TimerTask() {
+                public void run(Timeout timeout) {
+                    latch.countDown();
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 300);
+        Assert.assertEquals(0, timer.pendingTimeouts());
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        final AtomicInteger fired = new AtomicInteger();
+        Timeout timeout = timer.newTimeout(new TimerTask() {
+            public void run(Timeout timeout) {
+                fired.incrementAndGet();
+            }
+        }, 50, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(timeout.cancel());
+        Assert.assertFalse(timeout.cancel());
+        Assert.assertTrue(timeout.isCancelled());
+        Thread.sleep(200);
+        Assert.assertEquals(0, fired.get());
+        Assert.assertFalse(timeout.isExpired());
+        Assert.assertEquals(0, timer.pendingTimeouts());
+    }
+
+    @Test
+    public void testStop() throws Exception {
+        timer.newTimeout(new TimerTask() {
+            public void run(Timeout timeout) {
+            }
+        }, 1, TimeUnit.HOURS);
+        Set<Timeout> unprocessed = timer.stop();
+        Assert.assertEquals(1, unprocessed.size());
+    }
+
+}
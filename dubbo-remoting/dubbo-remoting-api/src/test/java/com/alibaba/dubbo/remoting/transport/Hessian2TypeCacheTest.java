@@ -0,0 +1,146 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.remoting.transport;
+
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.alibaba.dubbo.common.Parameters;
+import com.alibaba.dubbo.common.URL;
+import com.alibaba.dubbo.common.serialize.support.hessian.Hessian2Serialization;
+import com.alibaba.dubbo.remoting.RemotingException;
+import com.alibaba.dubbo.remoting.buffer.ChannelBuffer;
+import com.alibaba.dubbo.remoting.buffer.ChannelBuffers;
+import com.alibaba.dubbo.remoting.codec.AbstractMockChannel;
+import com.alibaba.dubbo.remoting.codec.TelnetCodecTest.Person;
+import com.alibaba.dubbo.remoting.exchange.Request;
+import com.alibaba.dubbo.remoting.exchange.Response;
+import com.alibaba.dubbo.remoting.exchange.codec.ExchangeCodec;
+
+public class Hessian2TypeCacheTest {
+
+    private final ExchangeCodec codec = new ExchangeCodec();
+
+    private final URL           url   = URL.valueOf("dubbo://127.0.0.1:20880?" + Hessian2TypeCache.TYPE_CACHE_KEY + "=true&"
+                                                    + AbstractMockChannel.LOCAL_ADDRESS + "=127.0.0.1:12345&"
+                                                    + AbstractMockChannel.REMOTE_ADDRESS + "=127.0.0.1:20880");
+
+    @Test
+    public void testTypesAreWrittenOncePerConnection() throws Exception {
+        MockClient consumer = new MockClient(url);
+        AbstractMockChannel provider = new AbstractMockChannel(url);
+
+        byte[] first = consumer.request(person("first"));
+        byte[] second = consumer.request(person("second"));
+        Assert.assertEquals(Hessian2TypeCache.CONTENT_TYPE_ID, first[2] & 0x1f);
+        Assert.assertEquals(Hessian2TypeCache.CONTENT_TYPE_ID, second[2] & 0x1f);
+        // the second request only refers to the class definition of the first.
+        Assert.assertTrue(second.length < first.length - "name".length() - "sex".length());
+        Assert.assertEquals(person("first"), ((Request) decode(provider, first)).getData());
+        Assert.assertEquals(person("second"), ((Request) decode(provider, second)).getData());
+
+        // the provider answers with its own cache once the consumer uses one.
+        byte[] response = encodeResponse(provider, person("response"));
+        Assert.assertEquals(Hessian2TypeCache.CONTENT_TYPE_ID, response[2] & 0x1f);
+        Assert.assertEquals(person("response"), ((Response) decode(consumer, response)).getResult());
+        Assert.assertFalse(provider.isClosed());
+    }
+
+    @Test
+    public void testProviderDoesNotUseCacheUnlessConsumerDoes() throws Exception {
+        AbstractMockChannel provider = new AbstractMockChannel(url);
+        byte[] response = encodeResponse(provider, person("response"));
+        Assert.assertEquals(Hessian2Serialization.ID, response[2] & 0x1f);
+    }
+
+    @Test
+    public void testFallBackAfterEncodeFailure() throws Exception {
+        MockClient consumer = new MockClient(url);
+        consumer.request(person("first"));
+        try {
+            consumer.request(new Object());
+            Assert.fail();
+        } catch (RemotingException expected) {
+            // not serializable.
+        }
+        byte[] next = consumer.request(person("next"));
+        Assert.assertEquals(Hessian2Serialization.ID, next[2] & 0x1f);
+    }
+
+    private static Person person(String name) {
+        Person person = new Person();
+        person.name = name;
+        person.sex = "unknown";
+        return person;
+    }
+
+    private byte[] encodeResponse(AbstractMockChannel channel, Object result) throws IOException {
+        Response response = new Response(1);
+        response.setResult(result);
+        ChannelBuffer buffer = ChannelBuffers.dynamicBuffer(1024);
+        codec.encode(channel, buffer, response);
+        return toBytes(buffer);
+    }
+
+    private Object decode(AbstractMockChannel channel, byte[] data) throws IOException {
+        return codec.decode(channel, ChannelBuffers.wrappedBuffer(data));
+    }
+
+    private static byte[] toBytes(ChannelBuffer buffer) {
+        byte[] data = new byte[buffer.readableBytes()];
+        buffer.readBytes(data);
+        return data;
+    }
+
+    private class MockClient extends AbstractMockChannel implements com.alibaba.dubbo.remoting.Client {
+
+        private byte[] sent;
+
+        MockClient(URL url) {
+            super(url);
+        }
+
+        byte[] request(Object data) throws RemotingException {
+            Request request = new Request();
+            request.setData(data);
+            Hessian2TypeCache.send(this, request, false);
+            return sent;
+        }
+
+        @Override
+        public void send(Object message, boolean sent) throws RemotingException {
+            ChannelBuffer buffer = ChannelBuffers.dynamicBuffer(1024);
+            try {
+                codec.encode(this, buffer, message);
+            } catch (Exception e) {
+                throw new RemotingException(this, e);
+            }
+            this.sent = toBytes(buffer);
+        }
+
+        public void reconnect() throws RemotingException {
+        }
+
+        public void reset(URL url) {
+        }
+
+        public void reset(Parameters parameters) {
+        }
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.remoting.transport.compress;
+
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.alibaba.dubbo.common.Constants;
+import com.alibaba.dubbo.common.URL;
+import com.alibaba.dubbo.common.io.Bytes;
+import com.alibaba.dubbo.remoting.buffer.ChannelBuffer;
+import com.alibaba.dubbo.remoting.buffer.ChannelBuffers;
+import com.alibaba.dubbo.remoting.codec.AbstractMockChannel;
+import com.alibaba.dubbo.remoting.exchange.Request;
+import com.alibaba.dubbo.remoting.exchange.Response;
+import com.alibaba.dubbo.remoting.exchange.codec.ExchangeCodec;
+
+public class DeflateCompressorTest {
+
+    private final ExchangeCodec codec = new ExchangeCodec();
+
+    private final URL           url   = URL.valueOf("dubbo://127.0.0.1:20880?"
+                                                    + AbstractMockChannel.LOCAL_ADDRESS + "=127.0.0.1:12345&"
+                                                    + AbstractMockChannel.REMOTE_ADDRESS + "=127.0.0.1:20880");
+
+    @Test
+    public void testCompressRequestAboveThreshold() throws Exception {
+        AbstractMockChannel client = new AbstractMockChannel(url.addParameter(ExchangeCodec.COMPRESSOR_KEY, DeflateCompressor.NAME)
+                                                             .addParameter(ExchangeCodec.COMPRESS_THRESHOLD_KEY, 1024));
+        AbstractMockChannel server = new AbstractMockChannel(url);
+        String small = repeat("a", 100);
+        byte[] bytes = encode(client, request(small));
+        Assert.assertEquals(0, bytes[3] & 0x80);
+        Assert.assertEquals(small, ((Request) decode(server, bytes)).getData());
+
+        String large = repeat("abcdefgh", 1024);
+        bytes = encode(client, request(large));
+        Assert.assertEquals(0x80, bytes[3] & 0x80);
+        Assert.assertTrue(Bytes.bytes2int(bytes, 12) < large.length() / 10);
+        Request decoded = (Request) decode(server, bytes);
+        Assert.assertEquals(large, decoded.getData());
+        // the provider may compress the response in the same way.
+        Assert.assertEquals(DeflateCompressor.ID, decoded.getCompressor());
+    }
+
+    @Test
+    public void testCompressResponseOnlyIfAccepted() throws Exception {
+        AbstractMockChannel server = new AbstractMockChannel(url);
+        String large = repeat("abcdefgh", 4 * 1024);
+        Response response = new Response(1L);
+        response.setResult(large);
+        byte[] bytes = encode(server, response);
+        Assert.assertEquals(Response.OK, bytes[3]);
+
+        response.setCompressor(DeflateCompressor.ID);
+        bytes = encode(server, response);
+        Assert.assertEquals((byte) (Response.OK | 0x80), bytes[3]);
+        Response decoded = (Response) decode(new AbstractMockChannel(url), bytes);
+        Assert.assertEquals(Response.OK, decoded.getStatus());
+        Assert.assertEquals(large, decoded.getResult());
+    }
+
+    @Test
+    public void testDecompressExceedPayloadLimit() throws Exception {
+        AbstractMockChannel client = new AbstractMockChannel(url.addParameter(ExchangeCodec.COMPRESSOR_KEY, DeflateCompressor.NAME));
+        byte[] bytes = encode(client, request(repeat("a", 64 * 1024)));
+        Assert.assertTrue(Bytes.bytes2int(bytes, 12) < 1024);
+        try {
+            decode(new AbstractMockChannel(url.addParameter(Constants.PAYLOAD_KEY, 32 * 1024)), bytes);
+            Assert.fail();
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().startsWith("Data length too large: "));
+        }
+    }
+
+    private static Request request(Object data) {
+        Request request = new Request(1L);
+        request.setData(data);
+        return request;
+    }
+
+    private byte[] encode(AbstractMockChannel channel, Object message) throws IOException {
+        ChannelBuffer buffer = ChannelBuffers.dynamicBuffer(1024);
+        codec.encode(channel, buffer, message);
+        byte[] bytes = new byte[buffer.readableBytes()];
+        buffer.readBytes(bytes);
+        return bytes;
+    }
+
+    private Object decode(AbstractMockChannel channel, byte[] bytes) throws IOException {
+        return codec.decode(channel, ChannelBuffers.wrappedBuffer(bytes));
+    }
+
+    private static String repeat(String s, int times) {
+        StringBuilder sb = new StringBuilder(s.length() * times);
+        for (int i = 0; i < times; i++) {
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.remoting.transport.threadpool;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.alibaba.dubbo.common.URL;
+import com.alibaba.dubbo.common.extension.ExtensionLoader;
+import com.alibaba.dubbo.common.threadpool.ThreadPool;
+import com.alibaba.dubbo.common.utils.NamedThreadFactory;
+
+public class VirtualThreadPoolTest {
+
+    @Test
+    public void testExtension() throws Exception {
+        URL url = URL.valueOf("dubbo://127.0.0.1:20880?threadpool=virtual&threadname=test");
+        Executor executor = ExtensionLoader.getExtensionLoader(ThreadPool.class).getAdaptiveExtension().getExecutor(url);
+        if (VirtualThreadPool.isSupported()) {
+            Assert.assertTrue(executor instanceof VirtualThreadExecutor);
+        } else {
+            // falls back to the cached pool.
+            Assert.assertTrue(executor instanceof ThreadPoolExecutor);
+        }
+        final CountDownLatch done = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            public void run() {
+                done.countDown();
+            }
+        });
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        ((ExecutorService) executor).shutdown();
+    }
+
+    @Test
+    public void testLimitConcurrentTasks() throws Exception {
+        VirtualThreadExecutor executor = new VirtualThreadExecutor("test", new NamedThreadFactory("test", true), 2, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger completed = new AtomicInteger();
+        executor.execute(block(release, completed));
+        executor.execute(block(release, completed));
+        // waits for a running one to complete.
+        executor.execute(block(release, completed));
+        try {
+            executor.execute(block(release, completed));
+            Assert.fail();
+        } catch (RejectedExecutionException expected) {
+            // queues is 1.
+        }
+        Assert.assertEquals(1, executor.getWaitingCount());
+        release.countDown();
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        Assert.assertEquals(3, completed.get());
+        try {
+            executor.execute(block(release, completed));
+            Assert.fail();
+        } catch (RejectedExecutionException expected) {
+            // shutdown.
+        }
+    }
+
+    @Test
+    public void testUnlimited() throws Exception {
+        VirtualThreadExecutor executor = new VirtualThreadExecutor("test", new NamedThreadFactory("test", true),
+                                                                   Integer.MAX_VALUE, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger completed = new AtomicInteger();
+        for (int i = 0; i < 500; i++) {
+            executor.execute(block(release, completed));
+        }
+        Assert.assertEquals(0, executor.getWaitingCount());
+        release.countDown();
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        Assert.assertEquals(500, completed.get());
+    }
+
+    @Test
+    public void testShutdownNow() throws Exception {
+        VirtualThreadExecutor executor = new VirtualThreadExecutor("test", new NamedThreadFactory("test", true), 1, -1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        executor.execute(new Runnable() {
+            public void run() {
+                started.countDown();
+                try {
+                    Thread.sleep(10000);
+                } catch (InterruptedException e) {
+                    interrupted.set(true);
+                }
+            }
+        });
+        AtomicInteger completed = new AtomicInteger();
+        executor.execute(block(new CountDownLatch(0), completed));
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        executor.shutdownNow();
+        Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        Assert.assertTrue(interrupted.get());
+        // the waiting one never runs.
+        Assert.assertEquals(0, completed.get());
+    }
+
+    private static Runnable block(final CountDownLatch release, final AtomicInteger completed) {
+        return new Runnable() {
+            public void run() {
+                try {
+                    release.await();
+                    completed.incrementAndGet();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+    }
+
+}
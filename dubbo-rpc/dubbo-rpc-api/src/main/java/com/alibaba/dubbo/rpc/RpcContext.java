@@ -23,6 +23,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
@@ -73,6 +74,8 @@ public class RpcContext {
 
     private CompletableFuture<?> future;
 
+    private Executor callbackExecutor;
+
     private List<URL> urls;
 
     private URL url;
@@ -223,6 +226,25 @@ public class RpcContext {
         this.future = future;
     }
 
+    /**
+     * get callback executor.
+     * 
+     * @return executor of the async callbacks, when callback.executor=caller
+     */
+    public Executor getCallbackExecutor() {
+        return callbackExecutor;
+    }
+
+    /**
+     * set callback executor, used by the async calls of the current thread
+     * whose reference is configured with callback.executor=caller.
+     * 
+     * @param callbackExecutor
+     */
+    public void setCallbackExecutor(Executor callbackExecutor) {
+        this.callbackExecutor = callbackExecutor;
+    }
+
     public List<URL> getUrls() {
         return urls == null && url != null ? (List<URL>) Arrays.asList(url) : urls;
     }
@@ -106,6 +106,30 @@ public class RpcStatus {
         status.active.incrementAndGet();
     }
 
+    /**
+     * 方法上正在执行的调用少于max个时开始计数，检查和计数是原子的，max小于等于0时不限制。
+     * 
+     * @return false if max invocations of the method are in progress already, and nothing is counted.
+     */
+    public static boolean beginCount(URL url, String methodName, int max) {
+        RpcStatus methodStatus = getStatus(url, methodName);
+        if (max > 0) {
+            for (;;) {
+                int active = methodStatus.active.get();
+                if (active >= max) {
+                    return false;
+                }
+                if (methodStatus.active.compareAndSet(active, active + 1)) {
+                    break;
+                }
+            }
+        } else {
+            beginCount(methodStatus);
+        }
+        beginCount(getStatus(url));
+        return true;
+    }
+
     /**
      * 
      * @param url
@@ -27,6 +27,9 @@ import com.alibaba.dubbo.rpc.RpcStatus;
 
 /**
  * ThreadLimitInvokerFilter
+ * <p>
+ * 限制方法上同时执行的调用数。检查和计数是原子的，线程池不限制线程数时（如threadpool=virtual），
+ * 同时到达的调用也不会超过executes。
  * 
  * @author william.liangf
  */
@@ -37,15 +40,11 @@ public class ExecuteLimitFilter implements Filter {
         URL url = invoker.getUrl();
         String methodName = invocation.getMethodName();
         int max = url.getMethodParameter(methodName, Constants.EXECUTES_KEY, 0);
-        if (max > 0) {
-            RpcStatus count = RpcStatus.getStatus(url, invocation.getMethodName());
-            if (count.getActive() >= max) {
-                throw new RpcException("Failed to invoke method " + invocation.getMethodName() + " in provider " + url + ", cause: The service using threads greater than <dubbo:service executes=\"" + max + "\" /> limited.");
-            }
+        if (!RpcStatus.beginCount(url, methodName, max)) {
+            throw new RpcException("Failed to invoke method " + invocation.getMethodName() + " in provider " + url + ", cause: The service using threads greater than <dubbo:service executes=\"" + max + "\" /> limited.");
         }
         long begin = System.currentTimeMillis();
         boolean isException = false;
-        RpcStatus.beginCount(url, methodName);
         try {
             Result result = invoker.invoke(invocation);
             return result;
@@ -0,0 +1,215 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.rpc.support;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.alibaba.dubbo.common.logger.Logger;
+import com.alibaba.dubbo.common.logger.LoggerFactory;
+import com.alibaba.dubbo.common.utils.ConfigUtils;
+import com.alibaba.dubbo.common.utils.NamedThreadFactory;
+
+/**
+ * 进程内共享的后台维护任务调度器，心跳、重连、访问日志输出等周期任务都在这里执行，线程数固定。
+ * <p>
+ * 任务必须足够短，会阻塞的工作(如客户端重连时的connect)由任务转交给其它线程执行。
+ * 按名称统计每次执行相对预定时刻的延迟和执行耗时，延迟持续增大说明线程数不足或有任务阻塞，
+ * 线程数由<code>dubbo.housekeeping.threads</code>配置。
+ */
+public final class HousekeepingScheduler {
+
+    private static final Logger                                logger     = LoggerFactory.getLogger(HousekeepingScheduler.class);
+
+    public static final String                                 THREADS_KEY = "dubbo.housekeeping.threads";
+
+    private static final int                                   THREADS    = Integer.parseInt(ConfigUtils.getProperty(THREADS_KEY, "4"));
+
+    private static final ScheduledThreadPoolExecutor           EXECUTOR;
+
+    private static final ConcurrentMap<String, TaskStatistics> STATISTICS = new ConcurrentHashMap<String, TaskStatistics>();
+
+    static {
+        EXECUTOR = new ScheduledThreadPoolExecutor(THREADS, new NamedThreadFactory("DubboHousekeeping", true));
+        // 取消的任务立即移出队列，不再需要调用方purge
+        EXECUTOR.setRemoveOnCancelPolicy(true);
+    }
+
+    private HousekeepingScheduler() {
+    }
+
+    public static ScheduledFuture<?> schedule(String name, Runnable task, long delay, TimeUnit unit) {
+        MeasuredTask measured = new MeasuredTask(name, task, unit.toNanos(delay), 0, false);
+        return EXECUTOR.schedule(measured, delay, unit);
+    }
+
+    public static ScheduledFuture<?> scheduleWithFixedDelay(String name, Runnable task, long initialDelay, long delay,
+                                                            TimeUnit unit) {
+        MeasuredTask measured = new MeasuredTask(name, task, unit.toNanos(initialDelay), unit.toNanos(delay), false);
+        return EXECUTOR.scheduleWithFixedDelay(measured, initialDelay, delay, unit);
+    }
+
+    public static ScheduledFuture<?> scheduleAtFixedRate(String name, Runnable task, long initialDelay, long period,
+                                                         TimeUnit unit) {
+        MeasuredTask measured = new MeasuredTask(name, task, unit.toNanos(initialDelay), unit.toNanos(period), true);
+        return EXECUTOR.scheduleAtFixedRate(measured, initialDelay, period, unit);
+    }
+
+    /**
+     * @return statistics keyed by task name.
+     */
+    public static Map<String, TaskStatistics> getStatistics() {
+        return Collections.unmodifiableMap(STATISTICS);
+    }
+
+    public static int getThreads() {
+        return THREADS;
+    }
+
+    /**
+     * @return the number of scheduled tasks, including the periodic ones waiting for their next run.
+     */
+    public static int getQueueSize() {
+        return EXECUTOR.getQueue().size();
+    }
+
+    private static TaskStatistics getStatistics(String name) {
+        TaskStatistics statistics = STATISTICS.get(name);
+        if (statistics == null) {
+            STATISTICS.putIfAbsent(name, new TaskStatistics());
+            statistics = STATISTICS.get(name);
+        }
+        return statistics;
+    }
+
+    private static final class MeasuredTask implements Runnable {
+
+        private final String         name;
+
+        private final Runnable       task;
+
+        private final TaskStatistics statistics;
+
+        private final long           period;
+
+        private final boolean        fixedRate;
+
+        // 本次执行的预定时刻，同一任务不会并发执行
+        private long                 expected;
+
+        MeasuredTask(String name, Runnable task, long initialDelay, long period, boolean fixedRate) {
+            if (task == null) {
+                throw new IllegalArgumentException("task == null");
+            }
+            this.name = name;
+            this.task = task;
+            this.statistics = getStatistics(name);
+            this.period = period;
+            this.fixedRate = fixedRate;
+            this.expected = System.nanoTime() + initialDelay;
+        }
+
+        public void run() {
+            long start = System.nanoTime();
+            try {
+                task.run();
+            } catch (Throwable t) {
+                // 周期任务抛出异常后不会再被调度，这里吞掉以免心跳或重连就此停止
+                statistics.failures.incrementAndGet();
+                logger.warn("Housekeeping task " + name + " failed: " + t.getMessage(), t);
+            } finally {
+                long end = System.nanoTime();
+                statistics.record(Math.max(0, start - expected), end - start);
+                expected = fixedRate ? expected + period : end + period;
+            }
+        }
+    }
+
+    /**
+     * 同名任务的执行统计。
+     */
+    public static final class TaskStatistics {
+
+        private final AtomicLong count         = new AtomicLong();
+
+        private final AtomicLong failures      = new AtomicLong();
+
+        private final AtomicLong totalLateness = new AtomicLong();
+
+        private final AtomicLong maxLateness   = new AtomicLong();
+
+        private final AtomicLong totalRuntime  = new AtomicLong();
+
+        private final AtomicLong maxRuntime    = new AtomicLong();
+
+        void record(long lateness, long runtime) {
+            count.incrementAndGet();
+            totalLateness.addAndGet(lateness);
+            totalRuntime.addAndGet(runtime);
+            updateMax(maxLateness, lateness);
+            updateMax(maxRuntime, runtime);
+        }
+
+        private static void updateMax(AtomicLong max, long value) {
+            long m;
+            while (value > (m = max.get())) {
+                if (max.compareAndSet(m, value)) {
+                    break;
+                }
+            }
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getFailures() {
+            return failures.get();
+        }
+
+        public long getAverageLatenessMillis() {
+            long c = count.get();
+            return c == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalLateness.get() / c);
+        }
+
+        public long getMaxLatenessMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(maxLateness.get());
+        }
+
+        public long getAverageRuntimeMillis() {
+            long c = count.get();
+            return c == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalRuntime.get() / c);
+        }
+
+        public long getMaxRuntimeMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(maxRuntime.get());
+        }
+
+        @Override
+        public String toString() {
+            return "count: " + getCount() + ", failures: " + getFailures()
+                   + ", lateness avg/max: " + getAverageLatenessMillis() + "/" + getMaxLatenessMillis() + "ms"
+                   + ", runtime avg/max: " + getAverageRuntimeMillis() + "/" + getMaxRuntimeMillis() + "ms";
+        }
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.rpc.filter;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.alibaba.dubbo.common.URL;
+import com.alibaba.dubbo.rpc.Filter;
+import com.alibaba.dubbo.rpc.Invocation;
+import com.alibaba.dubbo.rpc.Result;
+import com.alibaba.dubbo.rpc.RpcException;
+import com.alibaba.dubbo.rpc.RpcStatus;
+import com.alibaba.dubbo.rpc.support.MockInvocation;
+import com.alibaba.dubbo.rpc.support.MyInvoker;
+
+public class ExecuteLimitFilterTest {
+
+    private final Filter executeLimitFilter = new ExecuteLimitFilter();
+
+    @Test
+    public void testLimitHoldsForConcurrentInvocations() throws Exception {
+        URL url = URL.valueOf("test://test:11/executelimit?executes=5");
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final MyInvoker<ExecuteLimitFilterTest> invoker = new MyInvoker<ExecuteLimitFilterTest>(url) {
+            @Override
+            public Result invoke(Invocation invocation) throws RpcException {
+                int n = running.incrementAndGet();
+                while (maxRunning.get() < n && !maxRunning.compareAndSet(maxRunning.get(), n)) {
+                }
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                return super.invoke(invocation);
+            }
+        };
+        final Invocation invocation = new MockInvocation();
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger rejected = new AtomicInteger();
+        final CountDownLatch rejectedAll = new CountDownLatch(15);
+        Thread[] threads = new Thread[20];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        start.await();
+                        executeLimitFilter.invoke(invoker, invocation);
+                    } catch (RpcException expected) {
+                        rejected.incrementAndGet();
+                        rejectedAll.countDown();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        start.countDown();
+        Assert.assertTrue(rejectedAll.await(5, TimeUnit.SECONDS));
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(15, rejected.get());
+        Assert.assertEquals(5, maxRunning.get());
+        Assert.assertEquals(0, RpcStatus.getStatus(url, invocation.getMethodName()).getActive());
+        Assert.assertEquals(5, RpcStatus.getStatus(url, invocation.getMethodName()).getTotal());
+    }
+
+}
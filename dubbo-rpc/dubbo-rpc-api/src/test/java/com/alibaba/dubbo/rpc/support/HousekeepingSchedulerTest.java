@@ -0,0 +1,83 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.rpc.support;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HousekeepingSchedulerTest {
+
+    @Test
+    public void testStatistics() throws Exception {
+        // runs of one task never overlap, so the third run is recorded before the fourth starts.
+        final CountDownLatch latch = new CountDownLatch(4);
+        ScheduledFuture<?> future = HousekeepingScheduler.scheduleWithFixedDelay("test-statistics", new Runnable() {
+            public void run() {
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                latch.countDown();
+            }
+        }, 10, 10, TimeUnit.MILLISECONDS);
+        try {
+            Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } finally {
+            future.cancel(false);
+        }
+        HousekeepingScheduler.TaskStatistics statistics = HousekeepingScheduler.getStatistics().get("test-statistics");
+        Assert.assertNotNull(statistics);
+        Assert.assertTrue(statistics.getCount() >= 3);
+        Assert.assertEquals(0, statistics.getFailures());
+        Assert.assertTrue(statistics.getMaxRuntimeMillis() >= 20);
+    }
+
+    @Test
+    public void testFailureDoesNotStopPeriodicTask() throws Exception {
+        // the failure of the third run is counted before the fourth starts.
+        final CountDownLatch latch = new CountDownLatch(4);
+        ScheduledFuture<?> future = HousekeepingScheduler.scheduleAtFixedRate("test-failure", new Runnable() {
+            public void run() {
+                latch.countDown();
+                throw new IllegalStateException("expected");
+            }
+        }, 0, 10, TimeUnit.MILLISECONDS);
+        try {
+            Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } finally {
+            future.cancel(false);
+        }
+        Assert.assertTrue(HousekeepingScheduler.getStatistics().get("test-failure").getFailures() >= 3);
+    }
+
+    @Test
+    public void testCanceledTaskIsRemoved() throws Exception {
+        int before = HousekeepingScheduler.getQueueSize();
+        ScheduledFuture<?> future = HousekeepingScheduler.schedule("test-cancel", new Runnable() {
+            public void run() {
+            }
+        }, 1, TimeUnit.HOURS);
+        Assert.assertEquals(before + 1, HousekeepingScheduler.getQueueSize());
+        future.cancel(false);
+        Assert.assertEquals(before, HousekeepingScheduler.getQueueSize());
+    }
+
+}
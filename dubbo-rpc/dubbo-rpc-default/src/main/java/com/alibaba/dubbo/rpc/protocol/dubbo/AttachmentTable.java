@@ -0,0 +1,338 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.rpc.protocol.dubbo;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.alibaba.dubbo.common.Constants;
+import com.alibaba.dubbo.common.io.UnsafeByteArrayOutputStream;
+import com.alibaba.dubbo.remoting.Channel;
+import com.alibaba.dubbo.rpc.Invocation;
+
+/**
+ * 连接上的隐式参数字典，开启attachment.table后，隐式参数不再经序列化整体写出，而是按类似HPACK的紧凑格式编码，
+ * 重复出现的键值对只占一到两个字节。
+ * <p>
+ * 编码为varint的条目数，随后每个条目以varint(n &lt;&lt; 2 | 类型)开头：
+ * <ul>
+ * <li>类型0，引用字典中编号为n的键值对；</li>
+ * <li>类型1，定义编号为n的键值对，随后是键和值；</li>
+ * <li>类型2，不进入字典的键值对，n为常用键的编号，为0时随后是键，再随后是值。</li>
+ * </ul>
+ * 类型1中的键同样以varint的常用键编号开头。字符串为varint(字节数 + 1)加UTF-8字节，0表示null。
+ * <p>
+ * 与{@link SymbolTable}一样，定义只在携带它的请求收到正常响应后才改为引用，提供方乱序解码时不会遇到未定义的编号。
+ * 字典不淘汰条目，满了之后新的键值对不再进入字典，过长的值也不进入字典。
+ */
+final class AttachmentTable {
+
+    static final int              MAX_ENTRIES      = 1024;
+
+    // 超过该长度的值多半每次都不同，不进入字典
+    static final int              MAX_VALUE_LENGTH = 128;
+
+    private static final String   KEY              = AttachmentTable.class.getName();
+
+    private static final Charset  UTF8             = Charset.forName("UTF-8");
+
+    private static final int      REFERENCE        = 0;
+
+    private static final int      DEFINE           = 1;
+
+    private static final int      LITERAL          = 2;
+
+    // 常用键，编号从1开始，属于协议的一部分，只能在末尾追加
+    private static final String[] STATIC_KEYS      = {
+            null,
+            Constants.PATH_KEY,
+            Constants.INTERFACE_KEY,
+            Constants.VERSION_KEY,
+            Constants.GROUP_KEY,
+            Constants.TIMEOUT_KEY,
+            Constants.TOKEN_KEY,
+            Constants.APPLICATION_KEY,
+            Constants.DUBBO_VERSION_KEY,
+            Constants.ASYNC_KEY,
+            Constants.INPUT_KEY,
+            Constants.OUTPUT_KEY,
+            Constants.GENERIC_KEY
+    };
+
+    private static final Map<String, Integer> STATIC_INDEXES = new HashMap<String, Integer>();
+
+    static {
+        for (int i = 1; i < STATIC_KEYS.length; i++) {
+            STATIC_INDEXES.put(STATIC_KEYS[i], i);
+        }
+    }
+
+    // 消费方
+    private final ConcurrentMap<Map.Entry<String, String>, Entry> entries     = new ConcurrentHashMap<Map.Entry<String, String>, Entry>();
+
+    private final AtomicInteger                                   nextIndex   = new AtomicInteger();
+
+    // 尚未确认的条目
+    private final Map<Integer, Entry>                             confirming  = new ConcurrentHashMap<Integer, Entry>();
+
+    // 携带定义、尚未收到响应的请求，超时或单向的请求随调用对象回收
+    private final Map<Invocation, int[]>                          pending     = Collections.synchronizedMap(new WeakHashMap<Invocation, int[]>());
+
+    // 提供方
+    private final ConcurrentMap<Integer, Entry>                   definitions = new ConcurrentHashMap<Integer, Entry>();
+
+    private AttachmentTable() {
+    }
+
+    static AttachmentTable get(Channel channel) {
+        return (AttachmentTable) channel.getAttribute(KEY);
+    }
+
+    static AttachmentTable getOrCreate(Channel channel) {
+        AttachmentTable table = get(channel);
+        if (table == null) {
+            synchronized (channel) {
+                table = get(channel);
+                if (table == null) {
+                    table = new AttachmentTable();
+                    channel.setAttribute(KEY, table);
+                }
+            }
+        }
+        return table;
+    }
+
+    /**
+     * 消费方编码调用的隐式参数。
+     */
+    void encode(Invocation invocation, Map<String, String> attachments, UnsafeByteArrayOutputStream out) {
+        if (attachments == null || attachments.isEmpty()) {
+            writeVarint(out, 0);
+            return;
+        }
+        writeVarint(out, attachments.size());
+        int[] defined = null;
+        int definedCount = 0;
+        for (Map.Entry<String, String> attachment : attachments.entrySet()) {
+            Entry entry = lookup(attachment.getKey(), attachment.getValue());
+            if (entry == null) {
+                Integer index = STATIC_INDEXES.get(attachment.getKey());
+                if (index == null) {
+                    writeVarint(out, LITERAL);
+                    writeString(out, attachment.getKey());
+                } else {
+                    writeVarint(out, index << 2 | LITERAL);
+                }
+                writeString(out, attachment.getValue());
+            } else if (entry.confirmed) {
+                writeVarint(out, entry.index << 2 | REFERENCE);
+            } else {
+                writeVarint(out, entry.index << 2 | DEFINE);
+                writeKey(out, entry.key);
+                writeString(out, entry.value);
+                if (defined == null) {
+                    defined = new int[attachments.size()];
+                }
+                defined[definedCount++] = entry.index;
+            }
+        }
+        if (defined != null) {
+            int[] indexes = new int[definedCount];
+            System.arraycopy(defined, 0, indexes, 0, definedCount);
+            pending.put(invocation, indexes);
+        }
+    }
+
+    private Entry lookup(String key, String value) {
+        if (key == null || (value != null && value.length() > MAX_VALUE_LENGTH)) {
+            return null;
+        }
+        Map.Entry<String, String> pair = new AbstractMap.SimpleImmutableEntry<String, String>(key, value);
+        Entry entry = entries.get(pair);
+        if (entry == null) {
+            if (entries.size() >= MAX_ENTRIES) {
+                return null;
+            }
+            int index = nextIndex.incrementAndGet();
+            if (index > MAX_ENTRIES) {
+                return null;
+            }
+            Entry created = new Entry(index, key, value);
+            entry = entries.putIfAbsent(pair, created);
+            if (entry == null) {
+                entry = created;
+                confirming.put(index, entry);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * 消费方收到正常响应，说明提供方已经解码了请求，其中携带的定义可以只用编号引用了。
+     */
+    void confirm(Invocation invocation) {
+        if (confirming.isEmpty()) {
+            return;
+        }
+        int[] indexes = pending.remove(invocation);
+        if (indexes != null) {
+            for (int index : indexes) {
+                Entry entry = confirming.remove(index);
+                if (entry != null) {
+                    entry.confirmed = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * 提供方解码隐式参数。
+     */
+    Map<String, String> decode(byte[] bytes) throws IOException {
+        int[] position = new int[1];
+        int size = readVarint(bytes, position);
+        Map<String, String> attachments = new HashMap<String, String>(size < 16 ? 16 : size * 2);
+        for (int i = 0; i < size; i++) {
+            int head = readVarint(bytes, position);
+            int n = head >>> 2;
+            switch (head & 3) {
+                case REFERENCE: {
+                    Entry entry = definitions.get(n);
+                    if (entry == null) {
+                        throw new IOException("Undefined attachment entry " + n);
+                    }
+                    attachments.put(entry.key, entry.value);
+                    break;
+                }
+                case DEFINE: {
+                    if (n <= 0 || n > MAX_ENTRIES) {
+                        throw new IOException("Illegal attachment entry " + n);
+                    }
+                    String key = readKey(bytes, position);
+                    String value = readString(bytes, position);
+                    Entry entry = definitions.get(n);
+                    if (entry == null) {
+                        definitions.putIfAbsent(n, new Entry(n, key, value));
+                    }
+                    attachments.put(key, value);
+                    break;
+                }
+                case LITERAL: {
+                    String key = n == 0 ? readString(bytes, position) : staticKey(n);
+                    attachments.put(key, readString(bytes, position));
+                    break;
+                }
+                default:
+                    throw new IOException("Illegal attachment entry type " + (head & 3));
+            }
+        }
+        return attachments;
+    }
+
+    private static void writeKey(UnsafeByteArrayOutputStream out, String key) {
+        Integer index = STATIC_INDEXES.get(key);
+        if (index == null) {
+            writeVarint(out, 0);
+            writeString(out, key);
+        } else {
+            writeVarint(out, index);
+        }
+    }
+
+    private static String readKey(byte[] bytes, int[] position) throws IOException {
+        int index = readVarint(bytes, position);
+        return index == 0 ? readString(bytes, position) : staticKey(index);
+    }
+
+    private static String staticKey(int index) throws IOException {
+        if (index >= STATIC_KEYS.length) {
+            throw new IOException("Illegal attachment key " + index);
+        }
+        return STATIC_KEYS[index];
+    }
+
+    static void writeVarint(UnsafeByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    static int readVarint(byte[] bytes, int[] position) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (position[0] >= bytes.length) {
+                throw new IOException("Truncated attachments.");
+            }
+            byte b = bytes[position[0]++];
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in attachments.");
+    }
+
+    private static void writeString(UnsafeByteArrayOutputStream out, String value) {
+        if (value == null) {
+            writeVarint(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(UTF8);
+        writeVarint(out, bytes.length + 1);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static String readString(byte[] bytes, int[] position) throws IOException {
+        int length = readVarint(bytes, position) - 1;
+        if (length < 0) {
+            return null;
+        }
+        if (length > bytes.length - position[0]) {
+            throw new IOException("Truncated attachments.");
+        }
+        String value = new String(bytes, position[0], length, UTF8);
+        position[0] += length;
+        return value;
+    }
+
+    private static final class Entry {
+
+        final int        index;
+
+        final String     key;
+
+        final String     value;
+
+        volatile boolean confirmed;
+
+        Entry(int index, String key, String value) {
+            this.index = index;
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+}
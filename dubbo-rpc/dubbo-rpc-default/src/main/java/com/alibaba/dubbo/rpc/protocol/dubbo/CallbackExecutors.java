@@ -0,0 +1,210 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.rpc.protocol.dubbo;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.alibaba.dubbo.common.URL;
+import com.alibaba.dubbo.common.logger.Logger;
+import com.alibaba.dubbo.common.logger.LoggerFactory;
+import com.alibaba.dubbo.common.utils.NamedThreadFactory;
+import com.alibaba.dubbo.rpc.RpcContext;
+
+/**
+ * 决定异步调用的回调(onreturn/onthrow及RpcContext.getFuture()上的后续操作)在哪里执行。
+ * <p>
+ * 通过引用或方法上的<code>callback.executor</code>参数配置：
+ * <ul>
+ * <li><code>io</code>：直接在解码响应的线程上执行，回调必须足够轻量；</li>
+ * <li><code>caller</code>：在调用方通过{@link RpcContext#setCallbackExecutor(Executor)}设置的线程池上执行；</li>
+ * <li>其它值：在以该值命名的有界线程池上执行，缺省为<code>callback</code>，
+ * 大小由<code>callback.threads</code>和<code>callback.queues</code>控制。</li>
+ * </ul>
+ * 线程池已满(或调用方的线程池拒绝)时，回调退回到完成响应的线程上执行，通常就是解码响应的IO线程，
+ * 此时打印告警并计入{@link QueueingStats#getRejected()}，持续出现说明回调线程池过小或回调太慢。
+ */
+public final class CallbackExecutors {
+
+    private static final Logger logger = LoggerFactory.getLogger(CallbackExecutors.class);
+
+    public static final String CALLBACK_EXECUTOR_KEY = "callback.executor";
+
+    public static final String CALLBACK_THREADS_KEY = "callback.threads";
+
+    public static final String CALLBACK_QUEUES_KEY = "callback.queues";
+
+    public static final String IO_EXECUTOR = "io";
+
+    public static final String CALLER_EXECUTOR = "caller";
+
+    public static final String DEFAULT_CALLBACK_EXECUTOR = "callback";
+
+    public static final int DEFAULT_CALLBACK_THREADS = Runtime.getRuntime().availableProcessors() * 2;
+
+    public static final int DEFAULT_CALLBACK_QUEUES = 10000;
+
+    private static final ConcurrentMap<String, Executor> POOLS = new ConcurrentHashMap<String, Executor>();
+
+    private static final ConcurrentMap<String, QueueingStats> STATS = new ConcurrentHashMap<String, QueueingStats>();
+
+    private CallbackExecutors() {
+    }
+
+    /**
+     * 返回一个在配置的执行器上完成的future，io模式下直接返回原future。
+     *
+     * @param future 由响应处理线程完成的future
+     * @param url 引用的url
+     * @param methodName 方法名
+     * @return 交给调用方的future
+     */
+    public static CompletableFuture<Object> relay(final CompletableFuture<Object> future, URL url, String methodName) {
+        String name = url.getMethodParameter(methodName, CALLBACK_EXECUTOR_KEY, DEFAULT_CALLBACK_EXECUTOR);
+        if (IO_EXECUTOR.equals(name)) {
+            return future;
+        }
+        Executor executor = null;
+        if (CALLER_EXECUTOR.equals(name)) {
+            executor = RpcContext.getContext().getCallbackExecutor();
+            if (executor == null) {
+                name = DEFAULT_CALLBACK_EXECUTOR;
+            }
+        }
+        if (executor == null) {
+            executor = getPool(name, url, methodName);
+        }
+        final Executor target = executor;
+        final QueueingStats stats = getStats(name);
+        final CompletableFuture<Object> relay = new CompletableFuture<Object>();
+        future.whenComplete((value, throwable) -> {
+            final long completed = System.nanoTime();
+            Runnable task = () -> {
+                stats.record(System.nanoTime() - completed);
+                if (throwable == null) {
+                    relay.complete(value);
+                } else {
+                    relay.completeExceptionally(throwable);
+                }
+            };
+            try {
+                target.execute(task);
+            } catch (RejectedExecutionException e) {
+                stats.rejected.incrementAndGet();
+                logger.warn("Callback executor rejected the completion, run it on the current thread instead.", e);
+                task.run();
+            }
+        });
+        relay.whenComplete((value, throwable) -> {
+            if (relay.isCancelled()) {
+                future.cancel(true);
+            }
+        });
+        return relay;
+    }
+
+    private static Executor getPool(String name, URL url, String methodName) {
+        Executor pool = POOLS.get(name);
+        if (pool == null) {
+            int threads = url.getMethodParameter(methodName, CALLBACK_THREADS_KEY, DEFAULT_CALLBACK_THREADS);
+            int queues = url.getMethodParameter(methodName, CALLBACK_QUEUES_KEY, DEFAULT_CALLBACK_QUEUES);
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(queues), new NamedThreadFactory("DubboCallback-" + name, true),
+                    new ThreadPoolExecutor.AbortPolicy());
+            executor.allowCoreThreadTimeOut(true);
+            pool = POOLS.putIfAbsent(name, executor);
+            if (pool == null) {
+                pool = executor;
+            } else {
+                executor.shutdown();
+            }
+        }
+        return pool;
+    }
+
+    private static QueueingStats getStats(String name) {
+        QueueingStats stats = STATS.get(name);
+        if (stats == null) {
+            STATS.putIfAbsent(name, new QueueingStats());
+            stats = STATS.get(name);
+        }
+        return stats;
+    }
+
+    public static Map<String, Executor> getPools() {
+        return Collections.unmodifiableMap(POOLS);
+    }
+
+    public static Map<String, QueueingStats> getQueueingStats() {
+        return Collections.unmodifiableMap(STATS);
+    }
+
+    /**
+     * 回调从响应到达到开始执行之间的排队时间统计。
+     */
+    public static class QueueingStats {
+
+        private final AtomicLong count = new AtomicLong();
+
+        private final AtomicLong totalNanos = new AtomicLong();
+
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        private final AtomicLong rejected = new AtomicLong();
+
+        void record(long nanos) {
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            long max;
+            while (nanos > (max = maxNanos.get())) {
+                if (maxNanos.compareAndSet(max, nanos)) {
+                    break;
+                }
+            }
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getAverageMillis() {
+            long c = count.get();
+            return c == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalNanos.get() / c);
+        }
+
+        public long getMaxMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(maxNanos.get());
+        }
+
+        /**
+         * @return the number of callbacks run on the completing thread because the executor was saturated.
+         */
+        public long getRejected() {
+            return rejected.get();
+        }
+
+    }
+
+}
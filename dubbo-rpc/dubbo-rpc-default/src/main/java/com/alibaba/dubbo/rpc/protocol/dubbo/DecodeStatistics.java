@@ -0,0 +1,139 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.rpc.protocol.dubbo;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.alibaba.dubbo.common.Constants;
+import com.alibaba.dubbo.rpc.Invocation;
+
+/**
+ * 按服务和方法统计消息体的解码耗时和大小，用于决定自适应模式下在哪个线程上解码，也可通过telnet命令decode查看。
+ */
+public final class DecodeStatistics {
+
+    // 服务和方法名来自调用方，限制统计的方法数
+    static final int                                       MAX_METHODS = 1024;
+
+    private static final ConcurrentMap<String, Statistics> STATISTICS  = new ConcurrentHashMap<String, Statistics>();
+
+    private DecodeStatistics() {
+    }
+
+    public static void record(Invocation invocation, int bytes, long nanos, boolean inline) {
+        if (invocation == null || invocation.getMethodName() == null) {
+            return;
+        }
+        String key = getKey(invocation);
+        Statistics statistics = STATISTICS.get(key);
+        if (statistics == null) {
+            if (STATISTICS.size() >= MAX_METHODS) {
+                return;
+            }
+            STATISTICS.putIfAbsent(key, new Statistics());
+            statistics = STATISTICS.get(key);
+        }
+        statistics.record(bytes, nanos, inline);
+    }
+
+    /**
+     * @return the statistics of the method of the invocation, or null if it has never been decoded.
+     */
+    public static Statistics getStatistics(Invocation invocation) {
+        return invocation == null ? null : STATISTICS.get(getKey(invocation));
+    }
+
+    /**
+     * @return statistics keyed by "service.method".
+     */
+    public static Map<String, Statistics> getStatistics() {
+        return Collections.unmodifiableMap(STATISTICS);
+    }
+
+    private static String getKey(Invocation invocation) {
+        return invocation.getAttachment(Constants.PATH_KEY) + "." + invocation.getMethodName();
+    }
+
+    public static final class Statistics {
+
+        private final AtomicLong count       = new AtomicLong();
+
+        private final AtomicLong inlineCount = new AtomicLong();
+
+        private final AtomicLong totalBytes  = new AtomicLong();
+
+        private final AtomicLong totalNanos  = new AtomicLong();
+
+        private final AtomicLong maxNanos    = new AtomicLong();
+
+        void record(int bytes, long nanos, boolean inline) {
+            count.incrementAndGet();
+            if (inline) {
+                inlineCount.incrementAndGet();
+            }
+            totalBytes.addAndGet(bytes);
+            totalNanos.addAndGet(nanos);
+            long max;
+            while (nanos > (max = maxNanos.get())) {
+                if (maxNanos.compareAndSet(max, nanos)) {
+                    break;
+                }
+            }
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        /**
+         * @return the number of bodies decoded on the io thread.
+         */
+        public long getInlineCount() {
+            return inlineCount.get();
+        }
+
+        public long getAverageBytes() {
+            long c = count.get();
+            return c == 0 ? 0 : totalBytes.get() / c;
+        }
+
+        public long getAverageMicros() {
+            long c = count.get();
+            return c == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalNanos.get() / c);
+        }
+
+        public long getMaxMicros() {
+            return TimeUnit.NANOSECONDS.toMicros(maxNanos.get());
+        }
+
+        /**
+         * @return the expected decode time of a body of the given size, from the observed rate.
+         */
+        public long estimateMicros(int bytes) {
+            long b = totalBytes.get();
+            if (b == 0) {
+                return getAverageMicros();
+            }
+            return TimeUnit.NANOSECONDS.toMicros((long) ((double) totalNanos.get() / b * bytes));
+        }
+    }
+
+}
@@ -35,7 +35,11 @@ import com.alibaba.dubbo.common.utils.StringUtils;
 import com.alibaba.dubbo.remoting.Channel;
 import com.alibaba.dubbo.remoting.Codec;
 import com.alibaba.dubbo.remoting.Decodeable;
+import com.alibaba.dubbo.remoting.buffer.ChannelBuffer;
+import com.alibaba.dubbo.remoting.buffer.ChannelBufferInputStream;
 import com.alibaba.dubbo.remoting.exchange.Request;
+import com.alibaba.dubbo.remoting.exchange.codec.SidecarObjectInput;
+import com.alibaba.dubbo.remoting.exchange.codec.StreamingInputStream;
 import com.alibaba.dubbo.remoting.transport.CodecSupport;
 import com.alibaba.dubbo.rpc.RpcInvocation;
 
@@ -54,10 +58,20 @@ public class DecodeableRpcInvocation extends RpcInvocation implements Codec, Dec
 
     private InputStream inputStream;
 
+    // 消息体在入站buffer上的切片，解码后释放
+    private ChannelBuffer data;
+
     private Request     request;
 
     private volatile boolean hasDecoded;
 
+    private final long  arrival;
+
+    public DecodeableRpcInvocation(Channel channel, Request request, ChannelBuffer data, byte id) {
+        this(channel, request, new ChannelBufferInputStream(data), id);
+        this.data = data;
+    }
+
     public DecodeableRpcInvocation(Channel channel, Request request, InputStream is, byte id) {
         Assert.notNull(channel, "channel == null");
         Assert.notNull(request, "request == null");
@@ -66,12 +80,22 @@ public class DecodeableRpcInvocation extends RpcInvocation implements Codec, Dec
         this.request = request;
         this.inputStream = is;
         this.serializationType = id;
+        this.arrival = System.currentTimeMillis();
     }
 
     public void decode() throws Exception {
         if (!hasDecoded && channel != null && inputStream != null) {
+            boolean inline = data == null;
+            // 流式解码的耗时包含等待数据到达的时间，不计入统计
+            boolean streaming = inputStream instanceof StreamingInputStream;
+            int size = inputStream.available();
+            long start = System.nanoTime();
             try {
                 decode(channel, inputStream);
+                // 失败的解码不计入，方法名可能是任意的
+                if (!streaming) {
+                    DecodeStatistics.record(this, size, System.nanoTime() - start, inline);
+                }
             } catch (Throwable e) {
                 if (log.isWarnEnabled()) {
                     log.warn("Decode rpc invocation failed: " + e.getMessage(), e);
@@ -80,24 +104,57 @@ public class DecodeableRpcInvocation extends RpcInvocation implements Codec, Dec
                 request.setData(e);
             } finally {
                 hasDecoded = true;
+                release();
             }
         }
     }
 
+    private void release() {
+        if (inputStream instanceof StreamingInputStream) {
+            // 之后到达的数据直接丢弃
+            ((StreamingInputStream) inputStream).close();
+        }
+        ChannelBuffer buffer = data;
+        if (buffer != null) {
+            data = null;
+            inputStream = null;
+            buffer.release();
+        }
+    }
+
     public void encode(Channel channel, OutputStream output, Object message) throws IOException {
         throw new UnsupportedOperationException();
     }
 
     public Object decode(Channel channel, InputStream input) throws IOException {
-        ObjectInput in = CodecSupport.getSerialization(channel.getUrl(), serializationType)
-                .deserialize(channel.getUrl(), input);
+        ObjectInput in = request.isSidecar() ? SidecarObjectInput.deserialize(channel, serializationType, input)
+                : CodecSupport.deserialize(channel, serializationType, input);
 
         try {
-            setAttachment(Constants.DUBBO_VERSION_KEY, in.readUTF());
-            setAttachment(Constants.PATH_KEY, in.readUTF());
-            setAttachment(Constants.VERSION_KEY, in.readUTF());
+            String dubboVersion = in.readUTF();
+            byte flags = 0;
+            if (dubboVersion.length() == 0) {
+                // 扩展格式，见DubboCodec#encodeRequestData
+                flags = in.readByte();
+            }
+            SymbolTable.Symbol symbol = null;
+            if ((flags & (DubboCodec.FLAG_SYMBOL_DEFINE | DubboCodec.FLAG_SYMBOL_REFERENCE)) != 0) {
+                symbol = readSymbol(channel, in, (flags & DubboCodec.FLAG_SYMBOL_DEFINE) != 0);
+                setAttachment(Constants.DUBBO_VERSION_KEY, symbol.getDubboVersion());
+                setAttachment(Constants.PATH_KEY, symbol.getPath());
+                setAttachment(Constants.VERSION_KEY, symbol.getVersion());
+
+                setMethodName(symbol.getMethodName());
+            } else {
+                if (dubboVersion.length() == 0) {
+                    dubboVersion = in.readUTF();
+                }
+                setAttachment(Constants.DUBBO_VERSION_KEY, dubboVersion);
+                setAttachment(Constants.PATH_KEY, in.readUTF());
+                setAttachment(Constants.VERSION_KEY, in.readUTF());
 
-            setMethodName(in.readUTF());
+                setMethodName(in.readUTF());
+            }
             try {
                 Object[] args;
                 Class<?>[] pts;
@@ -105,10 +162,13 @@ public class DecodeableRpcInvocation extends RpcInvocation implements Codec, Dec
                 // NOTICE modified by lishen
                 int argNum = -1;
 
-                if (CodecSupport.getSerialization(channel.getUrl(), serializationType) instanceof OptimizedSerialization) {
+                if (symbol == null && CodecSupport.getSerialization(channel.getUrl(), serializationType) instanceof OptimizedSerialization) {
                     argNum = in.readInt();
                 }
-                if (argNum >= 0) {
+                if (symbol != null) {
+                    pts = symbol.getParameterTypes();
+                    args = readArguments(in, pts);
+                } else if (argNum >= 0) {
                     if (argNum == 0) {
                         pts = DubboCodec.EMPTY_CLASS_ARRAY;
                         args = DubboCodec.EMPTY_OBJECT_ARRAY;
@@ -128,26 +188,17 @@ public class DecodeableRpcInvocation extends RpcInvocation implements Codec, Dec
                     }
                 } else {
                     String desc = in.readUTF();
-                    if (desc.length() == 0) {
-                        pts = DubboCodec.EMPTY_CLASS_ARRAY;
-                        args = DubboCodec.EMPTY_OBJECT_ARRAY;
-                    } else {
-                        pts = ReflectUtils.desc2classArray(desc);
-                        args = new Object[pts.length];
-                        for (int i = 0; i < args.length; i++) {
-                            try {
-                                args[i] = in.readObject(pts[i]);
-                            } catch (Exception e) {
-                                if (log.isWarnEnabled()) {
-                                    log.warn("Decode argument failed: " + e.getMessage(), e);
-                                }
-                            }
-                        }
-                    }
+                    pts = desc.length() == 0 ? DubboCodec.EMPTY_CLASS_ARRAY : ReflectUtils.desc2classArray(desc);
+                    args = readArguments(in, pts);
                 }
                 setParameterTypes(pts);
 
-                Map<String, String> map = (Map<String, String>) in.readObject(Map.class);
+                Map<String, String> map;
+                if ((flags & DubboCodec.FLAG_ATTACHMENT_TABLE) != 0) {
+                    map = AttachmentTable.getOrCreate(channel).decode(in.readBytes());
+                } else {
+                    map = (Map<String, String>) in.readObject(Map.class);
+                }
                 if (map != null && map.size() > 0) {
                     Map<String, String> attachment = getAttachments();
                     if (attachment == null) {
@@ -156,6 +207,9 @@ public class DecodeableRpcInvocation extends RpcInvocation implements Codec, Dec
                     attachment.putAll(map);
                     setAttachments(attachment);
                 }
+                if (in instanceof SidecarObjectInput) {
+                    DubboCodec.readSidecars((SidecarObjectInput) in, args);
+                }
                 //decode argument ,may be callback
                 for (int i = 0; i < args.length; i++) {
                     args[i] = decodeInvocationArgument(channel, this, pts, i, args[i]);
@@ -163,6 +217,19 @@ public class DecodeableRpcInvocation extends RpcInvocation implements Codec, Dec
 
                 setArguments(args);
 
+                // the remaining budget of the consumer, counted from the arrival of the request.
+                String timeout = getAttachment(Constants.TIMEOUT_KEY);
+                if (timeout != null && timeout.length() > 0) {
+                    try {
+                        int budget = Integer.parseInt(timeout);
+                        if (budget > 0) {
+                            request.setDeadline(arrival + budget);
+                        }
+                    } catch (NumberFormatException e) {
+                        // ignore, no deadline.
+                    }
+                }
+
             } catch (ClassNotFoundException e) {
                 throw new IOException(StringUtils.toString("Read invocation data failed.", e));
             }
@@ -175,4 +242,38 @@ public class DecodeableRpcInvocation extends RpcInvocation implements Codec, Dec
         return this;
     }
 
+    private SymbolTable.Symbol readSymbol(Channel channel, ObjectInput in, boolean define) throws IOException {
+        int id = in.readInt();
+        SymbolTable table = SymbolTable.getOrCreate(channel);
+        if (!define) {
+            return table.resolve(id);
+        }
+        String dubboVersion = in.readUTF();
+        String path = in.readUTF();
+        String version = in.readUTF();
+        String methodName = in.readUTF();
+        try {
+            return table.define(id, dubboVersion, path, version, methodName, in.readUTF());
+        } catch (ClassNotFoundException e) {
+            throw new IOException(StringUtils.toString("Read invocation data failed.", e));
+        }
+    }
+
+    private Object[] readArguments(ObjectInput in, Class<?>[] pts) throws IOException {
+        if (pts.length == 0) {
+            return DubboCodec.EMPTY_OBJECT_ARRAY;
+        }
+        Object[] args = new Object[pts.length];
+        for (int i = 0; i < args.length; i++) {
+            try {
+                args[i] = in.readObject(pts[i]);
+            } catch (Exception e) {
+                if (log.isWarnEnabled()) {
+                    log.warn("Decode argument failed: " + e.getMessage(), e);
+                }
+            }
+        }
+        return args;
+    }
+
 }
@@ -30,7 +30,11 @@ import com.alibaba.dubbo.common.utils.StringUtils;
 import com.alibaba.dubbo.remoting.Channel;
 import com.alibaba.dubbo.remoting.Codec;
 import com.alibaba.dubbo.remoting.Decodeable;
+import com.alibaba.dubbo.remoting.buffer.ChannelBuffer;
+import com.alibaba.dubbo.remoting.buffer.ChannelBufferInputStream;
 import com.alibaba.dubbo.remoting.exchange.Response;
+import com.alibaba.dubbo.remoting.exchange.codec.SidecarObjectInput;
+import com.alibaba.dubbo.remoting.exchange.codec.StreamingInputStream;
 import com.alibaba.dubbo.remoting.transport.CodecSupport;
 import com.alibaba.dubbo.rpc.Invocation;
 import com.alibaba.dubbo.rpc.RpcResult;
@@ -49,12 +53,20 @@ public class DecodeableRpcResult extends RpcResult implements Codec, Decodeable
 
     private InputStream inputStream;
 
+    // 消息体在入站buffer上的切片，解码后释放
+    private ChannelBuffer data;
+
     private Response    response;
 
     private Invocation  invocation;
 
     private volatile boolean hasDecoded;
 
+    public DecodeableRpcResult(Channel channel, Response response, ChannelBuffer data, Invocation invocation, byte id) {
+        this(channel, response, new ChannelBufferInputStream(data), invocation, id);
+        this.data = data;
+    }
+
     public DecodeableRpcResult(Channel channel, Response response, InputStream is, Invocation invocation, byte id) {
         Assert.notNull(channel, "channel == null");
         Assert.notNull(response, "response == null");
@@ -71,8 +83,8 @@ public class DecodeableRpcResult extends RpcResult implements Codec, Decodeable
     }
 
     public Object decode(Channel channel, InputStream input) throws IOException {
-        ObjectInput in = CodecSupport.getSerialization(channel.getUrl(), serializationType)
-            .deserialize(channel.getUrl(), input);
+        ObjectInput in = response.isSidecar() ? SidecarObjectInput.deserialize(channel, serializationType, input)
+                : CodecSupport.deserialize(channel, serializationType, input);
 
         try {
             byte flag = in.readByte();
@@ -85,6 +97,11 @@ public class DecodeableRpcResult extends RpcResult implements Codec, Decodeable
                         setValue(returnType == null || returnType.length == 0 ? in.readObject() :
                                      (returnType.length == 1 ? in.readObject((Class<?>) returnType[0])
                                          : in.readObject((Class<?>) returnType[0], returnType[1])));
+                        if (in instanceof SidecarObjectInput) {
+                            Object[] value = new Object[] {getValue()};
+                            DubboCodec.readSidecars((SidecarObjectInput) in, value);
+                            setValue(value[0]);
+                        }
                     } catch (ClassNotFoundException e) {
                         throw new IOException(StringUtils.toString("Read response data failed.", e));
                     }
@@ -113,8 +130,17 @@ public class DecodeableRpcResult extends RpcResult implements Codec, Decodeable
 
     public void decode() throws Exception {
         if (!hasDecoded && channel != null && inputStream != null) {
+            boolean inline = data == null;
+            // 流式解码的耗时包含等待数据到达的时间，不计入统计
+            boolean streaming = inputStream instanceof StreamingInputStream;
+            int size = inputStream.available();
+            long start = System.nanoTime();
             try {
                 decode(channel, inputStream);
+                // 失败的解码不计入，方法名可能是任意的
+                if (!streaming) {
+                    DecodeStatistics.record(invocation, size, System.nanoTime() - start, inline);
+                }
             } catch (Throwable e) {
                 if (log.isWarnEnabled()) {
                     log.warn("Decode rpc result failed: " + e.getMessage(), e);
@@ -123,8 +149,22 @@ public class DecodeableRpcResult extends RpcResult implements Codec, Decodeable
                 response.setErrorMessage(StringUtils.toString(e));
             } finally {
                 hasDecoded = true;
+                release();
             }
         }
     }
 
+    private void release() {
+        if (inputStream instanceof StreamingInputStream) {
+            // 之后到达的数据直接丢弃
+            ((StreamingInputStream) inputStream).close();
+        }
+        ChannelBuffer buffer = data;
+        if (buffer != null) {
+            data = null;
+            inputStream = null;
+            buffer.release();
+        }
+    }
+
 }
@@ -17,12 +17,12 @@ package com.alibaba.dubbo.rpc.protocol.dubbo;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 import com.alibaba.dubbo.common.Constants;
 import com.alibaba.dubbo.common.URL;
 import com.alibaba.dubbo.common.Version;
-import com.alibaba.dubbo.common.io.Bytes;
-import com.alibaba.dubbo.common.io.UnsafeByteArrayInputStream;
+import com.alibaba.dubbo.common.io.UnsafeByteArrayOutputStream;
 import com.alibaba.dubbo.common.logger.Logger;
 import com.alibaba.dubbo.common.logger.LoggerFactory;
 import com.alibaba.dubbo.common.serialize.ObjectInput;
@@ -33,10 +33,20 @@ import com.alibaba.dubbo.common.utils.ReflectUtils;
 import com.alibaba.dubbo.common.utils.StringUtils;
 import com.alibaba.dubbo.remoting.Channel;
 import com.alibaba.dubbo.remoting.Codec2;
+import com.alibaba.dubbo.remoting.buffer.ChannelBuffer;
+import com.alibaba.dubbo.remoting.buffer.ChannelBufferInputStream;
+import com.alibaba.dubbo.remoting.buffer.ChannelBuffers;
 import com.alibaba.dubbo.remoting.exchange.Request;
 import com.alibaba.dubbo.remoting.exchange.Response;
 import com.alibaba.dubbo.remoting.exchange.codec.ExchangeCodec;
+import com.alibaba.dubbo.remoting.exchange.codec.SidecarObjectInput;
+import com.alibaba.dubbo.remoting.exchange.codec.SidecarObjectOutput;
+import com.alibaba.dubbo.remoting.exchange.codec.StreamingInputStream;
 import com.alibaba.dubbo.remoting.transport.CodecSupport;
+import com.alibaba.dubbo.remoting.transport.Hessian2TypeCache;
+import com.alibaba.dubbo.remoting.transport.dispatcher.all.AllDispatcher;
+import com.alibaba.dubbo.remoting.transport.dispatcher.connection.ConnectionOrderedDispatcher;
+import com.alibaba.dubbo.remoting.transport.dispatcher.message.MessageOnlyDispatcher;
 import com.alibaba.dubbo.rpc.Invocation;
 import com.alibaba.dubbo.rpc.Result;
 import com.alibaba.dubbo.rpc.RpcInvocation;
@@ -67,21 +77,70 @@ public class DubboCodec extends ExchangeCodec implements Codec2 {
 
     public static final Class<?>[] EMPTY_CLASS_ARRAY = new Class<?>[0];
 
-    protected Object decodeBody(Channel channel, InputStream is, byte[] header) throws IOException {
-        byte flag = header[2], proto = (byte) (flag & SERIALIZATION_MASK);
+    /**
+     * decode.in.io的取值，按消息体大小和观测到的解码耗时决定在IO线程还是业务线程池上解码。
+     */
+    public static final String DECODE_ADAPTIVE = "adaptive";
+
+    public static final String DECODE_INLINE_THRESHOLD_KEY = "decode.inline.threshold";
+
+    public static final int DEFAULT_DECODE_INLINE_THRESHOLD = 8 * 1024;
+
+    public static final String DECODE_INLINE_COST_KEY = "decode.inline.cost";
+
+    // 微秒
+    public static final int DEFAULT_DECODE_INLINE_COST = 100;
+
+    /**
+     * 不小于该字节数的消息体不等完整到达，收到消息头后即交给业务线程池边收边解码，见{@link StreamingInputStream}，0表示不使用。
+     * 只在received事件派发到线程池时使用。
+     */
+    public static final String DECODE_STREAM_THRESHOLD_KEY = "decode.stream.threshold";
+
+    public static final int DEFAULT_DECODE_STREAM_THRESHOLD = 0;
+
+    // 按观测到的耗时决定之前至少需要的样本数
+    private static final int MIN_DECODE_SAMPLES = 16;
+
+    /**
+     * 提供方支持连接内的符号表时设置，经注册中心传给消费方，见{@link SymbolTable}。
+     */
+    public static final String SYMBOL_TABLE_KEY = "symbol.table";
+
+    public static final boolean DEFAULT_SYMBOL_TABLE = false;
+
+    /**
+     * 提供方支持连接内的隐式参数字典时设置，经注册中心传给消费方，见{@link AttachmentTable}。
+     */
+    public static final String ATTACHMENT_TABLE_KEY = "attachment.table";
+
+    public static final boolean DEFAULT_ATTACHMENT_TABLE = false;
+
+    // 扩展格式的标志位，dubbo版本为空串时随后写出
+    static final byte FLAG_SYMBOL_DEFINE = 0x01;
+
+    static final byte FLAG_SYMBOL_REFERENCE = 0x02;
+
+    static final byte FLAG_ATTACHMENT_TABLE = 0x04;
+
+    // 序列化数据之后的二进制数据原为byte[]或ByteBuffer
+    static final byte SIDECAR_BYTES = 0;
+
+    static final byte SIDECAR_BYTE_BUFFER = 1;
+
+    @Override
+    protected Object decodeBody(Channel channel, InputStream is, byte flag, byte status, long id) throws IOException {
+        byte proto = (byte) (flag & SERIALIZATION_MASK);
         Serialization s = CodecSupport.getSerialization(channel.getUrl(), proto);
-        // get request id.
-        long id = Bytes.bytes2long(header, 4);
         if ((flag & FLAG_REQUEST) == 0) {
             // decode response.
             Response res = new Response(id);
             if ((flag & FLAG_EVENT) != 0) {
                 res.setEvent(Response.HEARTBEAT_EVENT);
             }
-            // get status.
-            byte status = header[3];
-            res.setStatus(status);
-            if (status == Response.OK) {
+            res.setSidecar(isSidecar(flag, status));
+            res.setStatus(getResponseStatus(status));
+            if (res.getStatus() == Response.OK) {
                 try {
                     Object data;
                     if (res.isHeartbeat()) {
@@ -90,16 +149,16 @@ public class DubboCodec extends ExchangeCodec implements Codec2 {
                         data = decodeEventData(channel, deserialize(s, channel.getUrl(), is));
                     } else {
                         DecodeableRpcResult result;
-                        if (channel.getUrl().getParameter(
-                                Constants.DECODE_IN_IO_THREAD_KEY,
-                                Constants.DEFAULT_DECODE_IN_IO_THREAD)) {
-                            result = new DecodeableRpcResult(channel, res, is,
-                                    (Invocation)getRequestData(id), proto);
+                        Invocation invocation = (Invocation) getRequestData(channel, id);
+                        confirmDefinitions(channel, invocation);
+                        if (is instanceof StreamingInputStream) {
+                            // 消息体仍在陆续到达，由DecodeHandler在业务线程池上解码
+                            result = new DecodeableRpcResult(channel, res, is, invocation, proto);
+                        } else if (isDecodeInIoThread(channel, proto, is, invocation)) {
+                            result = new DecodeableRpcResult(channel, res, is, invocation, proto);
                             result.decode();
                         } else {
-                            result = new DecodeableRpcResult(channel, res,
-                                    new UnsafeByteArrayInputStream(readMessageData(is)),
-                                    (Invocation) getRequestData(id), proto);
+                            result = new DecodeableRpcResult(channel, res, readMessageData(is), invocation, proto);
                         }
                         data = result;
                     }
@@ -120,6 +179,8 @@ public class DubboCodec extends ExchangeCodec implements Codec2 {
             Request req = new Request(id);
             req.setVersion("2.0.0");
             req.setTwoWay((flag & FLAG_TWOWAY) != 0);
+            req.setCompressor((byte) (status & COMPRESSOR_MASK));
+            req.setSidecar(isSidecar(flag, status));
             if ((flag & FLAG_EVENT) != 0) {
                 req.setEvent(Request.HEARTBEAT_EVENT);
             }
@@ -131,14 +192,13 @@ public class DubboCodec extends ExchangeCodec implements Codec2 {
                     data = decodeEventData(channel, deserialize(s, channel.getUrl(), is));
                 } else {
                     DecodeableRpcInvocation inv;
-                    if (channel.getUrl().getParameter(
-                            Constants.DECODE_IN_IO_THREAD_KEY,
-                            Constants.DEFAULT_DECODE_IN_IO_THREAD)) {
+                    if (is instanceof StreamingInputStream) {
+                        inv = new DecodeableRpcInvocation(channel, req, is, proto);
+                    } else if (isDecodeInIoThread(channel, proto, is, null)) {
                         inv = new DecodeableRpcInvocation(channel, req, is, proto);
                         inv.decode();
                     } else {
-                        inv = new DecodeableRpcInvocation(channel, req,
-                                new UnsafeByteArrayInputStream(readMessageData(is)), proto);
+                        inv = new DecodeableRpcInvocation(channel, req, readMessageData(is), proto);
                     }
                     data = inv;
                 }
@@ -160,42 +220,175 @@ public class DubboCodec extends ExchangeCodec implements Codec2 {
         return serialization.deserialize(url, is);
     }
 
-    private byte[] readMessageData(InputStream is) throws IOException {
-        if (is.available() > 0) {
-            byte[] result = new byte[is.available()];
+    /**
+     * decode.in.io为adaptive时，不超过decode.inline.threshold字节的消息体直接在IO线程上解码；
+     * 响应在解码前已知对应的方法，按该方法观测到的解码速度估算耗时，不超过decode.inline.cost微秒的也直接解码；
+     * 其余交给DecodeHandler在业务线程池上解码，以免大消息阻塞同一IO线程上的其它连接。
+     * 使用类型缓存的消息依赖到达顺序，总在IO线程上解码。
+     */
+    private boolean isDecodeInIoThread(Channel channel, byte proto, InputStream is, Invocation invocation) throws IOException {
+        if (proto == Hessian2TypeCache.CONTENT_TYPE_ID) {
+            return true;
+        }
+        URL url = channel.getUrl();
+        if (! DECODE_ADAPTIVE.equals(url.getParameter(Constants.DECODE_IN_IO_THREAD_KEY))) {
+            return url.getParameter(Constants.DECODE_IN_IO_THREAD_KEY, Constants.DEFAULT_DECODE_IN_IO_THREAD);
+        }
+        int length = is.available();
+        if (length <= url.getParameter(DECODE_INLINE_THRESHOLD_KEY, DEFAULT_DECODE_INLINE_THRESHOLD)) {
+            return true;
+        }
+        DecodeStatistics.Statistics statistics = DecodeStatistics.getStatistics(invocation);
+        return statistics != null && statistics.getCount() >= MIN_DECODE_SAMPLES
+                && statistics.estimateMicros(length) <= url.getParameter(DECODE_INLINE_COST_KEY, DEFAULT_DECODE_INLINE_COST);
+    }
+
+    /**
+     * 使用类型缓存、压缩的消息和事件仍等完整到达，received事件在IO线程上处理时也不使用，以免IO线程等待自己接收的数据。
+     */
+    @Override
+    protected boolean isDecodeStreaming(Channel channel, byte flag, byte status, int len) {
+        URL url = channel.getUrl();
+        int threshold = url.getParameter(DECODE_STREAM_THRESHOLD_KEY, DEFAULT_DECODE_STREAM_THRESHOLD);
+        if (threshold <= 0 || len < threshold) {
+            return false;
+        }
+        if ((flag & FLAG_EVENT) != 0 || (flag & SERIALIZATION_MASK) == Hessian2TypeCache.CONTENT_TYPE_ID
+                || (status & FLAG_COMPRESSED) != 0 || ((flag & FLAG_REQUEST) == 0 && getResponseStatus(status) != Response.OK)) {
+            return false;
+        }
+        // 与Dispatcher的扩展点参数相同，后两个为兼容旧配置
+        String dispatcher = url.getParameter(Constants.DISPATCHER_KEY,
+                url.getParameter("dispather", url.getParameter("channel.handler", AllDispatcher.NAME)));
+        return AllDispatcher.NAME.equals(dispatcher) || MessageOnlyDispatcher.NAME.equals(dispatcher)
+                || ConnectionOrderedDispatcher.NAME.equals(dispatcher);
+    }
+
+    private void confirmDefinitions(Channel channel, Invocation invocation) {
+        if (invocation == null) {
+            return;
+        }
+        AttachmentTable attachmentTable = AttachmentTable.get(channel);
+        if (attachmentTable != null) {
+            attachmentTable.confirm(invocation);
+        }
+        SymbolTable table = SymbolTable.get(channel);
+        if (table != null) {
+            table.confirm(invocation.getAttachment(Constants.DUBBO_VERSION_KEY, DUBBO_VERSION),
+                          invocation.getAttachment(Constants.PATH_KEY),
+                          invocation.getAttachment(Constants.VERSION_KEY),
+                          invocation.getMethodName(), invocation.getParameterTypes());
+        }
+    }
+
+    /**
+     * 请求按调用的服务和方法上的配置编码，消费方的调用对象带有引用时取引用的URL，否则取连接上的URL。
+     */
+    @Override
+    protected String getParameter(Channel channel, Object data, String key) {
+        if (data instanceof Invocation) {
+            Invocation inv = (Invocation) data;
+            URL url = inv.getInvoker() != null ? inv.getInvoker().getUrl() : channel.getUrl();
+            return url.getMethodParameter(inv.getMethodName(), key);
+        }
+        return super.getParameter(channel, data, key);
+    }
+
+    private ChannelBuffer readMessageData(InputStream is) throws IOException {
+        if (is instanceof ChannelBufferInputStream) {
+            // 不复制消息体，持有入站buffer的切片直到解码完成
+            return ((ChannelBufferInputStream) is).readSlice();
+        }
+        byte[] result = new byte[is.available()];
+        if (result.length > 0) {
             is.read(result);
-            return result;
         }
-        return new byte[]{};
+        return ChannelBuffers.wrappedBuffer(result);
     }
 
     @Override
     protected void encodeRequestData(Channel channel, ObjectOutput out, Object data) throws IOException {
         RpcInvocation inv = (RpcInvocation) data;
 
-        out.writeUTF(inv.getAttachment(Constants.DUBBO_VERSION_KEY, DUBBO_VERSION));
-        out.writeUTF(inv.getAttachment(Constants.PATH_KEY));
-        out.writeUTF(inv.getAttachment(Constants.VERSION_KEY));
+        URL url = channel.getUrl();
+        boolean optimized = getSerialization(channel) instanceof OptimizedSerialization;
+        SymbolTable.Symbol symbol = null;
+        if (!optimized && url.getParameter(SYMBOL_TABLE_KEY, DEFAULT_SYMBOL_TABLE)) {
+            symbol = SymbolTable.getOrCreate(channel).lookup(inv.getAttachment(Constants.DUBBO_VERSION_KEY, DUBBO_VERSION),
+                                                             inv.getAttachment(Constants.PATH_KEY),
+                                                             inv.getAttachment(Constants.VERSION_KEY),
+                                                             inv.getMethodName(), inv.getParameterTypes());
+        }
+        AttachmentTable attachmentTable = null;
+        if (url.getParameter(ATTACHMENT_TABLE_KEY, DEFAULT_ATTACHMENT_TABLE)) {
+            attachmentTable = AttachmentTable.getOrCreate(channel);
+        }
+        if (symbol != null || attachmentTable != null) {
+            // 空的dubbo版本表示扩展格式，随后是标志位
+            out.writeUTF("");
+            byte flags = 0;
+            if (symbol != null) {
+                flags |= symbol.isConfirmed() ? FLAG_SYMBOL_REFERENCE : FLAG_SYMBOL_DEFINE;
+            }
+            if (attachmentTable != null) {
+                flags |= FLAG_ATTACHMENT_TABLE;
+            }
+            out.writeByte(flags);
+        }
+        if (symbol != null) {
+            out.writeInt(symbol.getId());
+            if (!symbol.isConfirmed()) {
+                out.writeUTF(symbol.getDubboVersion());
+                out.writeUTF(symbol.getPath());
+                out.writeUTF(symbol.getVersion());
+                out.writeUTF(symbol.getMethodName());
+                out.writeUTF(symbol.getDesc());
+            }
+        } else {
+            out.writeUTF(inv.getAttachment(Constants.DUBBO_VERSION_KEY, DUBBO_VERSION));
+            out.writeUTF(inv.getAttachment(Constants.PATH_KEY));
+            out.writeUTF(inv.getAttachment(Constants.VERSION_KEY));
 
-        out.writeUTF(inv.getMethodName());
+            out.writeUTF(inv.getMethodName());
 
-        // NOTICE modified by lishen
-        // TODO
-        if (getSerialization(channel) instanceof OptimizedSerialization) {
-            if (!containComplexArguments(inv)) {
-                out.writeInt(inv.getParameterTypes().length);
+            // NOTICE modified by lishen
+            // TODO
+            if (optimized) {
+                if (!containComplexArguments(inv)) {
+                    out.writeInt(inv.getParameterTypes().length);
+                } else {
+                    out.writeInt(-1);
+                }
             } else {
-                out.writeInt(-1);
+                out.writeUTF(ReflectUtils.getDesc(inv.getParameterTypes()));
             }
-        } else {
-            out.writeUTF(ReflectUtils.getDesc(inv.getParameterTypes()));
         }
         Object[] args = inv.getArguments();
+        // kryo和fst按参数值的类型匹配方法，参数不能留空
+        SidecarObjectOutput sidecars = !optimized && out instanceof SidecarObjectOutput ? (SidecarObjectOutput) out : null;
+        boolean[] sidecarArgs = null;
         if (args != null)
             for (int i = 0; i < args.length; i++){
-                out.writeObject(encodeInvocationArgument(channel, inv, i));
+                if (sidecars != null && isSidecar(args[i], sidecars.getThreshold())) {
+                    if (sidecarArgs == null) {
+                        sidecarArgs = new boolean[args.length];
+                    }
+                    sidecarArgs[i] = true;
+                    out.writeObject(null);
+                } else {
+                    out.writeObject(encodeInvocationArgument(channel, inv, i));
+                }
             }
-        out.writeObject(inv.getAttachments());
+        if (attachmentTable != null) {
+            UnsafeByteArrayOutputStream bos = new UnsafeByteArrayOutputStream(64);
+            attachmentTable.encode(inv, inv.getAttachments(), bos);
+            out.writeBytes(bos.toByteArray());
+        } else {
+            out.writeObject(inv.getAttachments());
+        }
+        if (out instanceof SidecarObjectOutput) {
+            writeSidecars((SidecarObjectOutput) out, args, sidecarArgs);
+        }
     }
 
     @Override
@@ -209,7 +402,14 @@ public class DubboCodec extends ExchangeCodec implements Codec2 {
                 out.writeByte(RESPONSE_NULL_VALUE);
             } else {
                 out.writeByte(RESPONSE_VALUE);
-                out.writeObject(ret);
+                if (out instanceof SidecarObjectOutput) {
+                    SidecarObjectOutput sidecars = (SidecarObjectOutput) out;
+                    boolean sidecar = isSidecar(ret, sidecars.getThreshold());
+                    out.writeObject(sidecar ? null : ret);
+                    writeSidecars(sidecars, new Object[] {ret}, sidecar ? new boolean[] {true} : null);
+                } else {
+                    out.writeObject(ret);
+                }
             }
         } else {
             out.writeByte(RESPONSE_WITH_EXCEPTION);
@@ -217,6 +417,59 @@ public class DubboCodec extends ExchangeCodec implements Codec2 {
         }
     }
 
+    private static boolean isSidecar(Object value, int threshold) {
+        return value instanceof byte[] && ((byte[]) value).length >= threshold
+                || value instanceof ByteBuffer && ((ByteBuffer) value).remaining() >= threshold;
+    }
+
+    /**
+     * 在序列化数据的最后写出放在其后的参数或返回值的个数，以及各自的位置、类型和长度。
+     *
+     * @param sidecar the values to send after the serialized data, or null if none
+     */
+    private static void writeSidecars(SidecarObjectOutput out, Object[] values, boolean[] sidecar) throws IOException {
+        int count = 0;
+        if (sidecar != null) {
+            for (boolean b : sidecar) {
+                if (b) count++;
+            }
+        }
+        out.writeInt(count);
+        for (int i = 0; count > 0; i++) {
+            if (sidecar[i]) {
+                out.writeInt(i);
+                out.writeByte(values[i] instanceof ByteBuffer ? SIDECAR_BYTE_BUFFER : SIDECAR_BYTES);
+                out.writeInt(out.writeSidecar(values[i]));
+                count--;
+            }
+        }
+    }
+
+    /**
+     * 读出{@link #writeSidecars}写出的描述，之后按顺序读出二进制数据并放回对应的位置。
+     */
+    static void readSidecars(SidecarObjectInput in, Object[] values) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > values.length) {
+            throw new IOException("Invalid sidecar count " + count + ", expect at most " + values.length);
+        }
+        int[] indexes = new int[count];
+        byte[] types = new byte[count];
+        int[] lengths = new int[count];
+        for (int i = 0; i < count; i++) {
+            indexes[i] = in.readInt();
+            types[i] = in.readByte();
+            lengths[i] = in.readInt();
+            if (indexes[i] < 0 || indexes[i] >= values.length) {
+                throw new IOException("Invalid sidecar index " + indexes[i] + ", expect less than " + values.length);
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            byte[] value = in.readSidecar(lengths[i]);
+            values[indexes[i]] = types[i] == SIDECAR_BYTE_BUFFER ? ByteBuffer.wrap(value) : value;
+        }
+    }
+
     // workaround for the target method matching of kryo & fst
     private boolean containComplexArguments(RpcInvocation invocation) {
         for (int i = 0; i < invocation.getParameterTypes().length; i++) {
@@ -40,7 +40,8 @@ public final class DubboCountCodec implements Codec2 {
     }
 
     public Object decode(Channel channel, ChannelBuffer buffer) throws IOException {
-        int save = buffer.readerIndex();
+        int start = buffer.readerIndex();
+        int save = start;
         MultiMessage result = MultiMessage.create();
         do {
             Object obj = codec.decode(channel, buffer);
@@ -48,13 +49,16 @@ public final class DubboCountCodec implements Codec2 {
                 buffer.readerIndex(save);
                 break;
             } else {
-                result.addMessage(obj);
-                logMessageLength(obj, buffer.readerIndex() - save);
+                // 流式解码的消息体数据被取走时返回null
+                if (obj != null) {
+                    result.addMessage(obj);
+                    logMessageLength(obj, buffer.readerIndex() - save);
+                }
                 save = buffer.readerIndex();
             }
         } while (true);
         if (result.isEmpty()) {
-            return Codec2.DecodeResult.NEED_MORE_INPUT;
+            return save == start ? Codec2.DecodeResult.NEED_MORE_INPUT : null;
         }
         if (result.size() == 1) {
             return result.get(0);
@@ -16,6 +16,7 @@
 package com.alibaba.dubbo.rpc.protocol.dubbo;
 
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.locks.ReentrantLock;
 
 import com.alibaba.dubbo.common.Constants;
@@ -82,6 +83,8 @@ public class DubboInvoker<T> extends AbstractInvoker<T> {
             boolean isAsync = RpcUtils.isAsync(getUrl(), invocation);
             boolean isOneway = RpcUtils.isOneway(getUrl(), invocation);
             int timeout = getUrl().getMethodParameter(methodName, Constants.TIMEOUT_KEY,Constants.DEFAULT_TIMEOUT);
+            // the provider drops the request once this budget is spent.
+            inv.setAttachment(Constants.TIMEOUT_KEY, String.valueOf(timeout));
             if (isOneway) {
             	boolean isSent = getUrl().getMethodParameter(methodName, Constants.SENT_KEY, false);
                 currentClient.send(inv, isSent);
@@ -91,11 +94,13 @@ public class DubboInvoker<T> extends AbstractInvoker<T> {
 //            	ResponseFuture future = currentClient.request(inv, timeout) ;
 //                RpcContext.getContext().setFuture(new FutureAdapter<Object>(future));
             	CompletableResponseFuture future = (CompletableResponseFuture) currentClient.request(inv, timeout);
-        		RpcContext.getContext().setFuture(future.getFuture());
+            	@SuppressWarnings("unchecked")
+            	CompletableFuture<Object> completable = (CompletableFuture<Object>) future.getFuture();
+        		RpcContext.getContext().setFuture(CallbackExecutors.relay(completable, getUrl(), methodName));
                 return new RpcResult();
             } else {
             	RpcContext.getContext().setFuture(null);
-                return (Result) currentClient.request(inv, timeout).get();
+                return (Result) currentClient.invoke(inv, timeout);
             }
         } catch (TimeoutException e) {
             throw new RpcException(RpcException.TIMEOUT_EXCEPTION, "Invoke remote method timeout. method: " + invocation.getMethodName() + ", provider: " + getUrl() + ", cause: " + e.getMessage(), e);
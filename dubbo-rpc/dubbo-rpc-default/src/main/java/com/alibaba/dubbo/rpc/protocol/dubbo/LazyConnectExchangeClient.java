@@ -103,6 +103,12 @@ final class LazyConnectExchangeClient implements ExchangeClient{
         warning(request);
         initClient();
         return client.request(request, timeout);
+    }
+
+    public Object invoke(Object request, int timeout) throws RemotingException {
+        warning(request);
+        initClient();
+        return client.invoke(request, timeout);
     }
     
     /**
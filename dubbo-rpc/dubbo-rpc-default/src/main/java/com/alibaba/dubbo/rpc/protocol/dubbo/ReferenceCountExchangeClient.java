@@ -81,6 +81,10 @@ final class ReferenceCountExchangeClient implements ExchangeClient {
         return client.request(request, timeout);
     }
 
+    public Object invoke(Object request, int timeout) throws RemotingException {
+        return client.invoke(request, timeout);
+    }
+
     public boolean isConnected() {
         return client.isConnected();
     }
@@ -0,0 +1,268 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.rpc.protocol.dubbo;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.alibaba.dubbo.common.utils.ReflectUtils;
+import com.alibaba.dubbo.remoting.Channel;
+
+/**
+ * 连接上的服务方法符号表，开启symbol.table后请求不再每次携带服务路径、版本、方法名和参数类型描述。
+ * <p>
+ * 消费方为每个(dubbo版本, 服务路径, 版本, 方法, 参数类型)分配连接内唯一的编号，首次使用时发送完整定义和编号，
+ * 收到该请求的正常响应后改为只发送编号；提供方按编号缓存解析好的参数类型。
+ * 确认前一直发送完整定义，提供方在业务线程池上乱序解码时也不会遇到未定义的编号。
+ * 符号表随连接创建，重连后从头开始。
+ */
+final class SymbolTable {
+
+    // 每个连接上最多的符号数，超出后按原格式发送
+    static final int            MAX_SYMBOLS = 4096;
+
+    private static final String KEY         = SymbolTable.class.getName();
+
+    // 消费方
+    private final ConcurrentMap<SymbolKey, Symbol> symbols     = new ConcurrentHashMap<SymbolKey, Symbol>();
+
+    private final AtomicInteger                    nextId      = new AtomicInteger();
+
+    private final AtomicInteger                    unconfirmed = new AtomicInteger();
+
+    // 提供方
+    private final ConcurrentMap<Integer, Symbol>   definitions = new ConcurrentHashMap<Integer, Symbol>();
+
+    private SymbolTable() {
+    }
+
+    static SymbolTable get(Channel channel) {
+        return (SymbolTable) channel.getAttribute(KEY);
+    }
+
+    static SymbolTable getOrCreate(Channel channel) {
+        SymbolTable table = get(channel);
+        if (table == null) {
+            synchronized (channel) {
+                table = get(channel);
+                if (table == null) {
+                    table = new SymbolTable();
+                    channel.setAttribute(KEY, table);
+                }
+            }
+        }
+        return table;
+    }
+
+    /**
+     * 消费方取得调用对应的符号，首次使用时分配编号。
+     *
+     * @return the symbol, or null if the table is full.
+     */
+    Symbol lookup(String dubboVersion, String path, String version, String methodName, Class<?>[] parameterTypes) {
+        SymbolKey key = new SymbolKey(dubboVersion, path, version, methodName, parameterTypes);
+        Symbol symbol = symbols.get(key);
+        if (symbol == null) {
+            if (symbols.size() >= MAX_SYMBOLS) {
+                return null;
+            }
+            int id = nextId.incrementAndGet();
+            if (id > MAX_SYMBOLS) {
+                return null;
+            }
+            Symbol created = new Symbol(id, dubboVersion, path, version, methodName,
+                                        ReflectUtils.getDesc(parameterTypes), parameterTypes);
+            symbol = symbols.putIfAbsent(key, created);
+            if (symbol == null) {
+                symbol = created;
+                unconfirmed.incrementAndGet();
+            }
+        }
+        return symbol;
+    }
+
+    /**
+     * 消费方收到正常响应，说明提供方已经解码了请求，其中携带的定义可以只用编号引用了。
+     */
+    void confirm(String dubboVersion, String path, String version, String methodName, Class<?>[] parameterTypes) {
+        if (unconfirmed.get() == 0) {
+            return;
+        }
+        Symbol symbol = symbols.get(new SymbolKey(dubboVersion, path, version, methodName, parameterTypes));
+        if (symbol != null && symbol.confirm()) {
+            unconfirmed.decrementAndGet();
+        }
+    }
+
+    /**
+     * 提供方记录消费方发来的定义，同一编号重复定义时沿用已解析的结果。
+     */
+    Symbol define(int id, String dubboVersion, String path, String version, String methodName, String desc)
+            throws IOException, ClassNotFoundException {
+        if (id <= 0 || id > MAX_SYMBOLS) {
+            throw new IOException("Illegal symbol id " + id);
+        }
+        Symbol symbol = definitions.get(id);
+        if (symbol == null) {
+            Class<?>[] pts = desc.length() == 0 ? DubboCodec.EMPTY_CLASS_ARRAY : ReflectUtils.desc2classArray(desc);
+            Symbol created = new Symbol(id, dubboVersion, path, version, methodName, desc, pts);
+            symbol = definitions.putIfAbsent(id, created);
+            if (symbol == null) {
+                symbol = created;
+            }
+        }
+        return symbol;
+    }
+
+    /**
+     * 提供方按编号取得之前的定义。
+     */
+    Symbol resolve(int id) throws IOException {
+        Symbol symbol = definitions.get(id);
+        if (symbol == null) {
+            throw new IOException("Undefined symbol " + id);
+        }
+        return symbol;
+    }
+
+    static final class Symbol {
+
+        private final int        id;
+
+        private final String     dubboVersion;
+
+        private final String     path;
+
+        private final String     version;
+
+        private final String     methodName;
+
+        private final String     desc;
+
+        private final Class<?>[] parameterTypes;
+
+        private volatile boolean confirmed;
+
+        Symbol(int id, String dubboVersion, String path, String version, String methodName, String desc,
+               Class<?>[] parameterTypes) {
+            this.id = id;
+            this.dubboVersion = dubboVersion;
+            this.path = path;
+            this.version = version;
+            this.methodName = methodName;
+            this.desc = desc;
+            this.parameterTypes = parameterTypes;
+        }
+
+        synchronized boolean confirm() {
+            if (confirmed) {
+                return false;
+            }
+            confirmed = true;
+            return true;
+        }
+
+        boolean isConfirmed() {
+            return confirmed;
+        }
+
+        int getId() {
+            return id;
+        }
+
+        String getDubboVersion() {
+            return dubboVersion;
+        }
+
+        String getPath() {
+            return path;
+        }
+
+        String getVersion() {
+            return version;
+        }
+
+        String getMethodName() {
+            return methodName;
+        }
+
+        String getDesc() {
+            return desc;
+        }
+
+        Class<?>[] getParameterTypes() {
+            return parameterTypes;
+        }
+    }
+
+    private static final class SymbolKey {
+
+        private final String     dubboVersion;
+
+        private final String     path;
+
+        private final String     version;
+
+        private final String     methodName;
+
+        private final Class<?>[] parameterTypes;
+
+        private final int        hash;
+
+        SymbolKey(String dubboVersion, String path, String version, String methodName, Class<?>[] parameterTypes) {
+            this.dubboVersion = dubboVersion;
+            this.path = path;
+            this.version = version;
+            this.methodName = methodName;
+            this.parameterTypes = parameterTypes;
+            int h = methodName == null ? 0 : methodName.hashCode();
+            h = 31 * h + (path == null ? 0 : path.hashCode());
+            h = 31 * h + (version == null ? 0 : version.hashCode());
+            h = 31 * h + (dubboVersion == null ? 0 : dubboVersion.hashCode());
+            this.hash = 31 * h + Arrays.hashCode(parameterTypes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof SymbolKey)) {
+                return false;
+            }
+            SymbolKey other = (SymbolKey) obj;
+            return hash == other.hash
+                   && equals(methodName, other.methodName)
+                   && equals(path, other.path)
+                   && equals(version, other.version)
+                   && equals(dubboVersion, other.dubboVersion)
+                   && Arrays.equals(parameterTypes, other.parameterTypes);
+        }
+
+        private static boolean equals(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+
+}
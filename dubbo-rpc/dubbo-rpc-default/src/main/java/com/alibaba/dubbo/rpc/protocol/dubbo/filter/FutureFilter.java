@@ -18,6 +18,7 @@ package com.alibaba.dubbo.rpc.protocol.dubbo.filter;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.Future;
 
 import com.alibaba.dubbo.common.Constants;
@@ -76,35 +77,25 @@ public class FutureFilter implements Filter {
 	private void asyncCallback(final Invoker<?> invoker,
 			final Invocation invocation) {
 		CompletableFuture<Object> future = RpcContext.getContext().getFuture();
-		future.thenAcceptAsync(
-				rpcResult -> {
-					if (rpcResult == null) {
-						IllegalStateException ex = new IllegalStateException(
-								"invalid result value : null, expected "
-										+ Result.class.getName());
-						logger.error(ex);
-						fireThrowCallback(invoker, invocation, ex);
-						return;
-					}
-					// /must be rpcResult
-					if (!(rpcResult instanceof Result)) {
-						logger.error(new IllegalStateException(
-								"invalid result type :" + rpcResult.getClass()
-										+ ", expected "
-										+ Result.class.getName()));
-						return;
-					}
-					Result result = (Result) rpcResult;
-					if (result.hasException()) {
-						fireThrowCallback(invoker, invocation,
-								result.getException());
-					} else {
-						fireReturnCallback(invoker, invocation,
-								result.getValue());
-					}
-				}).exceptionally(throwable -> {
-			fireThrowCallback(invoker, invocation, throwable);
-			return null;
+		if (future == null) {
+			return;
+		}
+		// the future already completes on the executor chosen by
+		// callback.executor, so the callbacks run right there.
+		future.whenComplete((value, throwable) -> {
+			if (throwable != null) {
+				if (throwable instanceof CompletionException
+						&& throwable.getCause() != null) {
+					throwable = throwable.getCause();
+				}
+				fireThrowCallback(invoker, invocation, throwable);
+				return;
+			}
+			try {
+				fireReturnCallback(invoker, invocation, value);
+			} catch (Throwable e) {
+				fireThrowCallback(invoker, invocation, e);
+			}
 		});
 	}
 
@@ -0,0 +1,63 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.rpc.protocol.dubbo.status;
+
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import com.alibaba.dubbo.common.extension.Activate;
+import com.alibaba.dubbo.common.status.Status;
+import com.alibaba.dubbo.common.status.StatusChecker;
+import com.alibaba.dubbo.rpc.protocol.dubbo.CallbackExecutors;
+
+/**
+ * CallbackStatusChecker
+ */
+@Activate
+public class CallbackStatusChecker implements StatusChecker {
+
+    public Status check() {
+        Map<String, CallbackExecutors.QueueingStats> stats = CallbackExecutors.getQueueingStats();
+        Map<String, Executor> pools = CallbackExecutors.getPools();
+
+        StringBuilder msg = new StringBuilder();
+        Status.Level level = Status.Level.OK;
+        for (Map.Entry<String, CallbackExecutors.QueueingStats> entry : stats.entrySet()) {
+            String name = entry.getKey();
+            CallbackExecutors.QueueingStats stat = entry.getValue();
+            if (msg.length() > 0) {
+                msg.append(";");
+            }
+            msg.append("Callback executor:" + name
+                    + ", completed:" + stat.getCount()
+                    + ", avg queueing:" + stat.getAverageMillis() + "ms"
+                    + ", max queueing:" + stat.getMaxMillis() + "ms");
+            Executor executor = pools.get(name);
+            if (executor instanceof ThreadPoolExecutor) {
+                ThreadPoolExecutor tp = (ThreadPoolExecutor) executor;
+                if (tp.getQueue().remainingCapacity() == 0) {
+                    level = Status.Level.WARN;
+                }
+                msg.append(", max:" + tp.getMaximumPoolSize()
+                        + ", active:" + tp.getActiveCount()
+                        + ", queued:" + tp.getQueue().size());
+            }
+        }
+        return msg.length() == 0 ? new Status(Status.Level.UNKNOWN) : new Status(level, msg.toString());
+    }
+
+}
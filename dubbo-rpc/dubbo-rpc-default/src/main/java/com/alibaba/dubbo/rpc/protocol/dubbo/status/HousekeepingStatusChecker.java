@@ -0,0 +1,47 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.rpc.protocol.dubbo.status;
+
+import java.util.Map;
+
+import com.alibaba.dubbo.common.extension.Activate;
+import com.alibaba.dubbo.common.status.Status;
+import com.alibaba.dubbo.common.status.StatusChecker;
+import com.alibaba.dubbo.rpc.support.HousekeepingScheduler;
+
+/**
+ * HousekeepingStatusChecker
+ */
+@Activate
+public class HousekeepingStatusChecker implements StatusChecker {
+
+    public Status check() {
+        StringBuilder buf = new StringBuilder();
+        buf.append("threads:").append(HousekeepingScheduler.getThreads())
+           .append(", queue:").append(HousekeepingScheduler.getQueueSize());
+        for (Map.Entry<String, HousekeepingScheduler.TaskStatistics> entry : HousekeepingScheduler.getStatistics().entrySet()) {
+            HousekeepingScheduler.TaskStatistics statistics = entry.getValue();
+            buf.append(";").append(entry.getKey())
+               .append("(count:").append(statistics.getCount())
+               .append(",failures:").append(statistics.getFailures())
+               .append(",lateness:").append(statistics.getAverageLatenessMillis()).append("/").append(statistics.getMaxLatenessMillis())
+               .append("ms,runtime:").append(statistics.getAverageRuntimeMillis()).append("/").append(statistics.getMaxRuntimeMillis())
+               .append("ms)");
+        }
+        return new Status(Status.Level.OK, buf.toString());
+    }
+
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.rpc.protocol.dubbo.status;
+
+import java.util.Map;
+
+import com.alibaba.dubbo.common.extension.Activate;
+import com.alibaba.dubbo.common.status.Status;
+import com.alibaba.dubbo.common.status.StatusChecker;
+import com.alibaba.dubbo.remoting.exchange.support.LateResponses;
+
+/**
+ * LateResponseStatusChecker
+ */
+@Activate
+public class LateResponseStatusChecker implements StatusChecker {
+
+    public Status check() {
+        Map<String, LateResponses.Statistics> statistics = LateResponses.getStatistics();
+        if (statistics.isEmpty()) {
+            return new Status(Status.Level.OK);
+        }
+        long count = 0;
+        long max = 0;
+        String worst = null;
+        for (Map.Entry<String, LateResponses.Statistics> entry : statistics.entrySet()) {
+            count += entry.getValue().getCount();
+            if (worst == null || entry.getValue().getMax() > max) {
+                max = entry.getValue().getMax();
+                worst = entry.getKey();
+            }
+        }
+        return new Status(Status.Level.OK, "late responses:" + count + ", max:" + max + "ms (" + worst
+                + "), see telnet command \"late\" for details");
+    }
+
+}
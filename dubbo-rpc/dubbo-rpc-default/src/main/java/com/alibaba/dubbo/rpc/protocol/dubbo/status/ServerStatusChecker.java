@@ -21,6 +21,7 @@ import com.alibaba.dubbo.common.extension.Activate;
 import com.alibaba.dubbo.common.status.Status;
 import com.alibaba.dubbo.common.status.StatusChecker;
 import com.alibaba.dubbo.remoting.exchange.ExchangeServer;
+import com.alibaba.dubbo.remoting.exchange.support.header.HeaderExchangeHandler;
 import com.alibaba.dubbo.rpc.protocol.dubbo.DubboProtocol;
 
 /**
@@ -53,6 +54,14 @@ public class ServerStatusChecker implements StatusChecker {
             buf.append(server.getChannels().size());
             buf.append(")");
         }
+        if (level == Status.Level.OK) {
+            buf.append(";expired requests:");
+            buf.append(HeaderExchangeHandler.getExpiredRequests());
+            buf.append(",interrupted requests:");
+            buf.append(HeaderExchangeHandler.getInterruptedRequests());
+            buf.append(",canceled requests:");
+            buf.append(HeaderExchangeHandler.getCanceledRequests());
+        }
         return new Status(level, buf.toString());
     }
 
@@ -0,0 +1,62 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.rpc.protocol.dubbo.telnet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.alibaba.dubbo.common.extension.Activate;
+import com.alibaba.dubbo.remoting.Channel;
+import com.alibaba.dubbo.remoting.telnet.TelnetHandler;
+import com.alibaba.dubbo.remoting.telnet.support.Help;
+import com.alibaba.dubbo.remoting.telnet.support.TelnetUtils;
+import com.alibaba.dubbo.rpc.protocol.dubbo.DecodeStatistics;
+
+/**
+ * DecodeTelnetHandler
+ */
+@Activate
+@Help(parameter = "[service]", summary = "Show the decode time of the methods.", detail = "Show the decode time and body size of the requests and responses, by service and method, to tune decode.inline.threshold and decode.inline.cost.")
+public class DecodeTelnetHandler implements TelnetHandler {
+
+    public String telnet(Channel channel, String message) {
+        List<String> header = new ArrayList<String>();
+        header.add("method");
+        header.add("count");
+        header.add("io thread");
+        header.add("avg size(B)");
+        header.add("avg(us)");
+        header.add("max(us)");
+        List<List<String>> table = new ArrayList<List<String>>();
+        for (Map.Entry<String, DecodeStatistics.Statistics> entry : DecodeStatistics.getStatistics().entrySet()) {
+            if (message != null && message.length() > 0 && ! entry.getKey().contains(message)) {
+                continue;
+            }
+            DecodeStatistics.Statistics statistics = entry.getValue();
+            List<String> row = new ArrayList<String>();
+            row.add(entry.getKey());
+            row.add(String.valueOf(statistics.getCount()));
+            row.add(String.valueOf(statistics.getInlineCount()));
+            row.add(String.valueOf(statistics.getAverageBytes()));
+            row.add(String.valueOf(statistics.getAverageMicros()));
+            row.add(String.valueOf(statistics.getMaxMicros()));
+            table.add(row);
+        }
+        return TelnetUtils.toTable(header, table);
+    }
+
+}
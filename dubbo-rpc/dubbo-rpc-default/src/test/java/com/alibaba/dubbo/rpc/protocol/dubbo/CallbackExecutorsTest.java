@@ -0,0 +1,105 @@
+/*
+ * Copyright 1999-2011 Alibaba Group.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.dubbo.rpc.protocol.dubbo;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.alibaba.dubbo.common.URL;
+import com.alibaba.dubbo.common.utils.NamedThreadFactory;
+import com.alibaba.dubbo.rpc.RpcContext;
+
+public class CallbackExecutorsTest {
+
+    @Test
+    public void testIoExecutor() {
+        URL url = URL.valueOf("dubbo://127.0.0.1:20880/DemoService?callback.executor=io");
+        CompletableFuture<Object> future = new CompletableFuture<Object>();
+        Assert.assertSame(future, CallbackExecutors.relay(future, url, "echo"));
+    }
+
+    @Test
+    public void testNamedPool() throws Exception {
+        URL url = URL.valueOf("dubbo://127.0.0.1:20880/DemoService?echo.callback.executor=demo&callback.threads=2");
+        CompletableFuture<Object> future = new CompletableFuture<Object>();
+        CompletableFuture<String> thread = CallbackExecutors.relay(future, url, "echo")
+                .thenApply(value -> Thread.currentThread().getName());
+        future.complete("hello");
+        Assert.assertTrue(thread.get(5, TimeUnit.SECONDS).startsWith("DubboCallback-demo"));
+        Assert.assertEquals(1, CallbackExecutors.getQueueingStats().get("demo").getCount());
+    }
+
+    @Test
+    public void testSaturatedPoolRunsOnCompletingThread() throws Exception {
+        URL url = URL.valueOf("dubbo://127.0.0.1:20880/DemoService?callback.executor=saturated&callback.threads=1&callback.queues=1");
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            // occupies the only thread.
+            CompletableFuture<Object> blocker = new CompletableFuture<Object>();
+            CallbackExecutors.relay(blocker, url, "echo").thenRun(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                }
+            });
+            blocker.complete("blocker");
+            // fills the queue.
+            CompletableFuture<Object> queued = new CompletableFuture<Object>();
+            CallbackExecutors.relay(queued, url, "echo");
+            queued.complete("queued");
+
+            CompletableFuture<Object> future = new CompletableFuture<Object>();
+            CompletableFuture<String> thread = CallbackExecutors.relay(future, url, "echo")
+                    .thenApply(value -> Thread.currentThread().getName());
+            future.complete("hello");
+            Assert.assertEquals(Thread.currentThread().getName(), thread.get(5, TimeUnit.SECONDS));
+            Assert.assertEquals(1, CallbackExecutors.getQueueingStats().get("saturated").getRejected());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void testCallerExecutor() throws Exception {
+        URL url = URL.valueOf("dubbo://127.0.0.1:20880/DemoService?callback.executor=caller");
+        ExecutorService executor = Executors.newSingleThreadExecutor(new NamedThreadFactory("CallerCallback", true));
+        RpcContext.getContext().setCallbackExecutor(executor);
+        try {
+            CompletableFuture<Object> future = new CompletableFuture<Object>();
+            CompletableFuture<Object> relay = CallbackExecutors.relay(future, url, "echo");
+            CompletableFuture<String> thread = relay.handle((value, t) -> Thread.currentThread().getName());
+            future.completeExceptionally(new IllegalStateException("biz"));
+            Assert.assertTrue(thread.get(5, TimeUnit.SECONDS).startsWith("CallerCallback"));
+            try {
+                relay.get();
+                Assert.fail();
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+        } finally {
+            RpcContext.getContext().setCallbackExecutor(null);
+            executor.shutdown();
+        }
+    }
+
+}
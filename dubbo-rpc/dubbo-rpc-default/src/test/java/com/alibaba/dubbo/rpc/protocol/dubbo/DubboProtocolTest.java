@@ -17,10 +17,17 @@ package com.alibaba.dubbo.rpc.protocol.dubbo;
 
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import junit.framework.Assert;
 
@@ -29,8 +36,13 @@ import org.junit.Test;
 import com.alibaba.dubbo.common.Constants;
 import com.alibaba.dubbo.common.URL;
 import com.alibaba.dubbo.common.extension.ExtensionLoader;
+import com.alibaba.dubbo.remoting.exchange.codec.EncodedMessage;
+import com.alibaba.dubbo.remoting.exchange.codec.ExchangeCodec;
+import com.alibaba.dubbo.remoting.exchange.support.OutboundQueue;
+import com.alibaba.dubbo.remoting.transport.Hessian2TypeCache;
 import com.alibaba.dubbo.rpc.Protocol;
 import com.alibaba.dubbo.rpc.ProxyFactory;
+import com.alibaba.dubbo.rpc.RpcContext;
 import com.alibaba.dubbo.rpc.RpcException;
 import com.alibaba.dubbo.rpc.protocol.dubbo.support.DemoService;
 import com.alibaba.dubbo.rpc.protocol.dubbo.support.DemoServiceImpl;
@@ -89,6 +101,213 @@ public class DubboProtocolTest
 		assertEquals(echo.$echo(1234), 1234);
 	}
 
+    @Test
+    public void testDecodeInBusinessThread() throws Exception {
+        DemoService service = new DemoServiceImpl();
+        String url = "dubbo://127.0.0.1:9011/" + DemoService.class.getName() + "?" + Constants.DECODE_IN_IO_THREAD_KEY + "=false";
+        protocol.export(proxy.getInvoker(service, DemoService.class, URL.valueOf(url)));
+        service = proxy.getProxy(protocol.refer(DemoService.class, URL.valueOf(url)));
+        // large enough to be received in several reads, the body is decoded from a slice of the inbound buffer.
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < 256 * 1024; i++) {
+            buf.append((char) ('A' + i % 26));
+        }
+        String text = buf.toString();
+        for (int i = 0; i < 10; i++) {
+            assertEquals(text, service.echo(text));
+            assertEquals(3, service.getSize(new String[]{"", "", ""}));
+        }
+    }
+
+    @Test
+    public void testAdaptiveDecode() throws Exception {
+        DemoService service = new DemoServiceImpl();
+        String url = "dubbo://127.0.0.1:9012/" + DemoService.class.getName() + "?" + Constants.DECODE_IN_IO_THREAD_KEY
+                + "=" + DubboCodec.DECODE_ADAPTIVE + "&" + DubboCodec.DECODE_INLINE_THRESHOLD_KEY + "=1024";
+        protocol.export(proxy.getInvoker(service, DemoService.class, URL.valueOf(url)));
+        service = proxy.getProxy(protocol.refer(DemoService.class, URL.valueOf(url)));
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < 64 * 1024; i++) {
+            buf.append((char) ('A' + i % 26));
+        }
+        String large = buf.toString();
+        assertEquals("small", service.echo("small"));
+        DecodeStatistics.Statistics statistics = DecodeStatistics.getStatistics().get(DemoService.class.getName() + ".echo");
+        long count = statistics.getCount();
+        long inline = statistics.getInlineCount();
+        for (int i = 0; i < 5; i++) {
+            assertEquals("small", service.echo("small"));
+            assertEquals(large, service.echo(large));
+        }
+        // requests and responses are counted, the small ones are decoded on the io thread.
+        assertEquals(count + 20, statistics.getCount());
+        assertTrue(statistics.getInlineCount() - inline >= 10);
+        // the method of a large request is unknown before decoding, it is always deferred.
+        assertTrue(statistics.getInlineCount() - inline <= 15);
+    }
+
+    @Test
+    public void testSymbolTable() throws Exception {
+        DemoService service = new DemoServiceImpl();
+        // deferred decoding may reorder requests on the provider, references are only sent once confirmed.
+        String url = "dubbo://127.0.0.1:9013/" + DemoService.class.getName() + "?" + DubboCodec.SYMBOL_TABLE_KEY
+                + "=true&" + Constants.DECODE_IN_IO_THREAD_KEY + "=false";
+        protocol.export(proxy.getInvoker(service, DemoService.class, URL.valueOf(url)));
+        service = proxy.getProxy(protocol.refer(DemoService.class, URL.valueOf(url)));
+        for (int i = 0; i < 10; i++) {
+            assertEquals("hello" + i, service.echo("hello" + i));
+            // overloaded methods are distinct symbols.
+            assertEquals(3, service.getSize(new String[]{"", "", ""}));
+            assertEquals(2, service.getSize(new Object[]{"", ""}));
+            assertEquals(Type.Lower, service.enumlength(new Type[]{}));
+        }
+    }
+
+    @Test
+    public void testAttachmentTable() throws Exception {
+        DemoService service = new DemoServiceImpl() {
+            @Override
+            public String echo(String text) {
+                RpcContext context = RpcContext.getContext();
+                return text + context.getAttachment("tenant") + context.getAttachment("trace")
+                        + context.getAttachment("large").length();
+            }
+        };
+        String url = "dubbo://127.0.0.1:9014/" + DemoService.class.getName() + "?" + DubboCodec.ATTACHMENT_TABLE_KEY
+                + "=true&" + DubboCodec.SYMBOL_TABLE_KEY + "=true&" + Constants.DECODE_IN_IO_THREAD_KEY + "=false";
+        protocol.export(proxy.getInvoker(service, DemoService.class, URL.valueOf(url)));
+        service = proxy.getProxy(protocol.refer(DemoService.class, URL.valueOf(url)));
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < AttachmentTable.MAX_VALUE_LENGTH + 1; i++) {
+            large.append('x');
+        }
+        for (int i = 0; i < 10; i++) {
+            // repeated pairs are referenced once confirmed, the large value is always sent literally.
+            RpcContext.getContext().setAttachment("tenant", "acme");
+            RpcContext.getContext().setAttachment("trace", String.valueOf(i % 3));
+            RpcContext.getContext().setAttachment("large", large.toString());
+            assertEquals("hello" + "acme" + (i % 3) + large.length(), service.echo("hello"));
+        }
+    }
+
+    @Test
+    public void testTypeCache() throws Exception {
+        DemoService service = new DemoServiceImpl();
+        String url = "dubbo://127.0.0.1:9015/" + DemoService.class.getName() + "?" + Hessian2TypeCache.TYPE_CACHE_KEY + "=true";
+        protocol.export(proxy.getInvoker(service, DemoService.class, URL.valueOf(url)));
+        service = proxy.getProxy(protocol.refer(DemoService.class, URL.valueOf(url)));
+        Map<String, String> map = new HashMap<String, String>();
+        map.put("aa", "bb");
+        for (int i = 0; i < 10; i++) {
+            // the enum type is defined by the first request and response only.
+            assertEquals(Type.values()[i % 3], service.enumlength(new Type[]{Type.values()[i % 3]}));
+            assertEquals(1, service.keys(map).size());
+        }
+    }
+
+    @Test
+    public void testCompressor() throws Exception {
+        DemoService service = new DemoServiceImpl();
+        // only echo is compressed, in both directions.
+        String url = "dubbo://127.0.0.1:9016/" + DemoService.class.getName() + "?echo." + ExchangeCodec.COMPRESSOR_KEY
+                + "=deflate&" + ExchangeCodec.COMPRESS_THRESHOLD_KEY + "=64";
+        protocol.export(proxy.getInvoker(service, DemoService.class, URL.valueOf(url)));
+        service = proxy.getProxy(protocol.refer(DemoService.class, URL.valueOf(url)));
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1024; i++) {
+            text.append("compress ");
+        }
+        for (int i = 0; i < 10; i++) {
+            assertEquals(text.toString(), service.echo(text.toString()));
+            assertEquals(text.length(), service.stringLength(text.toString()));
+        }
+    }
+
+    @Test
+    public void testDecodeStreaming() throws Exception {
+        DemoService service = new DemoServiceImpl();
+        String url = "dubbo://127.0.0.1:9017/" + DemoService.class.getName() + "?" + DubboCodec.DECODE_STREAM_THRESHOLD_KEY + "=1024";
+        protocol.export(proxy.getInvoker(service, DemoService.class, URL.valueOf(url)));
+        service = proxy.getProxy(protocol.refer(DemoService.class, URL.valueOf(url).addParameter("timeout", 10000)));
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 256 * 1024; i++) {
+            text.append((char) ('a' + i % 26));
+        }
+        for (int i = 0; i < 5; i++) {
+            // both the request and the response are decoded while being received.
+            assertEquals(text.toString(), service.echo(text.toString()));
+            assertEquals("small", service.echo("small"));
+        }
+    }
+
+    @Test
+    public void testSidecar() throws Exception {
+        DemoService service = new DemoServiceImpl();
+        // also decoded while being received.
+        String url = "dubbo://127.0.0.1:9018/" + DemoService.class.getName() + "?" + ExchangeCodec.SIDECAR_THRESHOLD_KEY
+                + "=1024&" + DubboCodec.DECODE_STREAM_THRESHOLD_KEY + "=1024";
+        protocol.export(proxy.getInvoker(service, DemoService.class, URL.valueOf(url)));
+        service = proxy.getProxy(protocol.refer(DemoService.class, URL.valueOf(url).addParameter("timeout", 10000)));
+        byte[] large = new byte[256 * 1024];
+        new java.util.Random(1).nextBytes(large);
+        byte[] small = new byte[] {1, 2, 3};
+        for (int i = 0; i < 5; i++) {
+            byte[] reversed = service.reverse(large);
+            assertEquals(large.length, reversed.length);
+            assertEquals(large[0], reversed[large.length - 1]);
+            assertEquals(large[large.length - 1], reversed[0]);
+            assertEquals(large.length, service.reverse(reversed).length);
+            assertEquals(3, service.reverse(small)[0]);
+            assertEquals("small", service.echo("small"));
+        }
+    }
+
+    @Test
+    public void testWriteCoalescing() throws Exception {
+        DemoService service = new DemoServiceImpl();
+        String url = "dubbo://127.0.0.1:9019/" + DemoService.class.getName() + "?" + OutboundQueue.WRITE_COALESCING_KEY + "=true";
+        protocol.export(proxy.getInvoker(service, DemoService.class, URL.valueOf(url)));
+        final DemoService client = proxy.getProxy(protocol.refer(DemoService.class, URL.valueOf(url)));
+        // requests and responses of concurrent callers share the connection.
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<Future<String>>();
+            for (int i = 0; i < 400; i++) {
+                final String text = "coalesce" + i;
+                results.add(executor.submit(new Callable<String>() {
+                    public String call() throws Exception {
+                        return client.echo(text);
+                    }
+                }));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals("coalesce" + i, results.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testEncodeInBusinessThread() throws Exception {
+        DemoService service = new DemoServiceImpl();
+        String url = "dubbo://127.0.0.1:9021/" + DemoService.class.getName() + "?" + EncodedMessage.ENCODE_IN_IO_KEY + "=false";
+        protocol.export(proxy.getInvoker(service, DemoService.class, URL.valueOf(url)));
+        service = proxy.getProxy(protocol.refer(DemoService.class, URL.valueOf(url)));
+        for (int i = 0; i < 10; i++) {
+            assertEquals("encoded" + i, service.echo("encoded" + i));
+            assertEquals(3, service.getSize(new String[]{"", "", ""}));
+        }
+        // encoding errors are still sent back as bad responses.
+        try {
+            service.returnNonSerialized();
+            Assert.fail();
+        } catch (RpcException e) {
+            Assert.assertTrue(e.getMessage().contains("com.alibaba.dubbo.rpc.protocol.dubbo.support.NonSerialized must implement java.io.Serializable"));
+        }
+        assertEquals("after", service.echo("after"));
+    }
+
     @Test
     public void testDubboProtocolWithMina() throws Exception {
         DemoService service = new DemoServiceImpl();
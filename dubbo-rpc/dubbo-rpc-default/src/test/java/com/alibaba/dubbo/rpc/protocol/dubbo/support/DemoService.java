@@ -52,6 +52,8 @@ public interface DemoService
 	
 	byte getbyte(byte arg);
 	
+	byte[] reverse(byte[] data);
+	
 	void nonSerializedParameter(NonSerialized ns);
 	
 	NonSerialized returnNonSerialized();
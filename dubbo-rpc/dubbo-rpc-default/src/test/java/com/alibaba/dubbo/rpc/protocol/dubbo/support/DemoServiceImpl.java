@@ -93,6 +93,14 @@ public class DemoServiceImpl implements DemoService
         return arg;
     }
 
+    public byte[] reverse(byte[] data) {
+        byte[] reversed = new byte[data.length];
+        for (int i = 0; i < data.length; i++) {
+            reversed[i] = data[data.length - 1 - i];
+        }
+        return reversed;
+    }
+
     public Person gerPerson(Person person) {
         return person;
     }